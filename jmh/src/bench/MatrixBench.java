@@ -0,0 +1,118 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import linalg.LinAlgException;
+import linalg.Matrix;
+import linalg.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks for the products of linalg.Matrix over the size classes of BenchLinAlg:
+ *  matrix products on three square operands and matrix-vector products on one, sized to
+ *  fit in L1, L2, L3 or only in RAM (plus a tiny size for call overhead)
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class MatrixBench {
+
+	private static final int[] MATRIX_DIM = { 4, 32, 128, 512, 2048 };
+	private static final int[] GEMV_DIM = { 4, 48, 160, 640, 4096 };
+
+	@Param({ "tiny", "L1", "L2", "L3", "RAM" })
+	public String size;
+
+	private int _n, _nGemv;
+	private Matrix _a, _b, _m;
+	private Vector _x;
+
+	@Setup
+	public void setup() throws LinAlgException {
+		int s = VectorBench.sizeIndex(size);
+		_n = MATRIX_DIM[s];
+		_nGemv = GEMV_DIM[s];
+		Random r = new Random(42);
+		_a = randomMatrix(_n, r);
+		_b = randomMatrix(_n, r);
+		_m = randomMatrix(_nGemv, r);
+		_x = VectorBench.randomVector(_nGemv, r);
+	}
+
+	@Benchmark
+	public Matrix multiply(Work w) throws LinAlgException {
+		countGemm(w);
+		return Matrix.Multiply(_a, _b);
+	}
+
+	@Benchmark
+	public Matrix multiplyParallel(Work w) throws LinAlgException {
+		countGemm(w);
+		return Matrix.MultiplyParallel(_a, _b);
+	}
+
+	@Benchmark
+	public Matrix multiplyStrassen(Work w) throws LinAlgException {
+		countGemm(w);
+		return Matrix.MultiplyStrassen(_a, _b);
+	}
+
+	@Benchmark
+	public Matrix multiplyTransposeA(Work w) throws LinAlgException {
+		countGemm(w);
+		return Matrix.MultiplyTransposeA(_a, _b);
+	}
+
+	@Benchmark
+	public Matrix transpose(Work w) throws LinAlgException {
+		w.bytes += 2L * _n * _n * Double.BYTES;
+		return _a.transpose();
+	}
+
+	@Benchmark
+	public Vector multiplyVector(Work w) throws LinAlgException {
+		countGemv(w);
+		return Matrix.Multiply(_m, _x);
+	}
+
+	@Benchmark
+	public Vector multiplyVectorParallel(Work w) throws LinAlgException {
+		countGemv(w);
+		return Matrix.MultiplyParallel(_m, _x);
+	}
+
+	private void countGemm(Work w) {
+		w.flops += 2L * _n * _n * _n;
+		w.bytes += 3L * _n * _n * Double.BYTES;
+	}
+
+	private void countGemv(Work w) {
+		w.flops += 2L * _nGemv * _nGemv;
+		w.bytes += ((long)_nGemv * _nGemv + 2L * _nGemv) * Double.BYTES;
+	}
+
+	private static Matrix randomMatrix(int n, Random r) throws LinAlgException {
+		Matrix m = new Matrix(n, n);
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				m.set(i, j, r.nextDouble() - 0.5);
+		return m;
+	}
+}
@@ -0,0 +1,60 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import linalg.LinAlgException;
+import linalg.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks for Vector.toString() and Vector(String), up to the L3 size class (the RAM
+ *  size would format to a string of over 100 MB)
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class TextBench {
+
+	private static final int[] VECTOR_DIM = { 16, 1 << 10, 1 << 14, 1 << 18 };
+
+	@Param({ "tiny", "L1", "L2", "L3" })
+	public String size;
+
+	private Vector _v;
+	private String _sText;
+
+	@Setup
+	public void setup() throws LinAlgException {
+		_v = VectorBench.randomVector(VECTOR_DIM[VectorBench.sizeIndex(size)], new Random(42));
+		_sText = _v.toString();
+	}
+
+	@Benchmark
+	public String format(Work w) {
+		w.bytes += _sText.length();
+		return _v.toString();
+	}
+
+	@Benchmark
+	public Vector parse(Work w) throws LinAlgException {
+		w.bytes += _sText.length();
+		return new Vector(_sText);
+	}
+}
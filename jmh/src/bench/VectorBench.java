@@ -0,0 +1,116 @@
+package bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import linalg.LinAlgException;
+import linalg.Vector;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** JMH benchmarks for the arithmetic of linalg.Vector over the size classes of BenchLinAlg:
+ *  two operands of 16 entries (call overhead) or sized to fit in L1, L2, L3 or only in RAM
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector" })
+public class VectorBench {
+
+	static final String[] SIZE_CLASS = { "tiny", "L1", "L2", "L3", "RAM" };
+	private static final int[] VECTOR_DIM = { 16, 1 << 10, 1 << 14, 1 << 18, 1 << 24 };
+
+	@Param({ "tiny", "L1", "L2", "L3", "RAM" })
+	public String size;
+
+	private int _n;
+	private Vector _a, _b, _signs;
+
+	@Setup
+	public void setup() throws LinAlgException {
+		_n = VECTOR_DIM[sizeIndex(size)];
+		Random r = new Random(42);
+		_a = randomVector(_n, r);
+		_b = randomVector(_n, r);
+		_signs = new Vector(_n).scalarAdd(-1d); // Multiplying by -1 keeps values bounded over many calls
+	}
+
+	@Benchmark
+	public double innerProd(Work w) throws LinAlgException {
+		count(w, 2L, 2L);
+		return Vector.InnerProd(_a, _b);
+	}
+
+	@Benchmark
+	public Vector elementwiseAdd(Work w) throws LinAlgException {
+		count(w, 1L, 3L);
+		return _a.elementwiseAdd(_b);
+	}
+
+	@Benchmark
+	public Vector elementwiseMult(Work w) throws LinAlgException {
+		count(w, 1L, 3L);
+		return _a.elementwiseMult(_b);
+	}
+
+	@Benchmark
+	public Vector elementwiseMultInPlace(Work w) throws LinAlgException {
+		count(w, 1L, 3L);
+		_b.elementwiseMultInPlace(_signs);
+		return _b;
+	}
+
+	@Benchmark
+	public Vector scalarAdd(Work w) {
+		count(w, 1L, 2L);
+		return _a.scalarAdd(1d);
+	}
+
+	@Benchmark
+	public Vector scalarMult(Work w) {
+		count(w, 1L, 2L);
+		return _a.scalarMult(0.5d);
+	}
+
+	@Benchmark
+	public Vector scalarMultInPlace(Work w) {
+		count(w, 1L, 2L);
+		_a.scalarMultInPlace(-1d);
+		return _a;
+	}
+
+	/** Adds flopsPerEntry and operandPasses doubles per entry to the work counters */
+	private void count(Work w, long flopsPerEntry, long operandPasses) {
+		w.flops += flopsPerEntry * _n;
+		w.bytes += operandPasses * _n * Double.BYTES;
+	}
+
+	static int sizeIndex(String size) {
+		for (int s = 0; s < SIZE_CLASS.length; s++)
+			if (SIZE_CLASS[s].equals(size))
+				return s;
+		throw new IllegalArgumentException("Unknown size class " + size);
+	}
+
+	static Vector randomVector(int n, Random r) throws LinAlgException {
+		Vector v = new Vector(n);
+		for (int i = 0; i < n; i++)
+			v.set(i, r.nextDouble() - 0.5);
+		return v;
+	}
+}
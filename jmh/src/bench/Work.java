@@ -0,0 +1,27 @@
+package bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/** Work done by the calls of one benchmark, which JMH reports per second next to the call
+ *  rate: flops as FLOP/s and bytes (one pass over inputs and outputs) as B/s
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Work {
+
+	public long flops;
+	public long bytes;
+
+	@Setup(Level.Iteration)
+	public void reset() {
+		flops = 0L;
+		bytes = 0L;
+	}
+}
@@ -0,0 +1,189 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Random;
+
+import linalg.FloatMatrix;
+import linalg.FloatVector;
+import linalg.LinAlgException;
+import linalg.Matrix;
+import linalg.QuantizedMatrix;
+import linalg.QuantizedVector;
+import linalg.Vector;
+import linalg.VectorExpr;
+
+/** Repeatable micro-benchmarks for the public operations of linalg.Matrix and linalg.Vector.
+ *
+ *  Every operation is run over a sweep of sizes chosen so that its operands fit in L1, L2,
+ *  L3 or only in main memory (plus a tiny size that measures call overhead).  Each case is
+ *  warmed up, then timed over enough repetitions to last at least MEASURE_NS, and reported as
+ *  time per call, GFLOP/s and GB/s of operand traffic (one pass over inputs and outputs).
+ *
+ *  Results are printed as a table and, if a file name is given, also written as CSV so runs
+ *  from different versions can be diffed:
+ *
+ *      java -cp out BenchLinAlg [results.csv [operation-name-filter]]
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class BenchLinAlg {
+
+	private static final long WARMUP_NS = 300_000_000L;
+	private static final long MEASURE_NS = 1_000_000_000L;
+
+	private static final String[] SIZE_CLASS = { "tiny", "L1", "L2", "L3", "RAM" };
+	private static final int[] VECTOR_DIM = { 16, 1 << 10, 1 << 14, 1 << 18, 1 << 24 };  // 2 operands of 8 bytes each
+	private static final int[] MATRIX_DIM = { 4, 32, 128, 512, 2048 };                  // 3 square operands
+	private static final int[] GEMV_DIM = { 4, 48, 160, 640, 4096 };                    // 1 square operand
+	private static final int BATCH = 64;                                                 // Vectors per MultiplyBatch call
+
+	private static volatile double _dSink; // Keeps results alive so the JIT cannot drop the work
+
+	/** One benchmark case: the body runs the operation once */
+	private interface Body {
+		void run() throws LinAlgException;
+	}
+
+	private static PrintWriter _csv;
+	private static String _sFilter = "";
+
+	public static void main(String[] args) {
+		try {
+			if (args.length > 0) {
+				_csv = new PrintWriter(new FileWriter(args[0]));
+				_csv.println("operation,size_class,n,ns_per_op,gflops,gbytes_per_s");
+			}
+			if (args.length > 1)
+				_sFilter = args[1];
+			System.out.println(String.format(Locale.ROOT, "%-30s %-5s %9s %14s %9s %9s",
+					"operation", "size", "n", "ns/op", "GFLOP/s", "GB/s"));
+			Random r = new Random(42);
+			for (int s = 0; s < SIZE_CLASS.length; s++)
+				benchVector(SIZE_CLASS[s], VECTOR_DIM[s], r);
+			for (int s = 0; s < SIZE_CLASS.length; s++)
+				benchMatrix(SIZE_CLASS[s], MATRIX_DIM[s], GEMV_DIM[s], r);
+			if (_csv != null)
+				_csv.close();
+		} catch (LinAlgException | IOException e) {
+			System.out.println("ERROR: " + e.getMessage());
+			System.exit(1); // Exits the program
+		}
+	}
+
+	private static void benchVector(String size, int n, Random r) throws LinAlgException {
+		Vector a = randomVector(n, r);
+		Vector b = randomVector(n, r);
+		long bytes2 = 2L * n * Double.BYTES;
+		long bytes3 = 3L * n * Double.BYTES;
+		bench("Vector.InnerProd", size, n, 2L * n, bytes2, () -> _dSink = Vector.InnerProd(a, b));
+		bench("Vector.elementwiseAdd", size, n, n, bytes3, () -> _dSink = a.elementwiseAdd(b).getArray()[0]);
+		bench("Vector.elementwiseAddInPlace", size, n, n, bytes3, () -> a.elementwiseAddInPlace(b));
+		bench("Vector.elementwiseMult", size, n, n, bytes3, () -> _dSink = a.elementwiseMult(b).getArray()[0]);
+		Vector signs = new Vector(n).scalarAdd(-1d); // Multiplying by -1 keeps values bounded over many reps
+		bench("Vector.elementwiseMultInPlace", size, n, n, bytes3, () -> b.elementwiseMultInPlace(signs));
+		bench("Vector.scalarAdd", size, n, n, bytes2, () -> _dSink = a.scalarAdd(1d).getArray()[0]);
+		bench("Vector.scalarAddInPlace", size, n, n, bytes2, () -> a.scalarAddInPlace(1d));
+		bench("Vector.scalarMult", size, n, n, bytes2, () -> _dSink = a.scalarMult(0.5d).getArray()[0]);
+		bench("Vector.scalarMultInPlace", size, n, n, bytes2, () -> a.scalarMultInPlace(-1d));
+		long bytes4 = 4L * n * Double.BYTES;
+		bench("Vector.chain", size, n, 3L * n, bytes4, () -> _dSink = a.scalarMult(0.5d).elementwiseAdd(b).elementwiseMult(signs).getArray()[0]);
+		bench("VectorExpr.chain", size, n, 3L * n, bytes4,
+				() -> _dSink = VectorExpr.of(a).scalarMult(0.5d).elementwiseAdd(b).elementwiseMult(signs).eval().getArray()[0]);
+		if (n <= VECTOR_DIM[3]) {
+			// Text round trips are orders of magnitude slower, so the RAM size is skipped
+			String text = a.toString();
+			bench("Vector.toString", size, n, 0, text.length(), () -> _dSink = a.toString().length());
+			bench("Vector(String)", size, n, 0, text.length(), () -> _dSink = new Vector(text).getDim());
+		}
+	}
+
+	private static void benchMatrix(String size, int n, int gemvN, Random r) throws LinAlgException {
+		Matrix a = randomMatrix(n, n, r);
+		Matrix b = randomMatrix(n, n, r);
+		long flops = 2L * n * n * n;
+		long bytes = 3L * n * n * Double.BYTES;
+		bench("Matrix.Multiply", size, n, flops, bytes, () -> _dSink = Matrix.Multiply(a, b).getArray()[0]);
+		bench("Matrix.MultiplyParallel", size, n, flops, bytes, () -> _dSink = Matrix.MultiplyParallel(a, b).getArray()[0]);
+		bench("Matrix.MultiplyStrassen", size, n, flops, bytes, () -> _dSink = Matrix.MultiplyStrassen(a, b).getArray()[0]);
+		bench("Matrix.transpose", size, n, 0, 2L * n * n * Double.BYTES, () -> _dSink = a.transpose().getArray()[0]);
+		bench("Matrix.MultiplyTransposeA", size, n, flops, bytes, () -> _dSink = Matrix.MultiplyTransposeA(a, b).getArray()[0]);
+
+		Matrix m = randomMatrix(gemvN, gemvN, r);
+		Vector x = randomVector(gemvN, r);
+		long gemvFlops = 2L * gemvN * gemvN;
+		long gemvBytes = ((long)gemvN * gemvN + 2L * gemvN) * Double.BYTES;
+		bench("Matrix.Multiply(m,v)", size, gemvN, gemvFlops, gemvBytes, () -> _dSink = Matrix.Multiply(m, x).getArray()[0]);
+		bench("Matrix.MultiplyParallel(m,v)", size, gemvN, gemvFlops, gemvBytes, () -> _dSink = Matrix.MultiplyParallel(m, x).getArray()[0]);
+		Vector[] batch = new Vector[BATCH];
+		for (int i = 0; i < BATCH; i++)
+			batch[i] = randomVector(gemvN, r);
+		bench("Matrix.MultiplyBatch(m,v[])", size, gemvN, BATCH * gemvFlops, gemvBytes + 2L * BATCH * gemvN * Double.BYTES,
+				() -> _dSink = Matrix.MultiplyBatch(m, batch)[0].getArray()[0]);
+
+		FloatMatrix fa = new FloatMatrix(a), fb = new FloatMatrix(b), fm = new FloatMatrix(m);
+		FloatVector fx = new FloatVector(x);
+		long floatBytes = 3L * n * n * Float.BYTES;
+		long floatGemvBytes = ((long)gemvN * gemvN + 2L * gemvN) * Float.BYTES;
+		bench("FloatMatrix.Multiply", size, n, flops, floatBytes, () -> _dSink = FloatMatrix.Multiply(fa, fb).getArray()[0]);
+		bench("FloatMatrix.MultiplyMixed", size, n, flops, floatBytes, () -> _dSink = FloatMatrix.MultiplyMixed(fa, fb).getArray()[0]);
+		bench("FloatMatrix.Multiply(m,v)", size, gemvN, gemvFlops, floatGemvBytes, () -> _dSink = FloatMatrix.Multiply(fm, fx).getArray()[0]);
+		bench("FloatMatrix.MultiplyMixed(m,v)", size, gemvN, gemvFlops, (long)gemvN * gemvN * Float.BYTES + 2L * gemvN * Double.BYTES,
+				() -> _dSink = FloatMatrix.MultiplyMixed(fm, x).getArray()[0]);
+
+		QuantizedMatrix qm = new QuantizedMatrix(m);
+		QuantizedVector qx = new QuantizedVector(x);
+		bench("QuantizedMatrix.Multiply(m,v)", size, gemvN, gemvFlops, qm.getSizeBytes() + 2L * gemvN * Double.BYTES,
+				() -> _dSink = QuantizedMatrix.Multiply(qm, x).getArray()[0]);
+		bench("QuantizedMatrix.Multiply(m,qv)", size, gemvN, gemvFlops, qm.getSizeBytes() + gemvN + (long)gemvN * Double.BYTES,
+				() -> _dSink = QuantizedMatrix.Multiply(qm, qx).getArray()[0]);
+	}
+
+	/** Warms up, times and reports one case */
+	private static void bench(String op, String size, int n, long flops, long bytes, Body body) throws LinAlgException {
+		if (!op.contains(_sFilter))
+			return;
+		long reps = 1;
+		// Warm up and find a repetition count that takes a measurable amount of time
+		long start = System.nanoTime();
+		while (System.nanoTime() - start < WARMUP_NS) {
+			long t0 = System.nanoTime();
+			for (long i = 0; i < reps; i++)
+				body.run();
+			if (System.nanoTime() - t0 < MEASURE_NS / 20)
+				reps *= 2;
+		}
+		long total = 0;
+		long calls = 0;
+		while (total < MEASURE_NS) {
+			long t0 = System.nanoTime();
+			for (long i = 0; i < reps; i++)
+				body.run();
+			total += System.nanoTime() - t0;
+			calls += reps;
+		}
+		double nsPerOp = (double)total / calls;
+		double gflops = flops / nsPerOp;
+		double gbps = bytes / nsPerOp;
+		System.out.println(String.format(Locale.ROOT, "%-30s %-5s %9d %14.1f %9.3f %9.3f", op, size, n, nsPerOp, gflops, gbps));
+		if (_csv != null)
+			_csv.println(String.format(Locale.ROOT, "%s,%s,%d,%.1f,%.4f,%.4f", op, size, n, nsPerOp, gflops, gbps));
+	}
+
+	private static Vector randomVector(int n, Random r) throws LinAlgException {
+		Vector v = new Vector(n);
+		double[] a = v.getArray();
+		for (int i = 0; i < n; i++)
+			a[i] = r.nextDouble() + 0.5d; // Stays well away from 0 and overflow under repeated ops
+		return v;
+	}
+
+	private static Matrix randomMatrix(int rows, int cols, Random r) throws LinAlgException {
+		Matrix m = new Matrix(rows, cols);
+		double[] a = m.getArray();
+		for (int i = 0; i < a.length; i++)
+			a[i] = r.nextGaussian();
+		return m;
+	}
+}
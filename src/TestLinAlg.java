@@ -1,4 +1,52 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.foreign.Arena;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import linalg.BandedMatrix;
+import linalg.BatchScheduler;
+import linalg.BiCGSTAB;
+import linalg.CholeskyDecomposition;
+import linalg.ConjugateGradient;
+import linalg.DiagonalMatrix;
+import linalg.FloatMatrix;
+import linalg.FloatVector;
+import linalg.GMRES;
+import linalg.IdentityMatrix;
+import linalg.JacobiPreconditioner;
+import linalg.LUDecomposition;
 import linalg.LinAlgException;
+import linalg.LinAlgMetrics;
+import linalg.MatrixChain;
+import linalg.MatrixExpr;
+import linalg.MatrixFile;
+import linalg.OffHeapMatrix;
+import linalg.OffHeapVector;
+import linalg.OutOfCoreMultiply;
+import linalg.ProductCache;
+import linalg.QuantizedMatrix;
+import linalg.SparseMatrix;
+import linalg.StructuredMatrix;
+import linalg.SymmetricMatrix;
+import linalg.TriangularMatrix;
+import linalg.TuningProfile;
+import linalg.VectorExpr;
 import linalg.Matrix; // This is Matrix from the linear algebra package you are writing 
 import linalg.Vector; // This is Vector from the linear algebra package you are writing 
 
@@ -141,10 +189,751 @@ public class TestLinAlg {
                         System.out.println("7a. test Matrix Multiply(m1, v3): " + m1.Multiply(m1, v3));
                         System.out.println("7b. m1 should not change: " + m1);        
                             
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that toString() rounds like String.format("%6.3f") near ties, up to large magnitudes
+			System.out.println("8a. toString() of values near rounding ties -> should be 0 mismatches: "
+					+ formatMismatches(new double[] { 4.3011523616585E9, -6.88565275422925E10, 3.42889722265E7, 0.0005, -2.5005 }));
+			Random rnd = new Random(250);
+			double[] ties = new double[10000];
+			for (int i = 0; i < ties.length; i++) {
+				double x = (Math.floor(rnd.nextDouble() * Math.pow(10, 3 + i % 16)) + 0.5) / 1000d; // xxx.yyy5 up to 1e15
+				ties[i] = i % 2 == 0 ? x : -x;
+			}
+			System.out.println("8b. toString() of 10000 values near ties -> should be 0 mismatches: " + formatMismatches(ties));
+			Vector tieVec = new Vector(ties.length);
+			for (int i = 0; i < ties.length; i++)
+				tieVec.set(i, ties[i]);
+			System.out.println("8c. OffHeapVector.toString() -> should be true: "
+					+ OffHeapVector.of(tieVec, Arena.ofAuto()).toString().equals(tieVec.toString()));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the direct solvers by their relative residuals ||a * x - b|| / ||b||,
+			// with n = 150 so that the last panel of the blocked factorizations is partial
+			int n = 150;
+			Matrix a = randomMatrix(n, n, rnd);
+			for (int i = 0; i < n; i++)
+				a.set(i, i, a.get(i, i) + n); // Diagonally dominant, so well conditioned
+			Matrix spd = Matrix.MultiplyTransposeA(a, a); // a^T * a is symmetric positive definite
+			Vector b = randomVector(n, rnd);
+			Matrix bs = randomMatrix(n, 3, rnd);
+
+			LUDecomposition lu = new LUDecomposition(a);
+			System.out.println("9a. LUDecomposition.solve(Vector) -> residual < 1e-12 should be true: "
+					+ (residual(a, lu.solve(b), b) < 1e-12));
+			System.out.println("9b. LUDecomposition.solve(Matrix) -> residual < 1e-12 should be true: "
+					+ (residual(a, lu.solve(bs), bs) < 1e-12));
+			CholeskyDecomposition chol = new CholeskyDecomposition(spd);
+			System.out.println("9c. CholeskyDecomposition.solve(Vector) -> residual < 1e-12 should be true: "
+					+ (residual(spd, chol.solve(b), b) < 1e-12));
+			System.out.println("9d. CholeskyDecomposition.solve(Matrix) -> residual < 1e-12 should be true: "
+					+ (residual(spd, chol.solve(bs), bs) < 1e-12));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the iterative solvers on the same systems: CG on the symmetric positive definite one,
+			// BiCGSTAB and restarted GMRES on the nonsymmetric one
+			ConjugateGradient cg = new ConjugateGradient(n);
+			Vector x = new Vector(n);
+			System.out.println("10a. ConjugateGradient.solve() should converge: " + cg.solve(spd, b, x));
+			System.out.println("10b. ConjugateGradient residual < 1e-9 should be true: " + (residual(spd, x, b) < 1e-9));
+			BiCGSTAB bicg = new BiCGSTAB(n);
+			x = new Vector(n);
+			System.out.println("10c. BiCGSTAB.solve() should converge: " + bicg.solve(a, b, x));
+			System.out.println("10d. BiCGSTAB residual < 1e-9 should be true: " + (residual(a, x, b) < 1e-9));
+			GMRES gmres = new GMRES(n, 5);
+			gmres.setPreconditioner(new JacobiPreconditioner(a));
+			x = new Vector(n);
+			System.out.println("10e. GMRES.solve() with restarts and a Jacobi preconditioner should converge: " + gmres.solve(a, b, x));
+			System.out.println("10f. GMRES residual < 1e-9 should be true: " + (residual(a, x, b) < 1e-9));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that MultiplyParallel keeps working while another thread replaces the default pool
+			System.out.println("11. MultiplyParallel during setParallelism() -> should be 0 failures: " + parallelismRaceFailures(rnd));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that a tuning profile with a negative threshold is rejected rather than installed
+			System.out.println("12a. TuningProfile.load() with gemm.smallFlops = -1 -> should be true: " + profileRejects("gemm.smallFlops"));
+			System.out.println("12b. TuningProfile.load() with parallel.threshold = -1 -> should be true: " + profileRejects("parallel.threshold"));
+			System.out.println("12c. TuningProfile.load() with vector.simdMinLength = -1 -> should be true: " + profileRejects("vector.simdMinLength"));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that ProductCache hits are correct and that modifying one does not change the next
+			ProductCache cache = new ProductCache(1L << 20);
+			Matrix c1 = randomMatrix(20, 30, rnd);
+			Matrix c2 = randomMatrix(30, 10, rnd);
+			Matrix cached = cache.multiply(c1, c2);
+			cached.set(0, 0, cached.get(0, 0) + 1d);
+			Matrix hit = cache.multiply(c1, c2);
+			System.out.println("13a. ProductCache hit after the miss was modified -> should be true: "
+					+ (cache.getHits() == 1 && hit.equals(Matrix.Multiply(c1, c2))));
+			hit.set(0, 0, 42d);
+			System.out.println("13b. ProductCache hit after the last hit was modified -> should be true: "
+					+ cache.multiply(c1, c2).equals(Matrix.Multiply(c1, c2)));
+			Vector cv = randomVector(30, rnd);
+			cache.multiply(c1, cv).scalarAddInPlace(1d);
+			System.out.println("13c. ProductCache Vector hit after the miss was modified -> should be true: "
+					+ cache.multiply(c1, cv).equals(Matrix.Multiply(c1, cv)));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test OutOfCoreMultiply against the in-memory product, with tiles smaller than the operands
+			System.out.println("14. " + outOfCoreCheck(rnd));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the int8 products: the error bounds of quantization and the matrix-matrix forms
+			Matrix w = randomMatrix(40, 300, rnd);
+			QuantizedMatrix qw = new QuantizedMatrix(w);
+			Vector qx = randomVector(300, rnd);
+			double qBound = qw.getMaxAbsError() * Math.sqrt(Vector.InnerProd(qx, qx)) * Math.sqrt(300); // >= max error * ||x||_1
+			System.out.println("15a. QuantizedMatrix max error <= half a step of its row -> should be true: " + (qw.getMaxAbsError() <= halfStep(qw) * (1 + 1e-12)));
+			System.out.println("15b. Multiply(QuantizedMatrix, Vector) within the error bound -> should be true: "
+					+ (maxAbsDiff(QuantizedMatrix.Multiply(qw, qx), Matrix.Multiply(w, qx)) <= qBound));
+			Matrix xs = randomMatrix(300, 21, rnd);
+			boolean columnsMatch = true;
+			Matrix qProduct = QuantizedMatrix.Multiply(qw, xs);
+			for (int col = 0; col < xs.getNumCols(); col++)
+				columnsMatch &= column(qProduct, col).equals(QuantizedMatrix.Multiply(qw, column(xs, col)));
+			System.out.println("15c. Multiply(QuantizedMatrix, Matrix) equals the products by each column -> should be true: " + columnsMatch);
+			QuantizedMatrix qxs = new QuantizedMatrix(new Matrix(xs.transposeView()));
+			Matrix dequantized = Matrix.MultiplyTransposeB(qw.toMatrix(), qxs.toMatrix());
+			System.out.println("15d. MultiplyTransposeB(QuantizedMatrix, QuantizedMatrix) equals the dequantized product -> should be true: "
+					+ (maxAbsDiff(QuantizedMatrix.MultiplyTransposeB(qw, qxs), dequantized) < 1e-12));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test Multiply on non-square shapes against a naive triple loop, below the size at which
+			// the kernel starts packing (unpacked loop) and above it (packed, blocked kernel)
+			int[][] shapes = { { 7, 13, 5 }, { 13, 5, 7 }, { 67, 45, 83 }, { 130, 301, 9 }, { 9, 301, 130 } };
+			for (int t = 0; t < shapes.length; t++) {
+				int[] sh = shapes[t];
+				Matrix p1 = randomMatrix(sh[0], sh[1], rnd);
+				Matrix p2 = randomMatrix(sh[1], sh[2], rnd);
+				System.out.println("16" + (char)('a' + t) + ". Multiply " + sh[0] + "x" + sh[1] + " by " + sh[1] + "x" + sh[2]
+						+ " matches the naive product -> should be true: " + (maxAbsDiff(Matrix.Multiply(p1, p2), naiveMultiply(p1, p2)) < 1e-12));
+			}
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Regression tests for the baseline Matrix bugs: equals() only rejected matrices whose rows
+			// and columns both differed, and the constructor checked the fields before setting them
+			System.out.println("17a. equals() of a 2x3 and a 2x4 matrix -> should be false: " + new Matrix(2, 3).equals(new Matrix(2, 4)));
+			System.out.println("17b. equals() of a 3x2 and a 2x2 matrix -> should be false: " + new Matrix(3, 2).equals(new Matrix(2, 2)));
+			System.out.println("17c. new Matrix(0, 3) -> should be rejected: " + rejectsDimensions(0, 3));
+			System.out.println("17d. new Matrix(2, -1) -> should be rejected: " + rejectsDimensions(2, -1));
+			System.out.println("17e. new Matrix(1, 1) -> should be accepted: " + !rejectsDimensions(1, 1));
+
+			// Regression test for the baseline Multiply(Matrix, Vector), whose result had the
+			// dimension of v instead of the number of rows of m
+			Matrix tall = new Matrix("[ 1 2 ]\n[ 3 4 ]\n[ 5 6 ]");
+			System.out.println("18. Multiply(3x2 matrix, [ 1 1 ]) -> should be [ 3 7 11 ]: " + Matrix.Multiply(tall, new Vector("[ 1 1 ]")));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that off-heap sizes that overflow a long are rejected like any other invalid size
+			try (Arena arena = Arena.ofConfined()) {
+				System.out.println("19a. new OffHeapVector(arena, 2^61) -> should be rejected: "
+						+ rejects(() -> new OffHeapVector(arena, 1L << 61)));
+				System.out.println("19b. new OffHeapMatrix(arena, 2^31, 2^30) -> should be rejected: "
+						+ rejects(() -> new OffHeapMatrix(arena, 1L << 31, 1L << 30)));
+			}
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the metrics counters: each call is counted once, under the operation doing the work
+			LinAlgMetrics.reset();
+			LinAlgMetrics.setEnabled(true);
+			Matrix mm = randomMatrix(8, 6, rnd);
+			Vector mv = randomVector(6, rnd);
+			Matrix.Multiply(mm, randomMatrix(6, 4, rnd));
+			Matrix.multiplyInto(mm, mv, new Vector(8));
+			mm.multiplyTranspose(new Vector(8));
+			SparseMatrix.Multiply(new SparseMatrix(mm), mv);
+			Vector.axpy(2d, mv, new Vector(6));
+			LinAlgMetrics.setEnabled(false);
+			Matrix.Multiply(mm, mv);
+			System.out.println("20a. Matrix.Multiply calls, 48 * 4 * 2 flops -> should be 1, 384: "
+					+ metricsCalls("Matrix.Multiply") + ", " + metricsFlops("Matrix.Multiply"));
+			System.out.println("20b. multiplyInto(m, v, out) counted as Matrix.gemv -> should be 1: " + metricsCalls("Matrix.gemv"));
+			System.out.println("20c. Matrix.multiplyTranspose calls -> should be 1: " + metricsCalls("Matrix.multiplyTranspose"));
+			System.out.println("20d. SparseMatrix.Multiply(s,v) calls -> should be 1: " + metricsCalls("SparseMatrix.Multiply(s,v)"));
+			System.out.println("20e. Vector.axpy calls -> should be 1: " + metricsCalls("Vector.axpy"));
+			System.out.println("20f. Matrix.Multiply(m,v) calls while disabled -> should be 0: " + metricsCalls("Matrix.Multiply(m,v)"));
+			LinAlgMetrics.reset();
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the sparse products against the same products of the dense matrix
+			SparseMatrix dup = new SparseMatrix.Builder(2, 3).add(0, 2, 1d).add(1, 0, 2d).add(0, 2, 3d).build();
+			System.out.println("21a. Builder entries added twice at (0,2) -> should be summed to 4.0 in 2 non-zeros: "
+					+ dup.get(0, 2) + " in " + dup.getNumNonZeros() + " non-zeros");
+			SparseMatrix sp = randomSparse(4000, 3000, 20, rnd);
+			Matrix spDense = sp.toDense();
+			Vector spx = randomVector(3000, rnd);
+			Vector spy = randomVector(4000, rnd);
+			System.out.println("21b. Multiply(SparseMatrix, Vector) matches the dense product -> should be true: "
+					+ (maxAbsDiff(SparseMatrix.Multiply(sp, spx), Matrix.Multiply(spDense, spx)) < 1e-12));
+			System.out.println("21c. MultiplyTranspose(SparseMatrix, Vector) matches the dense product -> should be true: "
+					+ (maxAbsDiff(SparseMatrix.MultiplyTranspose(sp, spy), spDense.multiplyTranspose(spy)) < 1e-12));
+			Matrix spm = randomMatrix(3000, 5, rnd);
+			System.out.println("21d. Multiply(SparseMatrix, Matrix) matches the dense product -> should be true: "
+					+ (maxAbsDiff(SparseMatrix.Multiply(sp, spm), Matrix.Multiply(spDense, spm)) < 1e-12));
+			System.out.println("21e. MultiplyParallel(SparseMatrix, Vector) equals Multiply -> should be true: "
+					+ SparseMatrix.MultiplyParallel(sp, spx).equals(SparseMatrix.Multiply(sp, spx)));
+			System.out.println("21f. transpose() equals the sparse copy of the dense transpose -> should be true: "
+					+ sp.transpose().equals(new SparseMatrix(spDense.transpose())));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the off-heap operations against the same operations on heap arrays
+			try (Arena arena = Arena.ofConfined()) {
+				Vector hx = randomVector(1000, rnd);
+				Vector hy = randomVector(1000, rnd);
+				OffHeapVector ox = OffHeapVector.of(hx, arena);
+				OffHeapVector oy = OffHeapVector.of(hy, arena);
+				System.out.println("22a. OffHeapVector.of(v).toVector() equals v -> should be true: " + ox.toVector().equals(hx));
+				System.out.println("22b. scalarAdd, scalarMult, elementwiseAdd, elementwiseMult match Vector -> should be true: "
+						+ (ox.scalarAdd(1.5d, arena).toVector().equals(hx.scalarAdd(1.5d))
+						&& ox.scalarMult(-2d, arena).toVector().equals(hx.scalarMult(-2d))
+						&& ox.elementwiseAdd(oy, arena).toVector().equals(hx.elementwiseAdd(hy))
+						&& ox.elementwiseMult(oy, arena).toVector().equals(hx.elementwiseMult(hy))));
+				ox.elementwiseAddInPlace(oy);
+				hx.elementwiseAddInPlace(hy);
+				System.out.println("22c. elementwiseAddInPlace matches Vector -> should be true: " + ox.toVector().equals(hx));
+				System.out.println("22d. InnerProd matches Vector -> should be true: "
+						+ (Math.abs(OffHeapVector.InnerProd(ox, oy) - Vector.InnerProd(hx, hy)) < 1e-9));
+				Matrix ha = randomMatrix(70, 90, rnd);
+				Matrix hb = randomMatrix(90, 50, rnd);
+				Vector hv = randomVector(90, rnd);
+				OffHeapMatrix oa = OffHeapMatrix.of(ha, arena);
+				System.out.println("22e. OffHeapMatrix Multiply(m, v) matches Matrix -> should be true: "
+						+ (maxAbsDiff(OffHeapMatrix.Multiply(oa, OffHeapVector.of(hv, arena), arena).toVector(), Matrix.Multiply(ha, hv)) < 1e-12));
+				System.out.println("22f. OffHeapMatrix Multiply(m1, m2) matches Matrix -> should be true: "
+						+ (maxAbsDiff(OffHeapMatrix.Multiply(oa, OffHeapMatrix.of(hb, arena), arena).toMatrix(), Matrix.Multiply(ha, hb)) < 1e-12));
+				System.out.println("22g. OffHeapVector.get(1000) -> should be rejected: " + rejects(() -> ox.get(1000)));
+			}
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that MatrixFile round-trips matrices and vectors and detects a corrupted payload
+			System.out.println("23. " + matrixFileCheck(rnd));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that views share storage with their matrix and multiply like their copies
+			Matrix vm = randomMatrix(12, 10, rnd);
+			System.out.println("24a. transposeView() equals transpose() -> should be true: " + vm.transposeView().equals(vm.transpose()));
+			Matrix block = vm.blockView(2, 3, 6, 5);
+			block.set(1, 2, 7d);
+			System.out.println("24b. blockView(2, 3, 6, 5).set(1, 2, 7) is seen at (3,5) -> should be 7.0: " + vm.get(3, 5));
+			Matrix vb = randomMatrix(5, 8, rnd);
+			System.out.println("24c. Multiply(blockView, b) equals Multiply(copy of the block, b) -> should be true: "
+					+ Matrix.Multiply(block, vb).equals(Matrix.Multiply(new Matrix(block), vb)));
+			Matrix ta = randomMatrix(12, 7, rnd);
+			System.out.println("24d. MultiplyTransposeA(m, a) matches Multiply(m^T, a) -> should be true: "
+					+ (maxAbsDiff(Matrix.MultiplyTransposeA(vm, ta), Matrix.Multiply(vm.transpose(), ta)) < 1e-12));
+			System.out.println("24e. MultiplyTransposeB(a^T, m^T) matches Multiply(a^T, m) -> should be true: "
+					+ (maxAbsDiff(Matrix.MultiplyTransposeB(ta.transpose(), vm.transpose()), Matrix.Multiply(ta.transpose(), vm)) < 1e-12));
+			System.out.println("24f. rowView(3) holds row 3 -> should be true: "
+					+ column(vm.rowView(3).transposeView(), 0).equals(column(vm.transpose(), 3)));
+			System.out.println("24g. blockView(8, 0, 5, 1) of a 12x10 matrix -> should be rejected: " + rejects(() -> vm.blockView(8, 0, 5, 1)));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test lazy expressions against the same eager calls
+			Vector ex = randomVector(10000, rnd);
+			Vector ey = randomVector(10000, rnd);
+			Vector eager = ex.scalarMult(2d).elementwiseAdd(ey).elementwiseMult(ex).scalarAdd(-1d);
+			VectorExpr lazy = VectorExpr.of(ex).scalarMult(2d).elementwiseAdd(ey).elementwiseMult(ex).scalarAdd(-1d);
+			System.out.println("25a. VectorExpr ((2x + y) .* x) - 1 matches the eager calls -> should be true: "
+					+ (maxAbsDiff(lazy.eval(), eager) < 1e-12));
+			System.out.println("25b. VectorExpr.InnerProd(x + y, x) matches the eager calls -> should be true: "
+					+ (Math.abs(VectorExpr.InnerProd(VectorExpr.of(ex).elementwiseAdd(ey), VectorExpr.of(ex))
+							- Vector.InnerProd(ex.elementwiseAdd(ey), ex)) < 1e-9));
+			Vector alias = new Vector(ex);
+			VectorExpr.of(alias).scalarMult(2d).elementwiseAdd(ey).elementwiseMult(alias).scalarAdd(-1d).evalInto(alias);
+			System.out.println("25c. evalInto an operand of the expression -> should be true: " + (maxAbsDiff(alias, eager) < 1e-12));
+			Matrix e1 = randomMatrix(40, 5, rnd);
+			Matrix e2 = randomMatrix(5, 40, rnd);
+			Matrix e3 = randomMatrix(40, 30, rnd);
+			Vector ev = randomVector(30, rnd);
+			System.out.println("25d. MatrixExpr A * B * C matches Multiply(Multiply(A, B), C) -> should be true: "
+					+ (maxAbsDiff(MatrixExpr.of(e1).multiply(e2).multiply(e3).eval(), Matrix.Multiply(Matrix.Multiply(e1, e2), e3)) < 1e-12));
+			System.out.println("25e. MatrixExpr A * B * C * v matches the eager products -> should be true: "
+					+ (maxAbsDiff(MatrixExpr.of(e1).multiply(e2).multiply(e3).multiply(ev).eval(),
+							Matrix.Multiply(Matrix.Multiply(Matrix.Multiply(e1, e2), e3), ev)) < 1e-12));
+			System.out.println("25f. MatrixExpr A * B with mismatched dimensions -> should be rejected: "
+					+ rejects(() -> MatrixExpr.of(e1).multiply(e3)));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the chain planner on the textbook 10x30, 30x5, 5x60 chain and on a chain ending in a vector
+			Matrix ch1 = randomMatrix(10, 30, rnd);
+			Matrix ch2 = randomMatrix(30, 5, rnd);
+			Matrix ch3 = randomMatrix(5, 60, rnd);
+			MatrixChain plan = MatrixChain.plan(ch1, ch2, ch3);
+			System.out.println("26a. plan of 10x30 * 30x5 * 5x60 -> should be ((M0 * M1) * M2) with 9000 flops: "
+					+ plan + " with " + plan.getEstimatedFlops() + " flops");
+			System.out.println("26b. multiplyChain matches the nested products -> should be true: "
+					+ (maxAbsDiff(Matrix.multiplyChain(ch1, ch2, ch3), Matrix.Multiply(Matrix.Multiply(ch1, ch2), ch3)) < 1e-12));
+			Matrix wide = randomMatrix(100, 10, rnd);
+			Matrix narrow = randomMatrix(10, 100, rnd);
+			Vector chx = randomVector(100, rnd);
+			MatrixChain vplan = MatrixChain.plan(new Matrix[] { wide, narrow }, chx);
+			System.out.println("26c. plan of 100x10 * 10x100 * x -> should be (M0 * (M1 * M2)), 4000 of 220000 flops: "
+					+ vplan + ", " + vplan.getEstimatedFlops() + " of " + vplan.getLeftToRightFlops() + " flops");
+			System.out.println("26d. multiplyChain with a vector matches the nested products -> should be true: "
+					+ (maxAbsDiff(Matrix.multiplyChain(new Matrix[] { wide, narrow }, chx), Matrix.Multiply(Matrix.Multiply(wide, narrow), chx)) < 1e-12));
+			System.out.println("26e. a plan applied to operands of other dimensions -> should be rejected: "
+					+ rejects(() -> plan.multiply(ch1, ch2, randomMatrix(5, 61, rnd))));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test Strassen with a small cutoff, so odd dimensions are padded over several levels, against
+			// the classical product and StrassenErrorBound
+			Matrix.setStrassenCutoff(32);
+			Matrix s1 = randomMatrix(201, 150, rnd);
+			Matrix s2 = randomMatrix(150, 173, rnd);
+			Matrix classical = Matrix.Multiply(s1, s2);
+			double bound = Matrix.StrassenErrorBound(s1, s2);
+			System.out.println("27a. MultiplyStrassen error (parallel) within StrassenErrorBound -> should be true: "
+					+ (maxAbsDiff(Matrix.MultiplyStrassen(s1, s2), classical) <= bound));
+			ForkJoinPool single = new ForkJoinPool(1);
+			System.out.println("27b. MultiplyStrassen error (one thread) within StrassenErrorBound -> should be true: "
+					+ (maxAbsDiff(Matrix.MultiplyStrassen(s1, s2, single), classical) <= bound));
+			single.shutdown();
+			System.out.println("27c. StrassenErrorBound is below 1e-9 for entries in [-0.5, 0.5] -> should be true: " + (bound < 1e-9));
+			Matrix.setStrassenCutoff(512);
+			System.out.println("27d. MultiplyStrassen below the cutoff equals Multiply -> should be true: "
+					+ Matrix.MultiplyStrassen(s1, s2).equals(classical));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the structured matrix types: each product dispatched by Multiply(RealMatrix, RealMatrix)
+			// and multiply(Vector) must match the same product of the dense copy
+			StructuredMatrix[] structured = { new DiagonalMatrix(60), new IdentityMatrix(60), new BandedMatrix(60, 2, 3),
+					new TriangularMatrix(60, true), new TriangularMatrix(60, false), new SymmetricMatrix(60) };
+			for (int t = 0; t < structured.length; t++)
+				System.out.println("28" + (char)('a' + t) + ". " + structured[t].getClass().getSimpleName()
+						+ " products match the dense products -> should be true: " + structuredMatches(structured[t], rnd));
+			System.out.println("28g. TriangularMatrix(upper).set(5, 4) -> should be rejected: "
+					+ rejects(() -> new TriangularMatrix(60, true).set(5, 4, 1d)));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the batched matrix-vector products against one Multiply per vector
+			Matrix bm = randomMatrix(70, 90, rnd);
+			Vector[] bvs = new Vector[13];
+			boolean batchMatches = true;
+			for (int i = 0; i < bvs.length; i++)
+				bvs[i] = randomVector(90, rnd);
+			Vector[] bys = Matrix.MultiplyBatch(bm, bvs);
+			for (int i = 0; i < bvs.length; i++)
+				batchMatches &= maxAbsDiff(bys[i], Matrix.Multiply(bm, bvs[i])) < 1e-12;
+			System.out.println("29a. MultiplyBatch(m, 13 vectors) matches Multiply per vector -> should be true: " + batchMatches);
+			Matrix bx = randomMatrix(9, 90, rnd);
+			System.out.println("29b. MultiplyBatch(m, x) row 4 matches Multiply(m, row 4 of x) -> should be true: "
+					+ (maxAbsDiff(column(Matrix.MultiplyBatch(bm, bx).transposeView(), 4), Matrix.Multiply(bm, column(bx.transposeView(), 4))) < 1e-12));
+			System.out.println("29c. MultiplyBatch(m, []) -> should be 0 vectors: " + Matrix.MultiplyBatch(bm, new Vector[0]).length);
+			bvs[7] = randomVector(89, rnd);
+			System.out.println("29d. MultiplyBatch with one vector of the wrong dimension -> should be rejected: "
+					+ rejects(() -> Matrix.MultiplyBatch(bm, bvs)));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that BatchScheduler coalesces jobs by batch size, by delay and on close
+			System.out.println("30. " + batchSchedulerCheck(rnd));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test the float products against the double product of the same (float) entries: a float
+			// sum of k terms is within gamma_k = k u / (1 - k u) of |A| |B|, and the mixed products round
+			// each entry to float at most once
+			Matrix fa = new FloatMatrix(randomMatrix(20, 1000, rnd)).toMatrix();
+			Matrix fb = new FloatMatrix(randomMatrix(1000, 15, rnd)).toMatrix();
+			Vector fx = randomVector(1000, rnd);
+			Matrix exact = Matrix.Multiply(fa, fb);
+			double u = Math.ulp(1f) / 2;
+			double gamma = 1000 * u / (1 - 1000 * u);
+			double floatErr = maxAbsDiff(FloatMatrix.Multiply(new FloatMatrix(fa), new FloatMatrix(fb)).toMatrix(), exact);
+			double mixedErr = maxAbsDiff(FloatMatrix.MultiplyMixed(new FloatMatrix(fa), new FloatMatrix(fb)).toMatrix(), exact);
+			System.out.println("31a. FloatMatrix.Multiply error within gamma_k * max (|A| |B|) -> should be true: "
+					+ (floatErr <= gamma * maxAbsProduct(fa, fb)));
+			System.out.println("31b. FloatMatrix.MultiplyMixed error within one rounding to float -> should be true: "
+					+ (mixedErr <= u * maxAbsDiff(exact, new Matrix(20, 15)) + 1e-12));
+			System.out.println("31c. MultiplyMixed error below the float-accumulated error -> should be true: " + (mixedErr < floatErr));
+			System.out.println("31d. MultiplyMixed(FloatMatrix, Vector) matches the double product -> should be true: "
+					+ (maxAbsDiff(FloatMatrix.MultiplyMixed(new FloatMatrix(fa), fx), Matrix.Multiply(fa, fx)) < 1e-12));
+			System.out.println("31e. FloatVector.InnerProdMixed matches the double InnerProd -> should be true: "
+					+ (Math.abs(FloatVector.InnerProdMixed(new FloatVector(fx), new FloatVector(fx))
+							- Vector.InnerProd(new FloatVector(fx).toVector(), new FloatVector(fx).toVector())) < 1e-12));
+			FloatVector fy = new FloatVector(randomVector(1000, rnd));
+			float[] fexpected = fy.getArray().clone();
+			float[] fxs = new FloatVector(fx).getArray();
+			for (int i = 0; i < fexpected.length; i++)
+				fexpected[i] = 0.1f * fxs[i] + fexpected[i];
+			FloatVector.axpy(0.1f, new FloatVector(fx), fy);
+			System.out.println("31f. FloatVector.axpy equals alpha * x[i] + y[i] bit for bit -> should be true: "
+					+ Arrays.equals(fy.getArray(), fexpected));
+			System.out.println("\n\n________________________________________________________________\n\n");
+
+			// Test that axpy rounds the product and the sum separately on the SIMD path as well, i.e.,
+			// equals the plain Java expression (which Java never fuses), at a dimension with a masked tail
+			Vector ax = randomVector(1003, rnd);
+			Vector ay = randomVector(1003, rnd);
+			Vector expected = new Vector(1003);
+			for (int i = 0; i < 1003; i++)
+				expected.set(i, 0.1 * ax.get(i) + ay.get(i));
+			Vector.axpy(0.1, ax, ay);
+			boolean identical = true;
+			for (int i = 0; i < 1003; i++)
+				identical &= ay.get(i) == expected.get(i);
+			System.out.println("32. Vector.axpy equals alpha * x[i] + y[i] bit for bit -> should be true: " + identical);
 		} catch (LinAlgException e) {
 			System.out.println("ERROR: " + e.getMessage());
 			System.exit(1); // Exits the program
 		}
 	}
 
+	/** Runs MultiplyParallel on 4 threads (with every product split) while the calling thread
+	 *  changes the parallelism 2000 times; returns the number of products that failed or
+	 *  were wrong
+	 */
+	private static int parallelismRaceFailures(Random rnd) throws LinAlgException {
+		Matrix a = randomMatrix(64, 64, rnd);
+		Vector v = randomVector(64, rnd);
+		Matrix ab = Matrix.Multiply(a, a);
+		Vector av = Matrix.Multiply(a, v);
+		AtomicInteger failures = new AtomicInteger();
+		AtomicBoolean stop = new AtomicBoolean();
+		Thread[] threads = new Thread[4];
+		Matrix.setParallelThreshold(0);
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(() -> {
+				while (!stop.get()) {
+					try {
+						if (!Matrix.MultiplyParallel(a, a).equals(ab) || !Matrix.MultiplyParallel(a, v).equals(av))
+							failures.incrementAndGet();
+					} catch (LinAlgException | RuntimeException e) {
+						failures.incrementAndGet();
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (int i = 0; i < 2000; i++)
+			Matrix.setParallelism(2 + i % 3);
+		stop.set(true);
+		for (Thread t : threads) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		Matrix.setParallelThreshold(TuningProfile.startup().getParallelThreshold());
+		Matrix.setParallelism(Runtime.getRuntime().availableProcessors());
+		return failures.get();
+	}
+
+	/** Returns whether TuningProfile.load() rejects the default profile with key set to -1 */
+	private static boolean profileRejects(String key) {
+		try {
+			Path path = Files.createTempFile("profile", ".properties");
+			try {
+				TuningProfile.defaults().save(path);
+				Properties p = new Properties();
+				try (Reader in = Files.newBufferedReader(path)) {
+					p.load(in);
+				}
+				p.setProperty(key, "-1");
+				try (Writer out = Files.newBufferedWriter(path)) {
+					p.store(out, null);
+				}
+				TuningProfile.load(path);
+				return false;
+			} finally {
+				Files.delete(path);
+			}
+		} catch (LinAlgException e) {
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Multiplies a 70 x 50 and a 50 x 45 matrix file with a small memory budget and returns
+	 *  the results of the checks, one per line
+	 */
+	private static String outOfCoreCheck(Random rnd) throws LinAlgException {
+		Matrix a = randomMatrix(70, 50, rnd);
+		Matrix b = randomMatrix(50, 45, rnd);
+		try {
+			Path dir = Files.createTempDirectory("linalg");
+			try {
+				Path pa = dir.resolve("a.mat");
+				Path pb = dir.resolve("b.mat");
+				Path pc = dir.resolve("c.mat");
+				MatrixFile.write(a, pa);
+				MatrixFile.write(b, pb);
+				OutOfCoreMultiply ooc = new OutOfCoreMultiply(64 * 1024);
+				ooc.multiply(pa, pb, pc);
+				String result = "OutOfCoreMultiply with " + ooc.getTileSize() + " x " + ooc.getTileSize()
+						+ " tiles matches Multiply -> should be true: " + (maxAbsDiff(MatrixFile.readMatrix(pc), Matrix.Multiply(a, b)) < 1e-12);
+				try (Stream<Path> files = Files.list(dir)) {
+					result += "\n    no temporary file is left behind -> should be 3 files: " + files.count();
+				}
+				boolean rejected = false;
+				try {
+					ooc.multiply(pa, pb, pa);
+				} catch (LinAlgException e) {
+					rejected = true;
+				}
+				result += "\n    writing the product over an operand -> should be rejected: " + rejected;
+				try (Stream<Path> files = Files.list(dir)) {
+					for (Path f : (Iterable<Path>)files::iterator)
+						Files.delete(f);
+				}
+				return result;
+			} finally {
+				Files.deleteIfExists(dir);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Returns the calls recorded for the named operation since the last reset() */
+	private static long metricsCalls(String name) {
+		for (LinAlgMetrics.OperationStats s : LinAlgMetrics.snapshot())
+			if (s.getName().equals(name))
+				return s.getCalls();
+		return 0L;
+	}
+
+	/** Returns the flops recorded for the named operation since the last reset() */
+	private static long metricsFlops(String name) {
+		for (LinAlgMetrics.OperationStats s : LinAlgMetrics.snapshot())
+			if (s.getName().equals(name))
+				return s.getFlops();
+		return 0L;
+	}
+
+	private static double maxAbsDiff(Matrix x, Matrix y) throws LinAlgException {
+		double max = 0d;
+		for (int row = 0; row < x.getNumRows(); row++)
+			for (int col = 0; col < x.getNumCols(); col++)
+				max = Math.max(max, Math.abs(x.get(row, col) - y.get(row, col)));
+		return max;
+	}
+
+	private static double maxAbsDiff(Vector x, Vector y) throws LinAlgException {
+		double max = 0d;
+		for (int i = 0; i < x.getDim(); i++)
+			max = Math.max(max, Math.abs(x.get(i) - y.get(i)));
+		return max;
+	}
+
+	/** Returns the largest half step of any row of q */
+	private static double halfStep(QuantizedMatrix q) throws LinAlgException {
+		double max = 0d;
+		for (int row = 0; row < q.getNumRows(); row++)
+			max = Math.max(max, q.getScale(row) / 2);
+		return max;
+	}
+
+	/** Returns m1 * m2 computed entry by entry with get() */
+	private static Matrix naiveMultiply(Matrix m1, Matrix m2) throws LinAlgException {
+		Matrix m = new Matrix(m1.getNumRows(), m2.getNumCols());
+		for (int i = 0; i < m1.getNumRows(); i++)
+			for (int j = 0; j < m2.getNumCols(); j++) {
+				double sum = 0d;
+				for (int p = 0; p < m1.getNumCols(); p++)
+					sum += m1.get(i, p) * m2.get(p, j);
+				m.set(i, j, sum);
+			}
+		return m;
+	}
+
+	/** Returns whether new Matrix(rows, cols) throws */
+	private static boolean rejectsDimensions(int rows, int cols) {
+		try {
+			new Matrix(rows, cols);
+			return false;
+		} catch (LinAlgException e) {
+			return true;
+		}
+	}
+
+	/** An operation that may throw LinAlgException */
+	private interface Op {
+		void run() throws LinAlgException, IOException;
+	}
+
+	/** Returns whether op throws LinAlgException */
+	private static boolean rejects(Op op) {
+		try {
+			op.run();
+			return false;
+		} catch (LinAlgException e) {
+			return true;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static SparseMatrix randomSparse(int rows, int cols, int perRow, Random rnd) throws LinAlgException {
+		SparseMatrix.Builder b = new SparseMatrix.Builder(rows, cols);
+		for (int row = 0; row < rows; row++)
+			for (int k = 0; k < perRow; k++)
+				b.add(row, rnd.nextInt(cols), rnd.nextDouble() - 0.5d);
+		return b.build();
+	}
+
+	/** Writes a matrix and a vector with MatrixFile, reads and maps them back, then flips one
+	 *  payload byte and checks that the checksum catches it
+	 */
+	private static String matrixFileCheck(Random rnd) throws LinAlgException {
+		try {
+			Path dir = Files.createTempDirectory("linalg-file");
+			Path pm = dir.resolve("m.mat");
+			Path pv = dir.resolve("v.mat");
+			try {
+				Matrix m = randomMatrix(33, 17, rnd);
+				Vector v = randomVector(29, rnd);
+				MatrixFile.write(m, pm);
+				MatrixFile.write(v, pv);
+				String result = "readMatrix(write(m)) and readVector(write(v)) -> should be true: "
+						+ (MatrixFile.readMatrix(pm).equals(m) && MatrixFile.readVector(pv).equals(v));
+				try (Arena arena = Arena.ofConfined()) {
+					result += "\n    mapMatrix(write(m)) equals m -> should be true: " + MatrixFile.mapMatrix(pm, arena).toMatrix().equals(m);
+				}
+				byte[] bytes = Files.readAllBytes(pm);
+				bytes[MatrixFile.HEADER_BYTES + 100] ^= 1;
+				Files.write(pm, bytes);
+				result += "\n    readMatrix of a file with one flipped bit -> should be rejected: " + rejects(() -> MatrixFile.readMatrix(pm))
+						+ "\n    verify of a file with one flipped bit -> should be rejected: " + rejects(() -> MatrixFile.verify(pm));
+				return result;
+			} finally {
+				Files.deleteIfExists(pm);
+				Files.deleteIfExists(pv);
+				Files.deleteIfExists(dir);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/** Fills the entries s allows with random values, then compares s * m, m * s and s * v with
+	 *  the same products of the dense copy of s
+	 */
+	private static boolean structuredMatches(StructuredMatrix s, Random rnd) throws LinAlgException {
+		int n = s.getNumRows();
+		for (int row = 0; row < n; row++)
+			for (int col = 0; col < n; col++)
+				try {
+					s.set(row, col, rnd.nextDouble() - 0.5);
+				} catch (LinAlgException e) {
+					// Outside the structure: stays 0 (or 1 on the diagonal of an IdentityMatrix)
+				}
+		Matrix dense = s.toDense();
+		Matrix m = randomMatrix(n, 45, rnd);
+		Matrix mt = randomMatrix(45, n, rnd);
+		Vector v = randomVector(n, rnd);
+		return maxAbsDiff(Matrix.Multiply(s, m), Matrix.Multiply(dense, m)) < 1e-12
+				&& maxAbsDiff(Matrix.Multiply(mt, s), Matrix.Multiply(mt, dense)) < 1e-12
+				&& maxAbsDiff(s.multiply(v), Matrix.Multiply(dense, v)) < 1e-12;
+	}
+
+	/** Submits 19 jobs against one matrix to a scheduler with batches of 8 and a delay too long
+	 *  to expire, so two batches run when full and the last 3 jobs run on close(); then checks
+	 *  that a lone job on a scheduler with a short delay runs when its delay expires
+	 */
+	private static String batchSchedulerCheck(Random rnd) throws LinAlgException {
+		Matrix m = randomMatrix(50, 40, rnd);
+		Vector[] vs = new Vector[19];
+		List<CompletableFuture<Vector>> futures = new ArrayList<>();
+		try {
+			BatchScheduler scheduler = new BatchScheduler(8, 1, TimeUnit.HOURS, 64, 2);
+			for (int i = 0; i < vs.length; i++) {
+				vs[i] = randomVector(40, rnd);
+				futures.add(scheduler.submit(m, vs[i]));
+			}
+			for (int i = 0; i < 16; i++)
+				futures.get(i).get();
+			String result = "16 jobs with batches of 8 -> should be 2 batches, 16 jobs: "
+					+ scheduler.getBatchCount() + " batches, " + scheduler.getJobCount() + " jobs";
+			scheduler.close();
+			result += "\n    close() runs the 3 pending jobs -> should be 3 batches, 19 jobs: "
+					+ scheduler.getBatchCount() + " batches, " + scheduler.getJobCount() + " jobs";
+			boolean matches = true;
+			for (int i = 0; i < vs.length; i++)
+				matches &= maxAbsDiff(futures.get(i).get(), Matrix.Multiply(m, vs[i])) < 1e-12;
+			boolean rejected = false;
+			try {
+				scheduler.submit(m, vs[0]);
+			} catch (LinAlgException e) {
+				rejected = true;
+			}
+			result += "\n    every future holds m * v -> should be true: " + matches
+					+ "\n    submit() after close() -> should be rejected: " + rejected;
+			try (BatchScheduler delayed = new BatchScheduler(8, 10, TimeUnit.MILLISECONDS, 64, 1)) {
+				Vector y = delayed.submit(m, vs[0]).get(10, TimeUnit.SECONDS);
+				result += "\n    a lone job runs after its 10 ms delay -> should be true: "
+						+ (delayed.getBatchCount() == 1 && y.equals(Matrix.Multiply(m, vs[0])));
+			}
+			return result;
+		} catch (InterruptedException | ExecutionException | TimeoutException e) {
+			return "ERROR: " + e;
+		}
+	}
+
+	/** Returns the largest entry of |a| |b| (the product of the entrywise absolute values) */
+	private static double maxAbsProduct(Matrix a, Matrix b) throws LinAlgException {
+		double max = 0d;
+		for (int row = 0; row < a.getNumRows(); row++)
+			for (int col = 0; col < b.getNumCols(); col++) {
+				double sum = 0d;
+				for (int k = 0; k < a.getNumCols(); k++)
+					sum += Math.abs(a.get(row, k)) * Math.abs(b.get(k, col));
+				max = Math.max(max, sum);
+			}
+		return max;
+	}
+
+	/** Returns ||a * x - b|| / ||b|| */
+	private static double residual(Matrix a, Vector x, Vector b) throws LinAlgException {
+		Vector r = Matrix.Multiply(a, x);
+		Vector.axpy(-1d, b, r);
+		return Math.sqrt(Vector.InnerProd(r, r) / Vector.InnerProd(b, b));
+	}
+
+	/** Returns the largest residual(a, x, b) over the columns of x and b */
+	private static double residual(Matrix a, Matrix x, Matrix b) throws LinAlgException {
+		double worst = 0d;
+		for (int col = 0; col < b.getNumCols(); col++)
+			worst = Math.max(worst, residual(a, column(x, col), column(b, col)));
+		return worst;
+	}
+
+	private static Vector column(Matrix m, int col) throws LinAlgException {
+		Vector v = new Vector(m.getNumRows());
+		for (int row = 0; row < m.getNumRows(); row++)
+			v.set(row, m.get(row, col));
+		return v;
+	}
+
+	private static Matrix randomMatrix(int rows, int cols, Random rnd) throws LinAlgException {
+		Matrix m = new Matrix(rows, cols);
+		for (int row = 0; row < rows; row++)
+			for (int col = 0; col < cols; col++)
+				m.set(row, col, rnd.nextDouble() - 0.5);
+		return m;
+	}
+
+	private static Vector randomVector(int dim, Random rnd) throws LinAlgException {
+		Vector v = new Vector(dim);
+		for (int i = 0; i < dim; i++)
+			v.set(i, rnd.nextDouble() - 0.5);
+		return v;
+	}
+
+	/** Returns the number of entries of values that Vector.toString() formats differently from
+	 *  String.format(" %6.3f ")
+	 */
+	private static int formatMismatches(double[] values) throws LinAlgException {
+		Vector v = new Vector(values.length);
+		for (int i = 0; i < values.length; i++)
+			v.set(i, values[i]);
+		String[] entries = v.toString().substring(1, v.toString().length() - 1).trim().split("\\s+");
+		int mismatches = 0;
+		for (int i = 0; i < values.length; i++)
+			if (!entries[i].equals(String.format("%6.3f", values[i]).trim()))
+				mismatches++;
+		return mismatches;
+	}
+
 }
@@ -0,0 +1,76 @@
+package linalg;
+
+/*** A square matrix whose non-zero entries lie within a band around the diagonal: entry
+ *   (row,col) may be non-zero only if row - lower <= col <= row + upper.
+ *
+ *   Each row stores its lower + upper + 1 band entries contiguously (the entries of the
+ *   first and last rows that fall outside the matrix are unused), so storage is
+ *   O(n * bandwidth) and a matrix-vector product takes O(n * bandwidth) rather than O(n^2).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class BandedMatrix extends StoredStructuredMatrix {
+
+	private final int _nLower; // Number of sub-diagonals
+	private final int _nUpper; // Number of super-diagonals
+	private final int _nWidth; // Stored entries per row: _nLower + _nUpper + 1
+
+	/** Allocates a new size x size banded matrix of zeros with the given number of sub- and
+	 *  super-diagonals (e.g., lower = upper = 1 for a tridiagonal matrix)
+	 *
+	 * @param size
+	 * @param lower
+	 * @param upper
+	 * @throws LinAlgException if size is <= 0 or either bandwidth is negative
+	 */
+	public BandedMatrix(int size, int lower, int upper) throws LinAlgException {
+		super(size, (long)size * (checkBandwidth(lower) + checkBandwidth(upper) + 1L));
+		_nLower = lower;
+		_nUpper = upper;
+		_nWidth = lower + upper + 1;
+	}
+
+	private static int checkBandwidth(int w) throws LinAlgException {
+		if (w < 0)
+			throw new LinAlgException("Bandwidth " + w + " cannot be negative");
+		return w;
+	}
+
+	/** Return the number of sub-diagonals that may be non-zero
+	 *
+	 * @return
+	 */
+	public int getLowerBandwidth() {
+		return _nLower;
+	}
+
+	/** Return the number of super-diagonals that may be non-zero
+	 *
+	 * @return
+	 */
+	public int getUpperBandwidth() {
+		return _nUpper;
+	}
+
+	@Override
+	int first(int row) {
+		return Math.max(0, row - _nLower);
+	}
+
+	@Override
+	int last(int row) {
+		return Math.min(_nSize - 1, row + _nUpper);
+	}
+
+	@Override
+	int index(int row, int col) {
+		return row * _nWidth + (col - row + _nLower);
+	}
+
+	@Override
+	boolean sameShape(StoredStructuredMatrix s) {
+		BandedMatrix b = (BandedMatrix)s;
+		return _nLower == b._nLower && _nUpper == b._nUpper;
+	}
+}
@@ -0,0 +1,238 @@
+package linalg;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*** Coalesces matrix-vector products m * v submitted concurrently by many threads into
+ *   batched products (Matrix.MultiplyBatch), so that a matrix shared by many callers is
+ *   streamed from memory once per batch rather than once per caller.
+ *
+ *   submit() queues the job with the other pending jobs for the same Matrix (compared by
+ *   identity, so a view is a different matrix) and returns a CompletableFuture for m * v.
+ *   The pending jobs of a matrix run as one batch as soon as there are maxBatchSize of them,
+ *   or maxDelay after the first of them was submitted, whichever comes first; maxDelay
+ *   therefore bounds the latency added to any job.  Batches run on a fixed number of worker
+ *   threads, and at most maxPending jobs may be queued or running at once: submit() blocks
+ *   when that many are outstanding, which pushes back on callers that submit faster than
+ *   the workers can multiply.
+ *
+ *   Callers may be virtual threads: submit() only blocks on java.util.concurrent locks and
+ *   semaphores, which unmount a virtual thread instead of pinning its carrier.  The workers
+ *   themselves can be virtual threads too, by passing Thread.ofVirtual().factory().
+ *
+ *   The operands are read when the batch runs, so neither m nor v may be modified until the
+ *   future completes.  Futures are completed on a worker thread, so dependent actions
+ *   attached with the non-async CompletableFuture methods also run there and should be short.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class BatchScheduler implements AutoCloseable {
+
+	private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+	private final int _nMaxBatchSize;
+	private final long _lMaxDelayNs;
+	private final Semaphore _permits;              // One per job that may be outstanding
+	private final ThreadPoolExecutor _workers;     // Runs the batches
+	private final ScheduledThreadPoolExecutor _timer; // Flushes batches whose delay expired
+	private final ReentrantLock _lock = new ReentrantLock(); // Guards _pending and _bClosed; batches are dispatched under it
+	private final IdentityHashMap<Matrix, Batch> _pending = new IdentityHashMap<>();
+	private boolean _bClosed;
+	private final AtomicLong _lBatches = new AtomicLong(), _lJobs = new AtomicLong();
+
+	/** Creates a scheduler with the given number of daemon worker threads
+	 *
+	 * @param maxBatchSize largest number of jobs multiplied together
+	 * @param maxDelay longest time a job waits for others to join its batch
+	 * @param unit unit of maxDelay
+	 * @param maxPending largest number of jobs queued or running at once
+	 * @param workers number of worker threads
+	 * @throws LinAlgException if a size or count is not positive or maxDelay is negative
+	 */
+	public BatchScheduler(int maxBatchSize, long maxDelay, TimeUnit unit, int maxPending, int workers) throws LinAlgException {
+		this(maxBatchSize, maxDelay, unit, maxPending, workers, daemonFactory());
+	}
+
+	/** Creates a scheduler whose worker threads are made by factory, e.g.,
+	 *  Thread.ofVirtual().factory()
+	 *
+	 * @param maxBatchSize largest number of jobs multiplied together
+	 * @param maxDelay longest time a job waits for others to join its batch
+	 * @param unit unit of maxDelay
+	 * @param maxPending largest number of jobs queued or running at once
+	 * @param workers number of worker threads
+	 * @param factory
+	 * @throws LinAlgException if a size or count is not positive or maxDelay is negative
+	 */
+	public BatchScheduler(int maxBatchSize, long maxDelay, TimeUnit unit, int maxPending, int workers, ThreadFactory factory) throws LinAlgException {
+		if (maxBatchSize <= 0 || maxPending <= 0 || workers <= 0)
+			throw new LinAlgException("Batch size, pending jobs and workers must be positive but are " + maxBatchSize + ", " + maxPending + " and " + workers);
+		if (maxDelay < 0)
+			throw new LinAlgException("Maximum delay cannot be negative!");
+		_nMaxBatchSize = maxBatchSize;
+		_lMaxDelayNs = unit.toNanos(maxDelay);
+		_permits = new Semaphore(maxPending);
+		// The queue needs no bound of its own: it never holds more batches than pending jobs
+		_workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+		_timer = new ScheduledThreadPoolExecutor(1, daemonFactory());
+		_timer.setRemoveOnCancelPolicy(true);
+	}
+
+	/** Queues the product m * v and returns a future for its result
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v or the scheduler is closed
+	 * @throws InterruptedException if interrupted while waiting for room (backpressure)
+	 */
+	public CompletableFuture<Vector> submit(Matrix m, Vector v) throws LinAlgException, InterruptedException {
+		if (m.getNumCols() != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		_permits.acquire();
+		CompletableFuture<Vector> future = new CompletableFuture<>();
+		_lock.lock();
+		try {
+			if (_bClosed) {
+				_permits.release();
+				throw new LinAlgException("BatchScheduler is closed!");
+			}
+			Batch batch = _pending.get(m);
+			if (batch == null) {
+				batch = new Batch(m);
+				_pending.put(m, batch);
+				Batch b = batch;
+				batch._timeout = _timer.schedule(() -> flush(b), _lMaxDelayNs, TimeUnit.NANOSECONDS);
+			}
+			batch._vectors.add(v);
+			batch._futures.add(future);
+			if (batch._vectors.size() >= _nMaxBatchSize) {
+				_pending.remove(m);
+				batch._timeout.cancel(false);
+				_workers.execute(batch);
+			}
+		} finally {
+			_lock.unlock();
+		}
+		return future;
+	}
+
+	/** Return the number of batches run so far
+	 *
+	 * @return
+	 */
+	public long getBatchCount() {
+		return _lBatches.get();
+	}
+
+	/** Return the number of jobs completed so far (getJobCount() / getBatchCount() is the
+	 *  mean batch size)
+	 *
+	 * @return
+	 */
+	public long getJobCount() {
+		return _lJobs.get();
+	}
+
+	/** Runs all pending jobs without waiting for their delay, rejects further submissions and
+	 *  waits for the running batches to finish
+	 *
+	 */
+	@Override
+	public void close() {
+		List<Batch> remaining;
+		_lock.lock();
+		try {
+			if (_bClosed)
+				return;
+			_bClosed = true;
+			remaining = new ArrayList<>(_pending.values());
+			_pending.clear();
+		} finally {
+			_lock.unlock();
+		}
+		_timer.shutdownNow();
+		for (Batch batch : remaining)
+			_workers.execute(batch);
+		_workers.shutdown();
+		try {
+			_workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** Runs the pending batch of its matrix if it is still pending (its delay expired) */
+	private void flush(Batch batch) {
+		_lock.lock();
+		try {
+			if (_pending.get(batch._m) == batch) {
+				_pending.remove(batch._m);
+				_workers.execute(batch);
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	private static ThreadFactory daemonFactory() {
+		String prefix = "linalg-batch-" + POOL_ID.incrementAndGet() + "-";
+		AtomicInteger count = new AtomicInteger();
+		ThreadFactory base = Executors.defaultThreadFactory();
+		return r -> {
+			Thread t = base.newThread(r);
+			t.setName(prefix + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		};
+	}
+
+	/** The jobs pending against one matrix */
+	private final class Batch implements Runnable {
+
+		final Matrix _m;
+		final ArrayList<Vector> _vectors = new ArrayList<>();
+		final ArrayList<CompletableFuture<Vector>> _futures = new ArrayList<>();
+		ScheduledFuture<?> _timeout;
+
+		Batch(Matrix m) {
+			_m = m;
+		}
+
+		@Override
+		public void run() {
+			int n = _vectors.size();
+			Vector[] results = null;
+			Throwable error = null;
+			try {
+				results = Matrix.MultiplyBatch(_m, _vectors.toArray(new Vector[n]));
+			} catch (Throwable t) {
+				error = t;
+			}
+			// Make room before completing, in case a dependent action submits again
+			_permits.release(n);
+			_lBatches.incrementAndGet();
+			_lJobs.addAndGet(n);
+			for (int i = 0; i < n; i++) {
+				if (error == null)
+					_futures.get(i).complete(results[i]);
+				else
+					_futures.get(i).completeExceptionally(error);
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** The stabilized biconjugate gradient method (BiCGSTAB, van der Vorst 1992) for A * x = b
+ *   with a general nonsymmetric A, right-preconditioned.
+ *
+ *   Each iteration applies A twice and the preconditioner twice.  Unlike GMRES the memory
+ *   and work per iteration stay constant, but convergence can be irregular and the method
+ *   can break down (a vanishing inner product), in which case solve() stops early and
+ *   reports no convergence; restarting from the returned x or switching to GMRES usually
+ *   helps.
+ *
+ *   Workspace: eight vectors of the solver's dimension, allocated by the constructor.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class BiCGSTAB extends IterativeSolver {
+
+	private final Vector _r, _rHat;  // Residual and the fixed shadow residual
+	private final Vector _p, _pHat;  // Search direction and M * p
+	private final Vector _v, _s;     // A * pHat and the intermediate residual
+	private final Vector _sHat, _t;  // M * s and A * sHat
+
+	/** Creates a solver for systems of dimension dim
+	 *
+	 * @param dim
+	 * @throws LinAlgException if dim is not positive
+	 */
+	public BiCGSTAB(int dim) throws LinAlgException {
+		super(dim);
+		_r = new Vector(dim);
+		_rHat = new Vector(dim);
+		_p = new Vector(dim);
+		_pHat = new Vector(dim);
+		_v = new Vector(dim);
+		_s = new Vector(dim);
+		_sHat = new Vector(dim);
+		_t = new Vector(dim);
+	}
+
+	@Override
+	void iterate(LinearOperator a, Vector b, Vector x) throws LinAlgException {
+		residual(a, b, x, _r);
+		if (start(norm(_r)))
+			return;
+		System.arraycopy(_r.getArray(), 0, _rHat.getArray(), 0, _nDim);
+		Arrays.fill(_p.getArray(), 0d);
+		Arrays.fill(_v.getArray(), 0d);
+		double rho = 1d, alpha = 1d, omega = 1d;
+		while (canIterate()) {
+			double rhoNew = Vector.InnerProd(_rHat, _r);
+			if (rhoNew == 0d || omega == 0d)
+				return; // Breakdown
+			double beta = (rhoNew / rho) * (alpha / omega);
+			Vector.axpy(-omega, _v, _p); // p = r + beta * (p - omega * v)
+			_p.scalarMultInPlace(beta);
+			_p.elementwiseAddInPlace(_r);
+			precondition(_p, _pHat);
+			a.multiply(_pHat, _v);
+			double rv = Vector.InnerProd(_rHat, _v);
+			if (rv == 0d)
+				return; // Breakdown
+			alpha = rhoNew / rv;
+			System.arraycopy(_r.getArray(), 0, _s.getArray(), 0, _nDim);
+			Vector.axpy(-alpha, _v, _s);
+			Vector.axpy(alpha, _pHat, x);
+			double normS = norm(_s);
+			if (meetsTolerance(normS)) {
+				record(normS);
+				return;
+			}
+			precondition(_s, _sHat);
+			a.multiply(_sHat, _t);
+			double tt = Vector.InnerProd(_t, _t);
+			omega = tt == 0d ? 0d : Vector.InnerProd(_t, _s) / tt;
+			Vector.axpy(omega, _sHat, x);
+			System.arraycopy(_s.getArray(), 0, _r.getArray(), 0, _nDim);
+			Vector.axpy(-omega, _t, _r);
+			if (record(norm(_r)))
+				return;
+			rho = rhoNew;
+		}
+	}
+}
@@ -0,0 +1,165 @@
+package linalg;
+
+/*** Cholesky factorization A = L * L^T of a symmetric positive definite Matrix, with L lower
+ *   triangular.  It needs half the work of an LU factorization and no pivoting.
+ *
+ *   The factorization is blocked (right-looking): each diagonal block of NB columns is
+ *   factored directly, the panel below it is found by triangular substitution, and the
+ *   lower half of the rest of the matrix is updated one block row at a time with the
+ *   parallel Gemm kernel.  Only the lower triangle of the factored matrix is read, so its
+ *   upper triangle is assumed to mirror it.
+ *
+ *   Factoring costs O(n^3) once; afterwards every solve costs O(n^2).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class CholeskyDecomposition {
+
+	private final int _nSize;    // Number of rows and columns of A
+	private final double[] _adL; // L in the lower triangle (upper triangle unused), row-major
+
+	/** Factors the symmetric positive definite matrix a
+	 *
+	 * @param a
+	 * @throws LinAlgException if a is not square or not positive definite
+	 */
+	public CholeskyDecomposition(Matrix a) throws LinAlgException {
+		if (a.getNumRows() != a.getNumCols())
+			throw new LinAlgException("Cholesky factorization needs a square matrix but got " + a.getNumRows() + "x" + a.getNumCols());
+		int n = a.getNumRows();
+		_nSize = n;
+		_adL = new Matrix(a).getArray();
+		double[] l = _adL;
+		int nb = LUDecomposition.NB;
+		for (int k0 = 0; k0 < n; k0 += nb) {
+			int kb = Math.min(nb, n - k0);
+			int k1 = k0 + kb;
+			// Diagonal block: unblocked Cholesky (earlier blocks are already subtracted)
+			for (int j = k0; j < k1; j++) {
+				double d = l[j * n + j];
+				for (int t = k0; t < j; t++)
+					d -= l[j * n + t] * l[j * n + t];
+				if (!(d > 0d))
+					throw new LinAlgException("Matrix is not symmetric positive definite!");
+				d = Math.sqrt(d);
+				l[j * n + j] = d;
+				for (int i = j + 1; i < k1; i++) {
+					double s = l[i * n + j];
+					for (int t = k0; t < j; t++)
+						s -= l[i * n + t] * l[j * n + t];
+					l[i * n + j] = s / d;
+				}
+			}
+			if (k1 == n)
+				break;
+			// Panel below: solve L21 * L11^T = A21 row by row
+			for (int i = k1; i < n; i++) {
+				for (int j = k0; j < k1; j++) {
+					double s = l[i * n + j];
+					for (int t = k0; t < j; t++)
+						s -= l[i * n + t] * l[j * n + t];
+					l[i * n + j] = s / l[j * n + j];
+				}
+			}
+			// Trailing update of the lower half, A22 -= L21 * L21^T, one block row at a time
+			for (int i0 = k1; i0 < n; i0 += nb) {
+				int ib = Math.min(nb, n - i0);
+				ParallelGemm.gemm(ParallelGemm.defaultPool(), ib, i0 + ib - k1, kb, -1d,
+						l, i0 * n + k0, n, 1,
+						l, k1 * n + k0, 1, n,  // L21^T read in place through swapped strides
+						l, i0 * n + k1, n, 1);
+			}
+		}
+	}
+
+	/** Returns a new lower triangular Matrix holding L
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix getL() throws LinAlgException {
+		Matrix m = new Matrix(_nSize, _nSize);
+		double[] a = m.getArray();
+		for (int i = 0; i < _nSize; i++)
+			System.arraycopy(_adL, i * _nSize, a, i * _nSize, i + 1);
+		return m;
+	}
+
+	/** Return the determinant of the factored matrix (the squared product of the diagonal of L)
+	 *
+	 * @return
+	 */
+	public double determinant() {
+		double det = 1d;
+		for (int i = 0; i < _nSize; i++)
+			det *= _adL[i * _nSize + i];
+		return det * det;
+	}
+
+	/** Returns the solution x of A * x = b
+	 *
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if the size of b does not match A
+	 */
+	public Vector solve(Vector b) throws LinAlgException {
+		if (b.getDim() != _nSize)
+			throw new LinAlgException("Right-hand side has dimension " + b.getDim() + " but the matrix is " + _nSize + "x" + _nSize);
+		int n = _nSize;
+		double[] l = _adL;
+		double[] x = b.getArray().clone();
+		for (int i = 0; i < n; i++) {
+			double s = x[i];
+			for (int t = 0; t < i; t++)
+				s -= l[i * n + t] * x[t];
+			x[i] = s / l[i * n + i];
+		}
+		// Back substitution with L^T, sweeping the columns of L so L is read row by row
+		for (int i = n - 1; i >= 0; i--) {
+			double xi = x[i] /= l[i * n + i];
+			for (int t = 0; t < i; t++)
+				x[t] -= l[i * n + t] * xi;
+		}
+		return new Vector(x);
+	}
+
+	/** Returns the solution X of A * X = B, i.e., one solution column per column of B
+	 *
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if the rows of b do not match A
+	 */
+	public Matrix solve(Matrix b) throws LinAlgException {
+		if (b.getNumRows() != _nSize)
+			throw new LinAlgException("Right-hand side has " + b.getNumRows() + " rows but the matrix is " + _nSize + "x" + _nSize);
+		int n = _nSize, k = b.getNumCols();
+		Matrix result = new Matrix(b);
+		double[] l = _adL, x = result.getArray();
+		for (int i = 0; i < n; i++) {
+			for (int t = 0; t < i; t++)
+				StructuredMatrix.axpyRow(-l[i * n + t], x, t * k, 1, x, i * k, k);
+			scaleRow(x, i * k, k, l[i * n + i]);
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			scaleRow(x, i * k, k, l[i * n + i]);
+			for (int t = 0; t < i; t++)
+				StructuredMatrix.axpyRow(-l[i * n + t], x, i * k, 1, x, t * k, k);
+		}
+		return result;
+	}
+
+	/** Returns the inverse of the factored matrix
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix inverse() throws LinAlgException {
+		return solve(Matrix.GetIdentity(_nSize));
+	}
+
+	private static void scaleRow(double[] x, int off, int k, double d) {
+		for (int c = 0; c < k; c++)
+			x[off + c] /= d;
+	}
+}
@@ -0,0 +1,58 @@
+package linalg;
+
+/*** The (preconditioned) Conjugate Gradient method for A * x = b with A symmetric positive
+ *   definite.
+ *
+ *   Each iteration applies A once and the preconditioner once, which must also be symmetric
+ *   positive definite (e.g., JacobiPreconditioner).  In exact arithmetic CG converges in at
+ *   most n iterations; the number actually needed grows with the square root of the
+ *   condition number of M * A.  For a nonsymmetric A use BiCGSTAB or GMRES instead.
+ *
+ *   Workspace: four vectors of the solver's dimension, allocated by the constructor.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class ConjugateGradient extends IterativeSolver {
+
+	private final Vector _r, _z, _p, _q; // Residual, preconditioned residual, search direction, A * p
+
+	/** Creates a solver for systems of dimension dim
+	 *
+	 * @param dim
+	 * @throws LinAlgException if dim is not positive
+	 */
+	public ConjugateGradient(int dim) throws LinAlgException {
+		super(dim);
+		_r = new Vector(dim);
+		_z = new Vector(dim);
+		_p = new Vector(dim);
+		_q = new Vector(dim);
+	}
+
+	@Override
+	void iterate(LinearOperator a, Vector b, Vector x) throws LinAlgException {
+		residual(a, b, x, _r);
+		if (start(norm(_r)))
+			return;
+		precondition(_r, _z);
+		System.arraycopy(_z.getArray(), 0, _p.getArray(), 0, _nDim);
+		double rz = Vector.InnerProd(_r, _z);
+		while (canIterate()) {
+			a.multiply(_p, _q);
+			double pq = Vector.InnerProd(_p, _q);
+			if (pq == 0d || rz == 0d)
+				return; // Breakdown: A (or M) is not positive definite
+			double alpha = rz / pq;
+			Vector.axpy(alpha, _p, x);
+			Vector.axpy(-alpha, _q, _r);
+			if (record(norm(_r)))
+				return;
+			precondition(_r, _z);
+			double rzNew = Vector.InnerProd(_r, _z);
+			_p.scalarMultInPlace(rzNew / rz); // p = z + beta * p
+			_p.elementwiseAddInPlace(_z);
+			rz = rzNew;
+		}
+	}
+}
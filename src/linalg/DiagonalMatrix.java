@@ -0,0 +1,67 @@
+package linalg;
+
+/*** A square matrix that is zero off its diagonal, stored as just its n diagonal entries.
+ *
+ *   Matrix-vector products take O(n) and products with an n x k dense Matrix on either side
+ *   take O(n * k), i.e., they scale the rows (this * m) or columns (m * this) of m.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class DiagonalMatrix extends StoredStructuredMatrix {
+
+	private static final VectorKernels KERNELS = VectorKernels.INSTANCE;
+
+	/** Allocates a new size x size diagonal matrix of zeros
+	 *
+	 * @param size
+	 * @throws LinAlgException if size is <= 0
+	 */
+	public DiagonalMatrix(int size) throws LinAlgException {
+		super(size, size);
+	}
+
+	/** Constructor: makes a diagonal matrix whose diagonal is a copy of diag
+	 *
+	 * @param diag
+	 * @throws LinAlgException if diag is empty
+	 */
+	public DiagonalMatrix(Vector diag) throws LinAlgException {
+		super(diag.getDim(), diag.getDim());
+		System.arraycopy(diag.getArray(), 0, _adVal, 0, _nSize);
+	}
+
+	/** Return a new Vector holding the diagonal of *this*
+	 *
+	 * @return
+	 */
+	public Vector getDiagonal() {
+		return new Vector(_adVal.clone());
+	}
+
+	@Override
+	int first(int row) {
+		return row;
+	}
+
+	@Override
+	int last(int row) {
+		return row;
+	}
+
+	@Override
+	int index(int row, int col) {
+		return row;
+	}
+
+	@Override
+	public void multiply(Vector v, Vector out) throws LinAlgException {
+		checkOperands(v, out);
+		KERNELS.mult(_adVal, v.getArray(), out.getArray(), _nSize);
+	}
+
+	@Override
+	public Vector multiplyTranspose(Vector v) throws LinAlgException {
+		return multiply(v); // A diagonal matrix is its own transpose
+	}
+}
@@ -0,0 +1,70 @@
+package linalg;
+
+/*** The single- and mixed-precision loops behind FloatVector and FloatMatrix, written
+ *   against raw arrays.
+ *
+ *   The float operations (dot, add, mult, ...) round every intermediate result to float.
+ *   The mixed operations read float operands but widen them to double before multiplying,
+ *   so products are exact and sums carry double precision; they cost about as much as the
+ *   float operations when the operands come from memory, since it is the float storage that
+ *   halves the traffic.
+ *
+ *   As for VectorKernels, INSTANCE is SimdFloatKernels whenever jdk.incubator.vector is
+ *   present at runtime and ScalarFloatKernels otherwise (or with -Dlinalg.simd=false).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+interface FloatKernels {
+
+	FloatKernels INSTANCE = Loader.select();
+
+	/** Returns the sum over i < n of a[aOff + i] * b[bOff + i], accumulated in float */
+	float dot(float[] a, int aOff, float[] b, int bOff, int n);
+
+	/** Returns the sum over i < n of a[aOff + i] * b[bOff + i], accumulated in double */
+	double dotMixed(float[] a, int aOff, float[] b, int bOff, int n);
+
+	/** Returns the sum over i < n of a[aOff + i] * b[bOff + i], accumulated in double */
+	double dotMixed(float[] a, int aOff, double[] b, int bOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] + b[bOff + i] for i < n */
+	void add(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] * b[bOff + i] for i < n */
+	void mult(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] + d for i < n */
+	void scalarAdd(float[] a, int aOff, float d, float[] out, int outOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] * d for i < n */
+	void scalarMult(float[] a, int aOff, float d, float[] out, int outOff, int n);
+
+	/** Sets y[yOff + i] = alpha * x[xOff + i] + y[yOff + i] for i < n, rounding the product and
+	 *  then the sum (no fused multiply-add), so both implementations return identical results */
+	void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n);
+
+	/** Sets y[yOff + i] = alpha * x[xOff + i] + y[yOff + i] for i < n, in double, rounding the
+	 *  product and then the sum like axpy */
+	void axpyMixed(double alpha, float[] x, int xOff, double[] y, int yOff, int n);
+
+	/** Picks the kernel implementation once, when FloatKernels is first used */
+	final class Loader {
+
+		private Loader() {
+		}
+
+		static FloatKernels select() {
+			if (!Boolean.parseBoolean(System.getProperty("linalg.simd", "true")))
+				return new ScalarFloatKernels();
+			if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+				return new ScalarFloatKernels();
+			try {
+				// Loaded reflectively so this class still links when the module is absent
+				return (FloatKernels)Class.forName("linalg.SimdFloatKernels").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return new ScalarFloatKernels();
+			}
+		}
+	}
+}
@@ -0,0 +1,495 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A single-precision (float) counterpart of Matrix, for weights that tolerate float
+ *   precision (e.g., inference): half the memory of a Matrix, so memory-bound products such
+ *   as matrix-vector multiplies stream half as many bytes, and twice as many entries per
+ *   SIMD operation.
+ *
+ *   Storage is laid out like a Matrix: entry (row,col) is getArray()[getOffset() + row *
+ *   getRowStride() + col * getColStride()], and transposeView() shares storage.
+ *
+ *   Products come in two precisions:
+ *
+ *     - Multiply accumulates in float, the fastest mode,
+ *     - MultiplyMixed keeps float storage but widens the operands to double before
+ *       multiplying and accumulates in double, rounding each result entry to float once (or
+ *       not at all, for a double Vector operand).  Its error does not grow with the inner
+ *       dimension the way a float sum's does, and it costs little extra when the product is
+ *       memory-bound.
+ *
+ *   Conversions to and from Matrix round to nearest (new FloatMatrix(Matrix)) or are exact
+ *   (toMatrix()).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class FloatMatrix {
+
+	// Blocking of the matrix-matrix product: a KB x NB block of B (512 KB) is reused for
+	// MB rows of A before moving on, so it is read from cache rather than memory
+	private static final int MB = 32;
+	private static final int KB = 128;
+	private static final int NB = 1024;
+
+	private static final FloatKernels KERNELS = FloatKernels.INSTANCE;
+
+	private int _nRows;      // Number of rows in this matrix
+	private int _nCols;      // Number of columns in this matrix
+	private int _nOffset;    // Index in _afVal of entry (0,0)
+	private int _nRowStride; // Distance in _afVal between (row,col) and (row+1,col)
+	private int _nColStride = 1; // Distance in _afVal between (row,col) and (row,col+1); 1 unless *this* is a view
+	private float[] _afVal;  // Contents of the FloatMatrix; nomenclature: a for array, f for float
+
+	/** Allocates a new matrix of the given row and column dimensions
+	 *
+	 * @param rows
+	 * @param cols
+	 * @throws LinAlgException if either rows or cols is <= 0
+	 */
+	public FloatMatrix(int rows, int cols) throws LinAlgException {
+		if ((rows <= 0) || (cols <= 0))
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		if ((long)rows * cols > Integer.MAX_VALUE)
+			throw new LinAlgException("Matrix of " + rows + "x" + cols + " exceeds the maximum array size!");
+		_nRows = rows;
+		_nCols = cols;
+		_nRowStride = cols;
+		_afVal = new float[rows * cols];
+	}
+
+	/** Constructor: wraps an existing row-major array *without copying it*, i.e., entry
+	 *  (row,col) is data[row * cols + col]
+	 *
+	 * @param rows
+	 * @param cols
+	 * @param data
+	 * @throws LinAlgException if either rows or cols is <= 0 or data is too short
+	 */
+	public FloatMatrix(int rows, int cols, float[] data) throws LinAlgException {
+		if ((rows <= 0) || (cols <= 0))
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		if (data == null)
+			throw new LinAlgException("Matrix data cannot be null!");
+		if ((long)rows * cols > data.length)
+			throw new LinAlgException("A " + rows + "x" + cols + " matrix does not fit in an array of length " + data.length);
+		_nRows = rows;
+		_nCols = cols;
+		_nRowStride = cols;
+		_afVal = data;
+	}
+
+	/** Constructor for views: shares data with the FloatMatrix the view was taken from */
+	private FloatMatrix(int rows, int cols, float[] data, int offset, int rowStride, int colStride) {
+		_nRows = rows;
+		_nCols = cols;
+		_nOffset = offset;
+		_nRowStride = rowStride;
+		_nColStride = colStride;
+		_afVal = data;
+	}
+
+	/** Copy constructor: makes a new, contiguous copy of an existing FloatMatrix m
+	 *
+	 * @param m
+	 */
+	public FloatMatrix(FloatMatrix m) {
+		_nRows = m._nRows;
+		_nCols = m._nCols;
+		_nRowStride = _nCols;
+		_afVal = new float[_nRows * _nCols];
+		for (int row = 0; row < _nRows; row++) {
+			int base = m._nOffset + row * m._nRowStride;
+			if (m._nColStride == 1) {
+				System.arraycopy(m._afVal, base, _afVal, row * _nCols, _nCols);
+			} else {
+				for (int col = 0; col < _nCols; col++)
+					_afVal[row * _nCols + col] = m._afVal[base + col * m._nColStride];
+			}
+		}
+	}
+
+	/** Conversion constructor: rounds every entry of m to the nearest float
+	 *
+	 * @param m
+	 */
+	public FloatMatrix(Matrix m) {
+		_nRows = m.getNumRows();
+		_nCols = m.getNumCols();
+		_nRowStride = _nCols;
+		_afVal = new float[_nRows * _nCols];
+		double[] src = m.getArray();
+		for (int row = 0; row < _nRows; row++) {
+			int base = m.getOffset() + row * m.getRowStride();
+			for (int col = 0; col < _nCols; col++)
+				_afVal[row * _nCols + col] = (float)src[base + col * m.getColStride()];
+		}
+	}
+
+	/** Returns a new Matrix holding the entries of *this* exactly
+	 *
+	 * @return
+	 */
+	public Matrix toMatrix() {
+		double[] d = new double[_nRows * _nCols];
+		for (int row = 0; row < _nRows; row++) {
+			int base = _nOffset + row * _nRowStride;
+			for (int col = 0; col < _nCols; col++)
+				d[row * _nCols + col] = _afVal[base + col * _nColStride];
+		}
+		try {
+			return new Matrix(_nRows, _nCols, d);
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e); // Cannot happen: the dimensions are valid
+		}
+	}
+
+	/** Formats *this* the same way as Matrix.toString()
+	 *
+	 */
+	@Override
+	public String toString() {
+		return toMatrix().toString();
+	}
+
+	/** Tests whether o is a FloatMatrix with the same dimensions and entries
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof FloatMatrix))
+			return false;
+		FloatMatrix m = (FloatMatrix)o;
+		if (_nRows != m._nRows || _nCols != m._nCols)
+			return false;
+		for (int row = 0; row < _nRows; row++) {
+			int base = _nOffset + row * _nRowStride;
+			int mBase = m._nOffset + row * m._nRowStride;
+			for (int col = 0; col < _nCols; col++)
+				if (_afVal[base + col * _nColStride] != m._afVal[mBase + col * m._nColStride])
+					return false;
+		}
+		return true;
+	}
+
+	/** Hashes the dimensions and content, consistently with equals
+	 *
+	 * @return
+	 */
+	@Override
+	public int hashCode() {
+		int h = 31 * _nRows + _nCols;
+		for (int row = 0; row < _nRows; row++) {
+			int base = _nOffset + row * _nRowStride;
+			for (int col = 0; col < _nCols; col++)
+				h = 31 * h + Float.floatToIntBits(_afVal[base + col * _nColStride] + 0f); // -0.0f + 0.0f == 0.0f
+		}
+		return h;
+	}
+
+	/** Return the number of rows in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	/** Return the number of columns in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** Return the array backing this matrix *without copying it*
+	 *
+	 * @return
+	 */
+	public float[] getArray() {
+		return _afVal;
+	}
+
+	/** Return the index in getArray() of entry (0,0)
+	 *
+	 * @return
+	 */
+	public int getOffset() {
+		return _nOffset;
+	}
+
+	/** Return the distance in getArray() between consecutive rows of this matrix
+	 *
+	 * @return
+	 */
+	public int getRowStride() {
+		return _nRowStride;
+	}
+
+	/** Return the distance in getArray() between consecutive columns of this matrix
+	 *
+	 * @return
+	 */
+	public int getColStride() {
+		return _nColStride;
+	}
+
+	/** Return the value at the given row and column of the matrix
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public float get(int row, int col) throws LinAlgException {
+		if ((row >= _nRows) || (row < 0) || (col >= _nCols) || (col < 0))
+			throw new LinAlgException("Column or row out of bounds!");
+		return _afVal[_nOffset + row * _nRowStride + col * _nColStride];
+	}
+
+	/** Set the row and col of this matrix to the provided val
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public void set(int row, int col, float val) throws LinAlgException {
+		if ((row >= _nRows) || (row < 0) || (col >= _nCols) || (col < 0))
+			throw new LinAlgException("Invalid index.");
+		_afVal[_nOffset + row * _nRowStride + col * _nColStride] = val;
+	}
+
+	/** Return the FloatVector of numbers in the provided row
+	 *
+	 * @param row
+	 * @return
+	 * @throws LinAlgException if row is out of bounds
+	 */
+	public FloatVector getRow(int row) throws LinAlgException {
+		if (row >= _nRows || row < 0)
+			throw new LinAlgException("Row out of bounds!");
+		float[] v = new float[_nCols];
+		int base = _nOffset + row * _nRowStride;
+		for (int col = 0; col < _nCols; col++)
+			v[col] = _afVal[base + col * _nColStride];
+		return new FloatVector(v);
+	}
+
+	/** Return a new FloatMatrix that is the transpose of *this*
+	 *
+	 * @return
+	 */
+	public FloatMatrix transpose() {
+		return new FloatMatrix(transposeView());
+	}
+
+	/** Return a view of the transpose of *this* that shares storage with *this* (O(1))
+	 *
+	 * @return
+	 */
+	public FloatMatrix transposeView() {
+		return new FloatMatrix(_nCols, _nRows, _afVal, _nOffset, _nColStride, _nRowStride);
+	}
+
+	/** Return the size x size identity matrix
+	 *
+	 * @param size
+	 * @return
+	 * @throws LinAlgException if size is <= 0
+	 */
+	public static FloatMatrix GetIdentity(int size) throws LinAlgException {
+		FloatMatrix id = new FloatMatrix(size, size);
+		for (int i = 0; i < size; i++)
+			id._afVal[i * size + i] = 1f;
+		return id;
+	}
+
+	/** Returns the FloatMatrix result of multiplying m1 and m2, accumulated in float
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match m2 rows
+	 */
+	public static FloatMatrix Multiply(FloatMatrix m1, FloatMatrix m2) throws LinAlgException {
+		return product(m1, m2, false);
+	}
+
+	/** Returns the FloatMatrix result of multiplying m1 and m2, accumulated in double and
+	 *  rounded to float once per entry
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match m2 rows
+	 */
+	public static FloatMatrix MultiplyMixed(FloatMatrix m1, FloatMatrix m2) throws LinAlgException {
+		return product(m1, m2, true);
+	}
+
+	/** Returns the FloatVector result of multiplying m and v, accumulated in float
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public static FloatVector Multiply(FloatMatrix m, FloatVector v) throws LinAlgException {
+		FloatVector result = new FloatVector(m._nRows);
+		multiplyInto(m, v, result);
+		return result;
+	}
+
+	/** Returns the FloatVector result of multiplying m and v, accumulated in double and
+	 *  rounded to float once per entry
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public static FloatVector MultiplyMixed(FloatMatrix m, FloatVector v) throws LinAlgException {
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		float[] x = v.getArray(), y = new float[m._nRows];
+		if (m._nColStride == 1) {
+			for (int i = 0; i < m._nRows; i++)
+				y[i] = (float)KERNELS.dotMixed(m._afVal, m._nOffset + i * m._nRowStride, x, 0, m._nCols);
+		} else {
+			double[] acc = new double[m._nRows];
+			for (int j = 0; j < m._nCols; j++)
+				m.columnAxpy(j, x[j], acc);
+			for (int i = 0; i < m._nRows; i++)
+				y[i] = (float)acc[i];
+		}
+		return new FloatVector(y);
+	}
+
+	/** Returns the Vector result of multiplying the float weights m by the double vector v,
+	 *  accumulated in double (nothing is rounded to float)
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public static Vector MultiplyMixed(FloatMatrix m, Vector v) throws LinAlgException {
+		Vector result = new Vector(m._nRows);
+		multiplyMixedInto(m, v, result);
+		return result;
+	}
+
+	/** Computes out = m * v, accumulated in float, without allocating
+	 *
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is v
+	 */
+	public static void multiplyInto(FloatMatrix m, FloatVector v, FloatVector out) throws LinAlgException {
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		if (m._nRows != out.getDim())
+			throw new LinAlgException("Output vector must have dimension " + m._nRows + " but has " + out.getDim());
+		float[] x = v.getArray(), y = out.getArray();
+		if (x == y)
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		if (m._nColStride == 1) {
+			// Rows are contiguous: one dot product per row
+			for (int i = 0; i < m._nRows; i++)
+				y[i] = KERNELS.dot(m._afVal, m._nOffset + i * m._nRowStride, x, 0, m._nCols);
+		} else {
+			Arrays.fill(y, 0f);
+			for (int j = 0; j < m._nCols; j++) {
+				int aj = m._nOffset + j * m._nColStride;
+				if (m._nRowStride == 1) {
+					KERNELS.axpy(x[j], m._afVal, aj, y, 0, m._nRows);
+				} else {
+					for (int i = 0; i < m._nRows; i++)
+						y[i] += x[j] * m._afVal[aj + i * m._nRowStride];
+				}
+			}
+		}
+	}
+
+	/** Computes out = m * v, accumulated in double, without allocating; this is the
+	 *  matrix-vector product of float weights with double activations
+	 *
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is v
+	 */
+	public static void multiplyMixedInto(FloatMatrix m, Vector v, Vector out) throws LinAlgException {
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		if (m._nRows != out.getDim())
+			throw new LinAlgException("Output vector must have dimension " + m._nRows + " but has " + out.getDim());
+		double[] x = v.getArray(), y = out.getArray();
+		if (x == y)
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		out.markModified();
+		if (m._nColStride == 1) {
+			for (int i = 0; i < m._nRows; i++)
+				y[i] = KERNELS.dotMixed(m._afVal, m._nOffset + i * m._nRowStride, x, 0, m._nCols);
+		} else {
+			Arrays.fill(y, 0d);
+			for (int j = 0; j < m._nCols; j++)
+				m.columnAxpy(j, x[j], y);
+		}
+	}
+
+	/** Adds alpha times column j of *this* to y, in double */
+	private void columnAxpy(int j, double alpha, double[] y) {
+		int aj = _nOffset + j * _nColStride;
+		if (_nRowStride == 1) {
+			KERNELS.axpyMixed(alpha, _afVal, aj, y, 0, _nRows);
+		} else {
+			for (int i = 0; i < _nRows; i++)
+				y[i] += alpha * _afVal[aj + i * _nRowStride];
+		}
+	}
+
+	/** Blocked i-k-j product: every row of C accumulates scaled rows of B, in float directly
+	 *  into C or, if mixed, in double into MB rows of accumulators that are rounded at the end */
+	private static FloatMatrix product(FloatMatrix a, FloatMatrix b, boolean mixed) throws LinAlgException {
+		if (a._nCols != b._nRows)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		int m = a._nRows, k = a._nCols, n = b._nCols;
+		FloatMatrix result = new FloatMatrix(m, n);
+		float[] c = result._afVal;
+		if (b._nColStride != 1)
+			b = new FloatMatrix(b); // The kernels stream rows of B, so they must be contiguous
+		double[] acc = mixed ? new double[Math.min(MB, m) * n] : null;
+		for (int i0 = 0; i0 < m; i0 += MB) {
+			int mb = Math.min(MB, m - i0);
+			if (mixed)
+				Arrays.fill(acc, 0d);
+			for (int j0 = 0; j0 < n; j0 += NB) {
+				int nb = Math.min(NB, n - j0);
+				for (int p0 = 0; p0 < k; p0 += KB) {
+					int kb = Math.min(KB, k - p0);
+					for (int i = i0; i < i0 + mb; i++) {
+						int ai = a._nOffset + i * a._nRowStride;
+						for (int p = p0; p < p0 + kb; p++) {
+							float aip = a._afVal[ai + p * a._nColStride];
+							int bp = b._nOffset + p * b._nRowStride + j0;
+							if (mixed)
+								KERNELS.axpyMixed(aip, b._afVal, bp, acc, (i - i0) * n + j0, nb);
+							else
+								KERNELS.axpy(aip, b._afVal, bp, c, i * n + j0, nb);
+						}
+					}
+				}
+			}
+			if (mixed)
+				for (int idx = 0; idx < mb * n; idx++)
+					c[i0 * n + idx] = (float)acc[idx];
+		}
+		return result;
+	}
+}
@@ -0,0 +1,348 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A single-precision (float) counterpart of Vector with the same operations, for data
+ *   that tolerates float precision (e.g., inference): half the memory and bandwidth of a
+ *   Vector and twice as many entries per SIMD operation.
+ *
+ *   Operations round their results to float.  InnerProdMixed accumulates in double
+ *   instead, for long vectors whose float sum would lose too many digits.  Conversions to
+ *   and from Vector round to nearest (new FloatVector(Vector)) or are exact (toVector()).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class FloatVector {
+
+	private int _nDim;      // Dimension of the FloatVector
+	private float[] _afVal; // Contents of the FloatVector; nomenclature: a for array, f for float
+
+	// Elementwise and inner-product loops; SIMD when jdk.incubator.vector is available
+	private static final FloatKernels KERNELS = FloatKernels.INSTANCE;
+
+	/** Constructor: allocates space for a new vector of dimension dim
+	 *
+	 * @param dim
+	 * @throws LinAlgException if vector dimension is < 1
+	 */
+	public FloatVector(int dim) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		_nDim = dim;
+		_afVal = new float[dim];
+	}
+
+	/** Constructor: wraps an existing array *without copying it* (the dimension is the
+	 *  array length); used internally to hand freshly computed results to a new FloatVector
+	 *
+	 * @param values
+	 */
+	FloatVector(float[] values) {
+		_nDim = values.length;
+		_afVal = values;
+	}
+
+	/** Copy constructor: makes a new copy of an existing FloatVector v
+	 *
+	 * @param v
+	 */
+	public FloatVector(FloatVector v) {
+		_nDim = v._nDim;
+		_afVal = v._afVal.clone();
+	}
+
+	/** Conversion constructor: rounds every entry of v to the nearest float
+	 *
+	 * @param v
+	 */
+	public FloatVector(Vector v) {
+		double[] d = v.getArray();
+		_nDim = v.getDim();
+		_afVal = new float[_nDim];
+		for (int index = 0; index < _nDim; index++)
+			_afVal[index] = (float)d[index];
+	}
+
+	/** Constructor: creates a new FloatVector with dimension and values given by init
+	 *
+	 * @param init: a String formatted like "[ -1.2 2.0 3.1 5.8 ]" (must start with [ and end with ])
+	 * @throws LinAlgException if init is not properly formatted
+	 */
+	public FloatVector(String init) throws LinAlgException {
+		this(new Vector(init));
+	}
+
+	/** Returns a new Vector holding the entries of *this* exactly
+	 *
+	 * @return
+	 */
+	public Vector toVector() {
+		double[] d = new double[_nDim];
+		for (int index = 0; index < _nDim; index++)
+			d[index] = _afVal[index];
+		return new Vector(d);
+	}
+
+	/** Formats *this* the same way as Vector.toString()
+	 *
+	 */
+	@Override
+	public String toString() {
+		return toVector().toString();
+	}
+
+	/** Tests whether o is a FloatVector with the same dimension and entries
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof FloatVector))
+			return false;
+		FloatVector v = (FloatVector)o;
+		if (_nDim != v._nDim)
+			return false;
+		for (int index = 0; index < _nDim; index++)
+			if (_afVal[index] != v._afVal[index])
+				return false;
+		return true;
+	}
+
+	/** Hashes the dimension and content, consistently with equals (so -0.0f and 0.0f hash alike)
+	 *
+	 * @return
+	 */
+	@Override
+	public int hashCode() {
+		int h = _nDim;
+		for (int index = 0; index < _nDim; index++)
+			h = 31 * h + Float.floatToIntBits(_afVal[index] + 0f); // -0.0f + 0.0f == 0.0f
+		return h;
+	}
+
+	/** Get the dimension of this vector
+	 *
+	 * @return
+	 */
+	public int getDim() {
+		return _nDim;
+	}
+
+	/** Returns the array backing this vector *without copying it*
+	 *
+	 * @return
+	 */
+	public float[] getArray() {
+		return _afVal;
+	}
+
+	/** Returns the value of this vector at the given index
+	 *
+	 * @param index
+	 * @return
+	 * @throws LinAlgException if array index is out of bounds
+	 */
+	public float get(int index) throws LinAlgException {
+		if (index < 0 || index >= _nDim)
+			throw new LinAlgException("Invalid index.");
+		return _afVal[index];
+	}
+
+	/** Set the value val of the vector at the given index
+	 *
+	 * @param index
+	 * @param val
+	 * @throws LinAlgException if array index is out of bounds
+	 */
+	public void set(int index, float val) throws LinAlgException {
+		if (index < 0 || index >= _nDim)
+			throw new LinAlgException("Invalid index.");
+		_afVal[index] = val;
+	}
+
+	/** Change the dimension of this FloatVector by reallocating its storage; new entries are 0
+	 *
+	 * @param new_dim
+	 * @throws LinAlgException if vector dimension is < 1
+	 */
+	public void changeDim(int new_dim) throws LinAlgException {
+		if (new_dim < 1)
+			throw new LinAlgException("Vector dimension is too small");
+		_afVal = Arrays.copyOf(_afVal, new_dim);
+		_nDim = new_dim;
+	}
+
+	/** Adds a scalar d to all elements of *this* FloatVector
+	 *
+	 * @param d
+	 */
+	public void scalarAddInPlace(float d) {
+		KERNELS.scalarAdd(_afVal, 0, d, _afVal, 0, _nDim);
+	}
+
+	/** Returns a new FloatVector holding *this* plus scalar d
+	 *
+	 * @param d
+	 * @return
+	 */
+	public FloatVector scalarAdd(float d) {
+		FloatVector u = new FloatVector(new float[_nDim]);
+		KERNELS.scalarAdd(_afVal, 0, d, u._afVal, 0, _nDim);
+		return u;
+	}
+
+	/** Writes *this* plus scalar d into out without allocating (out may be *this*)
+	 *
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the same dimension as *this*
+	 */
+	public void scalarAdd(float d, FloatVector out) throws LinAlgException {
+		checkDim(out);
+		KERNELS.scalarAdd(_afVal, 0, d, out._afVal, 0, _nDim);
+	}
+
+	/** Multiplies all elements of *this* FloatVector by a scalar d
+	 *
+	 * @param d
+	 */
+	public void scalarMultInPlace(float d) {
+		KERNELS.scalarMult(_afVal, 0, d, _afVal, 0, _nDim);
+	}
+
+	/** Returns a new FloatVector holding *this* times scalar d
+	 *
+	 * @param d
+	 * @return
+	 */
+	public FloatVector scalarMult(float d) {
+		FloatVector u = new FloatVector(new float[_nDim]);
+		KERNELS.scalarMult(_afVal, 0, d, u._afVal, 0, _nDim);
+		return u;
+	}
+
+	/** Writes *this* times scalar d into out without allocating (out may be *this*)
+	 *
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the same dimension as *this*
+	 */
+	public void scalarMult(float d, FloatVector out) throws LinAlgException {
+		checkDim(out);
+		KERNELS.scalarMult(_afVal, 0, d, out._afVal, 0, _nDim);
+	}
+
+	/** Performs an elementwise addition of v to *this*, modifies *this*
+	 *
+	 * @param v
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseAddInPlace(FloatVector v) throws LinAlgException {
+		checkDim(v);
+		KERNELS.add(_afVal, 0, v._afVal, 0, _afVal, 0, _nDim);
+	}
+
+	/** Returns a new FloatVector holding the elementwise sum of *this* and v
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public FloatVector elementwiseAdd(FloatVector v) throws LinAlgException {
+		checkDim(v);
+		FloatVector u = new FloatVector(new float[_nDim]);
+		KERNELS.add(_afVal, 0, v._afVal, 0, u._afVal, 0, _nDim);
+		return u;
+	}
+
+	/** Writes the elementwise sum of *this* and v into out without allocating (out may be
+	 *  *this* or v)
+	 *
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if dimensions of the three vectors do not match
+	 */
+	public void elementwiseAdd(FloatVector v, FloatVector out) throws LinAlgException {
+		checkDim(v);
+		checkDim(out);
+		KERNELS.add(_afVal, 0, v._afVal, 0, out._afVal, 0, _nDim);
+	}
+
+	/** Performs an elementwise multiplication of v and *this*, modifies *this*
+	 *
+	 * @param v
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseMultInPlace(FloatVector v) throws LinAlgException {
+		checkDim(v);
+		KERNELS.mult(_afVal, 0, v._afVal, 0, _afVal, 0, _nDim);
+	}
+
+	/** Returns a new FloatVector holding the elementwise product of *this* and v
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public FloatVector elementwiseMult(FloatVector v) throws LinAlgException {
+		checkDim(v);
+		FloatVector u = new FloatVector(new float[_nDim]);
+		KERNELS.mult(_afVal, 0, v._afVal, 0, u._afVal, 0, _nDim);
+		return u;
+	}
+
+	/** Writes the elementwise product of *this* and v into out without allocating (out may be
+	 *  *this* or v)
+	 *
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if dimensions of the three vectors do not match
+	 */
+	public void elementwiseMult(FloatVector v, FloatVector out) throws LinAlgException {
+		checkDim(v);
+		checkDim(out);
+		KERNELS.mult(_afVal, 0, v._afVal, 0, out._afVal, 0, _nDim);
+	}
+
+	/** Performs an inner product of v1 and v2, accumulated in float
+	 *
+	 * @param v1
+	 * @param v2
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public static float InnerProd(FloatVector v1, FloatVector v2) throws LinAlgException {
+		v1.checkDim(v2);
+		return KERNELS.dot(v1._afVal, 0, v2._afVal, 0, v1._nDim);
+	}
+
+	/** Performs an inner product of v1 and v2, accumulated in double
+	 *
+	 * @param v1
+	 * @param v2
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public static double InnerProdMixed(FloatVector v1, FloatVector v2) throws LinAlgException {
+		v1.checkDim(v2);
+		return KERNELS.dotMixed(v1._afVal, 0, v2._afVal, 0, v1._nDim);
+	}
+
+	/** Computes y = alpha * x + y in place (the BLAS saxpy operation) without allocating
+	 *
+	 * @param alpha
+	 * @param x
+	 * @param y
+	 * @throws LinAlgException if dimensions of the two vectors do not match
+	 */
+	public static void axpy(float alpha, FloatVector x, FloatVector y) throws LinAlgException {
+		x.checkDim(y);
+		KERNELS.axpy(alpha, x._afVal, 0, y._afVal, 0, x._nDim);
+	}
+
+	private void checkDim(FloatVector v) throws LinAlgException {
+		if (_nDim != v._nDim)
+			throw new LinAlgException("The dimensions of the two vectors do not match!");
+	}
+}
@@ -0,0 +1,139 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** The restarted generalized minimal residual method, GMRES(m) (Saad and Schultz 1986), for
+ *   A * x = b with a general nonsymmetric A, right-preconditioned.
+ *
+ *   Each iteration applies A and the preconditioner once and extends an orthonormal Krylov
+ *   basis by one vector (modified Gram-Schmidt); the least-squares problem for the best x in
+ *   that basis is kept in triangular form with Givens rotations, so its residual norm is
+ *   known at every iteration without forming x.  After m iterations x is updated, the basis
+ *   is discarded and the method restarts from the true residual.  Within a cycle the
+ *   residual norm never increases, but the work per iteration grows with the basis, so m
+ *   trades robustness for cost.
+ *
+ *   Workspace: m + 3 vectors of the solver's dimension plus an (m + 1) x m Hessenberg
+ *   matrix, allocated by the constructor.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class GMRES extends IterativeSolver {
+
+	public static final int DEFAULT_RESTART = 30;
+
+	private final int _nRestart;     // Basis vectors per cycle (m)
+	private final Vector[] _av;      // Orthonormal Krylov basis; nomenclature: a for array, v for Vector
+	private final Vector _w, _z;     // Work vectors
+	private final double[] _adH;     // Hessenberg matrix, (m + 1) x m row-major, triangularized in place
+	private final double[] _adCos, _adSin; // Givens rotations
+	private final double[] _adG;     // Rotated right-hand side of the least-squares problem
+	private final double[] _adY;     // Basis coefficients of the update
+
+	/** Creates a solver for systems of dimension dim that restarts every DEFAULT_RESTART
+	 *  iterations
+	 *
+	 * @param dim
+	 * @throws LinAlgException if dim is not positive
+	 */
+	public GMRES(int dim) throws LinAlgException {
+		this(dim, DEFAULT_RESTART);
+	}
+
+	/** Creates a solver for systems of dimension dim that restarts every restart iterations
+	 *
+	 * @param dim
+	 * @param restart
+	 * @throws LinAlgException if dim or restart is not positive
+	 */
+	public GMRES(int dim, int restart) throws LinAlgException {
+		super(dim);
+		if (restart <= 0)
+			throw new LinAlgException("Restart length must be positive but is " + restart);
+		int m = Math.min(restart, dim);
+		_nRestart = m;
+		_av = new Vector[m + 1];
+		for (int i = 0; i <= m; i++)
+			_av[i] = new Vector(dim);
+		_w = new Vector(dim);
+		_z = new Vector(dim);
+		_adH = new double[(m + 1) * m];
+		_adCos = new double[m];
+		_adSin = new double[m];
+		_adG = new double[m + 1];
+		_adY = new double[m];
+	}
+
+	/** Return the number of iterations per restart cycle
+	 *
+	 * @return
+	 */
+	public int getRestart() {
+		return _nRestart;
+	}
+
+	@Override
+	void iterate(LinearOperator a, Vector b, Vector x) throws LinAlgException {
+		int m = _nRestart;
+		double[] h = _adH, g = _adG;
+		residual(a, b, x, _w);
+		double beta = norm(_w);
+		if (start(beta))
+			return;
+		while (canIterate()) {
+			_w.scalarMult(1d / beta, _av[0]);
+			Arrays.fill(g, 0d);
+			g[0] = beta;
+			int j = 0;
+			boolean converged = false;
+			while (j < m && canIterate()) {
+				precondition(_av[j], _z);
+				a.multiply(_z, _w);
+				for (int i = 0; i <= j; i++) {
+					double hij = Vector.InnerProd(_w, _av[i]);
+					h[i * m + j] = hij;
+					Vector.axpy(-hij, _av[i], _w);
+				}
+				double hNext = norm(_w);
+				// Apply the earlier rotations to the new column, then zero its subdiagonal
+				for (int i = 0; i < j; i++) {
+					double hi = h[i * m + j], hi1 = h[(i + 1) * m + j];
+					h[i * m + j] = _adCos[i] * hi + _adSin[i] * hi1;
+					h[(i + 1) * m + j] = -_adSin[i] * hi + _adCos[i] * hi1;
+				}
+				double hjj = h[j * m + j];
+				double r = Math.hypot(hjj, hNext);
+				_adCos[j] = r == 0d ? 1d : hjj / r;
+				_adSin[j] = r == 0d ? 0d : hNext / r;
+				h[j * m + j] = r;
+				h[(j + 1) * m + j] = 0d;
+				g[j + 1] = -_adSin[j] * g[j];
+				g[j] *= _adCos[j];
+				j++;
+				converged = record(Math.abs(g[j]));
+				if (converged || hNext == 0d)
+					break; // Converged, or the basis spans the solution exactly
+				_w.scalarMult(1d / hNext, _av[j]);
+			}
+			// Solve the j x j triangular system H * y = g and set x += M * (V * y)
+			for (int i = j - 1; i >= 0; i--) {
+				double s = g[i];
+				for (int t = i + 1; t < j; t++)
+					s -= h[i * m + t] * _adY[t];
+				_adY[i] = h[i * m + i] == 0d ? 0d : s / h[i * m + i];
+			}
+			Arrays.fill(_w.getArray(), 0d);
+			for (int i = 0; i < j; i++)
+				Vector.axpy(_adY[i], _av[i], _w);
+			precondition(_w, _z);
+			Vector.axpy(1d, _z, x);
+			if (converged)
+				return;
+			residual(a, b, x, _w); // Restart from the true residual
+			beta = norm(_w);
+			if (replace(beta))
+				return;
+		}
+	}
+}
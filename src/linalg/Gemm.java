@@ -0,0 +1,292 @@
+package linalg;
+
+/*** The dense matrix-matrix multiply kernel behind Matrix.Multiply(Matrix, Matrix).
+ *
+ *   Computes C += alpha * A * B on raw arrays, where every operand is described by an
+ *   offset and a row and column stride so that callers never go through the bounds-checked
+ *   get()/set() accessors.  Large products are tiled in the usual three cache levels:
+ *
+ *     - an NC-wide column slab of B is split into KC-deep panels that are *packed* into a
+ *       contiguous buffer (NR columns at a time) so the micro-kernel streams through it,
+ *     - an MC-tall row block of A is packed the same way (MR rows at a time) and stays in L2,
+ *     - an MR x NR register-blocked micro-kernel accumulates one tile of C in locals.
+ *
+ *   Small products skip the packing and run a plain i-k-j loop.  Matrix-vector products
+ *   use gemv(), which streams each row of A exactly once.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class Gemm {
+
+	static final int MR = 4; // Rows of C computed by one micro-kernel call
+	static final int NR = 4; // Columns of C computed by one micro-kernel call
+
+	// Block sizes, thresholds and gemv kernels in effect: set from the startup TuningProfile
+	// (see KernelTuner) and replaced as a whole by TuningProfile.apply(), so every call reads
+	// one consistent set
+	private static volatile Blocking _blocking = Blocking.of(TuningProfile.startup());
+
+	// One pair of packing buffers per thread so concurrent multiplies never share them
+	private static final ThreadLocal<double[][]> PACK = new ThreadLocal<double[][]>();
+
+	/** The block sizes, small-product threshold and gemv row kernels of a call; immutable, so
+	 *  that it can be published to other threads in one write
+	 */
+	static final class Blocking {
+
+		final int _nMC;             // Rows of A packed per block (multiple of MR, sized for L2)
+		final int _nKC;             // Depth of each packed panel (sized so an NR x KC panel of B sits in L1)
+		final int _nNC;             // Columns of B packed per slab (multiple of NR, sized for L3)
+		final long _lSmallFlops;    // Products with at most this many multiply-adds skip packing entirely
+		final VectorKernels _gemvDots; // Row dot products of gemv (SIMD only for rows long enough to pay off)
+
+		Blocking(int mc, int kc, int nc, long smallFlops, VectorKernels gemvDots) {
+			_nMC = mc;
+			_nKC = kc;
+			_nNC = nc;
+			_lSmallFlops = smallFlops;
+			_gemvDots = gemvDots;
+		}
+
+		/** Blocking for gemm() only (KernelTuner times candidates this way); gemv keeps the
+		 *  current row kernels
+		 */
+		Blocking(int mc, int kc, int nc, long smallFlops) {
+			this(mc, kc, nc, smallFlops, _blocking._gemvDots);
+		}
+
+		/** Returns the settings of the given profile */
+		static Blocking of(TuningProfile p) {
+			return new Blocking(p._nMC, p._nKC, p._nNC, p._lSmallFlops, VectorKernels.Loader.select(p._nGemvSimdMinCols));
+		}
+
+		/** Returns the settings in effect now */
+		static Blocking current() {
+			return _blocking;
+		}
+
+		/** Makes b the settings of all later calls */
+		static void install(Blocking b) {
+			_blocking = b;
+		}
+	}
+
+	private Gemm() {
+	}
+
+	/** Computes C += alpha * A * B where A is m x k, B is k x n and C is m x n
+	 *  (entry (i,j) of X is x[xOff + i * xRs + j * xCs])
+	 */
+	static void gemm(int m, int n, int k, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		gemm(_blocking, m, n, k, alpha, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs);
+	}
+
+	/** Same as gemm() above, with the given blocking instead of the current settings */
+	static void gemm(Blocking blocking, int m, int n, int k, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		if (m <= 0 || n <= 0 || k <= 0 || alpha == 0d)
+			return;
+		if ((long)m * n * k <= blocking._lSmallFlops) {
+			gemmSmall(m, n, k, alpha, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs);
+			return;
+		}
+		int mc = Math.min(blocking._nMC, roundUp(m, MR));
+		int kc = Math.min(blocking._nKC, k);
+		int nc = Math.min(blocking._nNC, roundUp(n, NR));
+		double[][] buf = packBuffers(mc * kc, kc * nc);
+		double[] packA = buf[0];
+		double[] packB = buf[1];
+		for (int jc = 0; jc < n; jc += nc) {
+			int nb = Math.min(nc, n - jc);
+			for (int pc = 0; pc < k; pc += kc) {
+				int kb = Math.min(kc, k - pc);
+				packB(kb, nb, b, bOff + pc * bRs + jc * bCs, bRs, bCs, packB);
+				for (int ic = 0; ic < m; ic += mc) {
+					int mb = Math.min(mc, m - ic);
+					packA(mb, kb, a, aOff + ic * aRs + pc * aCs, aRs, aCs, packA);
+					macroKernel(mb, nb, kb, alpha, packA, packB, c, cOff + ic * cRs + jc * cCs, cRs, cCs);
+				}
+			}
+		}
+	}
+
+	/** Computes y += alpha * A * x where A is m x n, x has n entries and y has m entries
+	 *  (entry i of a vector z is z[zOff + i * zInc])
+	 */
+	static void gemv(int m, int n, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] x, int xOff, int xInc,
+			double[] y, int yOff, int yInc) {
+		gemv(_blocking._gemvDots, m, n, alpha, a, aOff, aRs, aCs, x, xOff, xInc, y, yOff, yInc);
+	}
+
+	/** Same as gemv() above, with the given row dot products instead of the current ones */
+	static void gemv(VectorKernels dots, int m, int n, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] x, int xOff, int xInc,
+			double[] y, int yOff, int yInc) {
+		if (m <= 0 || n <= 0 || alpha == 0d)
+			return;
+		if (aCs == 1 && xInc == 1) {
+			// Rows are contiguous: one dot product per row
+			for (int i = 0; i < m; i++)
+				y[yOff + i * yInc] += alpha * dots.dot(a, aOff + i * aRs, x, xOff, n);
+		} else {
+			// Columns are contiguous (or neither is): accumulate one scaled column at a time
+			for (int j = 0; j < n; j++) {
+				double xj = alpha * x[xOff + j * xInc];
+				if (xj == 0d)
+					continue;
+				int aj = aOff + j * aCs;
+				for (int i = 0; i < m; i++)
+					y[yOff + i * yInc] += xj * a[aj + i * aRs];
+			}
+		}
+	}
+
+	/** Unpacked i-k-j loop for products too small to amortize packing */
+	private static void gemmSmall(int m, int n, int k, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		for (int i = 0; i < m; i++) {
+			int ci = cOff + i * cRs;
+			int ai = aOff + i * aRs;
+			for (int p = 0; p < k; p++) {
+				double aip = alpha * a[ai + p * aCs];
+				if (aip == 0d)
+					continue;
+				int bp = bOff + p * bRs;
+				if (bCs == 1 && cCs == 1) {
+					for (int j = 0; j < n; j++)
+						c[ci + j] += aip * b[bp + j];
+				} else {
+					for (int j = 0; j < n; j++)
+						c[ci + j * cCs] += aip * b[bp + j * bCs];
+				}
+			}
+		}
+	}
+
+	/** Runs the micro-kernel over every MR x NR tile of an mb x nb block of C */
+	private static void macroKernel(int mb, int nb, int kb, double alpha,
+			double[] packA, double[] packB, double[] c, int cOff, int cRs, int cCs) {
+		for (int jr = 0; jr < nb; jr += NR) {
+			int nr = Math.min(NR, nb - jr);
+			int bPanel = jr * kb;
+			for (int ir = 0; ir < mb; ir += MR) {
+				int mr = Math.min(MR, mb - ir);
+				microKernel(kb, alpha, packA, ir * kb, packB, bPanel, c, cOff + ir * cRs + jr * cCs, cRs, cCs, mr, nr);
+			}
+		}
+	}
+
+	/** Accumulates a 4 x 4 tile of C in registers; the packed panels are zero-padded so the
+	 *  inner loop never branches and only the mr x nr valid corner is written back
+	 */
+	private static void microKernel(int kb, double alpha, double[] pa, int aIdx, double[] pb, int bIdx,
+			double[] c, int cOff, int cRs, int cCs, int mr, int nr) {
+		double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+		double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+		double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+		double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+		for (int p = 0; p < kb; p++) {
+			double a0 = pa[aIdx], a1 = pa[aIdx + 1], a2 = pa[aIdx + 2], a3 = pa[aIdx + 3];
+			double b0 = pb[bIdx], b1 = pb[bIdx + 1], b2 = pb[bIdx + 2], b3 = pb[bIdx + 3];
+			c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+			c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+			c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+			c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+			aIdx += MR;
+			bIdx += NR;
+		}
+		if (mr == MR && nr == NR) {
+			int r0 = cOff, r1 = r0 + cRs, r2 = r1 + cRs, r3 = r2 + cRs;
+			int j1 = cCs, j2 = 2 * cCs, j3 = 3 * cCs;
+			c[r0] += alpha * c00; c[r0 + j1] += alpha * c01; c[r0 + j2] += alpha * c02; c[r0 + j3] += alpha * c03;
+			c[r1] += alpha * c10; c[r1 + j1] += alpha * c11; c[r1 + j2] += alpha * c12; c[r1 + j3] += alpha * c13;
+			c[r2] += alpha * c20; c[r2 + j1] += alpha * c21; c[r2 + j2] += alpha * c22; c[r2 + j3] += alpha * c23;
+			c[r3] += alpha * c30; c[r3 + j1] += alpha * c31; c[r3 + j2] += alpha * c32; c[r3 + j3] += alpha * c33;
+			return;
+		}
+		storeRow(c, cOff, cCs, nr, alpha, c00, c01, c02, c03);
+		if (mr > 1) storeRow(c, cOff + cRs, cCs, nr, alpha, c10, c11, c12, c13);
+		if (mr > 2) storeRow(c, cOff + 2 * cRs, cCs, nr, alpha, c20, c21, c22, c23);
+		if (mr > 3) storeRow(c, cOff + 3 * cRs, cCs, nr, alpha, c30, c31, c32, c33);
+	}
+
+	/** Adds alpha times the first nr of x0..x3 into one row of a partial edge tile */
+	private static void storeRow(double[] c, int off, int cCs, int nr, double alpha,
+			double x0, double x1, double x2, double x3) {
+		c[off] += alpha * x0;
+		if (nr > 1) c[off + cCs] += alpha * x1;
+		if (nr > 2) c[off + 2 * cCs] += alpha * x2;
+		if (nr > 3) c[off + 3 * cCs] += alpha * x3;
+	}
+
+	/** Packs an mb x kb block of A into row panels of MR: panel r holds, for each p, the MR
+	 *  entries A[r*MR .. r*MR+MR-1][p] contiguously (rows past mb are zero)
+	 */
+	private static void packA(int mb, int kb, double[] a, int aOff, int aRs, int aCs, double[] dst) {
+		int d = 0;
+		for (int ir = 0; ir < mb; ir += MR) {
+			int mr = Math.min(MR, mb - ir);
+			int rowBase = aOff + ir * aRs;
+			for (int p = 0; p < kb; p++) {
+				int src = rowBase + p * aCs;
+				int i = 0;
+				for (; i < mr; i++)
+					dst[d + i] = a[src + i * aRs];
+				for (; i < MR; i++)
+					dst[d + i] = 0d;
+				d += MR;
+			}
+		}
+	}
+
+	/** Packs a kb x nb block of B into column panels of NR: panel r holds, for each p, the NR
+	 *  entries B[p][r*NR .. r*NR+NR-1] contiguously (columns past nb are zero)
+	 */
+	private static void packB(int kb, int nb, double[] b, int bOff, int bRs, int bCs, double[] dst) {
+		int d = 0;
+		for (int jr = 0; jr < nb; jr += NR) {
+			int nr = Math.min(NR, nb - jr);
+			int colBase = bOff + jr * bCs;
+			for (int p = 0; p < kb; p++) {
+				int src = colBase + p * bRs;
+				int j = 0;
+				if (bCs == 1) {
+					for (; j < nr; j++)
+						dst[d + j] = b[src + j];
+				} else {
+					for (; j < nr; j++)
+						dst[d + j] = b[src + j * bCs];
+				}
+				for (; j < NR; j++)
+					dst[d + j] = 0d;
+				d += NR;
+			}
+		}
+	}
+
+	private static double[][] packBuffers(int sizeA, int sizeB) {
+		double[][] buf = PACK.get();
+		if (buf == null || buf[0].length < sizeA || buf[1].length < sizeB) {
+			buf = new double[][] {
+				new double[Math.max(sizeA, buf == null ? 0 : buf[0].length)],
+				new double[Math.max(sizeB, buf == null ? 0 : buf[1].length)] };
+			PACK.set(buf);
+		}
+		return buf;
+	}
+
+	private static int roundUp(int x, int multiple) {
+		return ((x + multiple - 1) / multiple) * multiple;
+	}
+}
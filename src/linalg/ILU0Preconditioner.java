@@ -0,0 +1,108 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** The incomplete LU preconditioner with zero fill-in, ILU(0), of a square SparseMatrix.
+ *
+ *   A is factored as L * U with L unit lower triangular and U upper triangular, but every
+ *   entry that would fall outside the sparsity pattern of A is dropped, so L and U together
+ *   take exactly the CSR pattern (and memory) of A.  Applying M = (L * U)^-1 is one forward
+ *   and one backward substitution, O(non-zeros).  ILU(0) usually cuts the iteration count of
+ *   BiCGSTAB and GMRES far more than JacobiPreconditioner does; it is not symmetric, so it
+ *   should not be used with ConjugateGradient.
+ *
+ *   Every diagonal entry of A must be stored; the factorization fails if a pivot becomes
+ *   zero.  The factors are kept in a private copy, so later changes to A do not affect them.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class ILU0Preconditioner implements LinearOperator {
+
+	private final int _nSize;
+	private final int[] _anRowPtr, _anColIdx; // Pattern of A (shared, never modified)
+	private final double[] _adLU; // L below the diagonal (unit diagonal implied) and U, in the pattern of A
+	private final int[] _anDiag;  // Index in _adLU of each diagonal entry
+
+	/** Factors the square sparse matrix a
+	 *
+	 * @param a
+	 * @throws LinAlgException if a is not square, lacks a diagonal entry or a pivot is zero
+	 */
+	public ILU0Preconditioner(SparseMatrix a) throws LinAlgException {
+		if (a.getNumRows() != a.getNumCols())
+			throw new LinAlgException("ILU(0) needs a square matrix but got " + a.getNumRows() + "x" + a.getNumCols());
+		int n = a.getNumRows();
+		int[] rowPtr = a.getRowPointers(), colIdx = a.getColumnIndices();
+		double[] lu = a.getValues().clone();
+		int[] diag = new int[n];
+		int[] pos = new int[n]; // pos[col] = index of (i,col) in row i, or -1
+		Arrays.fill(pos, -1);
+		for (int i = 0; i < n; i++) {
+			int start = rowPtr[i], end = rowPtr[i + 1];
+			for (int p = start; p < end; p++)
+				pos[colIdx[p]] = p;
+			// Eliminate with the rows k < i this row has an entry in (column indices are sorted)
+			int p = start;
+			for (; p < end && colIdx[p] < i; p++) {
+				int k = colIdx[p];
+				double lik = lu[p] /= lu[diag[k]];
+				for (int q = diag[k] + 1; q < rowPtr[k + 1]; q++) {
+					int at = pos[colIdx[q]];
+					if (at >= 0)
+						lu[at] -= lik * lu[q];
+				}
+			}
+			if (p == end || colIdx[p] != i)
+				throw new LinAlgException("ILU(0) needs every diagonal entry to be stored but (" + i + "," + i + ") is not!");
+			if (lu[p] == 0d)
+				throw new LinAlgException("ILU(0) met a zero pivot in row " + i + "!");
+			diag[i] = p;
+			for (int q = start; q < end; q++)
+				pos[colIdx[q]] = -1;
+		}
+		_nSize = n;
+		_anRowPtr = rowPtr;
+		_anColIdx = colIdx;
+		_adLU = lu;
+		_anDiag = diag;
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nSize;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nSize;
+	}
+
+	/** Computes out = (L * U)^-1 * x by forward and backward substitution
+	 *
+	 * @param x
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out shares storage with x
+	 */
+	@Override
+	public void multiply(Vector x, Vector out) throws LinAlgException {
+		if (x.getDim() != _nSize || out.getDim() != _nSize)
+			throw new LinAlgException("Vectors must have dimension " + _nSize + " but have " + x.getDim() + " and " + out.getDim());
+		if (x.getArray() == out.getArray())
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		double[] b = x.getArray(), y = out.getArray();
+		out.markModified();
+		for (int i = 0; i < _nSize; i++) {
+			double s = b[i];
+			for (int p = _anRowPtr[i]; p < _anDiag[i]; p++)
+				s -= _adLU[p] * y[_anColIdx[p]];
+			y[i] = s;
+		}
+		for (int i = _nSize - 1; i >= 0; i--) {
+			double s = y[i];
+			for (int p = _anDiag[i] + 1; p < _anRowPtr[i + 1]; p++)
+				s -= _adLU[p] * y[_anColIdx[p]];
+			y[i] = s / _adLU[_anDiag[i]];
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package linalg;
+
+/*** The size x size identity matrix (1's on the diagonal, 0's elsewhere), stored as just its
+ *   size.
+ *
+ *   Unlike Matrix.GetIdentity(size), which allocates and multiplies all size^2 entries,
+ *   every product with an IdentityMatrix is a copy of the other operand.  An IdentityMatrix
+ *   cannot be modified.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class IdentityMatrix extends StructuredMatrix {
+
+	/** Constructor: the size x size identity matrix
+	 *
+	 * @param size
+	 * @throws LinAlgException if size is <= 0
+	 */
+	public IdentityMatrix(int size) throws LinAlgException {
+		super(size);
+	}
+
+	@Override
+	double entry(int row, int col) {
+		return row == col ? 1d : 0d;
+	}
+
+	/** Always throws: the identity matrix cannot be modified
+	 *
+	 * @throws LinAlgException
+	 */
+	@Override
+	public void set(int row, int col, double val) throws LinAlgException {
+		throw new LinAlgException("An IdentityMatrix cannot be modified!");
+	}
+
+	@Override
+	public Vector multiply(Vector v) throws LinAlgException {
+		if (v.getDim() != _nSize)
+			throw new LinAlgException("m columns do not match the size of v!");
+		return new Vector(v);
+	}
+
+	@Override
+	public void multiply(Vector v, Vector out) throws LinAlgException {
+		checkOperands(v, out);
+		System.arraycopy(v.getArray(), 0, out.getArray(), 0, _nSize);
+	}
+
+	@Override
+	public Vector multiplyTranspose(Vector v) throws LinAlgException {
+		if (v.getDim() != _nSize)
+			throw new LinAlgException("m rows do not match the size of v!");
+		return new Vector(v);
+	}
+
+	@Override
+	public Matrix multiply(Matrix m) throws LinAlgException {
+		if (m.getNumRows() != _nSize)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		return new Matrix(m);
+	}
+
+	@Override
+	public Matrix multiplyLeft(Matrix m) throws LinAlgException {
+		if (m.getNumCols() != _nSize)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		return new Matrix(m);
+	}
+}
@@ -0,0 +1,48 @@
+package linalg;
+
+/*** The int8 dot products behind QuantizedMatrix, written against raw arrays.
+ *
+ *   dot(byte[], byte[]) is exact: it accumulates in int32 over runs of at most CHUNK
+ *   entries, which cannot overflow (each product is at most 128 * 128 = 2^14 in magnitude),
+ *   and adds the runs up in a long.  dot(byte[], double[]) widens the bytes to double and
+ *   accumulates in double.
+ *
+ *   As for VectorKernels, INSTANCE is SimdInt8Kernels whenever jdk.incubator.vector is
+ *   present at runtime and ScalarInt8Kernels otherwise (or with -Dlinalg.simd=false).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+interface Int8Kernels {
+
+	Int8Kernels INSTANCE = Loader.select();
+
+	/** Entries per int32 partial sum: 2^16 products of at most 2^14 in magnitude stay below 2^31 */
+	int CHUNK = 1 << 16;
+
+	/** Returns the exact sum over i < n of a[aOff + i] * b[bOff + i] */
+	long dot(byte[] a, int aOff, byte[] b, int bOff, int n);
+
+	/** Returns the sum over i < n of a[aOff + i] * b[bOff + i], accumulated in double */
+	double dot(byte[] a, int aOff, double[] b, int bOff, int n);
+
+	/** Picks the kernel implementation once, when Int8Kernels is first used */
+	final class Loader {
+
+		private Loader() {
+		}
+
+		static Int8Kernels select() {
+			if (!Boolean.parseBoolean(System.getProperty("linalg.simd", "true")))
+				return new ScalarInt8Kernels();
+			if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+				return new ScalarInt8Kernels();
+			try {
+				// Loaded reflectively so this class still links when the module is absent
+				return (Int8Kernels)Class.forName("linalg.SimdInt8Kernels").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return new ScalarInt8Kernels();
+			}
+		}
+	}
+}
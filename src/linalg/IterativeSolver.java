@@ -0,0 +1,223 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** Base class of the Krylov subspace solvers for A * x = b (ConjugateGradient, BiCGSTAB and
+ *   GMRES).
+ *
+ *   A is any square LinearOperator, so sparse, structured and matrix-free operators work as
+ *   well as dense ones, and each iteration costs one or two operator applications plus O(n)
+ *   vector work, i.e., O(non-zeros) for a SparseMatrix.  A solver is built for one dimension
+ *   and allocates all of its workspace vectors up front; solve() then updates x in place and
+ *   allocates nothing, so the same solver can be reused for many systems without producing
+ *   garbage.
+ *
+ *   An optional preconditioner M (a LinearOperator applying an approximation of the inverse
+ *   of A, e.g., JacobiPreconditioner or ILU0Preconditioner) is applied on the left by
+ *   ConjugateGradient and on the right by BiCGSTAB and GMRES, so the residual norms reported
+ *   are always those of the original system.  Iteration stops once the relative residual
+ *   norm ||b - A * x|| / ||b|| is at or below the tolerance, or after the maximum number of
+ *   iterations; getResidualHistory() records the relative residual norm after every
+ *   iteration.  A solver is not thread-safe.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public abstract class IterativeSolver {
+
+	final int _nDim;                // Dimension of the systems solved
+	private double _dTolerance = 1e-10;
+	private int _nMaxIterations = 1000;
+	private LinearOperator _precond; // Preconditioner, null for none
+	private double[] _adHistory;     // Relative residual norm before the first and after each iteration
+	private int _nIterations;        // Iterations performed by the last solve
+	private boolean _bConverged;
+	private double _dNormB;          // ||b|| of the current solve
+
+	IterativeSolver(int dim) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension cannot be less than or equal to 0!");
+		_nDim = dim;
+		_adHistory = new double[_nMaxIterations + 1];
+	}
+
+	/** Sets the relative residual norm ||b - A * x|| / ||b|| at which iteration stops
+	 *
+	 * @param tol
+	 * @throws LinAlgException if tol is not positive
+	 */
+	public void setTolerance(double tol) throws LinAlgException {
+		if (!(tol > 0d))
+			throw new LinAlgException("Tolerance must be positive but is " + tol);
+		_dTolerance = tol;
+	}
+
+	/** Return the relative residual norm at which iteration stops
+	 *
+	 * @return
+	 */
+	public double getTolerance() {
+		return _dTolerance;
+	}
+
+	/** Sets the maximum number of iterations of one solve (this reallocates the residual
+	 *  history, so call it before solving rather than between solves)
+	 *
+	 * @param max
+	 * @throws LinAlgException if max is not positive
+	 */
+	public void setMaxIterations(int max) throws LinAlgException {
+		if (max <= 0)
+			throw new LinAlgException("Maximum number of iterations must be positive but is " + max);
+		_nMaxIterations = max;
+		_adHistory = new double[max + 1];
+		_nIterations = 0;
+	}
+
+	/** Return the maximum number of iterations of one solve
+	 *
+	 * @return
+	 */
+	public int getMaxIterations() {
+		return _nMaxIterations;
+	}
+
+	/** Sets the preconditioner, an operator applying an approximation of the inverse of A
+	 *  (null for none)
+	 *
+	 * @param m
+	 * @throws LinAlgException if m is not square with the dimension of this solver
+	 */
+	public void setPreconditioner(LinearOperator m) throws LinAlgException {
+		if (m != null && (m.getNumRows() != _nDim || m.getNumCols() != _nDim))
+			throw new LinAlgException("Preconditioner must be " + _nDim + "x" + _nDim + " but is " + m.getNumRows() + "x" + m.getNumCols());
+		_precond = m;
+	}
+
+	/** Return the preconditioner (null for none)
+	 *
+	 * @return
+	 */
+	public LinearOperator getPreconditioner() {
+		return _precond;
+	}
+
+	/** Solves a * x = b, using the entries of x as the initial guess and overwriting them with
+	 *  the solution
+	 *
+	 * @param a
+	 * @param b
+	 * @param x
+	 * @return whether the tolerance was reached within the maximum number of iterations
+	 * @throws LinAlgException if the dimensions do not match this solver or x is b
+	 */
+	public boolean solve(LinearOperator a, Vector b, Vector x) throws LinAlgException {
+		if (a.getNumRows() != _nDim || a.getNumCols() != _nDim)
+			throw new LinAlgException("Operator must be " + _nDim + "x" + _nDim + " but is " + a.getNumRows() + "x" + a.getNumCols());
+		if (b.getDim() != _nDim || x.getDim() != _nDim)
+			throw new LinAlgException("Vectors must have dimension " + _nDim + " but b has " + b.getDim() + " and x has " + x.getDim());
+		if (b.getArray() == x.getArray())
+			throw new LinAlgException("Solution vector cannot share storage with the right-hand side!");
+		x.markModified();
+		_nIterations = 0;
+		_bConverged = false;
+		_dNormB = norm(b);
+		if (_dNormB == 0d) {
+			// The solution of A * x = 0 is x = 0
+			Arrays.fill(x.getArray(), 0d);
+			_adHistory[0] = 0d;
+			_bConverged = true;
+			return true;
+		}
+		iterate(a, b, x);
+		return _bConverged;
+	}
+
+	/** Return the number of iterations performed by the last solve
+	 *
+	 * @return
+	 */
+	public int getIterations() {
+		return _nIterations;
+	}
+
+	/** Return whether the last solve reached the tolerance
+	 *
+	 * @return
+	 */
+	public boolean isConverged() {
+		return _bConverged;
+	}
+
+	/** Return the relative residual norm reached by the last solve
+	 *
+	 * @return
+	 */
+	public double getResidualNorm() {
+		return _adHistory[_nIterations];
+	}
+
+	/** Returns a new array with the relative residual norm of the initial guess followed by
+	 *  the one after each iteration of the last solve (getIterations() + 1 entries)
+	 *
+	 * @return
+	 */
+	public double[] getResidualHistory() {
+		return Arrays.copyOf(_adHistory, _nIterations + 1);
+	}
+
+	/** Runs the iteration for a validated system with b != 0, reporting residual norms
+	 *  through start() and record() */
+	abstract void iterate(LinearOperator a, Vector b, Vector x) throws LinAlgException;
+
+	/** Records the residual norm of the initial guess; returns true if it already converged */
+	boolean start(double normR) {
+		_adHistory[0] = normR / _dNormB;
+		return _bConverged = _adHistory[0] <= _dTolerance;
+	}
+
+	/** Records the residual norm after one more iteration; returns true if it converged */
+	boolean record(double normR) {
+		double rel = normR / _dNormB;
+		_adHistory[++_nIterations] = rel;
+		return _bConverged = rel <= _dTolerance;
+	}
+
+	/** Replaces the last recorded residual norm with normR, e.g., with a recomputed true
+	 *  residual; returns true if it converged */
+	boolean replace(double normR) {
+		double rel = normR / _dNormB;
+		_adHistory[_nIterations] = rel;
+		return _bConverged = rel <= _dTolerance;
+	}
+
+	/** Whether another iteration is allowed */
+	boolean canIterate() {
+		return _nIterations < _nMaxIterations;
+	}
+
+	/** Whether the residual norm normR meets the tolerance (without recording it) */
+	boolean meetsTolerance(double normR) {
+		return normR / _dNormB <= _dTolerance;
+	}
+
+	/** Sets z = M * r for the preconditioner M, or z = r without one */
+	void precondition(Vector r, Vector z) throws LinAlgException {
+		if (_precond == null)
+			System.arraycopy(r.getArray(), 0, z.getArray(), 0, _nDim);
+		else
+			_precond.multiply(r, z);
+	}
+
+	/** Sets r = b - a * x */
+	static void residual(LinearOperator a, Vector b, Vector x, Vector r) throws LinAlgException {
+		a.multiply(x, r);
+		r.scalarMultInPlace(-1d);
+		r.elementwiseAddInPlace(b);
+	}
+
+	/** Returns ||v|| (the Euclidean norm) */
+	static double norm(Vector v) throws LinAlgException {
+		return Math.sqrt(Vector.InnerProd(v, v));
+	}
+}
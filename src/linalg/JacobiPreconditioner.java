@@ -0,0 +1,52 @@
+package linalg;
+
+/*** The Jacobi (diagonal) preconditioner M = diag(A)^-1.
+ *
+ *   Applying it is one elementwise product, so it is the cheapest preconditioner there is;
+ *   it helps most when the rows of A are badly scaled relative to each other.  It is
+ *   symmetric positive definite whenever the diagonal of A is positive, so it can be used
+ *   with ConjugateGradient.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class JacobiPreconditioner implements LinearOperator {
+
+	private final Vector _invDiag; // 1 / a(i,i)
+
+	/** Builds the preconditioner from the diagonal of the square matrix a
+	 *
+	 * @param a
+	 * @throws LinAlgException if a is not square or has a zero on its diagonal
+	 */
+	public JacobiPreconditioner(RealMatrix a) throws LinAlgException {
+		if (a.getNumRows() != a.getNumCols())
+			throw new LinAlgException("Jacobi preconditioner needs a square matrix but got " + a.getNumRows() + "x" + a.getNumCols());
+		int n = a.getNumRows();
+		_invDiag = new Vector(n);
+		double[] d = _invDiag.getArray();
+		for (int i = 0; i < n; i++) {
+			double aii = a.get(i, i);
+			if (aii == 0d)
+				throw new LinAlgException("Diagonal entry " + i + " is zero!");
+			d[i] = 1d / aii;
+		}
+	}
+
+	@Override
+	public int getNumRows() {
+		return _invDiag.getDim();
+	}
+
+	@Override
+	public int getNumCols() {
+		return _invDiag.getDim();
+	}
+
+	@Override
+	public void multiply(Vector x, Vector out) throws LinAlgException {
+		if (x.getArray() == out.getArray())
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		_invDiag.elementwiseMult(x, out);
+	}
+}
@@ -0,0 +1,266 @@
+package linalg;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+/*** Tuning mode: microbenchmarks the candidate kernel settings on the current machine and
+ *   returns the fastest as a TuningProfile.
+ *
+ *   Run it once per machine (it takes from several seconds to a minute) and save the result
+ *   where the library looks for it at startup:
+ *
+ *     java --enable-preview --add-modules jdk.incubator.vector -cp out linalg.KernelTuner [file]
+ *
+ *   It measures, in this order and each with the winners of the steps before it:
+ *
+ *     - the block sizes MC, KC and NC of the matrix multiply kernel on a square and a
+ *       wide product, by coordinate descent over a few candidates each,
+ *     - the largest cube the unpacked loop multiplies faster than the packed kernel,
+ *     - the shortest gemv row and Vector operand (dot, add, mult) on which the SIMD kernels
+ *       win, if they are available,
+ *     - the number of threads that multiplies a large product fastest and the smallest
+ *       product that is faster split across them than on one thread.
+ *
+ *   Every timing is the best of several samples of at least a couple of milliseconds, so a
+ *   noisy machine biases the results less than it would a single run.  The candidates are
+ *   passed to the kernels being timed rather than installed, so tuning changes no settings
+ *   of the running library and other threads keep multiplying with the current ones; call
+ *   apply() on the result to install it.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class KernelTuner {
+
+	private static final long WARMUP_NS = 50_000_000L; // Untimed runs first, so the JIT has compiled what is timed
+	private static final long SAMPLE_NS = 2_000_000L; // Shortest timed sample
+	private static final int SAMPLES = 5;             // Samples per measurement (the best counts)
+
+	private static final int[] MC_CANDIDATES = { 48, 72, 96, 144, 192, 256 };
+	private static final int[] KC_CANDIDATES = { 128, 192, 256, 384, 512 };
+	private static final int[] NC_CANDIDATES = { 512, 1024, 2048, 4096 };
+	private static final int[] SMALL_SIZES = { 8, 12, 16, 24, 32, 48, 64 };
+	private static final int[] GEMV_COLS = { 8, 16, 32, 64, 128, 256, 1024, 4096 };
+	private static final int[] VECTOR_LENGTHS = { 4, 8, 16, 32, 64, 256, 1024, 8192, 65536 };
+	private static final int[] PARALLEL_SIZES = { 32, 48, 64, 96, 128, 192, 256, 384 };
+
+	private static volatile double _dSink; // Keeps the JIT from discarding results nobody reads
+
+	private KernelTuner() {
+	}
+
+	/** Tunes the current machine, saves the profile to args[0] (or to
+	 *  TuningProfile.defaultPath()) and prints it
+	 *
+	 * @param args
+	 * @throws IOException if the profile cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		Path path = args.length > 0 ? Path.of(args[0]) : TuningProfile.defaultPath();
+		TuningProfile profile = tune();
+		profile.save(path);
+		System.out.println("Saved " + profile + " to " + path);
+	}
+
+	/** Measures the candidate settings and returns the fastest
+	 *
+	 * @return
+	 */
+	public static TuningProfile tune() {
+		int[] blocks = tuneBlocks();
+		long small = tuneSmall(blocks);
+		Gemm.Blocking blocking = new Gemm.Blocking(blocks[0], blocks[1], blocks[2], small);
+		VectorKernels scalar = new ScalarKernels();
+		VectorKernels simd = VectorKernels.Loader.simd();
+		int gemvSimd = simd == null ? TuningProfile.NEVER : tuneGemv(scalar, simd);
+		int vectorSimd = simd == null ? TuningProfile.NEVER : tuneVector(scalar, simd);
+		int cores = TuningProfile.machineCores();
+		int threads = 0;
+		long threshold = TuningProfile.defaults()._lParallelThreshold;
+		if (cores > 1) {
+			threads = tuneThreads(cores, blocking);
+			threshold = tuneParallelThreshold(threads, blocking);
+			if (threads == cores)
+				threads = 0; // Keep following the core count, e.g., in a resized container
+		}
+		return new TuningProfile(blocks[0], blocks[1], blocks[2], small, gemvSimd, vectorSimd,
+				threshold, threads, TuningProfile.machineArch(), cores);
+	}
+
+	/** Returns the fastest { MC, KC, NC }, tuning KC, then MC, then NC with the others fixed */
+	private static int[] tuneBlocks() {
+		double[][] square = operands(384, 384, 384);
+		double[][] wide = operands(96, 1536, 384);
+		int[] blocks = { 96, KC_CANDIDATES[0], 2048 };
+		Runnable bench = () -> {
+			Gemm.Blocking blocking = new Gemm.Blocking(blocks[0], blocks[1], blocks[2], 0L);
+			gemm(blocking, 384, 384, 384, square);
+			gemm(blocking, 96, 1536, 384, wide);
+		};
+		blocks[1] = best(KC_CANDIDATES, kc -> blocks[1] = kc, bench);
+		blocks[0] = best(MC_CANDIDATES, mc -> blocks[0] = mc, bench);
+		blocks[2] = best(NC_CANDIDATES, nc -> blocks[2] = nc, bench);
+		return blocks;
+	}
+
+	/** Returns the number of multiply-adds up to which the unpacked loop wins */
+	private static long tuneSmall(int[] blocks) {
+		Gemm.Blocking unpacked = new Gemm.Blocking(blocks[0], blocks[1], blocks[2], Long.MAX_VALUE);
+		Gemm.Blocking packed = new Gemm.Blocking(blocks[0], blocks[1], blocks[2], 0L);
+		long threshold = 0L;
+		for (int n : SMALL_SIZES) {
+			double[][] ops = operands(n, n, n);
+			if (nanos(() -> gemm(unpacked, n, n, n, ops)) > nanos(() -> gemm(packed, n, n, n, ops)))
+				break;
+			threshold = (long)n * n * n;
+		}
+		return threshold;
+	}
+
+	/** Returns the shortest row on which the SIMD dot product wins for all longer rows */
+	private static int tuneGemv(VectorKernels scalar, VectorKernels simd) {
+		double[] simdWins = new double[GEMV_COLS.length];
+		for (int c = 0; c < GEMV_COLS.length; c++) {
+			int n = GEMV_COLS[c];
+			int m = Math.max(4, (1 << 15) / n); // Keep the matrix in L2 so the kernel, not memory, is timed
+			double[][] ops = operands(m, 1, n);
+			simdWins[c] = nanos(() -> Gemm.gemv(scalar, m, n, 1d, ops[0], 0, n, 1, ops[1], 0, 1, ops[2], 0, 1))
+					- nanos(() -> Gemm.gemv(simd, m, n, 1d, ops[0], 0, n, 1, ops[1], 0, 1, ops[2], 0, 1));
+		}
+		return simdFrom(GEMV_COLS, simdWins);
+	}
+
+	/** Returns the shortest operand on which the SIMD Vector kernels win for all longer ones */
+	private static int tuneVector(VectorKernels scalar, VectorKernels simd) {
+		double[] simdWins = new double[VECTOR_LENGTHS.length];
+		for (int c = 0; c < VECTOR_LENGTHS.length; c++) {
+			int n = VECTOR_LENGTHS[c];
+			double[] a = random(n), b = random(n), out = new double[n];
+			simdWins[c] = nanos(vectorOps(scalar, a, b, out, n)) - nanos(vectorOps(simd, a, b, out, n));
+		}
+		return simdFrom(VECTOR_LENGTHS, simdWins);
+	}
+
+	/** Returns the number of threads that multiplies a large product fastest */
+	private static int tuneThreads(int cores, Gemm.Blocking blocking) {
+		double[][] ops = operands(512, 512, 512);
+		int best = cores;
+		double bestNs = Double.MAX_VALUE;
+		for (int threads = cores; threads >= 2; threads /= 2) { // All cores, half of them, ...
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				double t = nanos(() -> parallelGemm(pool, blocking, 512, 512, 512, ops));
+				if (t < bestNs) {
+					bestNs = t;
+					best = pool.getParallelism();
+				}
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return best;
+	}
+
+	/** Returns the smallest product that is faster split across threads, for it and every
+	 *  larger product measured (Long.MAX_VALUE if none is) */
+	private static long tuneParallelThreshold(int threads, Gemm.Blocking blocking) {
+		double[] parallelWins = new double[PARALLEL_SIZES.length];
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			for (int s = 0; s < PARALLEL_SIZES.length; s++) {
+				int n = PARALLEL_SIZES[s];
+				double[][] ops = operands(n, n, n);
+				parallelWins[s] = nanos(() -> gemm(blocking, n, n, n, ops)) - nanos(() -> parallelGemm(pool, blocking, n, n, n, ops));
+			}
+		} finally {
+			pool.shutdown();
+		}
+		int n = crossover(PARALLEL_SIZES, parallelWins);
+		return n == TuningProfile.NEVER ? Long.MAX_VALUE : (long)n * n * n;
+	}
+
+	/** Returns the first size from which wins[] stays positive (TuningProfile.NEVER if the
+	 *  last one is not) */
+	private static int crossover(int[] sizes, double[] wins) {
+		int from = TuningProfile.NEVER;
+		for (int i = sizes.length - 1; i >= 0 && wins[i] > 0d; i--)
+			from = sizes[i];
+		return from;
+	}
+
+	/** Returns the SIMD threshold for crossover(sizes, wins): 0 if SIMD wins throughout */
+	private static int simdFrom(int[] sizes, double[] wins) {
+		int from = crossover(sizes, wins);
+		return from == sizes[0] ? 0 : from;
+	}
+
+	/** Sets each candidate with set and returns the one for which bench runs fastest */
+	private static int best(int[] candidates, IntConsumer set, Runnable bench) {
+		int best = candidates[0];
+		double bestNs = Double.MAX_VALUE;
+		for (int c : candidates) {
+			set.accept(c);
+			double t = nanos(bench);
+			if (t < bestNs) {
+				bestNs = t;
+				best = c;
+			}
+		}
+		return best;
+	}
+
+	/** Returns the best time per call of r, over SAMPLES samples of at least SAMPLE_NS */
+	private static double nanos(Runnable r) {
+		long end = System.nanoTime() + WARMUP_NS;
+		while (System.nanoTime() < end)
+			r.run();
+		int calls = 1;
+		long t;
+		while ((t = time(r, calls)) < SAMPLE_NS)
+			calls *= 2;
+		double best = (double)t / calls;
+		for (int s = 1; s < SAMPLES; s++)
+			best = Math.min(best, (double)time(r, calls) / calls);
+		return best;
+	}
+
+	private static long time(Runnable r, int calls) {
+		long t0 = System.nanoTime();
+		for (int i = 0; i < calls; i++)
+			r.run();
+		return System.nanoTime() - t0;
+	}
+
+	private static Runnable vectorOps(VectorKernels k, double[] a, double[] b, double[] out, int n) {
+		return () -> {
+			k.add(a, 0, b, 0, out, 0, n);
+			k.mult(a, 0, out, 0, out, 0, n);
+			_dSink = k.dot(a, 0, out, 0, n);
+		};
+	}
+
+	/** Returns { A, B, C } for an m x k times k x n product */
+	private static double[][] operands(int m, int n, int k) {
+		return new double[][] { random(m * k), random(k * n), new double[m * n] };
+	}
+
+	private static void gemm(Gemm.Blocking blocking, int m, int n, int k, double[][] ops) {
+		Gemm.gemm(blocking, m, n, k, 1d, ops[0], 0, k, 1, ops[1], 0, n, 1, ops[2], 0, n, 1);
+	}
+
+	/** Splits the product across pool whatever its size */
+	private static void parallelGemm(ForkJoinPool pool, Gemm.Blocking blocking, int m, int n, int k, double[][] ops) {
+		ParallelGemm.gemm(pool, 0L, blocking, m, n, k, 1d, ops[0], 0, k, 1, ops[1], 0, n, 1, ops[2], 0, n, 1);
+	}
+
+	private static double[] random(int n) {
+		Random r = new Random(n);
+		double[] a = new double[n];
+		for (int i = 0; i < n; i++)
+			a[i] = r.nextDouble() - 0.5;
+		return a;
+	}
+}
@@ -0,0 +1,201 @@
+package linalg;
+
+/*** LU factorization with partial pivoting of a square Matrix: P * A = L * U with L unit
+ *   lower triangular, U upper triangular and P a row permutation.
+ *
+ *   The factorization is blocked (right-looking): each panel of NB columns is factored with
+ *   row pivoting, the matching block row of U is found by forward substitution, and the rest
+ *   of the matrix is updated with one matrix-matrix product on the parallel Gemm kernel,
+ *   which is where almost all of the O(n^3) work happens.
+ *
+ *   Factoring costs O(n^3) once; afterwards every solve costs O(n^2), so keep the
+ *   LUDecomposition around when solving many systems with the same matrix.  L and U are
+ *   kept in a private copy, so later changes to the factored Matrix do not affect it.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class LUDecomposition {
+
+	static final int NB = 64; // Columns per panel
+
+	private final int _nSize;    // Number of rows and columns of A
+	private final double[] _adLU; // L (below the diagonal, unit diagonal implied) and U, row-major
+	private final int[] _anPerm;  // Row i of P * A is row _anPerm[i] of A
+	private final int _nPermSign; // Determinant of P: +1 or -1
+	private final boolean _bSingular;
+
+	/** Factors the square matrix a
+	 *
+	 * @param a
+	 * @throws LinAlgException if a is not square
+	 */
+	public LUDecomposition(Matrix a) throws LinAlgException {
+		if (a.getNumRows() != a.getNumCols())
+			throw new LinAlgException("LU factorization needs a square matrix but got " + a.getNumRows() + "x" + a.getNumCols());
+		int n = a.getNumRows();
+		_nSize = n;
+		_adLU = new Matrix(a).getArray();
+		_anPerm = new int[n];
+		for (int i = 0; i < n; i++)
+			_anPerm[i] = i;
+		double[] lu = _adLU;
+		int sign = 1;
+		boolean singular = false;
+		for (int k0 = 0; k0 < n; k0 += NB) {
+			int kb = Math.min(NB, n - k0);
+			int k1 = k0 + kb;
+			// Factor the panel of columns k0..k1-1, swapping whole rows
+			for (int j = k0; j < k1; j++) {
+				int p = j;
+				for (int i = j + 1; i < n; i++)
+					if (Math.abs(lu[i * n + j]) > Math.abs(lu[p * n + j]))
+						p = i;
+				if (p != j) {
+					swapRows(lu, n, p, j);
+					int t = _anPerm[p];
+					_anPerm[p] = _anPerm[j];
+					_anPerm[j] = t;
+					sign = -sign;
+				}
+				double pivot = lu[j * n + j];
+				if (pivot == 0d) {
+					singular = true;
+					continue;
+				}
+				for (int i = j + 1; i < n; i++) {
+					double l = lu[i * n + j] /= pivot;
+					for (int c = j + 1; c < k1; c++)
+						lu[i * n + c] -= l * lu[j * n + c];
+				}
+			}
+			if (k1 == n)
+				break;
+			// Block row of U: solve L11 * U12 = A12 by forward substitution
+			for (int j = k0 + 1; j < k1; j++)
+				for (int t = k0; t < j; t++) {
+					double l = lu[j * n + t];
+					for (int c = k1; c < n; c++)
+						lu[j * n + c] -= l * lu[t * n + c];
+				}
+			// Trailing update A22 -= L21 * U12 on the blocked kernel
+			ParallelGemm.gemm(ParallelGemm.defaultPool(), n - k1, n - k1, kb, -1d,
+					lu, k1 * n + k0, n, 1,
+					lu, k0 * n + k1, n, 1,
+					lu, k1 * n + k1, n, 1);
+		}
+		_nPermSign = sign;
+		_bSingular = singular;
+	}
+
+	/** Return true if the factored matrix is exactly singular (a zero pivot was met), in
+	 *  which case solve() and inverse() throw
+	 *
+	 * @return
+	 */
+	public boolean isSingular() {
+		return _bSingular;
+	}
+
+	/** Return the row permutation: row i of P * A is row getPivot()[i] of A
+	 *
+	 * @return
+	 */
+	public int[] getPivot() {
+		return _anPerm.clone();
+	}
+
+	/** Return the determinant of the factored matrix
+	 *
+	 * @return
+	 */
+	public double determinant() {
+		double det = _nPermSign;
+		for (int i = 0; i < _nSize; i++)
+			det *= _adLU[i * _nSize + i];
+		return det;
+	}
+
+	/** Returns the solution x of A * x = b
+	 *
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if the size of b does not match A or A is singular
+	 */
+	public Vector solve(Vector b) throws LinAlgException {
+		if (b.getDim() != _nSize)
+			throw new LinAlgException("Right-hand side has dimension " + b.getDim() + " but the matrix is " + _nSize + "x" + _nSize);
+		checkNonSingular();
+		int n = _nSize;
+		double[] lu = _adLU, bv = b.getArray();
+		double[] x = new double[n];
+		for (int i = 0; i < n; i++) {
+			double s = bv[_anPerm[i]];
+			for (int t = 0; t < i; t++)
+				s -= lu[i * n + t] * x[t];
+			x[i] = s;
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			double s = x[i];
+			for (int t = i + 1; t < n; t++)
+				s -= lu[i * n + t] * x[t];
+			x[i] = s / lu[i * n + i];
+		}
+		return new Vector(x);
+	}
+
+	/** Returns the solution X of A * X = B, i.e., one solution column per column of B; the
+	 *  substitutions sweep all right-hand sides together row by row
+	 *
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if the rows of b do not match A or A is singular
+	 */
+	public Matrix solve(Matrix b) throws LinAlgException {
+		if (b.getNumRows() != _nSize)
+			throw new LinAlgException("Right-hand side has " + b.getNumRows() + " rows but the matrix is " + _nSize + "x" + _nSize);
+		checkNonSingular();
+		int n = _nSize, k = b.getNumCols();
+		Matrix result = new Matrix(n, k);
+		double[] lu = _adLU, x = result.getArray();
+		double[] bv = b.getArray();
+		int off = b.getOffset(), rs = b.getRowStride(), cs = b.getColStride();
+		for (int i = 0; i < n; i++) {
+			int src = off + _anPerm[i] * rs;
+			for (int c = 0; c < k; c++)
+				x[i * k + c] = bv[src + c * cs];
+			for (int t = 0; t < i; t++)
+				StructuredMatrix.axpyRow(-lu[i * n + t], x, t * k, 1, x, i * k, k);
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			for (int t = i + 1; t < n; t++)
+				StructuredMatrix.axpyRow(-lu[i * n + t], x, t * k, 1, x, i * k, k);
+			double d = lu[i * n + i];
+			for (int c = 0; c < k; c++)
+				x[i * k + c] /= d;
+		}
+		return result;
+	}
+
+	/** Returns the inverse of the factored matrix
+	 *
+	 * @return
+	 * @throws LinAlgException if the matrix is singular
+	 */
+	public Matrix inverse() throws LinAlgException {
+		return solve(Matrix.GetIdentity(_nSize));
+	}
+
+	private void checkNonSingular() throws LinAlgException {
+		if (_bSingular)
+			throw new LinAlgException("Matrix is singular!");
+	}
+
+	private static void swapRows(double[] a, int n, int r1, int r2) {
+		for (int c = 0; c < n; c++) {
+			double t = a[r1 * n + c];
+			a[r1 * n + c] = a[r2 * n + c];
+			a[r2 * n + c] = t;
+		}
+	}
+}
@@ -0,0 +1,399 @@
+package linalg;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*** Opt-in, operation-level metrics for the public Matrix and Vector operations.
+ *
+ *   When enabled (setEnabled(true), or -Dlinalg.metrics=true at startup) every instrumented
+ *   call records its count, the largest of its dimensions, its floating point operations,
+ *   the bytes its operands and result occupy, the bytes it allocates for its result, and
+ *   its latency.  Everything is kept in LongAdder counters, which are striped across
+ *   threads, so concurrent callers never contend on a lock or a single cache line.
+ *   Dimensions go into power-of-two buckets and latencies into log-linear buckets (8 per
+ *   power of two, i.e., within 12.5%), from which snapshot() derives percentiles.
+ *
+ *   Calls that take at least the slow threshold (default 1 ms, see setSlowThreshold) are
+ *   also emitted as "linalg.SlowOperation" JDK Flight Recorder events, so they show up next
+ *   to GC and allocation events in a recording.
+ *
+ *   When disabled, an instrumented call costs one read of a volatile boolean and a
+ *   predicted branch, so the instrumentation can stay compiled into the hot paths.
+ *   Operations that delegate to another instrumented operation are counted once, under the
+ *   operation that does the work (e.g., Matrix.multiplyInto counts as Matrix.gemv).
+ *
+ *   The instrumented operations are the dense Matrix products (Multiply, MultiplyParallel,
+ *   MultiplyStrassen, MultiplyBatch, gemm, gemv, multiplyTranspose and everything that
+ *   delegates to them), Matrix.transpose, the SparseMatrix products, and the Vector
+ *   operations in both their allocating and in-place forms.  The StructuredMatrix products,
+ *   the decompositions and the iterative solvers are not instrumented themselves; a
+ *   solver's time shows up under the products and vector operations it calls.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class LinAlgMetrics {
+
+	private static volatile boolean _bEnabled = Boolean.getBoolean("linalg.metrics");
+	private static volatile long _lSlowNs = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private LinAlgMetrics() {
+	}
+
+	/** The instrumented operations */
+	enum Op {
+		MATRIX_MULTIPLY("Matrix.Multiply"),
+		MATRIX_MULTIPLY_VECTOR("Matrix.Multiply(m,v)"),
+		MATRIX_MULTIPLY_PARALLEL("Matrix.MultiplyParallel"),
+		MATRIX_MULTIPLY_PARALLEL_VECTOR("Matrix.MultiplyParallel(m,v)"),
+		MATRIX_MULTIPLY_STRASSEN("Matrix.MultiplyStrassen"),
+		MATRIX_MULTIPLY_BATCH("Matrix.MultiplyBatch"),
+		MATRIX_GEMM("Matrix.gemm"),
+		MATRIX_GEMV("Matrix.gemv"),
+		MATRIX_MULTIPLY_TRANSPOSE("Matrix.multiplyTranspose"),
+		MATRIX_TRANSPOSE("Matrix.transpose"),
+		SPARSE_MULTIPLY("SparseMatrix.Multiply"),
+		SPARSE_MULTIPLY_VECTOR("SparseMatrix.Multiply(s,v)"),
+		SPARSE_MULTIPLY_TRANSPOSE("SparseMatrix.MultiplyTranspose"),
+		SPARSE_MULTIPLY_PARALLEL_VECTOR("SparseMatrix.MultiplyParallel(s,v)"),
+		VECTOR_INNER_PROD("Vector.InnerProd"),
+		VECTOR_AXPY("Vector.axpy"),
+		VECTOR_ELEMENTWISE_ADD("Vector.elementwiseAdd"),
+		VECTOR_ELEMENTWISE_MULT("Vector.elementwiseMult"),
+		VECTOR_SCALAR_ADD("Vector.scalarAdd"),
+		VECTOR_SCALAR_MULT("Vector.scalarMult");
+
+		final String _sName;
+		final Stats _stats = new Stats();
+
+		Op(String name) {
+			_sName = name;
+		}
+	}
+
+	/** Enables or disables recording (counters keep their values while disabled)
+	 *
+	 * @param enabled
+	 */
+	public static void setEnabled(boolean enabled) {
+		_bEnabled = enabled;
+	}
+
+	/** Return whether recording is enabled
+	 *
+	 * @return
+	 */
+	public static boolean isEnabled() {
+		return _bEnabled;
+	}
+
+	/** Sets the latency at or above which a call is emitted as a Flight Recorder event
+	 *
+	 * @param threshold
+	 * @param unit
+	 * @throws LinAlgException if threshold is negative
+	 */
+	public static void setSlowThreshold(long threshold, TimeUnit unit) throws LinAlgException {
+		if (threshold < 0)
+			throw new LinAlgException("Slow threshold cannot be negative!");
+		_lSlowNs = unit.toNanos(threshold);
+	}
+
+	/** Returns the current statistics of every operation called at least once, in a fixed
+	 *  order; counters that are updated while the snapshot is taken may be included in some
+	 *  of its fields and not others
+	 *
+	 * @return
+	 */
+	public static List<OperationStats> snapshot() {
+		List<OperationStats> stats = new ArrayList<>();
+		for (Op op : Op.values()) {
+			OperationStats s = op._stats.snapshot(op._sName);
+			if (s._lCalls > 0)
+				stats.add(s);
+		}
+		return stats;
+	}
+
+	/** Sets all counters back to zero
+	 *
+	 */
+	public static void reset() {
+		for (Op op : Op.values())
+			op._stats.reset();
+	}
+
+	/** Returns the start time of an instrumented call, or 0 when recording is disabled */
+	static long start() {
+		return _bEnabled ? System.nanoTime() : 0L;
+	}
+
+	/** Records a call that started at t0 (as returned by start(), and non-zero) */
+	static void record(Op op, long t0, long dim, long flops, long bytes, long allocated) {
+		long ns = System.nanoTime() - t0;
+		op._stats.add(dim, flops, bytes, allocated, ns);
+		if (ns >= _lSlowNs) {
+			SlowOperationEvent e = new SlowOperationEvent();
+			if (e.isEnabled()) {
+				e._sOperation = op._sName;
+				e._lDimension = dim;
+				e._lFlops = flops;
+				e._lBytes = bytes;
+				e._lDuration = ns;
+				e.commit();
+			}
+		}
+	}
+
+	/** Records an m x k times k x n product (n = 1 for a matrix-vector product), which
+	 *  allocates its result when allocates is set */
+	static void recordProduct(Op op, long t0, long m, long n, long k, boolean allocates) {
+		record(op, t0, Math.max(m, Math.max(n, k)), 2L * m * n * k,
+				(m * k + k * n + m * n) * Double.BYTES, allocates ? m * n * Double.BYTES : 0L);
+	}
+
+	/** Records the product of a rows x cols sparse matrix holding nnz entries with n dense
+	 *  vectors of dimension cols (n = 1 for a matrix-vector product), which allocates its
+	 *  rows x n result when allocates is set */
+	static void recordSparse(Op op, long t0, long rows, long cols, long nnz, long n, boolean allocates) {
+		record(op, t0, Math.max(rows, Math.max(cols, n)), 2L * nnz * n,
+				nnz * (Double.BYTES + Integer.BYTES) + (rows + 1) * Integer.BYTES + (cols + rows) * n * Double.BYTES,
+				allocates ? rows * n * Double.BYTES : 0L);
+	}
+
+	/** Records an operation over vectors of dimension n doing flopsPerEntry operations and
+	 *  touching arrays vectors per entry, which allocates its result when allocates is set */
+	static void recordVector(Op op, long t0, long n, int flopsPerEntry, int arrays, boolean allocates) {
+		record(op, t0, n, flopsPerEntry * n, arrays * n * Double.BYTES, allocates ? n * Double.BYTES : 0L);
+	}
+
+	/** The statistics of one operation at the time of a snapshot() */
+	public static final class OperationStats {
+
+		private final String _sName;
+		private final long _lCalls, _lFlops, _lBytes, _lAllocated, _lNanos;
+		private final long[] _alDims;      // Calls per dimension bucket; nomenclature: a for array, l for long
+		private final long[] _alLatencies; // Calls per latency bucket
+
+		private OperationStats(String name, long calls, long flops, long bytes, long allocated, long nanos, long[] dims, long[] latencies) {
+			_sName = name;
+			_lCalls = calls;
+			_lFlops = flops;
+			_lBytes = bytes;
+			_lAllocated = allocated;
+			_lNanos = nanos;
+			_alDims = dims;
+			_alLatencies = latencies;
+		}
+
+		/** Return the operation name, e.g., "Matrix.Multiply"
+		 *
+		 * @return
+		 */
+		public String getName() {
+			return _sName;
+		}
+
+		/** Return the number of calls
+		 *
+		 * @return
+		 */
+		public long getCalls() {
+			return _lCalls;
+		}
+
+		/** Return the floating point operations of all calls
+		 *
+		 * @return
+		 */
+		public long getFlops() {
+			return _lFlops;
+		}
+
+		/** Return the bytes occupied by the operands and results of all calls
+		 *
+		 * @return
+		 */
+		public long getBytes() {
+			return _lBytes;
+		}
+
+		/** Return the bytes allocated for the results of all calls
+		 *
+		 * @return
+		 */
+		public long getAllocatedBytes() {
+			return _lAllocated;
+		}
+
+		/** Return the total latency of all calls in nanoseconds
+		 *
+		 * @return
+		 */
+		public long getTotalNanos() {
+			return _lNanos;
+		}
+
+		/** Return a new array whose entry i counts the calls whose largest dimension was in
+		 *  [2^(i-1), 2^i) (entry 0 counts dimension 0)
+		 *
+		 * @return
+		 */
+		public long[] getDimensionHistogram() {
+			return _alDims.clone();
+		}
+
+		/** Returns the latency in nanoseconds that fraction p of the calls did not exceed,
+		 *  rounded up to the end of its histogram bucket (e.g., p = 0.99 for the 99th
+		 *  percentile)
+		 *
+		 * @param p
+		 * @return
+		 * @throws LinAlgException if p is not in [0,1]
+		 */
+		public long getLatencyPercentile(double p) throws LinAlgException {
+			if (!(p >= 0d && p <= 1d))
+				throw new LinAlgException("Percentile must be in [0,1] but is " + p);
+			long total = 0;
+			for (long c : _alLatencies)
+				total += c;
+			if (total == 0)
+				return 0L;
+			long rank = Math.max(1L, (long)Math.ceil(p * total));
+			long seen = 0;
+			for (int i = 0; i < _alLatencies.length; i++) {
+				seen += _alLatencies[i];
+				if (seen >= rank)
+					return Stats.bucketEnd(i);
+			}
+			return Stats.bucketEnd(_alLatencies.length - 1);
+		}
+
+		/** One line with the counters and the median and 99th percentile latency */
+		@Override
+		public String toString() {
+			try {
+				return String.format(Locale.ROOT, "%s calls=%d flops=%d bytes=%d allocated=%d total_ns=%d p50_ns=%d p99_ns=%d",
+						_sName, _lCalls, _lFlops, _lBytes, _lAllocated, _lNanos, getLatencyPercentile(0.5d), getLatencyPercentile(0.99d));
+			} catch (LinAlgException e) {
+				throw new IllegalStateException(e); // Cannot happen: the percentiles are valid
+			}
+		}
+	}
+
+	/** The counters of one operation */
+	private static final class Stats {
+
+		private static final int SUB_BITS = 3;          // Latency buckets per power of two: 2^SUB_BITS
+		private static final int MAX_EXP = 44;          // Latencies are capped at 2^44 ns (about 4.9 hours)
+		private static final int LATENCY_BUCKETS = ((MAX_EXP - SUB_BITS) << SUB_BITS) + (1 << SUB_BITS);
+
+		final LongAdder _calls = new LongAdder(), _flops = new LongAdder(), _bytes = new LongAdder();
+		final LongAdder _allocated = new LongAdder(), _nanos = new LongAdder();
+		final LongAdder[] _aDims = adders(Long.SIZE + 1);
+		final LongAdder[] _aLatencies = adders(LATENCY_BUCKETS);
+
+		void add(long dim, long flops, long bytes, long allocated, long ns) {
+			_calls.increment();
+			_flops.add(flops);
+			_bytes.add(bytes);
+			_allocated.add(allocated);
+			_nanos.add(ns);
+			_aDims[Long.SIZE - Long.numberOfLeadingZeros(Math.max(dim, 0L))].increment();
+			_aLatencies[bucket(ns)].increment();
+		}
+
+		OperationStats snapshot(String name) {
+			return new OperationStats(name, _calls.sum(), _flops.sum(), _bytes.sum(), _allocated.sum(), _nanos.sum(),
+					sums(_aDims), sums(_aLatencies));
+		}
+
+		void reset() {
+			_calls.reset();
+			_flops.reset();
+			_bytes.reset();
+			_allocated.reset();
+			_nanos.reset();
+			for (LongAdder a : _aDims)
+				a.reset();
+			for (LongAdder a : _aLatencies)
+				a.reset();
+		}
+
+		/** Log-linear bucket of a latency: exact below 2^SUB_BITS, then 2^SUB_BITS buckets per
+		 *  power of two */
+		static int bucket(long ns) {
+			ns = Math.min(Math.max(ns, 0L), (1L << MAX_EXP) - 1);
+			if (ns < (1 << SUB_BITS))
+				return (int)ns;
+			int exp = 63 - Long.numberOfLeadingZeros(ns);
+			int sub = (int)(ns >>> (exp - SUB_BITS)) & ((1 << SUB_BITS) - 1);
+			return ((exp - SUB_BITS + 1) << SUB_BITS) | sub;
+		}
+
+		/** Largest latency in bucket i */
+		static long bucketEnd(int i) {
+			if (i < (1 << SUB_BITS))
+				return i;
+			int shift = (i >>> SUB_BITS) - 1;
+			long first = (long)((1 << SUB_BITS) | (i & ((1 << SUB_BITS) - 1))) << shift;
+			return first + (1L << shift) - 1;
+		}
+
+		private static LongAdder[] adders(int n) {
+			LongAdder[] a = new LongAdder[n];
+			for (int i = 0; i < n; i++)
+				a[i] = new LongAdder();
+			return a;
+		}
+
+		private static long[] sums(LongAdder[] a) {
+			long[] s = new long[a.length];
+			for (int i = 0; i < a.length; i++)
+				s[i] = a[i].sum();
+			return s;
+		}
+	}
+
+	/** Flight Recorder event for a call that took at least the slow threshold */
+	@Name("linalg.SlowOperation")
+	@Label("Slow Linear Algebra Operation")
+	@Category("Linear Algebra")
+	@Description("A Matrix or Vector operation that took at least the LinAlgMetrics slow threshold")
+	static final class SlowOperationEvent extends Event {
+
+		@Label("Operation")
+		@Name("operation")
+		String _sOperation;
+
+		@Label("Dimension")
+		@Description("Largest dimension of the operands")
+		@Name("dimension")
+		long _lDimension;
+
+		@Label("Floating Point Operations")
+		@Name("flops")
+		long _lFlops;
+
+		@Label("Bytes")
+		@DataAmount
+		@Name("bytes")
+		long _lBytes;
+
+		@Label("Latency")
+		@Timespan
+		@Name("latency")
+		long _lDuration;
+	}
+}
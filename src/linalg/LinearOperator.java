@@ -0,0 +1,52 @@
+package linalg;
+
+/*** A linear map y = A * x that is known only by its action on a Vector.
+ *
+ *   This is all the iterative solvers (ConjugateGradient, BiCGSTAB, GMRES) need from A, so
+ *   they work with dense, sparse and structured matrices alike (every RealMatrix is a
+ *   LinearOperator) and with matrix-free operators that never store A at all, e.g., a
+ *   finite-difference stencil.  Preconditioners are LinearOperators too: they apply an
+ *   approximation of the inverse of A.
+ *
+ *   multiply(x, out) is the only operation an implementation must provide; it must write
+ *   every entry of out and should not allocate, since solvers call it once or twice per
+ *   iteration.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public interface LinearOperator {
+
+	/** Return the number of rows in this operator (the dimension of its output)
+	 *
+	 * @return
+	 */
+	int getNumRows();
+
+	/** Return the number of columns in this operator (the dimension of its input)
+	 *
+	 * @return
+	 */
+	int getNumCols();
+
+	/** Computes out = *this* * x without allocating; out must already have getNumRows()
+	 *  entries and must not be x
+	 *
+	 * @param x
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out shares storage with x
+	 */
+	void multiply(Vector x, Vector out) throws LinAlgException;
+
+	/** Returns the Vector result of multiplying *this* by v (assuming v is a column vector)
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the size of v
+	 */
+	default Vector multiply(Vector v) throws LinAlgException {
+		Vector out = new Vector(getNumRows());
+		multiply(v, out);
+		return out;
+	}
+}
@@ -1,5 +1,8 @@
 package linalg;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 /*** A class that represents a two dimensional real-valued (double) matrix
  *   and supports various matrix computations required in linear algebra.
  *   
@@ -8,11 +11,15 @@ package linalg;
  * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
  *
  */
-public class Matrix {
+public class Matrix implements RealMatrix {
 
 	private int _nRows = 1; // Number of rows in this matrix; nomenclature: _ for data member, n for integer
 	private int _nCols = 1; // Number of columns in this matrix; nomenclature: _ for data member, n for integer
-        private double[][] _vArray;
+	private int _nOffset;    // Index in _adVal of entry (0,0)
+	private int _nRowStride; // Distance in _adVal between (row,col) and (row+1,col)
+	private int _nColStride = 1; // Distance in _adVal between (row,col) and (row,col+1); 1 unless *this* is a view
+	private double[] _adVal; // Contents of the Matrix in row-major order; nomenclature: _ for data member, a for array, d for double
+	private long[] _alStamp = new long[1]; // Content stamp for ProductCache, shared with views; reset to 0 by every modification
 	
 	/** Allocates a new matrix of the given row and column dimensions
 	 * 
@@ -21,46 +28,111 @@ public class Matrix {
 	 * @throws LinAlgException if either rows or cols is <= 0
 	 */
 	public Matrix(int rows, int cols) throws LinAlgException {
-            if ((_nRows <= 0) || (_nCols <= 0))
+            if ((rows <= 0) || (cols <= 0))
                 throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+            if ((long)rows * cols > Integer.MAX_VALUE)
+                throw new LinAlgException("Matrix of " + rows + "x" + cols + " exceeds the maximum array size!");
             _nRows = rows;
             _nCols = cols;
-            _vArray = new double[rows][cols];
+            _nOffset = 0;
+            _nRowStride = cols;
+            _adVal = new double[rows * cols]; // Entries will be automatically initialized to 0.0
 	}
 	
+	/** Constructor: wraps an existing row-major array *without copying it*, i.e., entry (row,col)
+	 *  is data[row * cols + col] and later changes to data are visible through this Matrix
+	 *  (and vice versa)
+	 * 
+	 * @param rows
+	 * @param cols
+	 * @param data
+	 * @throws LinAlgException if either rows or cols is <= 0 or data is too short
+	 */
+	public Matrix(int rows, int cols, double[] data) throws LinAlgException {
+		this(rows, cols, data, 0, cols);
+	}
+
+	/** Constructor: wraps a region of an existing array *without copying it*, where entry
+	 *  (row,col) is data[offset + row * rowStride + col]
+	 * 
+	 * @param rows
+	 * @param cols
+	 * @param data
+	 * @param offset index in data of entry (0,0)
+	 * @param rowStride distance in data between consecutive rows (must be >= cols)
+	 * @throws LinAlgException if dimensions are <= 0 or the region does not fit in data
+	 */
+	public Matrix(int rows, int cols, double[] data, int offset, int rowStride) throws LinAlgException {
+		if ((rows <= 0) || (cols <= 0))
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		if (data == null)
+			throw new LinAlgException("Matrix data cannot be null!");
+		if (offset < 0 || rowStride < cols || offset + (long)(rows - 1) * rowStride + cols > data.length)
+			throw new LinAlgException("A " + rows + "x" + cols + " matrix with offset " + offset + " and row stride " 
+					+ rowStride + " does not fit in an array of length " + data.length);
+		_nRows = rows;
+		_nCols = cols;
+		_nOffset = offset;
+		_nRowStride = rowStride;
+		_adVal = data;
+	}
+
+	/** Constructor for views: shares data with the Matrix the view was taken from; the
+	 *  caller guarantees that the region is valid
+	 */
+	private Matrix(int rows, int cols, double[] data, int offset, int rowStride, int colStride, long[] stamp) {
+		_nRows = rows;
+		_nCols = cols;
+		_nOffset = offset;
+		_nRowStride = rowStride;
+		_nColStride = colStride;
+		_adVal = data;
+		_alStamp = stamp;
+	}
+
+	/** Constructor: creates a new Matrix with dimensions and values given by init
+	 * 
+	 * @param init: one bracketed row per line, e.g., "[ 1 0 ]\n[ 0 1 ]" (the format of toString())
+	 * @throws LinAlgException if init is not properly formatted or its rows differ in length
+	 */
+	public Matrix(String init) throws LinAlgException {
+		Matrix m = TextCodec.shared().parseMatrix(init); // Freshly allocated, so adopt its storage
+		_nRows = m._nRows;
+		_nCols = m._nCols;
+		_nOffset = 0;
+		_nRowStride = m._nRowStride;
+		_adVal = m._adVal;
+	}
+
 	/** Copy constructor: makes a new copy of an existing Matrix m
 	 *                    (note: this explicitly allocates new memory and copies over content)
 	 * 
 	 * @param m
 	 */
 	public Matrix(Matrix m) {
-        //Similar to the vector function but with a double array
+        //Similar to the vector function but copies one contiguous row at a time
             _nRows = m._nRows;
             _nCols = m._nCols;
-            _vArray = new double[_nRows][_nCols];
-            for (int index = 0; index < _nRows; index++)
-                for (int index1 = 0 ; index1 < _nCols; index1++)
-                    _vArray[index][index1] = m._vArray[index][index1]; 
+            _nOffset = 0;
+            _nRowStride = _nCols;
+            _adVal = new double[_nRows * _nCols];
+            for (int index = 0; index < _nRows; index++) {
+                int base = m._nOffset + index * m._nRowStride;
+                if (m._nColStride == 1) {
+                    System.arraycopy(m._adVal, base, _adVal, index * _nCols, _nCols);
+                } else {
+                    for (int index1 = 0; index1 < _nCols; index1++)
+                        _adVal[index * _nCols + index1] = m._adVal[base + index1 * m._nColStride];
+                }
+            }
 	}
 
 	/** Constructs a String representation of this Matrix
 	 * 
 	 */
 	public String toString() {
-            StringBuilder sb = new StringBuilder();
-            //Square brackets in the for loops so they will print at the start and end of every line
-            for (int i = 0; i < _nRows; i++){
-            sb.append("[");   
-                for (int j = 0; j < _nCols; j++) {
-                    sb.append(String.format(" %6.3f ", _vArray[i][j])); 
-                    //Once we have reached the end of the row, print the next values on a new line
-                    if (j == _nCols-1){
-                        sb.append(" ]");
-                        sb.append("\n");
-                    }
-                }
-            }
-        return sb.toString();
+            //One bracketed row per line, each value formatted as " %6.3f " by TextCodec
+        return TextCodec.format(this);
 	}
 
 	/** Tests whether another Object o (most often a matrix) is a equal to *this*
@@ -71,22 +143,45 @@ public class Matrix {
 	public boolean equals(Object o) {
              if (o instanceof Matrix) {
                     Matrix m = (Matrix)o; 
-                    if (_nRows != m._nRows && _nCols != m._nCols)
+                    if (_nRows != m._nRows || _nCols != m._nCols)
                         return false; 
-                    for (int index = 0; index < _nRows; index++)
+                    for (int index = 0; index < _nRows; index++) {
+                        int base = _nOffset + index * _nRowStride;
+                        int mBase = m._nOffset + index * m._nRowStride;
                         for(int index1 = 0; index1 < _nCols; index1++)
-                            if (_vArray[index][index1] != m._vArray[index][index1])
+                            if (_adVal[base + index1 * _nColStride] != m._adVal[mBase + index1 * m._nColStride])
                                 return false; 
+                    }
                     return true; // Everything matched... objects are equal!
             } else 
                 return false; // Two objects cannot be equal if they don't have the same class type
         }
+
+	/** Hashes the dimensions and content, consistently with equals (so -0.0 and 0.0 hash
+	 *  alike, and a view hashes like a copy of it)
+	 * 
+	 * @return
+	 */
+	@Override
+	public int hashCode() {
+		int h = 31 * _nRows + _nCols;
+		for (int row = 0; row < _nRows; row++) {
+			int base = _nOffset + row * _nRowStride;
+			for (int col = 0; col < _nCols; col++) {
+				double d = _adVal[base + col * _nColStride] + 0d; // -0.0 + 0.0 == 0.0
+				long bits = Double.doubleToLongBits(d);
+				h = 31 * h + (int)(bits ^ (bits >>> 32));
+			}
+		}
+		return h;
+	}
 	
 	
 	/** Return the number of rows in this matrix
 	 *   
 	 * @return 
 	 */
+	@Override
 	public int getNumRows() {
 		return _nRows;
 	}
@@ -95,10 +190,67 @@ public class Matrix {
 	 *   
 	 * @return 
 	 */
+	@Override
 	public int getNumCols() {
 		return _nCols;
 	}
 
+	/** Return the array backing this matrix *without copying it*; entry (row,col) is stored at
+	 *  index getOffset() + row * getRowStride() + col * getColStride(), and writes to the
+	 *  array are visible through this Matrix
+	 *   
+	 * @return 
+	 */
+	public double[] getArray() {
+		return _adVal;
+	}
+
+	/** Tells caches (see ProductCache) that the content of this matrix has changed; needed
+	 *  only after writing to the array returned by getArray() (or to an array wrapped by
+	 *  a constructor), since every method of this class that modifies the matrix already
+	 *  does this.  Views share the mark of the matrix they were taken from.
+	 */
+	public void markModified() {
+		_alStamp[0] = 0L;
+	}
+
+	/** Returns a stamp identifying the current content of the storage of this matrix: it
+	 *  stays the same until the matrix (or a view sharing its storage) is modified and is
+	 *  never reused for different content
+	 * 
+	 * @return
+	 */
+	long stamp() {
+		if (_alStamp[0] == 0L)
+			_alStamp[0] = ProductCache.nextStamp();
+		return _alStamp[0];
+	}
+
+	/** Return the index in getArray() of entry (0,0)
+	 *   
+	 * @return 
+	 */
+	public int getOffset() {
+		return _nOffset;
+	}
+
+	/** Return the distance in getArray() between consecutive rows of this matrix
+	 *   
+	 * @return 
+	 */
+	public int getRowStride() {
+		return _nRowStride;
+	}
+
+	/** Return the distance in getArray() between consecutive columns of this matrix (1 except
+	 *  for transposed and column views)
+	 *   
+	 * @return 
+	 */
+	public int getColStride() {
+		return _nColStride;
+	}
+
 	/** Return the scalar value at the given row and column of the matrix
 	 * 
 	 * @param row
@@ -106,10 +258,11 @@ public class Matrix {
 	 * @return
 	 * @throws LinAlgException if row or col indices are out of bounds
 	 */
+	@Override
 	public double get(int row, int col) throws LinAlgException {
             if ((row >= _nRows) || (row < 0) || (col >= _nCols) || (col < 0))
                 throw new LinAlgException ("Column or row out of bounds!");
-        return _vArray [row][col];
+        return _adVal[_nOffset + row * _nRowStride + col * _nColStride];
 	}
 	
 	/** Return the Vector of numbers corresponding to the provided row index
@@ -123,8 +276,9 @@ public class Matrix {
                 throw new LinAlgException ("Row out of bounds!");
             //create a vector and copy the values in
             Vector _newV = new Vector(_nCols);
+            int base = _nOffset + row * _nRowStride;
             for (int i = 0; i<_nCols; i++)
-                _newV.set(i, _vArray[row][i]);
+                _newV.set(i, _adVal[base + i * _nColStride]);
         return _newV;
 	}
 
@@ -138,7 +292,8 @@ public class Matrix {
 	public void set(int row, int col, double val) throws LinAlgException {
 	    if ((row >= _nRows) || (row < 0) || (col >= _nCols) || (col < 0))
                 throw new LinAlgException("Invalid index.");
-            _vArray[row][col] = val;
+            _adVal[_nOffset + row * _nRowStride + col * _nColStride] = val;
+            _alStamp[0] = 0L;
 	}
 	
 	/** Return a new Matrix that is the transpose of *this*, i.e., if "transpose"
@@ -150,15 +305,110 @@ public class Matrix {
 	 */
 	public Matrix transpose() throws LinAlgException {
             //Similar to the vector function
+		long t0 = LinAlgMetrics.start();
 		Matrix transpose = new Matrix(_nCols, _nRows);
+		double[] dst = transpose._adVal;
 		for (int row = 0; row < _nRows; row++) {
+			int base = _nOffset + row * _nRowStride;
 			for (int col = 0; col < _nCols; col++) {
-				transpose.set(col, row, get(row,col));
+				dst[col * _nRows + row] = _adVal[base + col * _nColStride];
 			}
 		}
+		if (t0 != 0L) {
+			long entries = (long)_nRows * _nCols;
+			LinAlgMetrics.record(LinAlgMetrics.Op.MATRIX_TRANSPOSE, t0, Math.max(_nRows, _nCols), 0L,
+					2L * entries * Double.BYTES, entries * Double.BYTES);
+		}
 		return transpose;
 	}
 
+	/** Return a view of the transpose of *this* that shares storage with *this* (O(1), nothing
+	 *  is copied); writes through either Matrix are visible in the other.  Use transpose() for
+	 *  an independent copy.
+	 * 
+	 * @return
+	 */
+	public Matrix transposeView() {
+		return new Matrix(_nCols, _nRows, _adVal, _nOffset, _nColStride, _nRowStride, _alStamp);
+	}
+
+	/** Return a 1 x cols view of the given row of *this* that shares storage with *this*
+	 * 
+	 * @param row
+	 * @return
+	 * @throws LinAlgException if row is out of bounds
+	 */
+	public Matrix rowView(int row) throws LinAlgException {
+		return blockView(row, 0, 1, _nCols);
+	}
+
+	/** Return a rows x 1 view of the given column of *this* that shares storage with *this*
+	 * 
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if col is out of bounds
+	 */
+	public Matrix columnView(int col) throws LinAlgException {
+		return blockView(0, col, _nRows, 1);
+	}
+
+	/** Return a rows x cols view of the block of *this* whose top-left entry is (row,col);
+	 *  the view shares storage with *this* (O(1), nothing is copied)
+	 * 
+	 * @param row
+	 * @param col
+	 * @param rows
+	 * @param cols
+	 * @return
+	 * @throws LinAlgException if the block is empty or does not fit in *this*
+	 */
+	public Matrix blockView(int row, int col, int rows, int cols) throws LinAlgException {
+		if (rows <= 0 || cols <= 0)
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		if (row < 0 || col < 0 || row > _nRows - rows || col > _nCols - cols)
+			throw new LinAlgException("A " + rows + "x" + cols + " block at (" + row + "," + col 
+					+ ") does not fit in a " + _nRows + "x" + _nCols + " matrix");
+		return new Matrix(rows, cols, _adVal, _nOffset + row * _nRowStride + col * _nColStride, _nRowStride, _nColStride, _alStamp);
+	}
+
+	/** Returns the LU factorization (with partial pivoting) of *this*, for solving systems,
+	 *  determinants and inverses; *this* is copied, not modified
+	 * 
+	 * @return
+	 * @throws LinAlgException if *this* is not square
+	 */
+	public LUDecomposition lu() throws LinAlgException {
+		return new LUDecomposition(this);
+	}
+
+	/** Returns the Cholesky factorization of *this*, which must be symmetric positive definite
+	 * 
+	 * @return
+	 * @throws LinAlgException if *this* is not square or not positive definite
+	 */
+	public CholeskyDecomposition cholesky() throws LinAlgException {
+		return new CholeskyDecomposition(this);
+	}
+
+	/** Returns the determinant of *this* (computed from its LU factorization)
+	 * 
+	 * @return
+	 * @throws LinAlgException if *this* is not square
+	 */
+	public double determinant() throws LinAlgException {
+		return lu().determinant();
+	}
+
+	/** Returns a new Matrix that is the inverse of *this* (computed from its LU factorization);
+	 *  to solve A * x = b, lu().solve(b) is faster and more accurate than inverse() * b
+	 * 
+	 * @return
+	 * @throws LinAlgException if *this* is not square or is singular
+	 */
+	public Matrix inverse() throws LinAlgException {
+		return lu().inverse();
+	}
+
 	/** Return a new Matrix that is the square identity matrix (1's on diagonal, 0's elsewhere) 
 	 *  with the number of rows, cols given by size.  E.g., if size = 3 then the returned matrix
 	 *  would be the following:
@@ -176,14 +426,15 @@ public class Matrix {
                 throw new LinAlgException("Size is too small!");
             Matrix _nMat = new Matrix(size,size);
             for (int i = 0; i < size ; i++)
-                for (int j = 0; j < size; j++)
-                    if (i == j)
-                        _nMat.set(i,j,1);
+                _nMat._adVal[i * size + i] = 1d;
         return _nMat;
 	}
 	
 	/** Returns the Matrix result of multiplying Matrix m1 and m2
 	 *  (look up the definition of matrix multiply if you don't remember it)
+	 *  
+	 *  Dimensions are validated once up front and the product is then computed by the
+	 *  cache-blocked kernel in Gemm directly on the backing arrays.
 	 * 
 	 * @param m1
 	 * @param m2
@@ -193,12 +444,14 @@ public class Matrix {
 	public static Matrix Multiply(Matrix m1, Matrix m2) throws LinAlgException {
             if (m1.getNumCols() != m2.getNumRows())
                 throw new LinAlgException ("m1 columns do not match the size of m2 rows!");
+            long t0 = LinAlgMetrics.start();
             Matrix _nMat = new Matrix(m1.getNumRows(), m2.getNumCols());
-            //Nested for loops to go through the indices and multiply
-            for (int j = 0; j < m2._nCols; j++)
-                for (int i = 0; i < m1._nRows; i++)
-                    for (int k = 0; k < m2._nRows; k++)
-                    _nMat.set(j,i, _nMat.get(j,i) + m1.get(j,k)* m2.get(k,i));
+            Gemm.gemm(m1._nRows, m2._nCols, m1._nCols, 1d,
+                    m1._adVal, m1._nOffset, m1._nRowStride, m1._nColStride,
+                    m2._adVal, m2._nOffset, m2._nRowStride, m2._nColStride,
+                    _nMat._adVal, 0, _nMat._nRowStride, 1);
+            if (t0 != 0L)
+                LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_MULTIPLY, t0, m1._nRows, m2._nCols, m1._nCols, true);
         return _nMat;
 	}
 		
@@ -212,12 +465,512 @@ public class Matrix {
 	public static Vector Multiply(Matrix m, Vector v) throws LinAlgException {
             if (m.getNumCols() != v.getDim())
                 throw new LinAlgException ("m columns do not match the size of v!");
-            Vector _nVec = new Vector (v.getDim());
-            //Nested for loop to go through the indices and multiply
-            for (int j = 0; j < _nVec.getDim(); j++)
-                    for (int k = 0; k < _nVec.getDim(); k++)
-                    _nVec.set(j, _nVec.get(j) + v.get(k)* m.get(j,k));
+            long t0 = LinAlgMetrics.start();
+            Vector _nVec = new Vector (m.getNumRows());
+            Gemm.gemv(m._nRows, m._nCols, 1d, m._adVal, m._nOffset, m._nRowStride, m._nColStride,
+                    v.getArray(), 0, 1, _nVec.getArray(), 0, 1);
+            if (t0 != 0L)
+                LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_MULTIPLY_VECTOR, t0, m._nRows, 1, m._nCols, true);
         return _nVec;
 	}
 
+	/** Returns the Matrix result of multiplying the transpose of Matrix a by Matrix b; a is
+	 *  read column-wise in place, so its transpose is never materialized
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if a rows do not match the size of b rows
+	 */
+	public static Matrix MultiplyTransposeA(Matrix a, Matrix b) throws LinAlgException {
+		if (a._nRows != b._nRows)
+			throw new LinAlgException("a rows do not match the size of b rows!");
+		return Multiply(a.transposeView(), b);
+	}
+
+	/** Returns the Matrix result of multiplying Matrix a by the transpose of Matrix b; b is
+	 *  read row-wise in place, so its transpose is never materialized
+	 * 
+	 * @param a
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if a columns do not match the size of b columns
+	 */
+	public static Matrix MultiplyTransposeB(Matrix a, Matrix b) throws LinAlgException {
+		if (a._nCols != b._nCols)
+			throw new LinAlgException("a columns do not match the size of b columns!");
+		return Multiply(a, b.transposeView());
+	}
+
+	/** Returns the Vector result of multiplying the transpose of Matrix m by Vector v (same as
+	 *  m.multiplyTranspose(v))
+	 * 
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m rows do not match the size of v
+	 */
+	public static Vector MultiplyTranspose(Matrix m, Vector v) throws LinAlgException {
+		return m.multiplyTranspose(v);
+	}
+
+	/** Returns the products m * v for a packed batch of vectors v, one per row of x, as the
+	 *  rows of a new Matrix (row i of the result is m times row i of x).
+	 *
+	 *  The whole batch is one matrix-matrix product, x * m^T, on the blocked kernel, which
+	 *  streams each tile of m from memory once per batch instead of once per vector, so the
+	 *  throughput grows with the batch size where separate matrix-vector products stay
+	 *  memory-bound.
+	 *
+	 * @param m
+	 * @param x
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of x columns
+	 */
+	public static Matrix MultiplyBatch(Matrix m, Matrix x) throws LinAlgException {
+		if (m._nCols != x._nCols)
+			throw new LinAlgException("m columns do not match the size of the batch vectors!");
+		long t0 = LinAlgMetrics.start();
+		Matrix y = new Matrix(x._nRows, m._nRows);
+		Gemm.gemm(x._nRows, m._nRows, m._nCols, 1d,
+				x._adVal, x._nOffset, x._nRowStride, x._nColStride,
+				m._adVal, m._nOffset, m._nColStride, m._nRowStride, // m^T read in place
+				y._adVal, 0, y._nRowStride, 1);
+		if (t0 != 0L)
+			LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_MULTIPLY_BATCH, t0, x._nRows, m._nRows, m._nCols, true);
+		return y;
+	}
+
+	/** Returns the products m * vs[i] of many vectors against one matrix, computed together as
+	 *  one batched product (see MultiplyBatch(Matrix, Matrix))
+	 *
+	 * @param m
+	 * @param vs
+	 * @return a new array holding a new Vector for each vector of vs
+	 * @throws LinAlgException if m columns do not match the size of some vector of vs
+	 */
+	public static Vector[] MultiplyBatch(Matrix m, Vector[] vs) throws LinAlgException {
+		int batch = vs.length, n = m._nCols, rows = m._nRows;
+		Vector[] result = new Vector[batch];
+		if (batch == 0)
+			return result;
+		if (batch == 1) {
+			result[0] = Multiply(m, vs[0]);
+			return result;
+		}
+		Matrix x = new Matrix(batch, n);
+		for (int i = 0; i < batch; i++) {
+			if (vs[i].getDim() != n)
+				throw new LinAlgException("m columns do not match the size of vector " + i + " of the batch!");
+			System.arraycopy(vs[i].getArray(), 0, x._adVal, i * n, n);
+		}
+		double[] y = MultiplyBatch(m, x)._adVal;
+		for (int i = 0; i < batch; i++)
+			result[i] = new Vector(Arrays.copyOfRange(y, i * rows, (i + 1) * rows));
+		return result;
+	}
+
+	/** Returns the Matrix result of multiplying ms[0] * ms[1] * ..., choosing the order of
+	 *  the multiplications that needs the fewest floating point operations (see MatrixChain
+	 *  to inspect or reuse the plan)
+	 * 
+	 * @param ms
+	 * @return
+	 * @throws LinAlgException if ms is empty or the columns of an operand do not match the rows of the next
+	 */
+	public static Matrix multiplyChain(Matrix... ms) throws LinAlgException {
+		return MatrixChain.plan(ms).multiply(ms);
+	}
+
+	/** Returns the Vector result of multiplying ms[0] * ms[1] * ... * x (x taken as a column
+	 *  vector), choosing the order of the multiplications that needs the fewest floating
+	 *  point operations; this is usually right to left, as a sequence of matrix-vector
+	 *  products
+	 * 
+	 * @param ms
+	 * @param x
+	 * @return
+	 * @throws LinAlgException if ms is empty or the columns of an operand do not match the rows of the next
+	 */
+	public static Vector multiplyChain(Matrix[] ms, Vector x) throws LinAlgException {
+		return MatrixChain.plan(ms, x).multiply(ms, x);
+	}
+
+	/** Returns the Vector result of multiplying *this* by v (same as Multiply(this, v))
+	 * 
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the size of v
+	 */
+	@Override
+	public Vector multiply(Vector v) throws LinAlgException {
+		return Multiply(this, v);
+	}
+
+	/** Computes out = *this* * v without allocating (same as multiplyInto(this, v, out))
+	 * 
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out shares storage with v
+	 */
+	@Override
+	public void multiply(Vector v, Vector out) throws LinAlgException {
+		gemv(1d, this, v, 0d, out);
+	}
+
+	/** Returns the Vector result of multiplying the transpose of *this* by v, reading *this*
+	 *  column-wise rather than allocating the transpose
+	 * 
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the rows of *this* do not match the size of v
+	 */
+	@Override
+	public Vector multiplyTranspose(Vector v) throws LinAlgException {
+		if (_nRows != v.getDim())
+			throw new LinAlgException("m rows do not match the size of v!");
+		long t0 = LinAlgMetrics.start();
+		Vector _nVec = new Vector(_nCols);
+		Gemm.gemv(_nCols, _nRows, 1d, _adVal, _nOffset, _nColStride, _nRowStride,
+				v.getArray(), 0, 1, _nVec.getArray(), 0, 1);
+		if (t0 != 0L)
+			LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_MULTIPLY_TRANSPOSE, t0, _nCols, 1, _nRows, true);
+		return _nVec;
+	}
+
+	/** Returns the Matrix result of multiplying m1 and m2 where either may be a sparse or
+	 *  structured matrix, using the cheapest kernel available for the pair: e.g., a product
+	 *  with a DiagonalMatrix on either side only scales the rows or columns of the other
+	 *  operand, and a dense * sparse product is computed as (sparse^T * dense^T)^T
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static Matrix Multiply(RealMatrix m1, RealMatrix m2) throws LinAlgException {
+		if (m1.getNumCols() != m2.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		if (m2 instanceof Matrix)
+			return m1 instanceof Matrix ? Multiply((Matrix)m1, (Matrix)m2) : m1.multiply((Matrix)m2);
+		if (m1 instanceof Matrix && m2 instanceof StructuredMatrix)
+			return ((StructuredMatrix)m2).multiplyLeft((Matrix)m1);
+		if (m1 instanceof Matrix && m2 instanceof SparseMatrix)
+			return new Matrix(SparseMatrix.Multiply(((SparseMatrix)m2).transpose(), ((Matrix)m1).transposeView()).transposeView());
+		if (m2 instanceof DiagonalMatrix || m2 instanceof IdentityMatrix)
+			return ((StructuredMatrix)m2).multiplyLeft(m1.toDense());
+		return m1.multiply(m2.toDense());
+	}
+
+	/** Returns the Vector result of multiplying m (of any matrix type) by v
+	 * 
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static Vector Multiply(RealMatrix m, Vector v) throws LinAlgException {
+		return m.multiply(v);
+	}
+
+	/** Returns the Matrix result of multiplying *this* by m (same as Multiply(this, m))
+	 * 
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the rows of m
+	 */
+	public Matrix multiply(RealMatrix m) throws LinAlgException {
+		return Multiply(this, m);
+	}
+
+	/** Returns a new dense copy of *this* (same as new Matrix(this))
+	 * 
+	 * @return
+	 */
+	@Override
+	public Matrix toDense() {
+		return new Matrix(this);
+	}
+
+	/** Returns the Matrix result of multiplying *this* by m (same as Multiply(this, m))
+	 * 
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the rows of m
+	 */
+	@Override
+	public Matrix multiply(Matrix m) throws LinAlgException {
+		return Multiply(this, m);
+	}
+
+	/** Computes out = a * b without allocating; out must already have a's rows and b's
+	 *  columns and must not share storage with a or b
+	 * 
+	 * @param a
+	 * @param b
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out shares storage with a or b
+	 */
+	public static void multiplyInto(Matrix a, Matrix b, Matrix out) throws LinAlgException {
+		gemm(1d, a, b, 0d, out);
+	}
+
+	/** Computes out = m * v without allocating; out must already have m's rows and must not
+	 *  be v
+	 * 
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out shares storage with v
+	 */
+	public static void multiplyInto(Matrix m, Vector v, Vector out) throws LinAlgException {
+		gemv(1d, m, v, 0d, out);
+	}
+
+	/** Computes c = alpha * a * b + beta * c in place (the BLAS gemm operation) without
+	 *  allocating; when beta is 0 the old contents of c are ignored, even if NaN
+	 * 
+	 * @param alpha
+	 * @param a
+	 * @param b
+	 * @param beta
+	 * @param c
+	 * @throws LinAlgException if the dimensions do not match or c shares storage with a or b
+	 */
+	public static void gemm(double alpha, Matrix a, Matrix b, double beta, Matrix c) throws LinAlgException {
+		if (a._nCols != b._nRows)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		if (c._nRows != a._nRows || c._nCols != b._nCols)
+			throw new LinAlgException("Output must be " + a._nRows + "x" + b._nCols + " but is " + c._nRows + "x" + c._nCols);
+		if (c._adVal == a._adVal || c._adVal == b._adVal)
+			throw new LinAlgException("Output matrix cannot share storage with an operand!");
+		long t0 = LinAlgMetrics.start();
+		c._alStamp[0] = 0L;
+		c.scale(beta);
+		Gemm.gemm(a._nRows, b._nCols, a._nCols, alpha,
+				a._adVal, a._nOffset, a._nRowStride, a._nColStride,
+				b._adVal, b._nOffset, b._nRowStride, b._nColStride,
+				c._adVal, c._nOffset, c._nRowStride, c._nColStride);
+		if (t0 != 0L)
+			LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_GEMM, t0, a._nRows, b._nCols, a._nCols, false);
+	}
+
+	/** Computes y = alpha * a * x + beta * y in place (the BLAS gemv operation) without
+	 *  allocating; when beta is 0 the old contents of y are ignored, even if NaN
+	 * 
+	 * @param alpha
+	 * @param a
+	 * @param x
+	 * @param beta
+	 * @param y
+	 * @throws LinAlgException if the dimensions do not match or y is x
+	 */
+	public static void gemv(double alpha, Matrix a, Vector x, double beta, Vector y) throws LinAlgException {
+		if (a._nCols != x.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		if (a._nRows != y.getDim())
+			throw new LinAlgException("Output vector must have dimension " + a._nRows + " but has " + y.getDim());
+		double[] yv = y.getArray();
+		if (yv == x.getArray())
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		long t0 = LinAlgMetrics.start();
+		y.markModified();
+		if (beta == 0d)
+			Arrays.fill(yv, 0d);
+		else if (beta != 1d)
+			VectorKernels.INSTANCE.scalarMult(yv, beta, yv, yv.length);
+		Gemm.gemv(a._nRows, a._nCols, alpha, a._adVal, a._nOffset, a._nRowStride, a._nColStride,
+				x.getArray(), 0, 1, yv, 0, 1);
+		if (t0 != 0L)
+			LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_GEMV, t0, a._nRows, 1, a._nCols, false);
+	}
+
+	/** Multiplies every entry of *this* by beta (beta == 0 clears it, NaNs included) */
+	private void scale(double beta) {
+		if (beta == 1d)
+			return;
+		for (int row = 0; row < _nRows; row++) {
+			int base = _nOffset + row * _nRowStride;
+			if (beta == 0d && _nColStride == 1) {
+				Arrays.fill(_adVal, base, base + _nCols, 0d);
+			} else if (beta == 0d) {
+				for (int col = 0; col < _nCols; col++)
+					_adVal[base + col * _nColStride] = 0d;
+			} else {
+				for (int col = 0; col < _nCols; col++)
+					_adVal[base + col * _nColStride] *= beta;
+			}
+		}
+	}
+
+	/** Returns the Matrix result of multiplying Matrix m1 and m2 using all threads of the
+	 *  default fork-join pool (see setParallelism); products smaller than the parallel
+	 *  threshold (see setParallelThreshold) are computed on the calling thread
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static Matrix MultiplyParallel(Matrix m1, Matrix m2) throws LinAlgException {
+		return MultiplyParallel(m1, m2, ParallelGemm.defaultPool());
+	}
+
+	/** Returns the Matrix result of multiplying Matrix m1 and m2, splitting the result into
+	 *  tiles that are computed in parallel on the given pool
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @param pool
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static Matrix MultiplyParallel(Matrix m1, Matrix m2, ForkJoinPool pool) throws LinAlgException {
+		if (m1.getNumCols() != m2.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		long t0 = LinAlgMetrics.start();
+		Matrix _nMat = new Matrix(m1.getNumRows(), m2.getNumCols());
+		ParallelGemm.gemm(pool, m1._nRows, m2._nCols, m1._nCols, 1d,
+				m1._adVal, m1._nOffset, m1._nRowStride, m1._nColStride,
+				m2._adVal, m2._nOffset, m2._nRowStride, m2._nColStride,
+				_nMat._adVal, 0, _nMat._nRowStride, 1);
+		if (t0 != 0L)
+			LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_MULTIPLY_PARALLEL, t0, m1._nRows, m2._nCols, m1._nCols, true);
+		return _nMat;
+	}
+
+	/** Returns the Matrix result of multiplying Matrix m1 and m2 with the Strassen-Winograd
+	 *  algorithm on the default fork-join pool (see setParallelism); products with a
+	 *  dimension at or below the Strassen cutoff (see setStrassenCutoff) use the classical
+	 *  kernel.  Faster than MultiplyParallel for large square products, but less accurate: see
+	 *  StrassenErrorBound.
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static Matrix MultiplyStrassen(Matrix m1, Matrix m2) throws LinAlgException {
+		return MultiplyStrassen(m1, m2, ParallelGemm.defaultPool());
+	}
+
+	/** Returns the Matrix result of multiplying Matrix m1 and m2 with the Strassen-Winograd
+	 *  algorithm, running the seven sub-products of each level in parallel on the given pool
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @param pool
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static Matrix MultiplyStrassen(Matrix m1, Matrix m2, ForkJoinPool pool) throws LinAlgException {
+		if (m1.getNumCols() != m2.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		long t0 = LinAlgMetrics.start();
+		Matrix _nMat = new Matrix(m1.getNumRows(), m2.getNumCols());
+		Strassen.multiply(pool, m1._nRows, m2._nCols, m1._nCols,
+				m1._adVal, m1._nOffset, m1._nRowStride, m1._nColStride,
+				m2._adVal, m2._nOffset, m2._nRowStride, m2._nColStride,
+				_nMat._adVal, 0, _nMat._nRowStride, 1);
+		if (t0 != 0L)
+			LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_MULTIPLY_STRASSEN, t0, m1._nRows, m2._nCols, m1._nCols, true);
+		return _nMat;
+	}
+
+	/** Returns a bound on the largest absolute error of any entry of MultiplyStrassen(m1, m2),
+	 *  to first order in the unit roundoff; the bound scales with the largest entries of m1
+	 *  and m2 rather than with each entry of the product, so it is loosest for products with
+	 *  entries of very different magnitudes
+	 * 
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static double StrassenErrorBound(Matrix m1, Matrix m2) throws LinAlgException {
+		if (m1.getNumCols() != m2.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		return Strassen.errorBound(m1._nRows, m2._nCols, m1._nCols, m1.maxAbs(), m2.maxAbs());
+	}
+
+	/** Returns the largest absolute value of any entry of *this* */
+	private double maxAbs() {
+		double max = 0d;
+		for (int row = 0; row < _nRows; row++) {
+			int base = _nOffset + row * _nRowStride;
+			for (int col = 0; col < _nCols; col++)
+				max = Math.max(max, Math.abs(_adVal[base + col * _nColStride]));
+		}
+		return max;
+	}
+
+	/** Returns the Vector result of multiplying Matrix m by Vector v using all threads of the
+	 *  default fork-join pool (see setParallelism)
+	 * 
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static Vector MultiplyParallel(Matrix m, Vector v) throws LinAlgException {
+		return MultiplyParallel(m, v, ParallelGemm.defaultPool());
+	}
+
+	/** Returns the Vector result of multiplying Matrix m by Vector v, splitting the rows of m
+	 *  across the threads of the given pool
+	 * 
+	 * @param m
+	 * @param v
+	 * @param pool
+	 * @return
+	 * @throws LinAlgException if m columns do match the size of v
+	 */
+	public static Vector MultiplyParallel(Matrix m, Vector v, ForkJoinPool pool) throws LinAlgException {
+		if (m.getNumCols() != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		long t0 = LinAlgMetrics.start();
+		Vector _nVec = new Vector(m.getNumRows());
+		ParallelGemm.gemv(pool, m._nRows, m._nCols, 1d, m._adVal, m._nOffset, m._nRowStride, m._nColStride,
+				v.getArray(), 0, 1, _nVec.getArray(), 0, 1);
+		if (t0 != 0L)
+			LinAlgMetrics.recordProduct(LinAlgMetrics.Op.MATRIX_MULTIPLY_PARALLEL_VECTOR, t0, m._nRows, 1, m._nCols, true);
+		return _nVec;
+	}
+
+	/** Sets the number of worker threads used by MultiplyParallel when no pool is given
+	 *  (defaults to the number of available processors)
+	 * 
+	 * @param parallelism
+	 * @throws LinAlgException if parallelism is < 1
+	 */
+	public static void setParallelism(int parallelism) throws LinAlgException {
+		if (parallelism < 1)
+			throw new LinAlgException("Parallelism " + parallelism + " cannot be less than 1");
+		ParallelGemm.setParallelism(parallelism);
+	}
+
+	/** Sets the size at or below which MultiplyStrassen switches to the classical kernel
+	 *  (defaults to 512)
+	 * 
+	 * @param cutoff
+	 * @throws LinAlgException if cutoff is < 1
+	 */
+	public static void setStrassenCutoff(int cutoff) throws LinAlgException {
+		if (cutoff < 1)
+			throw new LinAlgException("Strassen cutoff " + cutoff + " cannot be less than 1");
+		Strassen._nCutoff = cutoff;
+	}
+
+	/** Sets the number of multiply-adds (rows * cols * inner dimension) below which
+	 *  MultiplyParallel stays on the calling thread to avoid scheduling overhead
+	 * 
+	 * @param flops
+	 * @throws LinAlgException if flops is < 0
+	 */
+	public static void setParallelThreshold(long flops) throws LinAlgException {
+		if (flops < 0)
+			throw new LinAlgException("Parallel threshold " + flops + " cannot be negative");
+		ParallelGemm._lThreshold = flops;
+	}
+
 }
@@ -0,0 +1,216 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** An evaluation order for a product of matrices M0 * M1 * ... * Mn-1, optionally followed
+ *   by a column vector.
+ *
+ *   Matrix multiplication is associative, but the cost of a chain depends heavily on where
+ *   the parentheses go: for a 1000x10 A, 10x1000 B and 1000x1 x, (A * B) * x takes 2*10^7
+ *   multiply-adds while A * (B * x) takes 2*10^4, and nested Matrix.Multiply calls always
+ *   take the left-to-right order.  plan() picks the cheapest order with the classic O(n^3)
+ *   dynamic program over the operand dimensions, and multiply() evaluates a chain in that
+ *   order with the parallel blocked kernel (or gemv once the right operand is a column).
+ *   Each intermediate product is dropped as soon as the product consuming it is done.
+ *
+ *   Plans depend only on the dimensions, so one plan may be reused for many chains of the
+ *   same shape.  toString() and getEstimatedFlops() describe the plan for logging, e.g.:
+ *
+ *       MatrixChain plan = MatrixChain.plan(new Matrix[] { a, b, c }, x);
+ *       log(plan + " costs " + plan.getEstimatedFlops() + " flops");  // "(M0 * (M1 * (M2 * M3)))"
+ *       Vector y = plan.multiply(new Matrix[] { a, b, c }, x);
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class MatrixChain {
+
+	private final int[] _anDims;     // Operand i is _anDims[i] x _anDims[i + 1]
+	private final int[][] _aanSplit; // Product of operands i..j is (i..k) * (k+1..j) for k = _aanSplit[i][j]
+	private final long _lFlops;      // Floating point operations (2 per multiply-add) of the whole plan
+
+	private MatrixChain(int[] dims, int[][] split, long flops) {
+		_anDims = dims;
+		_aanSplit = split;
+		_lFlops = flops;
+	}
+
+	/** Returns the cheapest evaluation order for the product ms[0] * ms[1] * ...
+	 *
+	 * @param ms
+	 * @return
+	 * @throws LinAlgException if ms is empty or the columns of an operand do not match the rows of the next
+	 */
+	public static MatrixChain plan(Matrix... ms) throws LinAlgException {
+		if (ms.length == 0)
+			throw new LinAlgException("A matrix chain needs at least one operand!");
+		return plan(dims(ms));
+	}
+
+	/** Returns the cheapest evaluation order for the product ms[0] * ms[1] * ... * x (x taken
+	 *  as a column vector)
+	 *
+	 * @param ms
+	 * @param x
+	 * @return
+	 * @throws LinAlgException if ms is empty or the columns of an operand do not match the rows of the next
+	 */
+	public static MatrixChain plan(Matrix[] ms, Vector x) throws LinAlgException {
+		if (ms.length == 0)
+			throw new LinAlgException("A matrix chain needs at least one operand!");
+		int[] dims = dims(ms);
+		if (dims[ms.length] != x.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		dims = Arrays.copyOf(dims, ms.length + 2);
+		dims[ms.length + 1] = 1;
+		return plan(dims);
+	}
+
+	/** Returns the cheapest evaluation order for a chain whose operand i is
+	 *  dims[i] x dims[i + 1]
+	 *
+	 * @param dims
+	 * @return
+	 * @throws LinAlgException if the chain has no operands
+	 */
+	private static MatrixChain plan(int[] dims) throws LinAlgException {
+		int n = dims.length - 1;
+		if (n < 1)
+			throw new LinAlgException("A matrix chain needs at least one operand!");
+		long[][] cost = new long[n][n];
+		int[][] split = new int[n][n];
+		for (int len = 2; len <= n; len++) {
+			for (int i = 0; i + len - 1 < n; i++) {
+				int j = i + len - 1;
+				cost[i][j] = Long.MAX_VALUE;
+				for (int k = i; k < j; k++) {
+					long c = cost[i][k] + cost[k + 1][j] + 2L * dims[i] * dims[k + 1] * dims[j + 1];
+					if (c < cost[i][j]) {
+						cost[i][j] = c;
+						split[i][j] = k;
+					}
+				}
+			}
+		}
+		return new MatrixChain(dims.clone(), split, cost[0][n - 1]);
+	}
+
+	/** Returns the dimensions of the chain: operand i is dims[i] x dims[i + 1]
+	 *
+	 * @param ms
+	 * @return
+	 * @throws LinAlgException if the columns of an operand do not match the rows of the next
+	 */
+	private static int[] dims(Matrix[] ms) throws LinAlgException {
+		int[] dims = new int[ms.length + 1];
+		for (int i = 0; i < ms.length; i++) {
+			if (i > 0 && ms[i - 1].getNumCols() != ms[i].getNumRows())
+				throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+			dims[i] = ms[i].getNumRows();
+		}
+		dims[ms.length] = ms[ms.length - 1].getNumCols();
+		return dims;
+	}
+
+	/** Return the number of operands of the planned chain (counting a trailing vector)
+	 *
+	 * @return
+	 */
+	public int getNumOperands() {
+		return _anDims.length - 1;
+	}
+
+	/** Return the number of floating point operations (2 per multiply-add) of this plan
+	 *
+	 * @return
+	 */
+	public long getEstimatedFlops() {
+		return _lFlops;
+	}
+
+	/** Return the number of floating point operations of evaluating the chain left to right,
+	 *  as nested Matrix.Multiply calls would
+	 *
+	 * @return
+	 */
+	public long getLeftToRightFlops() {
+		long flops = 0;
+		for (int k = 1; k < _anDims.length - 1; k++)
+			flops += 2L * _anDims[0] * _anDims[k] * _anDims[k + 1];
+		return flops;
+	}
+
+	/** Returns the product ms[0] * ms[1] * ... evaluated in the planned order
+	 *
+	 * @param ms
+	 * @return
+	 * @throws LinAlgException if the dimensions of ms are not the planned ones
+	 */
+	public Matrix multiply(Matrix... ms) throws LinAlgException {
+		if (ms.length != _anDims.length - 1)
+			throw new LinAlgException("Chain has " + ms.length + " operands but was planned for " + (_anDims.length - 1));
+		int[] dims = dims(ms);
+		if (!Arrays.equals(dims, _anDims))
+			throw new LinAlgException("Chain dimensions " + Arrays.toString(dims) + " do not match the planned " + Arrays.toString(_anDims));
+		if (ms.length == 1)
+			return new Matrix(ms[0]); // The result is always a new Matrix
+		return product(ms, 0, ms.length - 1);
+	}
+
+	/** Returns the product ms[0] * ms[1] * ... * x (x taken as a column vector) evaluated in
+	 *  the planned order
+	 *
+	 * @param ms
+	 * @param x
+	 * @return
+	 * @throws LinAlgException if the dimensions of ms and x are not the planned ones
+	 */
+	public Vector multiply(Matrix[] ms, Vector x) throws LinAlgException {
+		Matrix[] all = new Matrix[ms.length + 1];
+		System.arraycopy(ms, 0, all, 0, ms.length);
+		all[ms.length] = new Matrix(x.getDim(), 1, x.getArray()); // Zero-copy column
+		Matrix result = multiply(all);
+		return new Vector(result.getArray()); // Freshly allocated and contiguous, so adopt it
+	}
+
+	/** Returns the plan with operands named M0, M1, ..., e.g., "(M0 * (M1 * M2))"
+	 *
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		append(sb, 0, _anDims.length - 2);
+		return sb.toString();
+	}
+
+	private void append(StringBuilder sb, int i, int j) {
+		if (i == j) {
+			sb.append('M').append(i);
+			return;
+		}
+		sb.append('(');
+		append(sb, i, _aanSplit[i][j]);
+		sb.append(" * ");
+		append(sb, _aanSplit[i][j] + 1, j);
+		sb.append(')');
+	}
+
+	/** Returns the product of operands i..j; intermediates become garbage as soon as the
+	 *  product that consumes them returns */
+	private Matrix product(Matrix[] ms, int i, int j) throws LinAlgException {
+		if (i == j)
+			return ms[i];
+		int k = _aanSplit[i][j];
+		Matrix left = product(ms, i, k);
+		Matrix right = product(ms, k + 1, j);
+		if (right.getNumCols() == 1) {
+			Matrix result = new Matrix(left.getNumRows(), 1);
+			ParallelGemm.gemv(ParallelGemm.defaultPool(), left.getNumRows(), left.getNumCols(), 1d,
+					left.getArray(), left.getOffset(), left.getRowStride(), left.getColStride(),
+					right.getArray(), right.getOffset(), right.getRowStride(),
+					result.getArray(), 0, 1);
+			return result;
+		}
+		return Matrix.MultiplyParallel(left, right);
+	}
+}
@@ -0,0 +1,114 @@
+package linalg;
+
+/*** A lazily evaluated product of matrices.
+ *
+ *   multiply() only records its operands (after checking their dimensions), so building
+ *   A * B * C costs nothing; eval() then multiplies the whole chain in the order with the
+ *   fewest floating point operations (see MatrixChain).  Multiplying a MatrixExpr by a
+ *   VectorExpr yields a VectorExpr, so a chain ending in a vector is planned as one unit and
+ *   typically evaluated as a sequence of matrix-vector products.
+ *
+ *   The operand matrices are referenced, not copied: changing them before eval() changes
+ *   the result.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class MatrixExpr {
+
+	private final Matrix[] _am; // Operands of the product, left to right; nomenclature: a for array, m for Matrix
+
+	private MatrixExpr(Matrix[] operands) {
+		_am = operands;
+	}
+
+	/** Returns an expression that evaluates to m
+	 *
+	 * @param m
+	 * @return
+	 */
+	public static MatrixExpr of(Matrix m) {
+		return new MatrixExpr(new Matrix[] { m });
+	}
+
+	/** Return the number of rows of the result
+	 *
+	 * @return
+	 */
+	public int getNumRows() {
+		return _am[0].getNumRows();
+	}
+
+	/** Return the number of columns of the result
+	 *
+	 * @return
+	 */
+	public int getNumCols() {
+		return _am[_am.length - 1].getNumCols();
+	}
+
+	/** Returns the expression *this* * m
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the rows of m
+	 */
+	public MatrixExpr multiply(MatrixExpr m) throws LinAlgException {
+		if (getNumCols() != m.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		Matrix[] operands = new Matrix[_am.length + m._am.length];
+		System.arraycopy(_am, 0, operands, 0, _am.length);
+		System.arraycopy(m._am, 0, operands, _am.length, m._am.length);
+		return new MatrixExpr(operands);
+	}
+
+	/** Returns the expression *this* * m
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the rows of m
+	 */
+	public MatrixExpr multiply(Matrix m) throws LinAlgException {
+		return multiply(of(m));
+	}
+
+	/** Returns the expression *this* * v (v taken as a column vector)
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the size of v
+	 */
+	public VectorExpr multiply(VectorExpr v) throws LinAlgException {
+		if (getNumCols() != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		return VectorExpr.product(_am, v);
+	}
+
+	/** Returns the expression *this* * v (v taken as a column vector)
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the size of v
+	 */
+	public VectorExpr multiply(Vector v) throws LinAlgException {
+		return multiply(VectorExpr.of(v));
+	}
+
+	/** Returns the number of floating point operations eval() will perform
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public long getEstimatedFlops() throws LinAlgException {
+		return MatrixChain.plan(_am).getEstimatedFlops();
+	}
+
+	/** Computes the product in the cheapest order and returns it as a new Matrix
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Matrix eval() throws LinAlgException {
+		return MatrixChain.plan(_am).multiply(_am);
+	}
+}
@@ -0,0 +1,323 @@
+package linalg;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+
+/*** Reads and writes Matrix and Vector contents in a compact binary file format, always
+ *   through memory-mapped FileChannels so no text parsing or intermediate buffers are involved.
+ *
+ *   Every file starts with a 64-byte little-endian header followed by the entries:
+ *
+ *     offset  size  field
+ *          0     4  magic number 0x4C414D58 ("LAMX")
+ *          4     2  format version (currently 1)
+ *          6     1  dtype (DTYPE_FLOAT64: 8-byte IEEE doubles)
+ *          7     1  layout (LAYOUT_VECTOR or LAYOUT_ROW_MAJOR)
+ *          8     8  rows (the dimension, for a vector)
+ *         16     8  cols (1, for a vector)
+ *         24     8  CRC-32C checksum of the payload
+ *         32    32  reserved (zero)
+ *         64     -  rows * cols entries, row-major, little-endian
+ *
+ *   The 64-byte header keeps the payload cache-line aligned, so mapMatrix() and mapVector()
+ *   can hand the mapped file straight to an OffHeapMatrix/OffHeapVector with no copy at all;
+ *   those mapped views are read-only and live as long as the Arena they were mapped into.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class MatrixFile {
+
+	public static final int MAGIC = 0x4C414D58;
+	public static final short VERSION = 1;
+	public static final int HEADER_BYTES = 64;
+
+	public static final byte DTYPE_FLOAT64 = 1;
+
+	public static final byte LAYOUT_VECTOR = 0;
+	public static final byte LAYOUT_ROW_MAJOR = 1;
+
+	private static final ValueLayout.OfInt INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfShort SHORT = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfLong LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+	private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private static final int CRC_CHUNK = 1 << 20; // Bytes checksummed per copy
+
+	private MatrixFile() {
+	}
+
+	/*** The decoded header of a matrix file */
+	public static final class Header {
+
+		private final byte _dtype;
+		private final byte _layout;
+		private final long _lRows;
+		private final long _lCols;
+		private final long _lChecksum;
+
+		Header(byte dtype, byte layout, long rows, long cols, long checksum) {
+			_dtype = dtype;
+			_layout = layout;
+			_lRows = rows;
+			_lCols = cols;
+			_lChecksum = checksum;
+		}
+
+		public byte getDtype() {
+			return _dtype;
+		}
+
+		public byte getLayout() {
+			return _layout;
+		}
+
+		public long getNumRows() {
+			return _lRows;
+		}
+
+		public long getNumCols() {
+			return _lCols;
+		}
+
+		public long getChecksum() {
+			return _lChecksum;
+		}
+
+		/** Return the size in bytes of the payload that follows the header */
+		public long getPayloadBytes() {
+			return _lRows * _lCols * Double.BYTES;
+		}
+
+		@Override
+		public String toString() {
+			return "[ " + (_layout == LAYOUT_VECTOR ? "vector" : "matrix") + " " + _lRows + " x " + _lCols
+				+ ", dtype " + _dtype + ", crc32c " + Long.toHexString(_lChecksum) + " ]";
+		}
+	}
+
+	/** Writes Matrix m to the file at path (replacing any existing file)
+	 *
+	 * @param m
+	 * @param path
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Matrix m, Path path) throws IOException {
+		if (m.getColStride() != 1)
+			m = new Matrix(m); // Rows of a strided view are not contiguous, so pack them first
+		int rows = m.getNumRows();
+		int cols = m.getNumCols();
+		try (Arena arena = Arena.ofConfined(); FileChannel ch = openForWrite(path)) {
+			MemorySegment seg = ch.map(MapMode.READ_WRITE, 0, HEADER_BYTES + (long)rows * cols * Double.BYTES, arena);
+			for (int row = 0; row < rows; row++)
+				MemorySegment.copy(m.getArray(), m.getOffset() + row * m.getRowStride(),
+						seg, DOUBLE, HEADER_BYTES + (long)row * cols * Double.BYTES, cols);
+			writeHeader(seg, LAYOUT_ROW_MAJOR, rows, cols);
+		}
+	}
+
+	/** Writes Vector v to the file at path (replacing any existing file)
+	 *
+	 * @param v
+	 * @param path
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(Vector v, Path path) throws IOException {
+		int dim = v.getDim();
+		try (Arena arena = Arena.ofConfined(); FileChannel ch = openForWrite(path)) {
+			MemorySegment seg = ch.map(MapMode.READ_WRITE, 0, HEADER_BYTES + (long)dim * Double.BYTES, arena);
+			MemorySegment.copy(v.getArray(), 0, seg, DOUBLE, HEADER_BYTES, dim);
+			writeHeader(seg, LAYOUT_VECTOR, dim, 1);
+		}
+	}
+
+	/** Writes OffHeapMatrix m to the file at path (replacing any existing file)
+	 *
+	 * @param m
+	 * @param path
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(OffHeapMatrix m, Path path) throws IOException {
+		long bytes = m.getNumRows() * m.getNumCols() * Double.BYTES;
+		try (Arena arena = Arena.ofConfined(); FileChannel ch = openForWrite(path)) {
+			MemorySegment seg = ch.map(MapMode.READ_WRITE, 0, HEADER_BYTES + bytes, arena);
+			MemorySegment.copy(m.getSegment(), 0, seg, HEADER_BYTES, bytes);
+			writeHeader(seg, LAYOUT_ROW_MAJOR, m.getNumRows(), m.getNumCols());
+		}
+	}
+
+	/** Reads and validates the header of the file at path
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException if the file cannot be read
+	 * @throws LinAlgException if the file is not a valid matrix file
+	 */
+	public static Header readHeader(Path path) throws IOException, LinAlgException {
+		try (Arena arena = Arena.ofConfined(); FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (ch.size() < HEADER_BYTES)
+				throw new LinAlgException("Malformed matrix file: " + path + " is shorter than its header");
+			Header h = parseHeader(ch.map(MapMode.READ_ONLY, 0, HEADER_BYTES, arena), path);
+			if (ch.size() < HEADER_BYTES + h.getPayloadBytes())
+				throw new LinAlgException("Malformed matrix file: " + path + " is truncated");
+			return h;
+		}
+	}
+
+	/** Reads the file at path into a new on-heap Matrix, verifying its checksum
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException if the file cannot be read
+	 * @throws LinAlgException if the file is malformed, corrupt, or too large for a Matrix
+	 */
+	public static Matrix readMatrix(Path path) throws IOException, LinAlgException {
+		Header h = readHeader(path);
+		if (h.getNumRows() * h.getNumCols() > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("A " + h.getNumRows() + "x" + h.getNumCols() + " matrix is too large for an on-heap Matrix");
+		Matrix m = new Matrix((int)h.getNumRows(), (int)h.getNumCols());
+		try (Arena arena = Arena.ofConfined(); FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			MemorySegment payload = ch.map(MapMode.READ_ONLY, HEADER_BYTES, h.getPayloadBytes(), arena);
+			checkCrc(payload, h, path);
+			MemorySegment.copy(payload, DOUBLE, 0, m.getArray(), 0, m.getArray().length);
+		}
+		return m;
+	}
+
+	/** Reads the file at path into a new on-heap Vector, verifying its checksum; a matrix file
+	 *  with a single row or column is accepted as well
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException if the file cannot be read
+	 * @throws LinAlgException if the file is malformed, corrupt, or not a vector
+	 */
+	public static Vector readVector(Path path) throws IOException, LinAlgException {
+		Header h = readHeader(path);
+		long dim = h.getNumRows() * h.getNumCols();
+		if (h.getNumRows() != 1 && h.getNumCols() != 1)
+			throw new LinAlgException("Matrix file " + path + " holds a " + h.getNumRows() + "x" + h.getNumCols() + " matrix, not a vector");
+		if (dim > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("Vector dimension " + dim + " is too large for an on-heap Vector");
+		Vector v = new Vector((int)dim);
+		try (Arena arena = Arena.ofConfined(); FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			MemorySegment payload = ch.map(MapMode.READ_ONLY, HEADER_BYTES, h.getPayloadBytes(), arena);
+			checkCrc(payload, h, path);
+			MemorySegment.copy(payload, DOUBLE, 0, v.getArray(), 0, (int)dim);
+		}
+		return v;
+	}
+
+	/** Maps the file at path into arena as a read-only OffHeapMatrix *without copying it*;
+	 *  the checksum is not verified (see verify) so opening takes constant time
+	 *
+	 * @param path
+	 * @param arena
+	 * @return
+	 * @throws IOException if the file cannot be mapped
+	 * @throws LinAlgException if the file is malformed or the platform is not little-endian
+	 */
+	public static OffHeapMatrix mapMatrix(Path path, Arena arena) throws IOException, LinAlgException {
+		Header h = readHeader(path);
+		return new OffHeapMatrix(h.getNumRows(), h.getNumCols(), mapPayload(path, h, arena));
+	}
+
+	/** Maps the file at path into arena as a read-only OffHeapVector *without copying it*;
+	 *  the checksum is not verified (see verify)
+	 *
+	 * @param path
+	 * @param arena
+	 * @return
+	 * @throws IOException if the file cannot be mapped
+	 * @throws LinAlgException if the file is malformed or the platform is not little-endian
+	 */
+	public static OffHeapVector mapVector(Path path, Arena arena) throws IOException, LinAlgException {
+		Header h = readHeader(path);
+		return new OffHeapVector(mapPayload(path, h, arena));
+	}
+
+	/** Recomputes the checksum of the file at path and compares it to the header
+	 *
+	 * @param path
+	 * @throws IOException if the file cannot be read
+	 * @throws LinAlgException if the file is malformed or the checksum does not match
+	 */
+	public static void verify(Path path) throws IOException, LinAlgException {
+		Header h = readHeader(path);
+		try (Arena arena = Arena.ofConfined(); FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			checkCrc(ch.map(MapMode.READ_ONLY, HEADER_BYTES, h.getPayloadBytes(), arena), h, path);
+		}
+	}
+
+	private static MemorySegment mapPayload(Path path, Header h, Arena arena) throws IOException, LinAlgException {
+		if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN)
+			throw new LinAlgException("Zero-copy mapping needs a little-endian platform; use readMatrix/readVector instead");
+		try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+			// The mapping stays valid after the channel is closed, until the arena is closed
+			return ch.map(MapMode.READ_ONLY, HEADER_BYTES, h.getPayloadBytes(), arena);
+		}
+	}
+
+	private static FileChannel openForWrite(Path path) throws IOException {
+		return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/** Fills in the header of a freshly written file, including the checksum of its payload */
+	static void writeHeader(MemorySegment file, byte layout, long rows, long cols) {
+		file.asSlice(0, HEADER_BYTES).fill((byte)0);
+		file.set(INT, 0, MAGIC);
+		file.set(SHORT, 4, VERSION);
+		file.set(ValueLayout.JAVA_BYTE, 6, DTYPE_FLOAT64);
+		file.set(ValueLayout.JAVA_BYTE, 7, layout);
+		file.set(LONG, 8, rows);
+		file.set(LONG, 16, cols);
+		file.set(LONG, 24, crc(file.asSlice(HEADER_BYTES)));
+	}
+
+	static Header parseHeader(MemorySegment header, Path path) throws LinAlgException {
+		if (header.get(INT, 0) != MAGIC)
+			throw new LinAlgException("Malformed matrix file: bad magic number in " + path);
+		short version = header.get(SHORT, 4);
+		if (version != VERSION)
+			throw new LinAlgException("Unsupported matrix file version " + version + " in " + path);
+		byte dtype = header.get(ValueLayout.JAVA_BYTE, 6);
+		if (dtype != DTYPE_FLOAT64)
+			throw new LinAlgException("Unsupported matrix file dtype " + dtype + " in " + path);
+		byte layout = header.get(ValueLayout.JAVA_BYTE, 7);
+		if (layout != LAYOUT_VECTOR && layout != LAYOUT_ROW_MAJOR)
+			throw new LinAlgException("Unsupported matrix file layout " + layout + " in " + path);
+		long rows = header.get(LONG, 8);
+		long cols = header.get(LONG, 16);
+		if (rows <= 0 || cols <= 0 || rows > Long.MAX_VALUE / Double.BYTES / cols)
+			throw new LinAlgException("Malformed matrix file: invalid dimensions " + rows + "x" + cols + " in " + path);
+		return new Header(dtype, layout, rows, cols, header.get(LONG, 24));
+	}
+
+	/** Returns the CRC-32C of the given bytes, staged through a small heap buffer (ByteBuffer
+	 *  views of segments from shared arenas cannot be checksummed directly)
+	 */
+	static long crc(MemorySegment bytes) {
+		CRC32C crc = new CRC32C();
+		byte[] buf = new byte[CRC_CHUNK];
+		for (long off = 0; off < bytes.byteSize(); off += CRC_CHUNK) {
+			int len = (int)Math.min(CRC_CHUNK, bytes.byteSize() - off);
+			MemorySegment.copy(bytes, ValueLayout.JAVA_BYTE, off, buf, 0, len);
+			crc.update(buf, 0, len);
+		}
+		return crc.getValue();
+	}
+
+	private static void checkCrc(MemorySegment payload, Header h, Path path) throws LinAlgException {
+		if (crc(payload) != h.getChecksum())
+			throw new LinAlgException("Corrupt matrix file: checksum mismatch in " + path);
+	}
+}
@@ -0,0 +1,256 @@
+package linalg;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.Arrays;
+
+/*** A two dimensional real-valued (double) matrix stored row-major outside the Java heap in
+ *   a MemorySegment; entry (row,col) is the double at index row * cols + col.
+ *
+ *   Rows and columns are longs, so the matrix may hold more than 2^31 entries in total, and
+ *   the contents are invisible to the garbage collector.  As with OffHeapVector, memory is
+ *   64-byte aligned and owned by the Arena it was allocated from.
+ *
+ *   Matrix-matrix products are computed one tile at a time: tiles of the operands are copied
+ *   into small on-heap buffers and multiplied by the same blocked kernel Matrix.Multiply uses,
+ *   so the heap footprint stays a few megabytes however large the operands are.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class OffHeapMatrix {
+
+	static int TILE = 256; // Rows/columns of each on-heap tile used by Multiply
+
+	private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+	private final long _lRows;            // Number of rows in this matrix
+	private final long _lCols;            // Number of columns in this matrix
+	private final MemorySegment _segment; // Contents of the matrix, _lRows * _lCols doubles
+
+	/** Allocates a zero-filled matrix of the given dimensions from arena
+	 *
+	 * @param arena
+	 * @param rows
+	 * @param cols
+	 * @throws LinAlgException if either rows or cols is <= 0 or the size in bytes overflows a long
+	 */
+	public OffHeapMatrix(Arena arena, long rows, long cols) throws LinAlgException {
+		if ((rows <= 0) || (cols <= 0))
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		long bytes;
+		try {
+			bytes = Math.multiplyExact(Math.multiplyExact(rows, cols), (long)Double.BYTES);
+		} catch (ArithmeticException e) {
+			throw new LinAlgException("A " + rows + "x" + cols + " matrix is too large");
+		}
+		_lRows = rows;
+		_lCols = cols;
+		_segment = arena.allocate(bytes, OffHeapVector.ALIGNMENT);
+	}
+
+	/** Constructor: wraps an existing row-major segment *without copying it*
+	 *
+	 * @param rows
+	 * @param cols
+	 * @param segment
+	 * @throws LinAlgException if either rows or cols is <= 0 or the segment is too small
+	 */
+	public OffHeapMatrix(long rows, long cols, MemorySegment segment) throws LinAlgException {
+		if ((rows <= 0) || (cols <= 0))
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		if (segment.byteSize() / Double.BYTES / cols < rows)
+			throw new LinAlgException("Segment of " + segment.byteSize() + " bytes cannot hold a " + rows + "x" + cols + " matrix");
+		_lRows = rows;
+		_lCols = cols;
+		_segment = segment;
+	}
+
+	/** Returns a new OffHeapMatrix allocated from arena holding a copy of m
+	 *
+	 * @param m
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public static OffHeapMatrix of(Matrix m, Arena arena) throws LinAlgException {
+		if (m.getColStride() != 1)
+			m = new Matrix(m); // Rows of a strided view are not contiguous, so pack them first
+		OffHeapMatrix o = new OffHeapMatrix(arena, m.getNumRows(), m.getNumCols());
+		for (int row = 0; row < m.getNumRows(); row++)
+			MemorySegment.copy(m.getArray(), m.getOffset() + row * m.getRowStride(),
+					o._segment, DOUBLE, (long)row * m.getNumCols() * Double.BYTES, m.getNumCols());
+		return o;
+	}
+
+	/** Returns a new on-heap Matrix holding a copy of *this*
+	 *
+	 * @return
+	 * @throws LinAlgException if the matrix is too large for an on-heap Matrix
+	 */
+	public Matrix toMatrix() throws LinAlgException {
+		if (_lRows > Integer.MAX_VALUE || _lCols > Integer.MAX_VALUE)
+			throw new LinAlgException("A " + _lRows + "x" + _lCols + " matrix is too large for an on-heap Matrix");
+		Matrix m = new Matrix((int)_lRows, (int)_lCols);
+		MemorySegment.copy(_segment, DOUBLE, 0, m.getArray(), 0, (int)(_lRows * _lCols));
+		return m;
+	}
+
+	/** Constructs a String representation in the same format as Matrix
+	 *
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (long i = 0; i < _lRows; i++) {
+			sb.append("[");
+			for (long j = 0; j < _lCols; j++)
+				TextCodec.appendEntry(sb, _segment.getAtIndex(DOUBLE, i * _lCols + j));
+			sb.append(" ]\n");
+		}
+		return sb.toString();
+	}
+
+	/** Two OffHeapMatrices are equal iff they have the same dimensions and all elements match
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof OffHeapMatrix))
+			return false;
+		OffHeapMatrix m = (OffHeapMatrix)o;
+		if (_lRows != m._lRows || _lCols != m._lCols)
+			return false;
+		long n = _lRows * _lCols;
+		for (long i = 0; i < n; i++)
+			if (_segment.getAtIndex(DOUBLE, i) != m._segment.getAtIndex(DOUBLE, i))
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = 31 * Long.hashCode(_lRows) + Long.hashCode(_lCols);
+		long n = _lRows * _lCols;
+		for (long i = 0; i < n; i++)
+			h = 31 * h + Double.hashCode(_segment.getAtIndex(DOUBLE, i));
+		return h;
+	}
+
+	/** Return the number of rows in this matrix
+	 *
+	 * @return
+	 */
+	public long getNumRows() {
+		return _lRows;
+	}
+
+	/** Return the number of columns in this matrix
+	 *
+	 * @return
+	 */
+	public long getNumCols() {
+		return _lCols;
+	}
+
+	/** Return the segment backing this matrix *without copying it*
+	 *
+	 * @return
+	 */
+	public MemorySegment getSegment() {
+		return _segment;
+	}
+
+	/** Return the scalar value at the given row and column of the matrix
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public double get(long row, long col) throws LinAlgException {
+		if ((row >= _lRows) || (row < 0) || (col >= _lCols) || (col < 0))
+			throw new LinAlgException("Column or row out of bounds!");
+		return _segment.getAtIndex(DOUBLE, row * _lCols + col);
+	}
+
+	/** Set the row and col of this matrix to the provided val
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public void set(long row, long col, double val) throws LinAlgException {
+		if ((row >= _lRows) || (row < 0) || (col >= _lCols) || (col < 0))
+			throw new LinAlgException("Invalid index.");
+		_segment.setAtIndex(DOUBLE, row * _lCols + col, val);
+	}
+
+	/** Returns the result of multiplying m by v (assuming v is a column vector), allocated
+	 *  from arena
+	 *
+	 * @param m
+	 * @param v
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public static OffHeapVector Multiply(OffHeapMatrix m, OffHeapVector v, Arena arena) throws LinAlgException {
+		if (m._lCols != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		OffHeapVector result = new OffHeapVector(arena, m._lRows);
+		MemorySegment x = v.getSegment();
+		MemorySegment y = result.getSegment();
+		for (long row = 0; row < m._lRows; row++)
+			y.setAtIndex(DOUBLE, row, OffHeapVector.dot(m._segment, row * m._lCols, x, 0, m._lCols));
+		return result;
+	}
+
+	/** Returns the result of multiplying m1 and m2, allocated from arena
+	 *
+	 * @param m1
+	 * @param m2
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match the size of m2 rows
+	 */
+	public static OffHeapMatrix Multiply(OffHeapMatrix m1, OffHeapMatrix m2, Arena arena) throws LinAlgException {
+		if (m1._lCols != m2._lRows)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		OffHeapMatrix result = new OffHeapMatrix(arena, m1._lRows, m2._lCols);
+		int tile = TILE;
+		double[] a = new double[tile * tile];
+		double[] b = new double[tile * tile];
+		double[] c = new double[tile * tile];
+		for (long i0 = 0; i0 < m1._lRows; i0 += tile) {
+			int mb = (int)Math.min(tile, m1._lRows - i0);
+			for (long j0 = 0; j0 < m2._lCols; j0 += tile) {
+				int nb = (int)Math.min(tile, m2._lCols - j0);
+				Arrays.fill(c, 0, mb * nb, 0d);
+				for (long k0 = 0; k0 < m1._lCols; k0 += tile) {
+					int kb = (int)Math.min(tile, m1._lCols - k0);
+					m1.readTile(i0, k0, mb, kb, a);
+					m2.readTile(k0, j0, kb, nb, b);
+					Gemm.gemm(mb, nb, kb, 1d, a, 0, kb, 1, b, 0, nb, 1, c, 0, nb, 1);
+				}
+				result.writeTile(i0, j0, mb, nb, c);
+			}
+		}
+		return result;
+	}
+
+	/** Copies the rows x cols block starting at (row0, col0) into dst, densely row-major */
+	void readTile(long row0, long col0, int rows, int cols, double[] dst) {
+		for (int i = 0; i < rows; i++)
+			MemorySegment.copy(_segment, DOUBLE, ((row0 + i) * _lCols + col0) * Double.BYTES, dst, i * cols, cols);
+	}
+
+	/** Copies a dense row-major rows x cols block from src into *this* starting at (row0, col0) */
+	void writeTile(long row0, long col0, int rows, int cols, double[] src) {
+		for (int i = 0; i < rows; i++)
+			MemorySegment.copy(src, i * cols, _segment, DOUBLE, ((row0 + i) * _lCols + col0) * Double.BYTES, cols);
+	}
+}
@@ -0,0 +1,298 @@
+package linalg;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+
+/*** A real-valued (double) vector stored outside the Java heap in a MemorySegment.
+ *
+ *   Unlike Vector, the contents are invisible to the garbage collector and the dimension is
+ *   a long, so a single OffHeapVector may hold more than 2^31 entries.  Memory is allocated
+ *   64-byte aligned (one cache line) from an Arena supplied by the caller, which also owns
+ *   its lifetime: once the arena is closed every OffHeapVector allocated from it becomes
+ *   unusable (any access throws IllegalStateException).  Operations that return a new
+ *   vector take the arena to allocate it from.
+ *
+ *   Uses the Foreign Function & Memory API (java.lang.foreign), which needs --enable-preview
+ *   on JDK 21.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class OffHeapVector {
+
+	static final long ALIGNMENT = 64; // Byte alignment of every allocation (one cache line)
+
+	private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE;
+
+	private final long _lDim;            // Dimension of the vector; nomenclature: l for long
+	private final MemorySegment _segment; // Contents of the vector, _lDim doubles
+
+	/** Constructor: allocates a zero-filled vector of dimension dim from arena
+	 *
+	 * @param arena
+	 * @param dim
+	 * @throws LinAlgException if vector dimension is < 1 or its size in bytes overflows a long
+	 */
+	public OffHeapVector(Arena arena, long dim) throws LinAlgException {
+		if (dim <= 0)
+			throw new LinAlgException("Vector dimension " + dim + " cannot be less than 1");
+		long bytes;
+		try {
+			bytes = Math.multiplyExact(dim, (long)Double.BYTES);
+		} catch (ArithmeticException e) {
+			throw new LinAlgException("Vector dimension " + dim + " is too large");
+		}
+		_lDim = dim;
+		_segment = arena.allocate(bytes, ALIGNMENT); // Arena allocations are zeroed
+	}
+
+	/** Constructor: wraps an existing segment *without copying it*; the dimension is the
+	 *  segment size in doubles
+	 *
+	 * @param segment
+	 * @throws LinAlgException if the segment is empty or not a whole number of doubles
+	 */
+	public OffHeapVector(MemorySegment segment) throws LinAlgException {
+		if (segment.byteSize() == 0 || segment.byteSize() % Double.BYTES != 0)
+			throw new LinAlgException("Segment of " + segment.byteSize() + " bytes does not hold a whole number of doubles");
+		_lDim = segment.byteSize() / Double.BYTES;
+		_segment = segment;
+	}
+
+	/** Returns a new OffHeapVector allocated from arena holding a copy of v
+	 *
+	 * @param v
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public static OffHeapVector of(Vector v, Arena arena) throws LinAlgException {
+		OffHeapVector o = new OffHeapVector(arena, v.getDim());
+		MemorySegment.copy(v.getArray(), 0, o._segment, DOUBLE, 0, v.getDim());
+		return o;
+	}
+
+	/** Returns a new on-heap Vector holding a copy of *this*
+	 *
+	 * @return
+	 * @throws LinAlgException if the dimension is too large for an on-heap Vector
+	 */
+	public Vector toVector() throws LinAlgException {
+		if (_lDim > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("Vector dimension " + _lDim + " is too large for an on-heap Vector");
+		Vector v = new Vector((int)_lDim);
+		MemorySegment.copy(_segment, DOUBLE, 0, v.getArray(), 0, (int)_lDim);
+		return v;
+	}
+
+	/** Converts the vector to a human readable String in the same format as Vector
+	 *
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[");
+		for (long i = 0; i < _lDim; i++)
+			TextCodec.appendEntry(sb, _segment.getAtIndex(DOUBLE, i));
+		sb.append(" ]");
+		return sb.toString();
+	}
+
+	/** Two OffHeapVectors are equal iff they have the same dimension and values match at all
+	 *  indices
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof OffHeapVector))
+			return false;
+		OffHeapVector v = (OffHeapVector)o;
+		if (_lDim != v._lDim)
+			return false;
+		for (long i = 0; i < _lDim; i++)
+			if (_segment.getAtIndex(DOUBLE, i) != v._segment.getAtIndex(DOUBLE, i))
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = Long.hashCode(_lDim);
+		for (long i = 0; i < _lDim; i++)
+			h = 31 * h + Double.hashCode(_segment.getAtIndex(DOUBLE, i));
+		return h;
+	}
+
+	/** Get the dimension of this vector
+	 *
+	 * @return
+	 */
+	public long getDim() {
+		return _lDim;
+	}
+
+	/** Return the segment backing this vector *without copying it*
+	 *
+	 * @return
+	 */
+	public MemorySegment getSegment() {
+		return _segment;
+	}
+
+	/** Returns the value of this vector at the given index
+	 *
+	 * @param index
+	 * @return
+	 * @throws LinAlgException if index is out of bounds
+	 */
+	public double get(long index) throws LinAlgException {
+		if (index < 0 || index >= _lDim)
+			throw new LinAlgException("Invalid index.");
+		return _segment.getAtIndex(DOUBLE, index);
+	}
+
+	/** Set the value val of the vector at the given index
+	 *
+	 * @param index
+	 * @param val
+	 * @throws LinAlgException if index is out of bounds
+	 */
+	public void set(long index, double val) throws LinAlgException {
+		if (index < 0 || index >= _lDim)
+			throw new LinAlgException("Invalid index.");
+		_segment.setAtIndex(DOUBLE, index, val);
+	}
+
+	/** Adds a scalar d to all elements of *this* (modifies *this*)
+	 *
+	 * @param d
+	 */
+	public void scalarAddInPlace(double d) {
+		for (long i = 0; i < _lDim; i++)
+			_segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) + d);
+	}
+
+	/** Returns a new vector allocated from arena holding *this* plus d (does not modify *this*)
+	 *
+	 * @param d
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public OffHeapVector scalarAdd(double d, Arena arena) throws LinAlgException {
+		OffHeapVector u = new OffHeapVector(arena, _lDim);
+		for (long i = 0; i < _lDim; i++)
+			u._segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) + d);
+		return u;
+	}
+
+	/** Multiplies all elements of *this* by a scalar d (modifies *this*)
+	 *
+	 * @param d
+	 */
+	public void scalarMultInPlace(double d) {
+		for (long i = 0; i < _lDim; i++)
+			_segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) * d);
+	}
+
+	/** Returns a new vector allocated from arena holding *this* times d (does not modify *this*)
+	 *
+	 * @param d
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public OffHeapVector scalarMult(double d, Arena arena) throws LinAlgException {
+		OffHeapVector u = new OffHeapVector(arena, _lDim);
+		for (long i = 0; i < _lDim; i++)
+			u._segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) * d);
+		return u;
+	}
+
+	/** Performs an elementwise addition of v to *this*, modifies *this*
+	 *
+	 * @param v
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseAddInPlace(OffHeapVector v) throws LinAlgException {
+		checkDim(v);
+		for (long i = 0; i < _lDim; i++)
+			_segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) + v._segment.getAtIndex(DOUBLE, i));
+	}
+
+	/** Returns a new vector allocated from arena holding *this* plus v
+	 *
+	 * @param v
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public OffHeapVector elementwiseAdd(OffHeapVector v, Arena arena) throws LinAlgException {
+		checkDim(v);
+		OffHeapVector u = new OffHeapVector(arena, _lDim);
+		for (long i = 0; i < _lDim; i++)
+			u._segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) + v._segment.getAtIndex(DOUBLE, i));
+		return u;
+	}
+
+	/** Performs an elementwise multiplication of v and *this*, modifies *this*
+	 *
+	 * @param v
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public void elementwiseMultInPlace(OffHeapVector v) throws LinAlgException {
+		checkDim(v);
+		for (long i = 0; i < _lDim; i++)
+			_segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) * v._segment.getAtIndex(DOUBLE, i));
+	}
+
+	/** Returns a new vector allocated from arena holding the elementwise product of *this* and v
+	 *
+	 * @param v
+	 * @param arena
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public OffHeapVector elementwiseMult(OffHeapVector v, Arena arena) throws LinAlgException {
+		checkDim(v);
+		OffHeapVector u = new OffHeapVector(arena, _lDim);
+		for (long i = 0; i < _lDim; i++)
+			u._segment.setAtIndex(DOUBLE, i, _segment.getAtIndex(DOUBLE, i) * v._segment.getAtIndex(DOUBLE, i));
+		return u;
+	}
+
+	/** Performs an inner product of v1 and v2 and returns the scalar result
+	 *
+	 * @param v1
+	 * @param v2
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
+	 */
+	public static double InnerProd(OffHeapVector v1, OffHeapVector v2) throws LinAlgException {
+		v1.checkDim(v2);
+		return dot(v1._segment, 0, v2._segment, 0, v1._lDim);
+	}
+
+	/** Returns the sum over i < n of a[aOff + i] * b[bOff + i] (offsets in doubles) */
+	static double dot(MemorySegment a, long aOff, MemorySegment b, long bOff, long n) {
+		// Four independent partial sums so consecutive multiply-adds do not wait on each other
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		long i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += a.getAtIndex(DOUBLE, aOff + i) * b.getAtIndex(DOUBLE, bOff + i);
+			s1 += a.getAtIndex(DOUBLE, aOff + i + 1) * b.getAtIndex(DOUBLE, bOff + i + 1);
+			s2 += a.getAtIndex(DOUBLE, aOff + i + 2) * b.getAtIndex(DOUBLE, bOff + i + 2);
+			s3 += a.getAtIndex(DOUBLE, aOff + i + 3) * b.getAtIndex(DOUBLE, bOff + i + 3);
+		}
+		for (; i < n; i++)
+			s0 += a.getAtIndex(DOUBLE, aOff + i) * b.getAtIndex(DOUBLE, bOff + i);
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	private void checkDim(OffHeapVector v) throws LinAlgException {
+		if (_lDim != v._lDim)
+			throw new LinAlgException("The dimensions of the two vectors do not match!");
+	}
+}
@@ -0,0 +1,246 @@
+package linalg;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/*** Multiplies matrices stored in MatrixFile format that are too large to hold in memory.
+ *
+ *   The product C = A * B is computed one T x T output tile at a time: for each tile of C the
+ *   matching row of A tiles and column of B tiles are streamed in, multiplied by the blocked
+ *   in-memory kernel and accumulated, and the finished tile is written back to the output
+ *   file.  The input files are memory-mapped, so only the pages of the tiles being read are
+ *   brought in by the operating system; the heap holds just the tile buffers.
+ *
+ *   Each pair of A and B tiles is prefetched on a background thread while the previous pair
+ *   is multiplied, including the first pair of each output tile, which is loaded while the
+ *   last pair of the previous output tile is multiplied.  The tile size is derived from the
+ *   memory budget, which must hold five T x T tiles (the current A and B tiles, the next A
+ *   and B tiles and the output tile) plus the packing buffers of the matrix multiply kernel
+ *   on every thread of the default parallel pool and on the calling thread.
+ *
+ *   The product is written to a temporary file next to the output file, which is renamed
+ *   to the output file only once it is complete, so a failed run never leaves a partial
+ *   result that looks valid.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class OutOfCoreMultiply {
+
+	private static final ValueLayout.OfDouble DOUBLE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+	private static final int LIVE_TILES = 5;  // current A and B, prefetched A and B, output C
+	private static final int MIN_TILE = 16;
+	private static final int MAX_TILE = 46340; // Keeps tile * tile within an int
+
+	private final int _nTile; // Rows and columns of each tile
+
+	/** Creates an engine whose tile and packing buffers together use at most memoryBudget
+	 *  bytes of heap, with the parallelism and block sizes in effect now
+	 *
+	 * @param memoryBudget
+	 * @throws LinAlgException if the budget cannot hold the buffers for 16 x 16 tiles
+	 */
+	public OutOfCoreMultiply(long memoryBudget) throws LinAlgException {
+		int threads = ParallelGemm.defaultPool().getParallelism() + 1; // Workers and the calling thread
+		Gemm.Blocking blocking = Gemm.Blocking.current();
+		if (bufferBytes(MIN_TILE, threads, blocking) > memoryBudget)
+			throw new LinAlgException("Memory budget of " + memoryBudget + " bytes is too small for out-of-core multiply");
+		// Largest tile whose buffers fit: binary search, since the bytes grow with the tile
+		int lo = MIN_TILE;
+		int hi = MAX_TILE;
+		while (lo < hi) {
+			int mid = (int)(((long)lo + hi + 1) / 2);
+			if (bufferBytes(mid, threads, blocking) <= memoryBudget)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		_nTile = lo;
+	}
+
+	/** Return the number of rows and columns of each tile
+	 *
+	 * @return
+	 */
+	public int getTileSize() {
+		return _nTile;
+	}
+
+	/** Computes the product of the matrices in files a and b and writes it to file out in
+	 *  MatrixFile format (out must be a different file from a and b)
+	 *
+	 * @param a
+	 * @param b
+	 * @param out
+	 * @throws IOException if a file cannot be read or written
+	 * @throws LinAlgException if a file is malformed, a columns do not match b rows, the
+	 *         product is too large for a matrix file or out is the same file as a or b
+	 */
+	public void multiply(Path a, Path b, Path out) throws IOException, LinAlgException {
+		MatrixFile.Header ha = MatrixFile.readHeader(a);
+		MatrixFile.Header hb = MatrixFile.readHeader(b);
+		if (Files.exists(out) && (Files.isSameFile(out, a) || Files.isSameFile(out, b)))
+			throw new LinAlgException("Output file " + out + " cannot be the same file as an operand!");
+		if (ha.getNumCols() != hb.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		long m = ha.getNumRows();
+		long k = ha.getNumCols();
+		long n = hb.getNumCols();
+		long fileBytes;
+		try {
+			fileBytes = Math.addExact(MatrixFile.HEADER_BYTES, Math.multiplyExact(Math.multiplyExact(m, n), (long)Double.BYTES));
+		} catch (ArithmeticException e) {
+			throw new LinAlgException("A " + m + "x" + n + " product is too large for a matrix file");
+		}
+		int t = (int)Math.min(_nTile, Math.max(m, Math.max(n, k)));
+
+		Path dir = out.toAbsolutePath().getParent();
+		Path tmp = Files.createTempFile(dir, out.getFileName().toString() + ".", ".tmp");
+		boolean done = false;
+		try {
+			try (Arena arena = Arena.ofShared();
+					FileChannel cha = FileChannel.open(a, StandardOpenOption.READ);
+					FileChannel chb = FileChannel.open(b, StandardOpenOption.READ);
+					FileChannel chc = FileChannel.open(tmp, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+				MemorySegment sa = cha.map(MapMode.READ_ONLY, MatrixFile.HEADER_BYTES, ha.getPayloadBytes(), arena);
+				MemorySegment sb = chb.map(MapMode.READ_ONLY, MatrixFile.HEADER_BYTES, hb.getPayloadBytes(), arena);
+				MemorySegment file = chc.map(MapMode.READ_WRITE, 0, fileBytes, arena);
+				ExecutorService prefetcher = Executors.newSingleThreadExecutor(r -> {
+					Thread th = new Thread(r, "linalg-prefetch");
+					th.setDaemon(true);
+					return th;
+				});
+				try {
+					multiplyTiles(prefetcher, sa, sb, file.asSlice(MatrixFile.HEADER_BYTES), m, n, k, t);
+				} finally {
+					stop(prefetcher); // No tile copy may still read the mappings when the arena closes
+				}
+				MatrixFile.writeHeader(file, MatrixFile.LAYOUT_ROW_MAJOR, m, n);
+			}
+			try {
+				Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, out, StandardCopyOption.REPLACE_EXISTING);
+			}
+			done = true;
+		} finally {
+			if (!done)
+				Files.deleteIfExists(tmp);
+		}
+	}
+
+	/** Computes C = A * B tile by tile, where A (m x k), B (k x n) and C (m x n) are the
+	 *  row-major payloads sa, sb and sc; steps run over the k tiles of each output tile in
+	 *  turn, and the tiles of step s + 1 are loaded while step s is multiplied
+	 */
+	private static void multiplyTiles(ExecutorService prefetcher, MemorySegment sa, MemorySegment sb, MemorySegment sc,
+			long m, long n, long k, int t) throws IOException {
+		double[][] bufA = { new double[t * t], new double[t * t] };
+		double[][] bufB = { new double[t * t], new double[t * t] };
+		double[] c = new double[t * t];
+		long jTiles = (n + t - 1) / t;
+		long kTiles = (k + t - 1) / t;
+		long steps = (m + t - 1) / t * jTiles * kTiles;
+		int cur = 0;
+		Future<?> pending = prefetch(prefetcher, sa, sb, m, n, k, t, jTiles, kTiles, 0, bufA[cur], bufB[cur]);
+		for (long s = 0; s < steps; s++) {
+			long i0 = s / (jTiles * kTiles) * t;
+			long j0 = s / kTiles % jTiles * t;
+			long kt = s % kTiles;
+			int mb = (int)Math.min(t, m - i0);
+			int nb = (int)Math.min(t, n - j0);
+			int kb = (int)Math.min(t, k - kt * t);
+			await(pending);
+			int next = 1 - cur;
+			pending = s + 1 < steps
+				? prefetch(prefetcher, sa, sb, m, n, k, t, jTiles, kTiles, s + 1, bufA[next], bufB[next])
+				: null;
+			if (kt == 0)
+				Arrays.fill(c, 0, mb * nb, 0d);
+			ParallelGemm.gemm(ParallelGemm.defaultPool(), mb, nb, kb, 1d,
+					bufA[cur], 0, kb, 1, bufB[cur], 0, nb, 1, c, 0, nb, 1);
+			if (kt == kTiles - 1) {
+				for (int i = 0; i < mb; i++)
+					MemorySegment.copy(c, i * nb, sc, DOUBLE, ((i0 + i) * n + j0) * Double.BYTES, nb);
+			}
+			cur = next;
+		}
+	}
+
+	/** Copies the A tile (mb x kb) and B tile (kb x nb) of the given step into dense
+	 *  row-major buffers on the prefetch thread
+	 */
+	private static Future<?> prefetch(ExecutorService prefetcher, MemorySegment sa, MemorySegment sb,
+			long m, long n, long k, int t, long jTiles, long kTiles, long step, double[] dstA, double[] dstB) {
+		long i0 = step / (jTiles * kTiles) * t;
+		long j0 = step / kTiles % jTiles * t;
+		long k0 = step % kTiles * t;
+		int mb = (int)Math.min(t, m - i0);
+		int nb = (int)Math.min(t, n - j0);
+		int kb = (int)Math.min(t, k - k0);
+		return prefetcher.submit(() -> {
+			for (int i = 0; i < mb; i++)
+				MemorySegment.copy(sa, DOUBLE, ((i0 + i) * k + k0) * Double.BYTES, dstA, i * kb, kb);
+			for (int p = 0; p < kb; p++)
+				MemorySegment.copy(sb, DOUBLE, ((k0 + p) * n + j0) * Double.BYTES, dstB, p * nb, nb);
+		});
+	}
+
+	private static void await(Future<?> f) throws IOException {
+		try {
+			f.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading a tile", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Failed to load a tile", e.getCause());
+		}
+	}
+
+	/** Shuts the prefetcher down and waits until its running copy (if any) has finished */
+	private static void stop(ExecutorService prefetcher) {
+		prefetcher.shutdownNow();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (prefetcher.awaitTermination(1, TimeUnit.MINUTES))
+					break;
+			} catch (InterruptedException e) {
+				interrupted = true; // Keep waiting: the copy would fail once the arena is closed
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	/** Returns the bytes of heap used by the tile buffers for t x t tiles and by the packing
+	 *  buffers of that many threads running the given blocking on those tiles
+	 */
+	private static long bufferBytes(int t, int threads, Gemm.Blocking blocking) {
+		long mc = Math.min(blocking._nMC, roundUp(t, Gemm.MR));
+		long kc = Math.min(blocking._nKC, t);
+		long nc = Math.min(blocking._nNC, roundUp(t, Gemm.NR));
+		return ((long)LIVE_TILES * t * t + threads * kc * (mc + nc)) * Double.BYTES;
+	}
+
+	private static long roundUp(long x, int multiple) {
+		return (x + multiple - 1) / multiple * multiple;
+	}
+}
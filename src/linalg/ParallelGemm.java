@@ -0,0 +1,192 @@
+package linalg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/*** Fork-join driver that spreads the Gemm kernels over several cores.
+ *
+ *   A matrix-matrix product is split recursively along the longer of its row and column
+ *   dimensions (never along the inner dimension, so no two tasks write the same entry of C)
+ *   until each tile is small enough; each tile then runs the single-threaded Gemm.gemm()
+ *   with its own per-thread packing buffers.  A matrix-vector product is split by rows.
+ *
+ *   Products below the threshold (measured in multiply-adds) never touch the pool.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class ParallelGemm {
+
+	// Products with fewer multiply-adds than this stay on the calling thread
+	static volatile long _lThreshold = TuningProfile.startup()._lParallelThreshold;
+
+	// Leaf tasks are never smaller than this many multiply-adds
+	static final long MIN_LEAF = 64L * 64 * 64;
+
+	// Seconds an idle worker of a default pool waits for work before it exits
+	static final long KEEP_ALIVE_SECONDS = 5L;
+
+	private static ForkJoinPool _pool; // Created on first use; guarded by ParallelGemm.class
+
+	private ParallelGemm() {
+	}
+
+	/** Returns the pool used when the caller does not supply one */
+	static synchronized ForkJoinPool defaultPool() {
+		if (_pool == null) {
+			int threads = TuningProfile.startup()._nThreads;
+			_pool = newPool(threads > 0 ? threads : Runtime.getRuntime().availableProcessors());
+		}
+		return _pool;
+	}
+
+	/** Replaces the default pool by one with the given number of worker threads, unless it
+	 *  already has that many.  The old pool is not shut down, since callers that fetched it
+	 *  from defaultPool() may still be about to submit to it; once they are done its workers
+	 *  time out and exit.
+	 */
+	static synchronized void setParallelism(int parallelism) {
+		if (_pool == null || _pool.getParallelism() != parallelism)
+			_pool = newPool(parallelism);
+	}
+
+	/** Returns a pool whose idle workers all exit after KEEP_ALIVE_SECONDS (with the default
+	 *  limit of 256 spare threads for blocked tasks)
+	 */
+	private static ForkJoinPool newPool(int parallelism) {
+		return new ForkJoinPool(parallelism, ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false,
+				0, parallelism + 256, 1, null, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS);
+	}
+
+	/** Parallel version of Gemm.gemm(): computes C += alpha * A * B on the given pool */
+	static void gemm(ForkJoinPool pool, int m, int n, int k, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		gemm(pool, _lThreshold, Gemm.Blocking.current(), m, n, k, alpha, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs);
+	}
+
+	/** Same as gemm() above, with the given threshold and blocking instead of the global
+	 *  settings
+	 */
+	static void gemm(ForkJoinPool pool, long threshold, Gemm.Blocking blocking, int m, int n, int k, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		if ((long)m * n * k < threshold || pool.getParallelism() <= 1) {
+			Gemm.gemm(blocking, m, n, k, alpha, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs);
+			return;
+		}
+		invoke(pool, blocking, m, n, k, alpha, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs);
+	}
+
+	private static void invoke(ForkJoinPool pool, Gemm.Blocking blocking, int m, int n, int k, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		long leaf = Math.max(MIN_LEAF, (long)m * n * k / (4L * pool.getParallelism()));
+		pool.invoke(new GemmTask(m, n, k, alpha, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs, leaf, blocking));
+	}
+
+	/** Parallel version of Gemm.gemv(): computes y += alpha * A * x on the given pool */
+	static void gemv(ForkJoinPool pool, int m, int n, double alpha,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] x, int xOff, int xInc,
+			double[] y, int yOff, int yInc) {
+		long work = (long)m * n;
+		if (work < _lThreshold || pool.getParallelism() <= 1) {
+			Gemm.gemv(m, n, alpha, a, aOff, aRs, aCs, x, xOff, xInc, y, yOff, yInc);
+			return;
+		}
+		int leafRows = (int)Math.max(1, Math.max(MIN_LEAF / n, m / (4L * pool.getParallelism())));
+		pool.invoke(new GemvTask(0, m, n, alpha, a, aOff, aRs, aCs, x, xOff, xInc, y, yOff, yInc, leafRows));
+	}
+
+	/** Computes one tile of C, or splits it in two and computes both halves in parallel */
+	private static final class GemmTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int _m, _n, _k;
+		private final double _alpha;
+		private final double[] _a, _b, _c;
+		private final int _aOff, _aRs, _aCs, _bOff, _bRs, _bCs, _cOff, _cRs, _cCs;
+		private final long _lLeaf;
+		private final transient Gemm.Blocking _blocking; // Settings of the whole product, fixed when it started
+
+		GemmTask(int m, int n, int k, double alpha,
+				double[] a, int aOff, int aRs, int aCs,
+				double[] b, int bOff, int bRs, int bCs,
+				double[] c, int cOff, int cRs, int cCs, long leaf, Gemm.Blocking blocking) {
+			_m = m; _n = n; _k = k; _alpha = alpha;
+			_a = a; _aOff = aOff; _aRs = aRs; _aCs = aCs;
+			_b = b; _bOff = bOff; _bRs = bRs; _bCs = bCs;
+			_c = c; _cOff = cOff; _cRs = cRs; _cCs = cCs;
+			_lLeaf = leaf;
+			_blocking = blocking;
+		}
+
+		@Override
+		protected void compute() {
+			if ((long)_m * _n * _k <= _lLeaf || (_m <= Gemm.MR && _n <= Gemm.NR)) {
+				Gemm.gemm(_blocking, _m, _n, _k, _alpha, _a, _aOff, _aRs, _aCs, _b, _bOff, _bRs, _bCs, _c, _cOff, _cRs, _cCs);
+				return;
+			}
+			if (_m >= _n) {
+				// Split rows of A and C on a micro-kernel boundary
+				int top = Math.max(Gemm.MR, (_m / 2) / Gemm.MR * Gemm.MR);
+				invokeAll(
+					new GemmTask(top, _n, _k, _alpha, _a, _aOff, _aRs, _aCs, _b, _bOff, _bRs, _bCs,
+							_c, _cOff, _cRs, _cCs, _lLeaf, _blocking),
+					new GemmTask(_m - top, _n, _k, _alpha, _a, _aOff + top * _aRs, _aRs, _aCs, _b, _bOff, _bRs, _bCs,
+							_c, _cOff + top * _cRs, _cRs, _cCs, _lLeaf, _blocking));
+			} else {
+				// Split columns of B and C on a micro-kernel boundary
+				int left = Math.max(Gemm.NR, (_n / 2) / Gemm.NR * Gemm.NR);
+				invokeAll(
+					new GemmTask(_m, left, _k, _alpha, _a, _aOff, _aRs, _aCs, _b, _bOff, _bRs, _bCs,
+							_c, _cOff, _cRs, _cCs, _lLeaf, _blocking),
+					new GemmTask(_m, _n - left, _k, _alpha, _a, _aOff, _aRs, _aCs, _b, _bOff + left * _bCs, _bRs, _bCs,
+							_c, _cOff + left * _cCs, _cRs, _cCs, _lLeaf, _blocking));
+			}
+		}
+	}
+
+	/** Computes rows [from, to) of y, or splits the range in two */
+	private static final class GemvTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int _nFrom, _nTo, _n;
+		private final double _alpha;
+		private final double[] _a, _x, _y;
+		private final int _aOff, _aRs, _aCs, _xOff, _xInc, _yOff, _yInc;
+		private final int _nLeafRows;
+
+		GemvTask(int from, int to, int n, double alpha,
+				double[] a, int aOff, int aRs, int aCs,
+				double[] x, int xOff, int xInc,
+				double[] y, int yOff, int yInc, int leafRows) {
+			_nFrom = from; _nTo = to; _n = n; _alpha = alpha;
+			_a = a; _aOff = aOff; _aRs = aRs; _aCs = aCs;
+			_x = x; _xOff = xOff; _xInc = xInc;
+			_y = y; _yOff = yOff; _yInc = yInc;
+			_nLeafRows = leafRows;
+		}
+
+		@Override
+		protected void compute() {
+			int rows = _nTo - _nFrom;
+			if (rows <= _nLeafRows) {
+				Gemm.gemv(rows, _n, _alpha, _a, _aOff + _nFrom * _aRs, _aRs, _aCs, _x, _xOff, _xInc,
+						_y, _yOff + _nFrom * _yInc, _yInc);
+				return;
+			}
+			int mid = _nFrom + rows / 2;
+			invokeAll(
+				new GemvTask(_nFrom, mid, _n, _alpha, _a, _aOff, _aRs, _aCs, _x, _xOff, _xInc, _y, _yOff, _yInc, _nLeafRows),
+				new GemvTask(mid, _nTo, _n, _alpha, _a, _aOff, _aRs, _aCs, _x, _xOff, _xInc, _y, _yOff, _yInc, _nLeafRows));
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package linalg;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*** An opt-in cache of matrix products for programs that multiply the same operands again
+ *   and again (e.g., a fixed operator applied to a handful of recurring vectors).
+ *
+ *   Products are keyed by the content stamps of their operands rather than by their
+ *   content: every Matrix and Vector hands out a stamp on demand, keeps it until it is
+ *   modified and never reuses it, so looking up a product costs a few field reads no matter
+ *   how large its operands are.  Every method of Matrix and Vector that writes to an object
+ *   (set, the in-place operations, the output of gemm, gemv and the other multiply-into
+ *   methods) drops its stamp, and views share the stamp of the matrix they were taken from.
+ *   Writes that bypass those methods, i.e., through getArray() or through an array wrapped
+ *   by a Matrix constructor, must be followed by markModified(), or the cache will keep
+ *   returning products of the old content.
+ *
+ *   The cache holds at most maxBytes of products (each counted as its entries plus a fixed
+ *   overhead) and evicts the least recently used product first; a product larger than
+ *   maxBytes is computed but not cached.  The cached products are never handed out: every
+ *   call returns a new copy (one pass over the product, far cheaper than recomputing it),
+ *   so callers may modify their results without affecting each other or later hits.
+ *   Products are computed outside the lock, so concurrent misses on different operands do
+ *   not wait for each other.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class ProductCache {
+
+	private static final AtomicLong STAMPS = new AtomicLong();
+
+	static final long ENTRY_OVERHEAD = 128; // Bytes counted per product besides its entries (key, headers, map node)
+
+	private final long _lMaxBytes;
+	private final ReentrantLock _lock = new ReentrantLock(); // Guards everything below
+	private final LinkedHashMap<Key, Entry> _entries = new LinkedHashMap<>(16, 0.75f, true); // In access order, eldest first
+	private long _lBytes, _lHits, _lMisses, _lEvictions;
+
+	/** Creates an empty cache holding at most maxBytes of products
+	 *
+	 * @param maxBytes
+	 * @throws LinAlgException if maxBytes is not positive
+	 */
+	public ProductCache(long maxBytes) throws LinAlgException {
+		if (maxBytes <= 0)
+			throw new LinAlgException("Cache size must be positive but is " + maxBytes);
+		_lMaxBytes = maxBytes;
+	}
+
+	/** Returns the Matrix result of multiplying m1 and m2, copied from the cache if the same
+	 *  product of the same content was computed before (the result is always a new Matrix
+	 *  that the caller owns)
+	 *
+	 * @param m1
+	 * @param m2
+	 * @return
+	 * @throws LinAlgException if m1 columns do not match m2 rows
+	 */
+	public Matrix multiply(Matrix m1, Matrix m2) throws LinAlgException {
+		if (m1.getNumCols() != m2.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		Key key = new Key(m1, m2.stamp(), m2.getNumRows(), m2.getNumCols(), m2.getOffset(), m2.getRowStride(), m2.getColStride());
+		Matrix cached = (Matrix)lookup(key);
+		if (cached == null)
+			cached = (Matrix)insert(key, Matrix.Multiply(m1, m2), (long)m1.getNumRows() * m2.getNumCols());
+		return new Matrix(cached);
+	}
+
+	/** Returns the Vector result of multiplying m and v, copied from the cache if the same
+	 *  product of the same content was computed before (the result is always a new Vector
+	 *  that the caller owns)
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public Vector multiply(Matrix m, Vector v) throws LinAlgException {
+		if (m.getNumCols() != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		Key key = new Key(m, v.stamp(), v.getDim(), 1, 0, 1, 0);
+		Vector cached = (Vector)lookup(key);
+		if (cached == null)
+			cached = (Vector)insert(key, Matrix.Multiply(m, v), m.getNumRows());
+		return new Vector(cached);
+	}
+
+	/** Return the number of products returned from the cache
+	 *
+	 * @return
+	 */
+	public long getHits() {
+		_lock.lock();
+		try {
+			return _lHits;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** Return the number of products that had to be computed
+	 *
+	 * @return
+	 */
+	public long getMisses() {
+		_lock.lock();
+		try {
+			return _lMisses;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** Return the number of products evicted to stay within the size bound
+	 *
+	 * @return
+	 */
+	public long getEvictions() {
+		_lock.lock();
+		try {
+			return _lEvictions;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** Return the number of products currently cached
+	 *
+	 * @return
+	 */
+	public int getEntryCount() {
+		_lock.lock();
+		try {
+			return _entries.size();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** Return the bytes currently counted against the size bound
+	 *
+	 * @return
+	 */
+	public long getSizeBytes() {
+		_lock.lock();
+		try {
+			return _lBytes;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** Return the size bound given to the constructor
+	 *
+	 * @return
+	 */
+	public long getMaxBytes() {
+		return _lMaxBytes;
+	}
+
+	/** Removes every cached product (the statistics are kept) */
+	public void clear() {
+		_lock.lock();
+		try {
+			_entries.clear();
+			_lBytes = 0;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		_lock.lock();
+		try {
+			return "ProductCache[" + _entries.size() + " products, " + _lBytes + "/" + _lMaxBytes + " bytes, "
+					+ _lHits + " hits, " + _lMisses + " misses, " + _lEvictions + " evictions]";
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** Returns a stamp that has never been returned before (never 0) */
+	static long nextStamp() {
+		return STAMPS.incrementAndGet();
+	}
+
+	/** Returns the cached product for key, or null (counting a miss) if there is none */
+	private Object lookup(Key key) {
+		_lock.lock();
+		try {
+			Entry e = _entries.get(key);
+			if (e != null) {
+				_lHits++;
+				return e._result;
+			}
+			_lMisses++;
+			return null;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** Caches result under key unless it is too large, and returns the product to copy out:
+	 *  result, or the equal product another thread cached first */
+	private Object insert(Key key, Object result, long entries) {
+		long bytes = 8 * entries + ENTRY_OVERHEAD;
+		if (bytes > _lMaxBytes)
+			return result;
+		_lock.lock();
+		try {
+			Entry e = _entries.get(key);
+			if (e != null)
+				return e._result;
+			_entries.put(key, new Entry(result, bytes));
+			_lBytes += bytes;
+			Iterator<Entry> eldest = _entries.values().iterator();
+			while (_lBytes > _lMaxBytes) {
+				Entry old = eldest.next();
+				eldest.remove();
+				_lBytes -= old._lBytes;
+				_lEvictions++;
+			}
+			return result;
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/** The left operand (always a Matrix) and the right operand of a product, each
+	 *  identified by its stamp and the geometry of its view of the stamped storage */
+	private static final class Key {
+
+		final long _lStampA, _lStampB;
+		final int _nRowsA, _nColsA, _nOffsetA, _nRowStrideA, _nColStrideA;
+		final int _nRowsB, _nColsB, _nOffsetB, _nRowStrideB, _nColStrideB;
+
+		Key(Matrix a, long stampB, int rowsB, int colsB, int offsetB, int rowStrideB, int colStrideB) {
+			_lStampA = a.stamp();
+			_nRowsA = a.getNumRows();
+			_nColsA = a.getNumCols();
+			_nOffsetA = a.getOffset();
+			_nRowStrideA = a.getRowStride();
+			_nColStrideA = a.getColStride();
+			_lStampB = stampB;
+			_nRowsB = rowsB;
+			_nColsB = colsB;
+			_nOffsetB = offsetB;
+			_nRowStrideB = rowStrideB;
+			_nColStrideB = colStrideB;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key k = (Key)o;
+			return _lStampA == k._lStampA && _lStampB == k._lStampB
+					&& _nRowsA == k._nRowsA && _nColsA == k._nColsA && _nOffsetA == k._nOffsetA
+					&& _nRowStrideA == k._nRowStrideA && _nColStrideA == k._nColStrideA
+					&& _nRowsB == k._nRowsB && _nColsB == k._nColsB && _nOffsetB == k._nOffsetB
+					&& _nRowStrideB == k._nRowStrideB && _nColStrideB == k._nColStrideB;
+		}
+
+		@Override
+		public int hashCode() {
+			long h = _lStampA * 0x9E3779B97F4A7C15L + _lStampB;
+			h = 31 * h + _nOffsetA;
+			h = 31 * h + _nColStrideA;
+			h = 31 * h + _nOffsetB;
+			h = 31 * h + _nColStrideB;
+			return (int)(h ^ (h >>> 32));
+		}
+	}
+
+	/** A cached product (never seen outside the cache) and the bytes it counts for */
+	private static final class Entry {
+
+		final Object _result;
+		final long _lBytes;
+
+		Entry(Object result, long bytes) {
+			_result = result;
+			_lBytes = bytes;
+		}
+	}
+}
@@ -0,0 +1,353 @@
+package linalg;
+
+/*** A Matrix quantized to 8-bit integers row by row, for approximate matrix-vector products
+ *   on weights that tolerate it: entry (row,col) is approximately
+ *   getScale(row) * (q(row,col) - getZeroPoint(row)), where q is a byte.
+ *
+ *   Each row maps its own range [min(row), max(row)] (widened to include 0, so that 0 stays
+ *   exact) onto the 256 values of a byte, so the error of an entry is at most half a step of
+ *   its row, getScale(row) / 2.  The weights take one byte per entry plus 12 bytes per row
+ *   for the scale (a double) and the zero point (an int): about an eighth of a Matrix and a
+ *   quarter of a FloatMatrix, which is what makes memory-bound products faster.  The error
+ *   against the source matrix is measured once, by the constructor (see getMaxAbsError,
+ *   getRmsError, getRelativeError).
+ *
+ *   Products dequantize on output and come in two flavours:
+ *
+ *     - Multiply(m, Vector) and Multiply(m, Matrix) multiply the bytes by the double entries
+ *       of the operand directly and accumulate in double, so the operand adds no error of
+ *       its own,
+ *     - Multiply(m, QuantizedVector) and MultiplyTransposeB(m, QuantizedMatrix) multiply
+ *       bytes by bytes, accumulating in int32 (in chunks short enough that no sum can
+ *       overflow), which is exact; only the quantization of the operand adds error.
+ *
+ *   The matrix-matrix products work on panels of columns of the result, so that each row of
+ *   weights is read from memory once per panel rather than once per column.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class QuantizedMatrix {
+
+	// Int8 dot products; SIMD when jdk.incubator.vector is available
+	private static final Int8Kernels KERNELS = Int8Kernels.INSTANCE;
+
+	// Bytes of the right operand kept in cache per panel of matrix-matrix products
+	private static final int PANEL_BYTES = 1 << 18;
+
+	private final int _nRows;
+	private final int _nCols;
+	private final byte[] _abVal;    // Quantized entries in row-major order; nomenclature: a for array, b for byte
+	private final double[] _adScale; // Step of each row
+	private final int[] _anZero;    // Zero point of each row: the byte that stands for 0
+	private final double _dMaxAbsError, _dRmsError, _dRelativeError;
+
+	/** Quantizes m row by row and measures the error
+	 *
+	 * @param m
+	 * @throws LinAlgException if m has a NaN or infinite entry
+	 */
+	public QuantizedMatrix(Matrix m) throws LinAlgException {
+		_nRows = m.getNumRows();
+		_nCols = m.getNumCols();
+		_abVal = new byte[_nRows * _nCols];
+		_adScale = new double[_nRows];
+		_anZero = new int[_nRows];
+		double[] a = m.getArray();
+		double maxErr = 0d, sqErr = 0d, sqNorm = 0d;
+		for (int row = 0; row < _nRows; row++) {
+			int base = m.getOffset() + row * m.getRowStride(), cs = m.getColStride();
+			double min = 0d, max = 0d;
+			for (int col = 0; col < _nCols; col++) {
+				double x = a[base + col * cs];
+				if (!Double.isFinite(x))
+					throw new LinAlgException("Cannot quantize the non-finite entry " + x + " at (" + row + "," + col + ")");
+				min = Math.min(min, x);
+				max = Math.max(max, x);
+			}
+			double scale = max == min ? 1d : (max - min) / 255d;
+			int zero = (int)Math.max(-128, Math.min(127, Math.round(-128d - min / scale)));
+			_adScale[row] = scale;
+			_anZero[row] = zero;
+			for (int col = 0; col < _nCols; col++) {
+				double x = a[base + col * cs];
+				int q = (int)Math.max(-128, Math.min(127, Math.round(x / scale) + zero));
+				_abVal[row * _nCols + col] = (byte)q;
+				double err = Math.abs(x - scale * (q - zero));
+				maxErr = Math.max(maxErr, err);
+				sqErr += err * err;
+				sqNorm += x * x;
+			}
+		}
+		_dMaxAbsError = maxErr;
+		_dRmsError = Math.sqrt(sqErr / ((double)_nRows * _nCols));
+		_dRelativeError = sqNorm == 0d ? 0d : Math.sqrt(sqErr / sqNorm);
+	}
+
+	/** Quantizes the float matrix m row by row and measures the error
+	 *
+	 * @param m
+	 * @throws LinAlgException if m has a NaN or infinite entry
+	 */
+	public QuantizedMatrix(FloatMatrix m) throws LinAlgException {
+		this(m.toMatrix());
+	}
+
+	/** Return the number of rows in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	/** Return the number of columns in this matrix
+	 *
+	 * @return
+	 */
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** Return the quantized entries in row-major order *without copying them*
+	 *
+	 * @return
+	 */
+	public byte[] getArray() {
+		return _abVal;
+	}
+
+	/** Return the value of one quantized step of the given row
+	 *
+	 * @param row
+	 * @return
+	 * @throws LinAlgException if row is out of bounds
+	 */
+	public double getScale(int row) throws LinAlgException {
+		checkRow(row);
+		return _adScale[row];
+	}
+
+	/** Return the byte that stands for 0 in the given row
+	 *
+	 * @param row
+	 * @return
+	 * @throws LinAlgException if row is out of bounds
+	 */
+	public int getZeroPoint(int row) throws LinAlgException {
+		checkRow(row);
+		return _anZero[row];
+	}
+
+	/** Return the dequantized value at the given row and column
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	public double get(int row, int col) throws LinAlgException {
+		if ((row >= _nRows) || (row < 0) || (col >= _nCols) || (col < 0))
+			throw new LinAlgException("Column or row out of bounds!");
+		return _adScale[row] * (_abVal[row * _nCols + col] - _anZero[row]);
+	}
+
+	/** Return the largest absolute difference between an entry of the source matrix and its
+	 *  dequantized value
+	 *
+	 * @return
+	 */
+	public double getMaxAbsError() {
+		return _dMaxAbsError;
+	}
+
+	/** Return the root mean square difference between the source matrix and its dequantized
+	 *  values
+	 *
+	 * @return
+	 */
+	public double getRmsError() {
+		return _dRmsError;
+	}
+
+	/** Return the Frobenius norm of the quantization error relative to that of the source
+	 *  matrix (0 for a zero matrix)
+	 *
+	 * @return
+	 */
+	public double getRelativeError() {
+		return _dRelativeError;
+	}
+
+	/** Return the bytes taken by the quantized entries (one each), scales (a double per row)
+	 *  and zero points (an int per row)
+	 *
+	 * @return
+	 */
+	public long getSizeBytes() {
+		return _abVal.length + (long)_nRows * (Double.BYTES + Integer.BYTES);
+	}
+
+	/** Returns a new Matrix holding the dequantized entries
+	 *
+	 * @return
+	 */
+	public Matrix toMatrix() {
+		double[] d = new double[_nRows * _nCols];
+		for (int row = 0; row < _nRows; row++)
+			for (int col = 0; col < _nCols; col++)
+				d[row * _nCols + col] = _adScale[row] * (_abVal[row * _nCols + col] - _anZero[row]);
+		try {
+			return new Matrix(_nRows, _nCols, d);
+		} catch (LinAlgException e) {
+			throw new IllegalStateException(e); // Cannot happen: the dimensions are valid
+		}
+	}
+
+	/** One line with the dimensions, the size and the quantization error */
+	@Override
+	public String toString() {
+		return "[ int8 " + _nRows + " x " + _nCols + ", " + getSizeBytes() + " bytes, max error " + _dMaxAbsError
+				+ ", rms error " + _dRmsError + ", relative error " + _dRelativeError + " ]";
+	}
+
+	/** Returns the Vector result of multiplying m by v, accumulated in double
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public static Vector Multiply(QuantizedMatrix m, Vector v) throws LinAlgException {
+		Vector result = new Vector(m._nRows);
+		multiplyInto(m, v, result);
+		return result;
+	}
+
+	/** Computes out = m * v, accumulated in double, without allocating
+	 *
+	 * @param m
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out is v
+	 */
+	public static void multiplyInto(QuantizedMatrix m, Vector v, Vector out) throws LinAlgException {
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		if (m._nRows != out.getDim())
+			throw new LinAlgException("Output vector must have dimension " + m._nRows + " but has " + out.getDim());
+		double[] x = v.getArray(), y = out.getArray();
+		if (x == y)
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		out.markModified();
+		double xSum = 0d;
+		for (int j = 0; j < m._nCols; j++)
+			xSum += x[j];
+		// sum_j scale * (q_j - zero) * x_j = scale * (sum_j q_j * x_j - zero * sum_j x_j)
+		for (int i = 0; i < m._nRows; i++)
+			y[i] = m._adScale[i] * (KERNELS.dot(m._abVal, i * m._nCols, x, 0, m._nCols) - m._anZero[i] * xSum);
+	}
+
+	/** Returns the Vector result of multiplying m by the quantized vector v, accumulated in
+	 *  int32 and dequantized on output
+	 *
+	 * @param m
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if m columns do not match the size of v
+	 */
+	public static Vector Multiply(QuantizedMatrix m, QuantizedVector v) throws LinAlgException {
+		if (m._nCols != v.getDim())
+			throw new LinAlgException("m columns do not match the size of v!");
+		byte[] x = v.getArray();
+		double[] y = new double[m._nRows];
+		double xScale = v.getScale();
+		long xSum = v.sum();
+		for (int i = 0; i < m._nRows; i++)
+			y[i] = m._adScale[i] * xScale * (KERNELS.dot(m._abVal, i * m._nCols, x, 0, m._nCols) - m._anZero[i] * xSum);
+		return new Vector(y);
+	}
+
+	/** Returns the Matrix result of multiplying m by b, accumulated in double
+	 *
+	 * @param m
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if m columns do not match b rows
+	 */
+	public static Matrix Multiply(QuantizedMatrix m, Matrix b) throws LinAlgException {
+		if (m._nCols != b.getNumRows())
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		int k = m._nCols, n = b.getNumCols();
+		Matrix result = new Matrix(m._nRows, n);
+		double[] c = result.getArray(), bv = b.getArray();
+		int nb = Math.min(n, Math.max(8, PANEL_BYTES / Double.BYTES / Math.max(1, k)));
+		double[] panel = new double[nb * k]; // Columns j0 .. j0 + nb of b, each contiguous
+		double[] colSum = new double[nb];
+		for (int j0 = 0; j0 < n; j0 += nb) {
+			int w = Math.min(nb, n - j0);
+			for (int j = 0; j < w; j++) {
+				int bj = b.getOffset() + (j0 + j) * b.getColStride();
+				double sum = 0d;
+				for (int p = 0; p < k; p++)
+					sum += panel[j * k + p] = bv[bj + p * b.getRowStride()];
+				colSum[j] = sum;
+			}
+			// Same sums as multiplyInto(m, column, out), one row of weights against w columns
+			for (int i = 0; i < m._nRows; i++)
+				for (int j = 0; j < w; j++)
+					c[i * n + j0 + j] = m._adScale[i] * (KERNELS.dot(m._abVal, i * k, panel, j * k, k) - m._anZero[i] * colSum[j]);
+		}
+		return result;
+	}
+
+	/** Returns the Matrix result of multiplying a by the transpose of b, accumulated in int32
+	 *  and dequantized on output.  b holds the columns of the right operand as its rows, so
+	 *  that every column has its own scale and zero point; the integer sums only stay exact
+	 *  if the scale is constant along each dot product.
+	 *
+	 * @param a
+	 * @param b
+	 * @return
+	 * @throws LinAlgException if a columns do not match b columns
+	 */
+	public static Matrix MultiplyTransposeB(QuantizedMatrix a, QuantizedMatrix b) throws LinAlgException {
+		if (a._nCols != b._nCols)
+			throw new LinAlgException("a columns do not match the size of b columns!");
+		int k = a._nCols, n = b._nRows;
+		Matrix result = new Matrix(a._nRows, n);
+		double[] c = result.getArray();
+		long[] aSum = a.rowSums(), bSum = b.rowSums();
+		int nb = Math.min(n, Math.max(8, PANEL_BYTES / Math.max(1, k)));
+		for (int j0 = 0; j0 < n; j0 += nb) {
+			int w = Math.min(nb, n - j0);
+			for (int i = 0; i < a._nRows; i++) {
+				long za = a._anZero[i];
+				for (int j = j0; j < j0 + w; j++) {
+					long zb = b._anZero[j];
+					// sum_p (qa_p - za) * (qb_p - zb), expanded so the dot product is over the raw bytes
+					long dot = KERNELS.dot(a._abVal, i * k, b._abVal, j * k, k) - zb * aSum[i] - za * bSum[j] + k * za * zb;
+					c[i * n + j] = a._adScale[i] * b._adScale[j] * dot;
+				}
+			}
+		}
+		return result;
+	}
+
+	/** Returns the sum of the quantized entries of each row */
+	private long[] rowSums() {
+		long[] sums = new long[_nRows];
+		for (int row = 0; row < _nRows; row++) {
+			long sum = 0L;
+			for (int col = 0; col < _nCols; col++)
+				sum += _abVal[row * _nCols + col];
+			sums[row] = sum;
+		}
+		return sums;
+	}
+
+	private void checkRow(int row) throws LinAlgException {
+		if (row < 0 || row >= _nRows)
+			throw new LinAlgException("Row out of bounds!");
+	}
+}
@@ -0,0 +1,83 @@
+package linalg;
+
+/*** A Vector quantized to 8-bit integers with one scale: entry i is approximately
+ *   getScale() * getArray()[i].
+ *
+ *   The quantization is symmetric (the zero point is 0 and the values lie in [-127, 127]),
+ *   so the products of QuantizedMatrix.Multiply(QuantizedMatrix, QuantizedVector) need one
+ *   correction term per row rather than two.  Quantizing an activation once and multiplying
+ *   it by several quantized matrices saves requantizing it for each.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class QuantizedVector {
+
+	private final byte[] _abVal; // Quantized entries; nomenclature: a for array, b for byte
+	private final double _dScale;
+	private final long _lSum;    // Sum of the quantized entries (for the zero-point correction of the matrix rows)
+
+	/** Quantizes v, mapping its largest magnitude to 127
+	 *
+	 * @param v
+	 * @throws LinAlgException if v has a NaN or infinite entry
+	 */
+	public QuantizedVector(Vector v) throws LinAlgException {
+		double[] x = v.getArray();
+		int n = v.getDim();
+		double max = 0d;
+		for (int i = 0; i < n; i++) {
+			if (!Double.isFinite(x[i]))
+				throw new LinAlgException("Cannot quantize the non-finite entry " + x[i] + " at index " + i);
+			max = Math.max(max, Math.abs(x[i]));
+		}
+		_dScale = max == 0d ? 1d : max / 127d;
+		_abVal = new byte[n];
+		long sum = 0L;
+		for (int i = 0; i < n; i++) {
+			int q = (int)Math.round(x[i] / _dScale);
+			_abVal[i] = (byte)Math.max(-127, Math.min(127, q));
+			sum += _abVal[i];
+		}
+		_lSum = sum;
+	}
+
+	/** Get the dimension of this vector
+	 *
+	 * @return
+	 */
+	public int getDim() {
+		return _abVal.length;
+	}
+
+	/** Returns the quantized entries *without copying them*
+	 *
+	 * @return
+	 */
+	public byte[] getArray() {
+		return _abVal;
+	}
+
+	/** Returns the value of one quantized step
+	 *
+	 * @return
+	 */
+	public double getScale() {
+		return _dScale;
+	}
+
+	/** Returns a new Vector holding the dequantized entries
+	 *
+	 * @return
+	 */
+	public Vector toVector() {
+		double[] d = new double[_abVal.length];
+		for (int i = 0; i < d.length; i++)
+			d[i] = _dScale * _abVal[i];
+		return new Vector(d);
+	}
+
+	long sum() {
+		return _lSum;
+	}
+}
@@ -0,0 +1,45 @@
+package linalg;
+
+/*** The operations shared by every real-valued (double) matrix type in this package, whether
+ *   it is stored densely (Matrix), compressed (SparseMatrix) or by structure
+ *   (StructuredMatrix), so that algorithms can be written once against this interface.
+ *   Every RealMatrix is also a LinearOperator, so the iterative solvers accept all of them.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public interface RealMatrix extends LinearOperator {
+
+	/** Return the scalar value at the given row and column of the matrix
+	 * 
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	double get(int row, int col) throws LinAlgException;
+
+	/** Returns the Vector result of multiplying the transpose of *this* by v, without
+	 *  forming the transpose
+	 * 
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if the rows of *this* do not match the size of v
+	 */
+	Vector multiplyTranspose(Vector v) throws LinAlgException;
+
+	/** Returns a new dense Matrix with the same entries as *this*
+	 * 
+	 * @return
+	 * @throws LinAlgException if the dense matrix would be too large
+	 */
+	Matrix toDense() throws LinAlgException;
+
+	/** Returns the dense Matrix result of multiplying *this* by m
+	 * 
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if the columns of *this* do not match the rows of m
+	 */
+	Matrix multiply(Matrix m) throws LinAlgException;
+}
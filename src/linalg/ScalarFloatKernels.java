@@ -0,0 +1,91 @@
+package linalg;
+
+/*** Plain-Java implementation of FloatKernels, used when the JDK Vector API is unavailable.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class ScalarFloatKernels implements FloatKernels {
+
+	@Override
+	public float dot(float[] a, int aOff, float[] b, int bOff, int n) {
+		// Four independent partial sums so consecutive multiply-adds do not wait on each other
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += a[aOff + i] * b[bOff + i];
+			s1 += a[aOff + i + 1] * b[bOff + i + 1];
+			s2 += a[aOff + i + 2] * b[bOff + i + 2];
+			s3 += a[aOff + i + 3] * b[bOff + i + 3];
+		}
+		for (; i < n; i++)
+			s0 += a[aOff + i] * b[bOff + i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	@Override
+	public double dotMixed(float[] a, int aOff, float[] b, int bOff, int n) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += (double)a[aOff + i] * b[bOff + i];
+			s1 += (double)a[aOff + i + 1] * b[bOff + i + 1];
+			s2 += (double)a[aOff + i + 2] * b[bOff + i + 2];
+			s3 += (double)a[aOff + i + 3] * b[bOff + i + 3];
+		}
+		for (; i < n; i++)
+			s0 += (double)a[aOff + i] * b[bOff + i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	@Override
+	public double dotMixed(float[] a, int aOff, double[] b, int bOff, int n) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += a[aOff + i] * b[bOff + i];
+			s1 += a[aOff + i + 1] * b[bOff + i + 1];
+			s2 += a[aOff + i + 2] * b[bOff + i + 2];
+			s3 += a[aOff + i + 3] * b[bOff + i + 3];
+		}
+		for (; i < n; i++)
+			s0 += a[aOff + i] * b[bOff + i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	@Override
+	public void add(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] + b[bOff + i];
+	}
+
+	@Override
+	public void mult(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] * b[bOff + i];
+	}
+
+	@Override
+	public void scalarAdd(float[] a, int aOff, float d, float[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] + d;
+	}
+
+	@Override
+	public void scalarMult(float[] a, int aOff, float d, float[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] * d;
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n) {
+		for (int i = 0; i < n; i++)
+			y[yOff + i] += alpha * x[xOff + i];
+	}
+
+	@Override
+	public void axpyMixed(double alpha, float[] x, int xOff, double[] y, int yOff, int n) {
+		for (int i = 0; i < n; i++)
+			y[yOff + i] += alpha * x[xOff + i];
+	}
+}
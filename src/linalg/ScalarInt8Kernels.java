@@ -0,0 +1,43 @@
+package linalg;
+
+/*** Plain-Java implementation of Int8Kernels, used when the JDK Vector API is unavailable.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class ScalarInt8Kernels implements Int8Kernels {
+
+	@Override
+	public long dot(byte[] a, int aOff, byte[] b, int bOff, int n) {
+		long sum = 0L;
+		for (int from = 0; from < n; from += CHUNK) {
+			int to = Math.min(n, from + CHUNK);
+			int s0 = 0, s1 = 0;
+			int i = from;
+			for (; i + 1 < to; i += 2) {
+				s0 += a[aOff + i] * b[bOff + i];
+				s1 += a[aOff + i + 1] * b[bOff + i + 1];
+			}
+			for (; i < to; i++)
+				s0 += a[aOff + i] * b[bOff + i];
+			sum += (long)s0 + s1;
+		}
+		return sum;
+	}
+
+	@Override
+	public double dot(byte[] a, int aOff, double[] b, int bOff, int n) {
+		// Four independent partial sums so consecutive multiply-adds do not wait on each other
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += a[aOff + i] * b[bOff + i];
+			s1 += a[aOff + i + 1] * b[bOff + i + 1];
+			s2 += a[aOff + i + 2] * b[bOff + i + 2];
+			s3 += a[aOff + i + 3] * b[bOff + i + 3];
+		}
+		for (; i < n; i++)
+			s0 += a[aOff + i] * b[bOff + i];
+		return (s0 + s1) + (s2 + s3);
+	}
+}
@@ -0,0 +1,55 @@
+package linalg;
+
+/*** Plain-Java implementation of VectorKernels, used when the JDK Vector API is unavailable.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class ScalarKernels implements VectorKernels {
+
+	@Override
+	public double dot(double[] a, int aOff, double[] b, int bOff, int n) {
+		// Four independent partial sums so consecutive multiply-adds do not wait on each other
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for (; i + 3 < n; i += 4) {
+			s0 += a[aOff + i] * b[bOff + i];
+			s1 += a[aOff + i + 1] * b[bOff + i + 1];
+			s2 += a[aOff + i + 2] * b[bOff + i + 2];
+			s3 += a[aOff + i + 3] * b[bOff + i + 3];
+		}
+		for (; i < n; i++)
+			s0 += a[aOff + i] * b[bOff + i];
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	@Override
+	public void add(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] + b[bOff + i];
+	}
+
+	@Override
+	public void mult(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] * b[bOff + i];
+	}
+
+	@Override
+	public void scalarAdd(double[] a, int aOff, double d, double[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] + d;
+	}
+
+	@Override
+	public void scalarMult(double[] a, int aOff, double d, double[] out, int outOff, int n) {
+		for (int i = 0; i < n; i++)
+			out[outOff + i] = a[aOff + i] * d;
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, double[] y, int n) {
+		for (int i = 0; i < n; i++)
+			y[i] += alpha * x[i];
+	}
+}
@@ -0,0 +1,170 @@
+package linalg;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector; // Shadows linalg.FloatVector, which this class does not use
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*** SIMD implementation of FloatKernels on the incubating JDK Vector API.
+ *
+ *   The float loops run over the preferred float species, which holds twice as many lanes
+ *   as the double species SimdKernels uses (e.g., 8 floats with AVX2, 16 with AVX-512), and
+ *   finish with one masked operation.  The mixed loops load a full float vector, widen its
+ *   two halves to double vectors and multiply-add those, finishing the last entries with
+ *   scalar code.  Only instantiated by FloatKernels.Loader once it has checked that the
+ *   jdk.incubator.vector module is present.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class SimdFloatKernels implements FloatKernels {
+
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> WIDE = VectorSpecies.of(double.class, SPECIES.vectorShape()); // Half as many lanes
+
+	@Override
+	public float dot(float[] a, int aOff, float[] b, int bOff, int n) {
+		int lanes = SPECIES.length();
+		if (n < lanes) { // Shorter than one vector (e.g., rows of a tiny matrix): a masked load costs more than a loop
+			float s = 0f;
+			for (int i = 0; i < n; i++)
+				s += a[aOff + i] * b[bOff + i];
+			return s;
+		}
+		int bound = SPECIES.loopBound(n);
+		FloatVector acc0 = FloatVector.zero(SPECIES);
+		FloatVector acc1 = FloatVector.zero(SPECIES);
+		int i = 0;
+		// Two accumulators hide the latency of the fused multiply-add
+		for (; i + lanes < bound; i += 2 * lanes) {
+			acc0 = FloatVector.fromArray(SPECIES, a, aOff + i).fma(FloatVector.fromArray(SPECIES, b, bOff + i), acc0);
+			acc1 = FloatVector.fromArray(SPECIES, a, aOff + i + lanes).fma(FloatVector.fromArray(SPECIES, b, bOff + i + lanes), acc1);
+		}
+		for (; i < bound; i += lanes)
+			acc0 = FloatVector.fromArray(SPECIES, a, aOff + i).fma(FloatVector.fromArray(SPECIES, b, bOff + i), acc0);
+		if (i < n) {
+			VectorMask<Float> m = SPECIES.indexInRange(i, n);
+			acc1 = FloatVector.fromArray(SPECIES, a, aOff + i, m).fma(FloatVector.fromArray(SPECIES, b, bOff + i, m), acc1);
+		}
+		return acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+	}
+
+	@Override
+	public double dotMixed(float[] a, int aOff, float[] b, int bOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		DoubleVector acc0 = DoubleVector.zero(WIDE);
+		DoubleVector acc1 = DoubleVector.zero(WIDE);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			FloatVector fa = FloatVector.fromArray(SPECIES, a, aOff + i);
+			FloatVector fb = FloatVector.fromArray(SPECIES, b, bOff + i);
+			acc0 = widen(fa, 0).fma(widen(fb, 0), acc0);
+			acc1 = widen(fa, 1).fma(widen(fb, 1), acc1);
+		}
+		double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += (double)a[aOff + i] * b[bOff + i];
+		return sum;
+	}
+
+	@Override
+	public double dotMixed(float[] a, int aOff, double[] b, int bOff, int n) {
+		int half = WIDE.length();
+		int bound = SPECIES.loopBound(n);
+		DoubleVector acc0 = DoubleVector.zero(WIDE);
+		DoubleVector acc1 = DoubleVector.zero(WIDE);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			FloatVector fa = FloatVector.fromArray(SPECIES, a, aOff + i);
+			acc0 = widen(fa, 0).fma(DoubleVector.fromArray(WIDE, b, bOff + i), acc0);
+			acc1 = widen(fa, 1).fma(DoubleVector.fromArray(WIDE, b, bOff + i + half), acc1);
+		}
+		double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += a[aOff + i] * b[bOff + i];
+		return sum;
+	}
+
+	@Override
+	public void add(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			FloatVector.fromArray(SPECIES, a, aOff + i).add(FloatVector.fromArray(SPECIES, b, bOff + i)).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Float> m = SPECIES.indexInRange(i, n);
+			FloatVector.fromArray(SPECIES, a, aOff + i, m).add(FloatVector.fromArray(SPECIES, b, bOff + i, m)).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void mult(float[] a, int aOff, float[] b, int bOff, float[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			FloatVector.fromArray(SPECIES, a, aOff + i).mul(FloatVector.fromArray(SPECIES, b, bOff + i)).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Float> m = SPECIES.indexInRange(i, n);
+			FloatVector.fromArray(SPECIES, a, aOff + i, m).mul(FloatVector.fromArray(SPECIES, b, bOff + i, m)).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void scalarAdd(float[] a, int aOff, float d, float[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			FloatVector.fromArray(SPECIES, a, aOff + i).add(d).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Float> m = SPECIES.indexInRange(i, n);
+			FloatVector.fromArray(SPECIES, a, aOff + i, m).add(d).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void scalarMult(float[] a, int aOff, float d, float[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			FloatVector.fromArray(SPECIES, a, aOff + i).mul(d).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Float> m = SPECIES.indexInRange(i, n);
+			FloatVector.fromArray(SPECIES, a, aOff + i, m).mul(d).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n) {
+		// mul and add rather than fma, as in SimdKernels.axpy, to match ScalarFloatKernels exactly
+		FloatVector va = FloatVector.broadcast(SPECIES, alpha);
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			FloatVector.fromArray(SPECIES, x, xOff + i).mul(va).add(FloatVector.fromArray(SPECIES, y, yOff + i)).intoArray(y, yOff + i);
+		if (i < n) {
+			VectorMask<Float> m = SPECIES.indexInRange(i, n);
+			FloatVector.fromArray(SPECIES, x, xOff + i, m).mul(va).add(FloatVector.fromArray(SPECIES, y, yOff + i, m)).intoArray(y, yOff + i, m);
+		}
+	}
+
+	@Override
+	public void axpyMixed(double alpha, float[] x, int xOff, double[] y, int yOff, int n) {
+		DoubleVector va = DoubleVector.broadcast(WIDE, alpha);
+		int half = WIDE.length();
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length()) {
+			FloatVector fx = FloatVector.fromArray(SPECIES, x, xOff + i);
+			widen(fx, 0).mul(va).add(DoubleVector.fromArray(WIDE, y, yOff + i)).intoArray(y, yOff + i);
+			widen(fx, 1).mul(va).add(DoubleVector.fromArray(WIDE, y, yOff + i + half)).intoArray(y, yOff + i + half);
+		}
+		for (; i < n; i++)
+			y[yOff + i] += alpha * x[xOff + i];
+	}
+
+	/** Returns the given half (0 for the lower lanes, 1 for the upper) of v as doubles */
+	private static DoubleVector widen(FloatVector v, int part) {
+		return (DoubleVector)v.convertShape(VectorOperators.F2D, WIDE, part);
+	}
+}
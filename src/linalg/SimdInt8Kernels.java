@@ -0,0 +1,70 @@
+package linalg;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*** SIMD implementation of Int8Kernels on the incubating JDK Vector API.
+ *
+ *   Both loops load 16 bytes at a time and sign-extend them into int (or double) vectors
+ *   of the preferred width, part by part (one part of 16 ints with AVX-512, two of 8 with
+ *   AVX2), then multiply-add those; the last entries are finished with scalar code.  Only
+ *   instantiated by Int8Kernels.Loader once it has checked that the jdk.incubator.vector
+ *   module is present.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class SimdInt8Kernels implements Int8Kernels {
+
+	private static final VectorSpecies<Byte> BYTES = ByteVector.SPECIES_128;
+	// At most 16 lanes, so that a load of BYTES splits into whole parts
+	private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class,
+			VectorShape.forBitSize(Math.min(512, IntVector.SPECIES_PREFERRED.vectorBitSize())));
+	private static final VectorSpecies<Double> DOUBLES = VectorSpecies.of(double.class,
+			VectorShape.forBitSize(Math.min(512, DoubleVector.SPECIES_PREFERRED.vectorBitSize())));
+
+	@Override
+	public long dot(byte[] a, int aOff, byte[] b, int bOff, int n) {
+		int step = BYTES.length(), parts = step / INTS.length();
+		long sum = 0L;
+		int i = 0;
+		// CHUNK is a multiple of step, so every run but the last is a whole number of loads
+		for (int bound = BYTES.loopBound(n); i < bound; ) {
+			int to = Math.min(bound, i + CHUNK);
+			IntVector acc = IntVector.zero(INTS);
+			for (; i < to; i += step) {
+				ByteVector va = ByteVector.fromArray(BYTES, a, aOff + i);
+				ByteVector vb = ByteVector.fromArray(BYTES, b, bOff + i);
+				for (int p = 0; p < parts; p++)
+					acc = acc.add(((IntVector)va.convertShape(VectorOperators.B2I, INTS, p))
+							.mul((IntVector)vb.convertShape(VectorOperators.B2I, INTS, p)));
+			}
+			sum += acc.reduceLanesToLong(VectorOperators.ADD);
+		}
+		for (; i < n; i++)
+			sum += a[aOff + i] * b[bOff + i];
+		return sum;
+	}
+
+	@Override
+	public double dot(byte[] a, int aOff, double[] b, int bOff, int n) {
+		int step = BYTES.length(), lanes = DOUBLES.length(), parts = step / lanes;
+		int bound = BYTES.loopBound(n);
+		DoubleVector acc = DoubleVector.zero(DOUBLES);
+		int i = 0;
+		for (; i < bound; i += step) {
+			ByteVector va = ByteVector.fromArray(BYTES, a, aOff + i);
+			for (int p = 0; p < parts; p++)
+				acc = ((DoubleVector)va.convertShape(VectorOperators.B2D, DOUBLES, p))
+						.fma(DoubleVector.fromArray(DOUBLES, b, bOff + i + p * lanes), acc);
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < n; i++)
+			sum += a[aOff + i] * b[bOff + i];
+		return sum;
+	}
+}
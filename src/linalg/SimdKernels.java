@@ -0,0 +1,105 @@
+package linalg;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*** SIMD implementation of VectorKernels on the incubating JDK Vector API.
+ *
+ *   Every loop runs full-width over the preferred species (e.g., 4 doubles with AVX2,
+ *   8 with AVX-512) and finishes the remaining n % lanes entries with one masked operation.
+ *   Only instantiated by VectorKernels.Loader once it has checked that the
+ *   jdk.incubator.vector module is present.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class SimdKernels implements VectorKernels {
+
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public double dot(double[] a, int aOff, double[] b, int bOff, int n) {
+		int lanes = SPECIES.length();
+		int bound = SPECIES.loopBound(n);
+		DoubleVector acc0 = DoubleVector.zero(SPECIES);
+		DoubleVector acc1 = DoubleVector.zero(SPECIES);
+		int i = 0;
+		// Two accumulators hide the latency of the fused multiply-add
+		for (; i + lanes < bound; i += 2 * lanes) {
+			acc0 = DoubleVector.fromArray(SPECIES, a, aOff + i).fma(DoubleVector.fromArray(SPECIES, b, bOff + i), acc0);
+			acc1 = DoubleVector.fromArray(SPECIES, a, aOff + i + lanes).fma(DoubleVector.fromArray(SPECIES, b, bOff + i + lanes), acc1);
+		}
+		for (; i < bound; i += lanes)
+			acc0 = DoubleVector.fromArray(SPECIES, a, aOff + i).fma(DoubleVector.fromArray(SPECIES, b, bOff + i), acc0);
+		if (i < n) {
+			VectorMask<Double> m = SPECIES.indexInRange(i, n);
+			acc1 = DoubleVector.fromArray(SPECIES, a, aOff + i, m).fma(DoubleVector.fromArray(SPECIES, b, bOff + i, m), acc1);
+		}
+		return acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+	}
+
+	@Override
+	public void add(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i).add(DoubleVector.fromArray(SPECIES, b, bOff + i)).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Double> m = SPECIES.indexInRange(i, n);
+			DoubleVector.fromArray(SPECIES, a, aOff + i, m).add(DoubleVector.fromArray(SPECIES, b, bOff + i, m)).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void mult(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i).mul(DoubleVector.fromArray(SPECIES, b, bOff + i)).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Double> m = SPECIES.indexInRange(i, n);
+			DoubleVector.fromArray(SPECIES, a, aOff + i, m).mul(DoubleVector.fromArray(SPECIES, b, bOff + i, m)).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void scalarAdd(double[] a, int aOff, double d, double[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i).add(d).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Double> m = SPECIES.indexInRange(i, n);
+			DoubleVector.fromArray(SPECIES, a, aOff + i, m).add(d).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void scalarMult(double[] a, int aOff, double d, double[] out, int outOff, int n) {
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, a, aOff + i).mul(d).intoArray(out, outOff + i);
+		if (i < n) {
+			VectorMask<Double> m = SPECIES.indexInRange(i, n);
+			DoubleVector.fromArray(SPECIES, a, aOff + i, m).mul(d).intoArray(out, outOff + i, m);
+		}
+	}
+
+	@Override
+	public void axpy(double alpha, double[] x, double[] y, int n) {
+		// A rounded multiply and a rounded add, not fma, so the result is bit-for-bit that of
+		// ScalarKernels (axpy is memory-bound, so fusing would not make it faster)
+		DoubleVector va = DoubleVector.broadcast(SPECIES, alpha);
+		int bound = SPECIES.loopBound(n);
+		int i = 0;
+		for (; i < bound; i += SPECIES.length())
+			DoubleVector.fromArray(SPECIES, x, i).mul(va).add(DoubleVector.fromArray(SPECIES, y, i)).intoArray(y, i);
+		if (i < n) {
+			VectorMask<Double> m = SPECIES.indexInRange(i, n);
+			DoubleVector.fromArray(SPECIES, x, i, m).mul(va).add(DoubleVector.fromArray(SPECIES, y, i, m)).intoArray(y, i, m);
+		}
+	}
+}
@@ -0,0 +1,570 @@
+package linalg;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*** A class that represents a two dimensional real-valued (double) matrix in which most
+ *   entries are zero, stored in compressed sparse row (CSR) form:
+ *
+ *     - the column indices and values of row i are colIdx[rowPtr[i] .. rowPtr[i+1]-1] and
+ *       values[rowPtr[i] .. rowPtr[i+1]-1], with the column indices strictly increasing,
+ *     - rowPtr has rows + 1 entries and rowPtr[rows] is the number of stored non-zeros.
+ *
+ *   Memory and the cost of every multiply scale with the number of non-zeros rather than
+ *   rows * cols.  Use SparseMatrix.Builder to assemble a matrix from (row, col, value)
+ *   triplets in any order.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class SparseMatrix implements RealMatrix {
+
+	// Row ranges with fewer stored entries than this are not split further by MultiplyParallel
+	private static final int MIN_PARALLEL_NNZ = 1 << 15;
+
+	private int _nRows;      // Number of rows in this matrix
+	private int _nCols;      // Number of columns in this matrix
+	private int[] _anRowPtr; // Start of each row in _anColIdx/_adVal, plus one final end marker
+	private int[] _anColIdx; // Column index of each stored entry
+	private double[] _adVal; // Value of each stored entry
+
+	/** Constructor: wraps existing CSR arrays *without copying them* (see class comment)
+	 *
+	 * @param rows
+	 * @param cols
+	 * @param rowPtr
+	 * @param colIdx
+	 * @param values
+	 * @throws LinAlgException if dimensions are <= 0 or the arrays are not valid CSR
+	 */
+	public SparseMatrix(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) throws LinAlgException {
+		if ((rows <= 0) || (cols <= 0))
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		if (rowPtr.length != rows + 1 || rowPtr[0] != 0)
+			throw new LinAlgException("Row pointer array must have rows + 1 entries starting at 0");
+		int nnz = rowPtr[rows];
+		if (colIdx.length < nnz || values.length < nnz)
+			throw new LinAlgException("Column index and value arrays must hold " + nnz + " entries");
+		for (int row = 0; row < rows; row++) {
+			if (rowPtr[row] > rowPtr[row + 1])
+				throw new LinAlgException("Row pointer decreases at row " + row);
+			for (int p = rowPtr[row]; p < rowPtr[row + 1]; p++) {
+				if (colIdx[p] < 0 || colIdx[p] >= cols)
+					throw new LinAlgException("Column index " + colIdx[p] + " out of bounds in row " + row);
+				if (p > rowPtr[row] && colIdx[p] <= colIdx[p - 1])
+					throw new LinAlgException("Column indices must be strictly increasing in row " + row);
+			}
+		}
+		_nRows = rows;
+		_nCols = cols;
+		_anRowPtr = rowPtr;
+		_anColIdx = colIdx;
+		_adVal = values;
+	}
+
+	/** Constructor: makes a sparse copy of the non-zero entries of a dense Matrix m
+	 *
+	 * @param m
+	 */
+	public SparseMatrix(Matrix m) {
+		_nRows = m.getNumRows();
+		_nCols = m.getNumCols();
+		double[] a = m.getArray();
+		int cs = m.getColStride();
+		int nnz = 0;
+		for (int row = 0; row < _nRows; row++) {
+			int base = m.getOffset() + row * m.getRowStride();
+			for (int col = 0; col < _nCols; col++)
+				if (a[base + col * cs] != 0d)
+					nnz++;
+		}
+		_anRowPtr = new int[_nRows + 1];
+		_anColIdx = new int[nnz];
+		_adVal = new double[nnz];
+		int p = 0;
+		for (int row = 0; row < _nRows; row++) {
+			int base = m.getOffset() + row * m.getRowStride();
+			for (int col = 0; col < _nCols; col++) {
+				if (a[base + col * cs] != 0d) {
+					_anColIdx[p] = col;
+					_adVal[p++] = a[base + col * cs];
+				}
+			}
+			_anRowPtr[row + 1] = p;
+		}
+	}
+
+	/** Constructs a String representation of this SparseMatrix listing only the stored entries
+	 *
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("[ ").append(_nRows).append(" x ").append(_nCols).append(", ")
+			.append(getNumNonZeros()).append(" non-zeros ]\n");
+		for (int row = 0; row < _nRows; row++)
+			for (int p = _anRowPtr[row]; p < _anRowPtr[row + 1]; p++) {
+				sb.append(" (").append(row).append(", ").append(_anColIdx[p]).append(')');
+				TextCodec.appendEntry(sb, _adVal[p]);
+				sb.append('\n');
+			}
+		return sb.toString();
+	}
+
+	/** Tests whether another Object o is a SparseMatrix with the same dimensions and the
+	 *  same stored entries as *this*
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof SparseMatrix))
+			return false;
+		SparseMatrix s = (SparseMatrix)o;
+		if (_nRows != s._nRows || _nCols != s._nCols || !Arrays.equals(_anRowPtr, s._anRowPtr))
+			return false;
+		int nnz = getNumNonZeros();
+		return Arrays.equals(_anColIdx, 0, nnz, s._anColIdx, 0, nnz)
+			&& Arrays.equals(_adVal, 0, nnz, s._adVal, 0, nnz);
+	}
+
+	@Override
+	public int hashCode() {
+		int nnz = getNumNonZeros();
+		int h = 31 * _nRows + _nCols;
+		for (int p = 0; p < nnz; p++)
+			h = 31 * (31 * h + _anColIdx[p]) + Double.hashCode(_adVal[p]);
+		return h;
+	}
+
+	@Override
+	public int getNumRows() {
+		return _nRows;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nCols;
+	}
+
+	/** Return the number of stored (structurally non-zero) entries
+	 *
+	 * @return
+	 */
+	public int getNumNonZeros() {
+		return _anRowPtr[_nRows];
+	}
+
+	/** Return the CSR row pointer array *without copying it*
+	 *
+	 * @return
+	 */
+	public int[] getRowPointers() {
+		return _anRowPtr;
+	}
+
+	/** Return the CSR column index array *without copying it*
+	 *
+	 * @return
+	 */
+	public int[] getColumnIndices() {
+		return _anColIdx;
+	}
+
+	/** Return the CSR value array *without copying it*
+	 *
+	 * @return
+	 */
+	public double[] getValues() {
+		return _adVal;
+	}
+
+	/** Return the scalar value at the given row and column (0 if the entry is not stored);
+	 *  takes O(log(non-zeros in row)) time
+	 *
+	 * @param row
+	 * @param col
+	 * @return
+	 * @throws LinAlgException if row or col indices are out of bounds
+	 */
+	@Override
+	public double get(int row, int col) throws LinAlgException {
+		if ((row >= _nRows) || (row < 0) || (col >= _nCols) || (col < 0))
+			throw new LinAlgException("Column or row out of bounds!");
+		int p = Arrays.binarySearch(_anColIdx, _anRowPtr[row], _anRowPtr[row + 1], col);
+		return p >= 0 ? _adVal[p] : 0d;
+	}
+
+	/** Returns a new dense Matrix with the same entries as *this*
+	 *
+	 * @return
+	 * @throws LinAlgException if the dense matrix would be too large
+	 */
+	@Override
+	public Matrix toDense() throws LinAlgException {
+		Matrix m = new Matrix(_nRows, _nCols);
+		double[] a = m.getArray();
+		for (int row = 0; row < _nRows; row++)
+			for (int p = _anRowPtr[row]; p < _anRowPtr[row + 1]; p++)
+				a[row * _nCols + _anColIdx[p]] = _adVal[p];
+		return m;
+	}
+
+	/** Return a new SparseMatrix that is the transpose of *this* (should not modify *this*)
+	 *
+	 * @return
+	 */
+	public SparseMatrix transpose() {
+		int nnz = getNumNonZeros();
+		int[] rowPtr = new int[_nCols + 1];
+		int[] colIdx = new int[nnz];
+		double[] values = new double[nnz];
+		// Count the entries in each column, then prefix-sum into row pointers of the transpose
+		for (int p = 0; p < nnz; p++)
+			rowPtr[_anColIdx[p] + 1]++;
+		for (int col = 0; col < _nCols; col++)
+			rowPtr[col + 1] += rowPtr[col];
+		int[] next = Arrays.copyOf(rowPtr, _nCols);
+		// Visiting rows in order keeps the column indices of the transpose sorted
+		for (int row = 0; row < _nRows; row++) {
+			for (int p = _anRowPtr[row]; p < _anRowPtr[row + 1]; p++) {
+				int q = next[_anColIdx[p]]++;
+				colIdx[q] = row;
+				values[q] = _adVal[p];
+			}
+		}
+		return wrap(_nCols, _nRows, rowPtr, colIdx, values);
+	}
+
+	@Override
+	public Vector multiply(Vector v) throws LinAlgException {
+		return Multiply(this, v);
+	}
+
+	/** Computes out = *this* * v without allocating, in O(non-zeros) time
+	 *
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out shares storage with v
+	 */
+	@Override
+	public void multiply(Vector v, Vector out) throws LinAlgException {
+		if (_nCols != v.getDim())
+			throw new LinAlgException("s columns do not match the size of v!");
+		if (_nRows != out.getDim())
+			throw new LinAlgException("Output vector must have dimension " + _nRows + " but has " + out.getDim());
+		if (out.getArray() == v.getArray())
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		long t0 = LinAlgMetrics.start();
+		out.markModified();
+		spmv(0, _nRows, v.getArray(), out.getArray());
+		if (t0 != 0L)
+			LinAlgMetrics.recordSparse(LinAlgMetrics.Op.SPARSE_MULTIPLY_VECTOR, t0, _nRows, _nCols, getNumNonZeros(), 1, false);
+	}
+
+	@Override
+	public Vector multiplyTranspose(Vector v) throws LinAlgException {
+		return MultiplyTranspose(this, v);
+	}
+
+	@Override
+	public Matrix multiply(Matrix m) throws LinAlgException {
+		return Multiply(this, m);
+	}
+
+	/** Returns the Vector result of multiplying SparseMatrix s by Vector v (sparse matrix-vector
+	 *  multiply, O(non-zeros))
+	 *
+	 * @param s
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if s columns do not match the size of v
+	 */
+	public static Vector Multiply(SparseMatrix s, Vector v) throws LinAlgException {
+		if (s._nCols != v.getDim())
+			throw new LinAlgException("s columns do not match the size of v!");
+		long t0 = LinAlgMetrics.start();
+		Vector result = new Vector(s._nRows);
+		s.spmv(0, s._nRows, v.getArray(), result.getArray());
+		if (t0 != 0L)
+			LinAlgMetrics.recordSparse(LinAlgMetrics.Op.SPARSE_MULTIPLY_VECTOR, t0, s._nRows, s._nCols, s.getNumNonZeros(), 1, true);
+		return result;
+	}
+
+	/** Returns the Vector result of multiplying the transpose of SparseMatrix s by Vector v,
+	 *  scattering each row of s rather than forming the transpose
+	 *
+	 * @param s
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if s rows do not match the size of v
+	 */
+	public static Vector MultiplyTranspose(SparseMatrix s, Vector v) throws LinAlgException {
+		if (s._nRows != v.getDim())
+			throw new LinAlgException("s rows do not match the size of v!");
+		long t0 = LinAlgMetrics.start();
+		Vector result = new Vector(s._nCols);
+		double[] x = v.getArray();
+		double[] y = result.getArray();
+		for (int row = 0; row < s._nRows; row++) {
+			double xr = x[row];
+			if (xr == 0d)
+				continue;
+			for (int p = s._anRowPtr[row]; p < s._anRowPtr[row + 1]; p++)
+				y[s._anColIdx[p]] += s._adVal[p] * xr;
+		}
+		if (t0 != 0L)
+			LinAlgMetrics.recordSparse(LinAlgMetrics.Op.SPARSE_MULTIPLY_TRANSPOSE, t0, s._nCols, s._nRows, s.getNumNonZeros(), 1, true);
+		return result;
+	}
+
+	/** Returns the dense Matrix result of multiplying SparseMatrix s by dense Matrix m; each
+	 *  stored entry s[i,k] adds a scaled copy of row k of m into row i of the result
+	 *
+	 * @param s
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if s columns do not match the rows of m
+	 */
+	public static Matrix Multiply(SparseMatrix s, Matrix m) throws LinAlgException {
+		if (s._nCols != m.getNumRows())
+			throw new LinAlgException("s columns do not match the size of m rows!");
+		long t0 = LinAlgMetrics.start();
+		int n = m.getNumCols();
+		Matrix result = new Matrix(s._nRows, n);
+		double[] b = m.getArray();
+		double[] c = result.getArray();
+		int cs = m.getColStride();
+		for (int row = 0; row < s._nRows; row++) {
+			int ci = row * n;
+			for (int p = s._anRowPtr[row]; p < s._anRowPtr[row + 1]; p++) {
+				double a = s._adVal[p];
+				int bk = m.getOffset() + s._anColIdx[p] * m.getRowStride();
+				for (int j = 0; j < n; j++)
+					c[ci + j] += a * b[bk + j * cs];
+			}
+		}
+		if (t0 != 0L)
+			LinAlgMetrics.recordSparse(LinAlgMetrics.Op.SPARSE_MULTIPLY, t0, s._nRows, s._nCols, s.getNumNonZeros(), n, true);
+		return result;
+	}
+
+	/** Returns the Vector result of multiplying SparseMatrix s by Vector v using all threads of
+	 *  the default fork-join pool (see Matrix.setParallelism)
+	 *
+	 * @param s
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if s columns do not match the size of v
+	 */
+	public static Vector MultiplyParallel(SparseMatrix s, Vector v) throws LinAlgException {
+		return MultiplyParallel(s, v, ParallelGemm.defaultPool());
+	}
+
+	/** Returns the Vector result of multiplying SparseMatrix s by Vector v, splitting the rows
+	 *  of s into ranges with roughly equal numbers of non-zeros that run on the given pool
+	 *
+	 * @param s
+	 * @param v
+	 * @param pool
+	 * @return
+	 * @throws LinAlgException if s columns do not match the size of v
+	 */
+	public static Vector MultiplyParallel(SparseMatrix s, Vector v, ForkJoinPool pool) throws LinAlgException {
+		if (s._nCols != v.getDim())
+			throw new LinAlgException("s columns do not match the size of v!");
+		long t0 = LinAlgMetrics.start();
+		Vector result = new Vector(s._nRows);
+		double[] x = v.getArray();
+		double[] y = result.getArray();
+		if (s.getNumNonZeros() < 2 * MIN_PARALLEL_NNZ || pool.getParallelism() <= 1)
+			s.spmv(0, s._nRows, x, y);
+		else
+			pool.invoke(s.new SpmvTask(0, s._nRows, x, y,
+					Math.max(MIN_PARALLEL_NNZ, s.getNumNonZeros() / (4 * pool.getParallelism()))));
+		if (t0 != 0L)
+			LinAlgMetrics.recordSparse(LinAlgMetrics.Op.SPARSE_MULTIPLY_PARALLEL_VECTOR, t0, s._nRows, s._nCols, s.getNumNonZeros(), 1, true);
+		return result;
+	}
+
+	/** Sets y[row] = (row of *this*) . x for rows in [from, to) */
+	void spmv(int from, int to, double[] x, double[] y) {
+		for (int row = from; row < to; row++) {
+			double sum = 0d;
+			for (int p = _anRowPtr[row]; p < _anRowPtr[row + 1]; p++)
+				sum += _adVal[p] * x[_anColIdx[p]];
+			y[row] = sum;
+		}
+	}
+
+	/** Wraps CSR arrays this class built itself, skipping the validation done by the public
+	 *  constructor
+	 */
+	private static SparseMatrix wrap(int rows, int cols, int[] rowPtr, int[] colIdx, double[] values) {
+		SparseMatrix s = new SparseMatrix();
+		s._nRows = rows;
+		s._nCols = cols;
+		s._anRowPtr = rowPtr;
+		s._anColIdx = colIdx;
+		s._adVal = values;
+		return s;
+	}
+
+	private SparseMatrix() {
+	}
+
+	/** Computes a range of rows of y = s * x, splitting it at the row that halves its non-zeros */
+	private final class SpmvTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int _nFrom, _nTo;
+		private final double[] _x, _y;
+		private final int _nLeafNnz;
+
+		SpmvTask(int from, int to, double[] x, double[] y, int leafNnz) {
+			_nFrom = from;
+			_nTo = to;
+			_x = x;
+			_y = y;
+			_nLeafNnz = leafNnz;
+		}
+
+		@Override
+		protected void compute() {
+			int nnz = _anRowPtr[_nTo] - _anRowPtr[_nFrom];
+			if (nnz <= _nLeafNnz || _nTo - _nFrom < 2) {
+				spmv(_nFrom, _nTo, _x, _y);
+				return;
+			}
+			int target = _anRowPtr[_nFrom] + nnz / 2;
+			int mid = Arrays.binarySearch(_anRowPtr, _nFrom, _nTo + 1, target);
+			if (mid < 0)
+				mid = -mid - 1;
+			mid = Math.min(Math.max(mid, _nFrom + 1), _nTo - 1);
+			invokeAll(new SpmvTask(_nFrom, mid, _x, _y, _nLeafNnz), new SpmvTask(mid, _nTo, _x, _y, _nLeafNnz));
+		}
+	}
+
+	/*** Assembles a SparseMatrix from (row, col, value) triplets (coordinate or COO format)
+	 *   added in any order; entries added more than once for the same position are summed.
+	 */
+	public static class Builder {
+
+		private final int _nRows;
+		private final int _nCols;
+		private int _nSize;              // Number of triplets added so far
+		private int[] _anRow = new int[16];
+		private int[] _anCol = new int[16];
+		private double[] _adVal = new double[16];
+
+		/** Starts an empty rows x cols matrix
+		 *
+		 * @param rows
+		 * @param cols
+		 * @throws LinAlgException if either rows or cols is <= 0
+		 */
+		public Builder(int rows, int cols) throws LinAlgException {
+			if ((rows <= 0) || (cols <= 0))
+				throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+			_nRows = rows;
+			_nCols = cols;
+		}
+
+		/** Adds val at (row, col); returns this Builder so calls can be chained
+		 *
+		 * @param row
+		 * @param col
+		 * @param val
+		 * @return
+		 * @throws LinAlgException if row or col indices are out of bounds
+		 */
+		public Builder add(int row, int col, double val) throws LinAlgException {
+			if ((row >= _nRows) || (row < 0) || (col >= _nCols) || (col < 0))
+				throw new LinAlgException("Column or row out of bounds!");
+			if (_nSize == _anRow.length) {
+				int capacity = _nSize + (_nSize >> 1);
+				_anRow = Arrays.copyOf(_anRow, capacity);
+				_anCol = Arrays.copyOf(_anCol, capacity);
+				_adVal = Arrays.copyOf(_adVal, capacity);
+			}
+			_anRow[_nSize] = row;
+			_anCol[_nSize] = col;
+			_adVal[_nSize++] = val;
+			return this;
+		}
+
+		/** Returns a new SparseMatrix holding the triplets added so far
+		 *
+		 * @return
+		 */
+		public SparseMatrix build() {
+			// Bucket the triplets by row (a counting sort, stable in insertion order)
+			int[] rowPtr = new int[_nRows + 1];
+			for (int t = 0; t < _nSize; t++)
+				rowPtr[_anRow[t] + 1]++;
+			for (int row = 0; row < _nRows; row++)
+				rowPtr[row + 1] += rowPtr[row];
+			int[] next = Arrays.copyOf(rowPtr, _nRows);
+			int[] col = new int[_nSize];
+			double[] val = new double[_nSize];
+			for (int t = 0; t < _nSize; t++) {
+				int q = next[_anRow[t]]++;
+				col[q] = _anCol[t];
+				val[q] = _adVal[t];
+			}
+			// Sort each row by column and sum duplicates, compacting in place
+			int out = 0;
+			int start = 0;
+			for (int row = 0; row < _nRows; row++) {
+				int end = rowPtr[row + 1];
+				sortRow(col, val, start, end);
+				int rowStart = out;
+				for (int p = start; p < end; p++) {
+					if (out > rowStart && col[out - 1] == col[p]) {
+						val[out - 1] += val[p];
+					} else {
+						col[out] = col[p];
+						val[out++] = val[p];
+					}
+				}
+				start = end;
+				rowPtr[row + 1] = out;
+			}
+			return wrap(_nRows, _nCols, rowPtr, Arrays.copyOf(col, out), Arrays.copyOf(val, out));
+		}
+
+		/** Insertion sort of one row by column index (rows are short in practice); falls back to
+		 *  an index sort for long rows
+		 */
+		private static void sortRow(int[] col, double[] val, int from, int to) {
+			if (to - from > 32) {
+				long[] keys = new long[to - from];
+				for (int p = from; p < to; p++)
+					keys[p - from] = ((long)col[p] << 32) | (p - from);
+				Arrays.sort(keys);
+				int[] c = Arrays.copyOfRange(col, from, to);
+				double[] v = Arrays.copyOfRange(val, from, to);
+				for (int p = from; p < to; p++) {
+					int src = (int)keys[p - from];
+					col[p] = c[src];
+					val[p] = v[src];
+				}
+				return;
+			}
+			for (int p = from + 1; p < to; p++) {
+				int c = col[p];
+				double v = val[p];
+				int q = p - 1;
+				while (q >= from && col[q] > c) {
+					col[q + 1] = col[q];
+					val[q + 1] = val[q];
+					q--;
+				}
+				col[q + 1] = c;
+				val[q + 1] = v;
+			}
+		}
+	}
+}
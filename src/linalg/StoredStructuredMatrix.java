@@ -0,0 +1,144 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** Base class of the structured matrix types that store the entries their structure allows
+ *   to be non-zero (DiagonalMatrix, BandedMatrix, TriangularMatrix and SymmetricMatrix).
+ *
+ *   Except for the symmetric type, the possibly non-zero entries of each row form one
+ *   contiguous range of columns first(row) .. last(row), stored contiguously in _adVal
+ *   starting at index(row, first(row)).  The multiply kernels here only visit those ranges,
+ *   so their cost is proportional to the number of stored entries: O(n) for a diagonal,
+ *   O(n * bandwidth) for a banded and about half the dense cost for a triangular matrix.
+ *   Dense operands are read through their offset and strides, so views work too.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public abstract class StoredStructuredMatrix extends StructuredMatrix {
+
+	private static final VectorKernels KERNELS = VectorKernels.INSTANCE;
+
+	final double[] _adVal; // Stored entries (see class comment)
+
+	StoredStructuredMatrix(int size, long stored) throws LinAlgException {
+		super(size);
+		if (stored > Integer.MAX_VALUE - 8)
+			throw new LinAlgException("A " + size + "x" + size + " " + getClass().getSimpleName() + " exceeds the maximum array size!");
+		_adVal = new double[(int)stored];
+	}
+
+	/** First column that may be non-zero in row */
+	abstract int first(int row);
+
+	/** Last column that may be non-zero in row */
+	abstract int last(int row);
+
+	/** Index in _adVal of entry (row,col), for first(row) <= col <= last(row) */
+	abstract int index(int row, int col);
+
+	@Override
+	public Matrix multiplyLeft(Matrix m) throws LinAlgException {
+		if (m.getNumCols() != _nSize)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		int rows = m.getNumRows();
+		Matrix result = new Matrix(rows, _nSize);
+		double[] a = m.getArray(), c = result.getArray();
+		int off = m.getOffset(), rs = m.getRowStride(), cs = m.getColStride();
+		for (int r = 0; r < rows; r++) {
+			int cr = r * _nSize;
+			for (int i = 0; i < _nSize; i++) {
+				double mri = a[off + r * rs + i * cs];
+				int p = index(i, first(i));
+				for (int j = first(i), last = last(i); j <= last; j++)
+					c[cr + j] += mri * _adVal[p++];
+			}
+		}
+		return result;
+	}
+
+	/** Sets the entry at the given row and column to val
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if the indices are out of bounds or outside the structure
+	 */
+	@Override
+	public void set(int row, int col, double val) throws LinAlgException {
+		checkIndex(row, col);
+		if (col < first(row) || col > last(row))
+			throw new LinAlgException("Entry (" + row + "," + col + ") is outside the structure of this " + getClass().getSimpleName());
+		_adVal[index(row, col)] = val;
+	}
+
+	@Override
+	double entry(int row, int col) {
+		return col < first(row) || col > last(row) ? 0d : _adVal[index(row, col)];
+	}
+
+	/** Computes out = *this* * v without allocating, visiting only the stored entries
+	 *
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if the dimensions do not match or out shares storage with v
+	 */
+	@Override
+	public void multiply(Vector v, Vector out) throws LinAlgException {
+		checkOperands(v, out);
+		double[] x = v.getArray(), y = out.getArray();
+		for (int i = 0; i < _nSize; i++) {
+			int j0 = first(i);
+			y[i] = KERNELS.dot(_adVal, index(i, j0), x, j0, last(i) - j0 + 1);
+		}
+	}
+
+	@Override
+	public Vector multiplyTranspose(Vector v) throws LinAlgException {
+		if (v.getDim() != _nSize)
+			throw new LinAlgException("m rows do not match the size of v!");
+		double[] x = v.getArray();
+		double[] y = new double[_nSize];
+		for (int i = 0; i < _nSize; i++) {
+			double xi = x[i];
+			int p = index(i, first(i));
+			for (int j = first(i), last = last(i); j <= last; j++)
+				y[j] += _adVal[p++] * xi;
+		}
+		return new Vector(y);
+	}
+
+	@Override
+	public Matrix multiply(Matrix m) throws LinAlgException {
+		if (m.getNumRows() != _nSize)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		int cols = m.getNumCols();
+		Matrix result = new Matrix(_nSize, cols);
+		double[] b = m.getArray(), c = result.getArray();
+		int off = m.getOffset(), rs = m.getRowStride(), cs = m.getColStride();
+		for (int i = 0; i < _nSize; i++) {
+			int p = index(i, first(i));
+			for (int j = first(i), last = last(i); j <= last; j++)
+				axpyRow(_adVal[p++], b, off + j * rs, cs, c, i * cols, cols);
+		}
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!super.equals(o))
+			return false;
+		StoredStructuredMatrix s = (StoredStructuredMatrix)o;
+		return sameShape(s) && Arrays.equals(_adVal, s._adVal);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * _nSize + Arrays.hashCode(_adVal);
+	}
+
+	/** Whether s (of the same class and size) has the same structure as *this* */
+	boolean sameShape(StoredStructuredMatrix s) {
+		return true;
+	}
+}
@@ -0,0 +1,231 @@
+package linalg;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*** Strassen-Winograd multiplication: C = A * B with 7 half-size products per level instead
+ *   of 8, i.e., O(n^2.81) multiply-adds.
+ *
+ *   Each level splits A, B and C into quadrants and follows Winograd's schedule (7 products,
+ *   15 additions).  An odd dimension is padded with a zero row or column for that level
+ *   only.  Once any dimension is at or below the cutoff the classical blocked kernel (Gemm)
+ *   takes over, since below that size the saved multiplications no longer pay for the extra
+ *   additions and temporaries.  When a pool with more than one thread is supplied, the seven
+ *   products of every level large enough to be worth it run as parallel fork-join tasks.
+ *
+ *   Strassen is not as accurate as the classical product: the error is bounded normwise
+ *   rather than entrywise, and the bound grows faster with n.  errorBound() returns the
+ *   first-order bound for Winograd's variant from Higham, Accuracy and Stability of
+ *   Numerical Algorithms (2nd ed., section 23.2.2), so callers can judge the trade-off.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+final class Strassen {
+
+	// Products with a dimension at or below this use the classical kernel
+	static volatile int _nCutoff = 512;
+
+	private static final double U = Math.ulp(1d) / 2; // Unit roundoff of double precision
+
+	private Strassen() {
+	}
+
+	/** Computes C = A * B (overwriting C), where A is m x k, B is k x n and C is m x n
+	 *  (entry (i,j) of X is x[xOff + i * xRs + j * xCs]) */
+	static void multiply(ForkJoinPool pool, int m, int n, int k,
+			double[] a, int aOff, int aRs, int aCs,
+			double[] b, int bOff, int bRs, int bCs,
+			double[] c, int cOff, int cRs, int cCs) {
+		Block ba = new Block(m, k, a, aOff, aRs, aCs);
+		Block bb = new Block(k, n, b, bOff, bRs, bCs);
+		Block bc = new Block(m, n, c, cOff, cRs, cCs);
+		int cutoff = _nCutoff;
+		if (m <= cutoff || n <= cutoff || k <= cutoff) {
+			bc.clear();
+			ParallelGemm.gemm(pool, m, n, k, 1d, a, aOff, aRs, aCs, b, bOff, bRs, bCs, c, cOff, cRs, cCs);
+		} else if (pool.getParallelism() > 1) {
+			pool.invoke(new ProductTask(ba, bb, bc, cutoff));
+		} else {
+			product(ba, bb, bc, cutoff, false);
+		}
+	}
+
+	/** Returns the first-order bound on max |C - fl(C)| when an m x k matrix with entries at
+	 *  most maxA in magnitude is multiplied by a k x n matrix with entries at most maxB */
+	static double errorBound(int m, int n, int k, double maxA, double maxB) {
+		int cutoff = _nCutoff;
+		int levels = 0;
+		while (m > cutoff && n > cutoff && k > cutoff) {
+			m = (m + 1) / 2;
+			n = (n + 1) / 2;
+			k = (k + 1) / 2;
+			levels++;
+		}
+		// (n/n0)^log2(18) (n0^2 + 6 n0) - 6n for inner dimension n = 2^levels n0
+		double k0 = k;
+		double gamma = Math.pow(18d, levels) * (k0 * k0 + 6d * k0) - 6d * Math.scalb(k0, levels);
+		return gamma * U * maxA * maxB;
+	}
+
+	/** Computes C = A * B; the seven sub-products run in parallel when parallel is set and the
+	 *  product is above the parallel threshold */
+	private static void product(Block a, Block b, Block c, int cutoff, boolean parallel) {
+		int m = a._nRows, k = a._nCols, n = b._nCols;
+		if (m <= cutoff || n <= cutoff || k <= cutoff) {
+			c.clear();
+			Gemm.gemm(m, n, k, 1d, a._adVal, a._nOffset, a._nRowStride, a._nColStride,
+					b._adVal, b._nOffset, b._nRowStride, b._nColStride,
+					c._adVal, c._nOffset, c._nRowStride, c._nColStride);
+			return;
+		}
+		if (((m | n | k) & 1) != 0) {
+			// Pad odd dimensions with zeros for this level
+			Block pa = Block.padded(a, m + (m & 1), k + (k & 1));
+			Block pb = Block.padded(b, k + (k & 1), n + (n & 1));
+			Block pc = new Block(m + (m & 1), n + (n & 1));
+			product(pa, pb, pc, cutoff, parallel);
+			c.set(pc);
+			return;
+		}
+		Block a11 = a.quadrant(0, 0), a12 = a.quadrant(0, 1), a21 = a.quadrant(1, 0), a22 = a.quadrant(1, 1);
+		Block b11 = b.quadrant(0, 0), b12 = b.quadrant(0, 1), b21 = b.quadrant(1, 0), b22 = b.quadrant(1, 1);
+		Block s1 = Block.sum(a21, a22, 1d);
+		Block s2 = Block.sum(s1, a11, -1d);
+		Block s3 = Block.sum(a11, a21, -1d);
+		Block s4 = Block.sum(a12, s2, -1d);
+		Block t1 = Block.sum(b12, b11, -1d);
+		Block t2 = Block.sum(b22, t1, -1d);
+		Block t3 = Block.sum(b22, b12, -1d);
+		Block t4 = Block.sum(t2, b21, -1d);
+		int hm = m / 2, hn = n / 2;
+		Block p1 = new Block(hm, hn), p2 = new Block(hm, hn), p3 = new Block(hm, hn), p4 = new Block(hm, hn);
+		Block p5 = new Block(hm, hn), p6 = new Block(hm, hn), p7 = new Block(hm, hn);
+		if (parallel && (long)m * n * k >= ParallelGemm._lThreshold) {
+			RecursiveAction.invokeAll(
+				new ProductTask(a11, b11, p1, cutoff), new ProductTask(a12, b21, p2, cutoff),
+				new ProductTask(s4, b22, p3, cutoff), new ProductTask(a22, t4, p4, cutoff),
+				new ProductTask(s1, t1, p5, cutoff), new ProductTask(s2, t2, p6, cutoff),
+				new ProductTask(s3, t3, p7, cutoff));
+		} else {
+			product(a11, b11, p1, cutoff, false);
+			product(a12, b21, p2, cutoff, false);
+			product(s4, b22, p3, cutoff, false);
+			product(a22, t4, p4, cutoff, false);
+			product(s1, t1, p5, cutoff, false);
+			product(s2, t2, p6, cutoff, false);
+			product(s3, t3, p7, cutoff, false);
+		}
+		c.quadrant(0, 0).setSum(p1, p2, 1d); // C11 = P1 + P2
+		p6.addInPlace(p1);                   // U2 = P1 + P6
+		p7.addInPlace(p6);                   // U3 = U2 + P7
+		p6.addInPlace(p5);                   // U4 = U2 + P5
+		c.quadrant(0, 1).setSum(p6, p3, 1d); // C12 = U4 + P3
+		c.quadrant(1, 0).setSum(p7, p4, -1d); // C21 = U3 - P4
+		c.quadrant(1, 1).setSum(p7, p5, 1d); // C22 = U3 + P5
+	}
+
+	/** Computes one product of a Strassen level (and its own sub-products) */
+	private static final class ProductTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient Block _a, _b, _c; // Blocks are not serializable (and tasks are never serialized)
+		private final int _nLeafCutoff;
+
+		ProductTask(Block a, Block b, Block c, int cutoff) {
+			_a = a;
+			_b = b;
+			_c = c;
+			_nLeafCutoff = cutoff;
+		}
+
+		@Override
+		protected void compute() {
+			product(_a, _b, _c, _nLeafCutoff, true);
+		}
+	}
+
+	/** A rows x cols region of an array: entry (i,j) is _adVal[_nOffset + i * _nRowStride + j * _nColStride] */
+	private static final class Block {
+
+		final int _nRows, _nCols;
+		final double[] _adVal;
+		final int _nOffset, _nRowStride, _nColStride;
+
+		Block(int rows, int cols, double[] val, int offset, int rowStride, int colStride) {
+			_nRows = rows;
+			_nCols = cols;
+			_adVal = val;
+			_nOffset = offset;
+			_nRowStride = rowStride;
+			_nColStride = colStride;
+		}
+
+		/** A new zero-filled, row-major block */
+		Block(int rows, int cols) {
+			this(rows, cols, new double[rows * cols], 0, cols, 1);
+		}
+
+		/** A new rows x cols block holding x in its top-left corner and zeros elsewhere */
+		static Block padded(Block x, int rows, int cols) {
+			Block p = new Block(rows, cols);
+			for (int i = 0; i < x._nRows; i++)
+				for (int j = 0; j < x._nCols; j++)
+					p._adVal[i * cols + j] = x.get(i, j);
+			return p;
+		}
+
+		/** A new block holding x + sign * y */
+		static Block sum(Block x, Block y, double sign) {
+			Block s = new Block(x._nRows, x._nCols);
+			s.setSum(x, y, sign);
+			return s;
+		}
+
+		/** Quadrant (qi,qj) of this block, whose dimensions are even */
+		Block quadrant(int qi, int qj) {
+			int h = _nRows / 2, w = _nCols / 2;
+			return new Block(h, w, _adVal, _nOffset + qi * h * _nRowStride + qj * w * _nColStride, _nRowStride, _nColStride);
+		}
+
+		double get(int i, int j) {
+			return _adVal[_nOffset + i * _nRowStride + j * _nColStride];
+		}
+
+		void clear() {
+			for (int i = 0; i < _nRows; i++)
+				for (int j = 0; j < _nCols; j++)
+					_adVal[_nOffset + i * _nRowStride + j * _nColStride] = 0d;
+		}
+
+		/** Sets this block to x + sign * y */
+		void setSum(Block x, Block y, double sign) {
+			for (int i = 0; i < _nRows; i++) {
+				int d = _nOffset + i * _nRowStride;
+				int xi = x._nOffset + i * x._nRowStride;
+				int yi = y._nOffset + i * y._nRowStride;
+				if (_nColStride == 1 && x._nColStride == 1 && y._nColStride == 1) {
+					for (int j = 0; j < _nCols; j++)
+						_adVal[d + j] = x._adVal[xi + j] + sign * y._adVal[yi + j];
+				} else {
+					for (int j = 0; j < _nCols; j++)
+						_adVal[d + j * _nColStride] = x._adVal[xi + j * x._nColStride] + sign * y._adVal[yi + j * y._nColStride];
+				}
+			}
+		}
+
+		/** Adds x, a row-major block of the same size, to this row-major block */
+		void addInPlace(Block x) {
+			for (int i = 0; i < _adVal.length; i++)
+				_adVal[i] += x._adVal[i];
+		}
+
+		/** Sets this block to the top-left corner of the (larger) block x */
+		void set(Block x) {
+			for (int i = 0; i < _nRows; i++)
+				for (int j = 0; j < _nCols; j++)
+					_adVal[_nOffset + i * _nRowStride + j * _nColStride] = x.get(i, j);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+package linalg;
+
+/*** Base class of the square matrix types whose structure fixes most of their entries
+ *   (DiagonalMatrix, BandedMatrix, TriangularMatrix, SymmetricMatrix and IdentityMatrix).
+ *
+ *   The types that store their possibly non-zero entries in an array extend
+ *   StoredStructuredMatrix, which holds the storage and the kernels that walk it;
+ *   IdentityMatrix stores nothing and extends this class directly.  Here are only the
+ *   operations every structured matrix shares, written against entry().
+ *
+ *   Mixed products with a dense Matrix on either side are dispatched by
+ *   Matrix.Multiply(RealMatrix, RealMatrix).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public abstract class StructuredMatrix implements RealMatrix {
+
+	final int _nSize; // Number of rows and columns
+
+	StructuredMatrix(int size) throws LinAlgException {
+		if (size <= 0)
+			throw new LinAlgException("Rows or columns cannot be less than or equal to 0!");
+		_nSize = size;
+	}
+
+	/** Entry (row,col) for indices already known to be in bounds */
+	abstract double entry(int row, int col);
+
+	/** Returns the Matrix result of multiplying m by *this* (i.e., m * this), exploiting the
+	 *  structure of *this*
+	 *
+	 * @param m
+	 * @return
+	 * @throws LinAlgException if the columns of m do not match the rows of *this*
+	 */
+	public abstract Matrix multiplyLeft(Matrix m) throws LinAlgException;
+
+	/** Sets the entry at the given row and column to val
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if the indices are out of bounds or the structure does not allow
+	 *         the entry to change
+	 */
+	public abstract void set(int row, int col, double val) throws LinAlgException;
+
+	@Override
+	public int getNumRows() {
+		return _nSize;
+	}
+
+	@Override
+	public int getNumCols() {
+		return _nSize;
+	}
+
+	@Override
+	public double get(int row, int col) throws LinAlgException {
+		checkIndex(row, col);
+		return entry(row, col);
+	}
+
+	@Override
+	public Vector multiply(Vector v) throws LinAlgException {
+		Vector y = new Vector(_nSize);
+		multiply(v, y);
+		return y;
+	}
+
+	/** Returns a new dense Matrix with the same entries as *this*
+	 *
+	 * @return
+	 * @throws LinAlgException if the dense matrix would be too large
+	 */
+	@Override
+	public Matrix toDense() throws LinAlgException {
+		Matrix m = new Matrix(_nSize, _nSize);
+		double[] a = m.getArray();
+		for (int row = 0; row < _nSize; row++)
+			for (int col = 0; col < _nSize; col++)
+				a[row * _nSize + col] = entry(row, col);
+		return m;
+	}
+
+	/** Constructs a String representation in the same format as Matrix.toString()
+	 *
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int row = 0; row < _nSize; row++) {
+			sb.append("[");
+			for (int col = 0; col < _nSize; col++)
+				TextCodec.appendEntry(sb, entry(row, col));
+			sb.append(" ]\n");
+		}
+		return sb.toString();
+	}
+
+	/** Two structured matrices are equal iff they have the same type and size (and, for
+	 *  the stored types, the same shape and entries)
+	 *
+	 * @param o the object to compare to
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o != null && o.getClass() == getClass() && _nSize == ((StructuredMatrix)o)._nSize;
+	}
+
+	@Override
+	public int hashCode() {
+		return _nSize;
+	}
+
+	/** Checks the operands of multiply(v, out), which is about to overwrite out */
+	void checkOperands(Vector v, Vector out) throws LinAlgException {
+		if (v.getDim() != _nSize)
+			throw new LinAlgException("m columns do not match the size of v!");
+		if (out.getDim() != _nSize)
+			throw new LinAlgException("Output vector must have dimension " + _nSize + " but has " + out.getDim());
+		if (out.getArray() == v.getArray())
+			throw new LinAlgException("Output vector cannot share storage with the operand!");
+		out.markModified();
+	}
+
+	void checkIndex(int row, int col) throws LinAlgException {
+		if ((row >= _nSize) || (row < 0) || (col >= _nSize) || (col < 0))
+			throw new LinAlgException("Column or row out of bounds!");
+	}
+
+	/** Sets c[cOff + j] += alpha * b[bOff + j * bInc] for j < n */
+	static void axpyRow(double alpha, double[] b, int bOff, int bInc, double[] c, int cOff, int n) {
+		if (bInc == 1) {
+			for (int j = 0; j < n; j++)
+				c[cOff + j] += alpha * b[bOff + j];
+		} else {
+			for (int j = 0; j < n; j++)
+				c[cOff + j] += alpha * b[bOff + j * bInc];
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A square symmetric matrix (entry (row,col) equals entry (col,row)), stored packed: row by
+ *   row, only the n * (n + 1) / 2 entries on and below the diagonal.
+ *
+ *   Storage is about half that of a dense Matrix.  Products read each stored entry once and
+ *   apply it to both (row,col) and (col,row).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public class SymmetricMatrix extends StoredStructuredMatrix {
+
+	/** Allocates a new size x size symmetric matrix of zeros
+	 *
+	 * @param size
+	 * @throws LinAlgException if size is <= 0 or the matrix is too large
+	 */
+	public SymmetricMatrix(int size) throws LinAlgException {
+		super(size, (long)size * (size + 1L) / 2);
+	}
+
+	@Override
+	int first(int row) {
+		return 0;
+	}
+
+	@Override
+	int last(int row) {
+		return row;
+	}
+
+	@Override
+	int index(int row, int col) {
+		return (int)((long)row * (row + 1) / 2 + col);
+	}
+
+	@Override
+	double entry(int row, int col) {
+		return row >= col ? _adVal[index(row, col)] : _adVal[index(col, row)];
+	}
+
+	/** Sets entries (row,col) and (col,row) to val
+	 *
+	 * @param row
+	 * @param col
+	 * @param val
+	 * @throws LinAlgException if the indices are out of bounds
+	 */
+	@Override
+	public void set(int row, int col, double val) throws LinAlgException {
+		checkIndex(row, col);
+		_adVal[row >= col ? index(row, col) : index(col, row)] = val;
+	}
+
+	@Override
+	public void multiply(Vector v, Vector out) throws LinAlgException {
+		checkOperands(v, out);
+		double[] x = v.getArray(), y = out.getArray();
+		Arrays.fill(y, 0d);
+		for (int i = 0; i < _nSize; i++) {
+			int p = index(i, 0);
+			double xi = x[i];
+			double sum = 0d;
+			for (int j = 0; j < i; j++) {
+				double a = _adVal[p + j];
+				sum += a * x[j];
+				y[j] += a * xi; // Mirrored entry (j,i)
+			}
+			y[i] += sum + _adVal[p + i] * xi;
+		}
+	}
+
+	@Override
+	public Vector multiplyTranspose(Vector v) throws LinAlgException {
+		if (v.getDim() != _nSize)
+			throw new LinAlgException("m rows do not match the size of v!");
+		return multiply(v); // A symmetric matrix is its own transpose
+	}
+
+	@Override
+	public Matrix multiply(Matrix m) throws LinAlgException {
+		if (m.getNumRows() != _nSize)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		int cols = m.getNumCols();
+		Matrix result = new Matrix(_nSize, cols);
+		double[] b = m.getArray(), c = result.getArray();
+		int off = m.getOffset(), rs = m.getRowStride(), cs = m.getColStride();
+		for (int i = 0; i < _nSize; i++) {
+			int p = index(i, 0);
+			for (int j = 0; j < i; j++) {
+				axpyRow(_adVal[p + j], b, off + j * rs, cs, c, i * cols, cols);
+				axpyRow(_adVal[p + j], b, off + i * rs, cs, c, j * cols, cols); // Mirrored entry (j,i)
+			}
+			axpyRow(_adVal[p + i], b, off + i * rs, cs, c, i * cols, cols);
+		}
+		return result;
+	}
+
+	@Override
+	public Matrix multiplyLeft(Matrix m) throws LinAlgException {
+		if (m.getNumCols() != _nSize)
+			throw new LinAlgException("m1 columns do not match the size of m2 rows!");
+		int rows = m.getNumRows();
+		Matrix result = new Matrix(rows, _nSize);
+		double[] a = m.getArray(), c = result.getArray();
+		int off = m.getOffset(), rs = m.getRowStride(), cs = m.getColStride();
+		for (int r = 0; r < rows; r++) {
+			int mr = off + r * rs, cr = r * _nSize;
+			for (int i = 0; i < _nSize; i++) {
+				int p = index(i, 0);
+				double mri = a[mr + i * cs];
+				double sum = 0d;
+				for (int j = 0; j < i; j++) {
+					double s = _adVal[p + j];
+					c[cr + j] += mri * s;
+					sum += a[mr + j * cs] * s; // Mirrored entry (j,i)
+				}
+				c[cr + i] += sum + mri * _adVal[p + i];
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,563 @@
+package linalg;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/*** Parses and writes the bracketed text format used by Vector(String) and toString():
+ *
+ *     Vector:  [  1.000   2.500  -3.000  ]
+ *     Matrix:  [  1.000   0.000  ]
+ *              [  0.000   1.000  ]
+ *
+ *   Numbers are separated by any amount of whitespace (including newlines), and a matrix is
+ *   any sequence of bracketed rows of equal length.  Parsing scans characters straight out
+ *   of a reusable buffer with a hand-written number scanner (falling back to
+ *   Double.parseDouble only for inputs it cannot convert exactly, such as more than 15
+ *   significant digits), and writing formats each entry as " %6.3f " into a reusable
+ *   buffer, so neither direction allocates per element.
+ *
+ *   A TextCodec holds its buffers between calls and is therefore not thread-safe; create one
+ *   per thread.  toString() and the String constructors of Vector and Matrix share one
+ *   codec per thread, so they allocate its buffers once rather than on every call.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class TextCodec {
+
+	private static final int BUFFER = 8192;
+	private static final int EOF = -1;
+
+	// Codec behind toString() and the String constructors (see shared())
+	private static final ThreadLocal<TextCodec> SHARED = ThreadLocal.withInitial(TextCodec::new);
+
+	// Exactly representable powers of ten for the fast conversion path
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	// Input side: exactly one of these is set while parsing
+	private Reader _reader;
+	private ReadableByteChannel _inChannel;
+	private CharSequence _chars;
+	private int _nCharsPos;
+
+	private final char[] _acIn = new char[BUFFER];
+	private int _nInPos;
+	private int _nInLimit;
+	private ByteBuffer _inBytes;
+
+	private char[] _acToken = new char[64];   // Current number token
+	private double[] _adValues = new double[64]; // Values parsed so far
+
+	// Output side: exactly one of these is set while writing
+	private Appendable _appendable;
+	private WritableByteChannel _outChannel;
+
+	private final char[] _acOut = new char[BUFFER];
+	private final CharBuffer _outView = CharBuffer.wrap(_acOut);
+	private int _nOutPos;
+	private ByteBuffer _outBytes;
+
+	/** Reads one bracketed vector from in (input is read in blocks, so characters after the
+	 *  closing ] may be consumed as well)
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException if in cannot be read
+	 * @throws LinAlgException if the input is not a well-formed vector
+	 */
+	public Vector readVector(Reader in) throws IOException, LinAlgException {
+		startInput(in, null, null);
+		try {
+			return new Vector(readRow("vector"));
+		} finally {
+			endInput();
+		}
+	}
+
+	/** Reads one bracketed vector from in (see readVector(Reader)); input is decoded as ISO-8859-1
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException if in cannot be read
+	 * @throws LinAlgException if the input is not a well-formed vector
+	 */
+	public Vector readVector(ReadableByteChannel in) throws IOException, LinAlgException {
+		startInput(null, in, null);
+		try {
+			return new Vector(readRow("vector"));
+		} finally {
+			endInput();
+		}
+	}
+
+	/** Reads all bracketed rows from in into a Matrix
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException if in cannot be read
+	 * @throws LinAlgException if the input is not a well-formed matrix
+	 */
+	public Matrix readMatrix(Reader in) throws IOException, LinAlgException {
+		startInput(in, null, null);
+		try {
+			return readRows();
+		} finally {
+			endInput();
+		}
+	}
+
+	/** Reads all bracketed rows from in into a Matrix; input is decoded as ISO-8859-1
+	 *
+	 * @param in
+	 * @return
+	 * @throws IOException if in cannot be read
+	 * @throws LinAlgException if the input is not a well-formed matrix
+	 */
+	public Matrix readMatrix(ReadableByteChannel in) throws IOException, LinAlgException {
+		startInput(null, in, null);
+		try {
+			return readRows();
+		} finally {
+			endInput();
+		}
+	}
+
+	/** Parses init as exactly one bracketed vector (nothing but whitespace may follow) and
+	 *  returns its entries; an empty "[ ]" gives an empty array
+	 *
+	 * @param init
+	 * @return
+	 * @throws LinAlgException if init is not a well-formed vector
+	 */
+	public double[] parseVector(CharSequence init) throws LinAlgException {
+		startInput(null, null, init);
+		try {
+			double[] values = readRow("vector");
+			if (skipWhitespace() != EOF)
+				throw new LinAlgException("Malformed vector initialization: unexpected text after ] in " + init);
+			return values;
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Cannot happen when reading a CharSequence
+		} finally {
+			endInput();
+		}
+	}
+
+	/** Parses init as a sequence of bracketed rows of equal length
+	 *
+	 * @param init
+	 * @return
+	 * @throws LinAlgException if init is not a well-formed matrix
+	 */
+	public Matrix parseMatrix(CharSequence init) throws LinAlgException {
+		startInput(null, null, init);
+		try {
+			return readRows();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Cannot happen when reading a CharSequence
+		} finally {
+			endInput();
+		}
+	}
+
+	/** Writes v to out in the same format as Vector.toString()
+	 *
+	 * @param v
+	 * @param out
+	 * @throws IOException if out cannot be written
+	 */
+	public void write(Vector v, Appendable out) throws IOException {
+		startOutput(out, null);
+		try {
+			putRow(v.getArray(), 0, 1, v.getDim());
+			flushOutput();
+		} finally {
+			endOutput();
+		}
+	}
+
+	/** Writes v to out in the same format as Vector.toString(), encoded as ISO-8859-1
+	 *
+	 * @param v
+	 * @param out
+	 * @throws IOException if out cannot be written
+	 */
+	public void write(Vector v, WritableByteChannel out) throws IOException {
+		startOutput(null, out);
+		try {
+			putRow(v.getArray(), 0, 1, v.getDim());
+			flushOutput();
+		} finally {
+			endOutput();
+		}
+	}
+
+	/** Writes m to out in the same format as Matrix.toString() (one bracketed row per line)
+	 *
+	 * @param m
+	 * @param out
+	 * @throws IOException if out cannot be written
+	 */
+	public void write(Matrix m, Appendable out) throws IOException {
+		startOutput(out, null);
+		try {
+			putRows(m);
+			flushOutput();
+		} finally {
+			endOutput();
+		}
+	}
+
+	/** Writes m to out in the same format as Matrix.toString(), encoded as ISO-8859-1
+	 *
+	 * @param m
+	 * @param out
+	 * @throws IOException if out cannot be written
+	 */
+	public void write(Matrix m, WritableByteChannel out) throws IOException {
+		startOutput(null, out);
+		try {
+			putRows(m);
+			flushOutput();
+		} finally {
+			endOutput();
+		}
+	}
+
+	/** Returns the calling thread's codec, for library code that parses or formats a String
+	 *  without calling out to user code in between (so the codec is never used reentrantly)
+	 */
+	static TextCodec shared() {
+		return SHARED.get();
+	}
+
+	/** Returns v formatted exactly as Vector.toString() does */
+	static String format(Vector v) {
+		StringBuilder sb = new StringBuilder(v.getDim() * 8 + 4);
+		try {
+			shared().write(v, sb);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // StringBuilder never throws
+		}
+		return sb.toString();
+	}
+
+	/** Returns m formatted exactly as Matrix.toString() does */
+	static String format(Matrix m) {
+		StringBuilder sb = new StringBuilder(m.getNumRows() * (m.getNumCols() * 8 + 4));
+		try {
+			shared().write(m, sb);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // StringBuilder never throws
+		}
+		return sb.toString();
+	}
+
+	/** Appends d to sb as " %6.3f ", the way each entry of Vector.toString() is formatted, for
+	 *  the types whose entries are not in a double[]
+	 */
+	static void appendEntry(StringBuilder sb, double d) {
+		TextCodec codec = shared();
+		codec.startOutput(sb, null);
+		try {
+			codec.put(' ');
+			codec.putFixed(d);
+			codec.put(' ');
+			codec.flushOutput();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // StringBuilder never throws
+		} finally {
+			codec.endOutput();
+		}
+	}
+
+	// ---------------------------------------------------------------- parsing
+
+	private void startInput(Reader reader, ReadableByteChannel channel, CharSequence chars) {
+		_reader = reader;
+		_inChannel = channel;
+		_chars = chars;
+		_nCharsPos = 0;
+		_nInPos = 0;
+		_nInLimit = 0;
+		if (channel != null && _inBytes == null)
+			_inBytes = ByteBuffer.allocate(BUFFER);
+	}
+
+	private void endInput() {
+		_reader = null;
+		_inChannel = null;
+		_chars = null;
+	}
+
+	/** Refills the character buffer; returns false at end of input */
+	private boolean fill() throws IOException {
+		_nInPos = 0;
+		_nInLimit = 0;
+		if (_chars != null) {
+			int n = Math.min(BUFFER, _chars.length() - _nCharsPos);
+			for (int i = 0; i < n; i++)
+				_acIn[i] = _chars.charAt(_nCharsPos + i);
+			_nCharsPos += n;
+			_nInLimit = n;
+		} else if (_reader != null) {
+			int n = _reader.read(_acIn, 0, BUFFER);
+			_nInLimit = Math.max(n, 0);
+		} else {
+			_inBytes.clear();
+			int n;
+			do {
+				n = _inChannel.read(_inBytes);
+			} while (n == 0);
+			for (int i = 0; i < _inBytes.position(); i++)
+				_acIn[i] = (char)(_inBytes.get(i) & 0xff);
+			_nInLimit = _inBytes.position();
+		}
+		return _nInLimit > 0;
+	}
+
+	private int peek() throws IOException {
+		if (_nInPos == _nInLimit && !fill())
+			return EOF;
+		return _acIn[_nInPos];
+	}
+
+	/** Skips whitespace and returns the next character without consuming it (or EOF) */
+	private int skipWhitespace() throws IOException {
+		int c;
+		while ((c = peek()) != EOF && Character.isWhitespace(c))
+			_nInPos++;
+		return c;
+	}
+
+	/** Reads "[ n1 n2 ... ]" and returns the numbers */
+	private double[] readRow(String what) throws IOException, LinAlgException {
+		if (skipWhitespace() != '[')
+			throw new LinAlgException("Malformed " + what + " initialization: missing [");
+		_nInPos++;
+		int count = 0;
+		while (true) {
+			int c = skipWhitespace();
+			if (c == ']') {
+				_nInPos++;
+				break;
+			}
+			if (c == EOF || c == '[')
+				throw new LinAlgException("Malformed " + what + " initialization: missing ]");
+			if (count == _adValues.length)
+				_adValues = Arrays.copyOf(_adValues, count * 2);
+			_adValues[count++] = readNumber(what);
+		}
+		return Arrays.copyOf(_adValues, count);
+	}
+
+	/** Reads rows until end of input; every row must have the same length */
+	private Matrix readRows() throws IOException, LinAlgException {
+		int rows = 0;
+		int cols = -1;
+		int total = 0;
+		double[] data = new double[64];
+		while (skipWhitespace() != EOF) {
+			double[] row = readRow("matrix");
+			if (cols < 0)
+				cols = row.length;
+			else if (row.length != cols)
+				throw new LinAlgException("Malformed matrix initialization: row " + rows + " has " + row.length
+						+ " entries but row 0 has " + cols);
+			if (total + cols > data.length)
+				data = Arrays.copyOf(data, Math.max(data.length * 2, total + cols));
+			System.arraycopy(row, 0, data, total, cols);
+			total += cols;
+			rows++;
+		}
+		if (rows == 0 || cols == 0)
+			throw new LinAlgException("Malformed matrix initialization: no entries");
+		return new Matrix(rows, cols, total == data.length ? data : Arrays.copyOf(data, total));
+	}
+
+	/** Reads one whitespace- or bracket-terminated token and converts it to a double */
+	private double readNumber(String what) throws IOException, LinAlgException {
+		int len = 0;
+		int c;
+		while ((c = peek()) != EOF && c != ']' && c != '[' && !Character.isWhitespace(c)) {
+			if (len == _acToken.length)
+				_acToken = Arrays.copyOf(_acToken, len * 2);
+			_acToken[len++] = (char)c;
+			_nInPos++;
+		}
+		double d = parseFast(_acToken, len);
+		if (!Double.isNaN(d))
+			return d;
+		// Rare inputs (long mantissas, huge exponents, NaN, hex...) take the JDK path
+		String token = new String(_acToken, 0, len);
+		try {
+			return Double.parseDouble(token);
+		} catch (NumberFormatException e) {
+			throw new LinAlgException("Malformed " + what + " initialization: could not parse " + token);
+		}
+	}
+
+	/** Converts [+-]digits[.digits][(e|E)[+-]digits] when it can be done exactly (at most 15
+	 *  significant digits and a power of ten within 10^22); returns NaN otherwise
+	 */
+	static double parseFast(char[] s, int len) {
+		int i = 0;
+		boolean negative = false;
+		if (i < len && (s[i] == '-' || s[i] == '+'))
+			negative = s[i++] == '-';
+		long mantissa = 0;
+		int digits = 0;      // Significant digits accumulated in mantissa
+		int scale = 0;       // Power of ten to apply to mantissa
+		boolean any = false; // Whether any digit was seen
+		for (; i < len && s[i] >= '0' && s[i] <= '9'; i++) {
+			any = true;
+			if (mantissa == 0 && s[i] == '0')
+				continue; // Leading zeros are not significant
+			if (++digits > 15)
+				return Double.NaN;
+			mantissa = mantissa * 10 + (s[i] - '0');
+		}
+		if (i < len && s[i] == '.') {
+			for (i++; i < len && s[i] >= '0' && s[i] <= '9'; i++) {
+				any = true;
+				scale--;
+				if (mantissa == 0 && s[i] == '0')
+					continue;
+				if (++digits > 15)
+					return Double.NaN;
+				mantissa = mantissa * 10 + (s[i] - '0');
+			}
+		}
+		if (!any)
+			return Double.NaN;
+		if (i < len && (s[i] == 'e' || s[i] == 'E')) {
+			i++;
+			boolean negExp = false;
+			if (i < len && (s[i] == '-' || s[i] == '+'))
+				negExp = s[i++] == '-';
+			if (i == len)
+				return Double.NaN;
+			int exp = 0;
+			for (; i < len && s[i] >= '0' && s[i] <= '9'; i++) {
+				exp = exp * 10 + (s[i] - '0');
+				if (exp > 1000)
+					return Double.NaN;
+			}
+			scale += negExp ? -exp : exp;
+		}
+		if (i != len)
+			return Double.NaN;
+		double d = mantissa;
+		if (mantissa != 0) {
+			if (scale < -22 || scale > 22)
+				return Double.NaN;
+			d = scale < 0 ? d / POW10[-scale] : d * POW10[scale];
+		}
+		return negative ? -d : d;
+	}
+
+	// ---------------------------------------------------------------- writing
+
+	private void startOutput(Appendable appendable, WritableByteChannel channel) {
+		_appendable = appendable;
+		_outChannel = channel;
+		_nOutPos = 0;
+		if (channel != null && _outBytes == null)
+			_outBytes = ByteBuffer.allocate(BUFFER);
+	}
+
+	private void endOutput() {
+		_appendable = null;
+		_outChannel = null;
+	}
+
+	private void flushOutput() throws IOException {
+		if (_nOutPos == 0)
+			return;
+		if (_appendable != null) {
+			_appendable.append(_outView, 0, _nOutPos);
+		} else {
+			_outBytes.clear();
+			for (int i = 0; i < _nOutPos; i++)
+				_outBytes.put((byte)_acOut[i]);
+			_outBytes.flip();
+			while (_outBytes.hasRemaining())
+				_outChannel.write(_outBytes);
+		}
+		_nOutPos = 0;
+	}
+
+	private void put(char c) throws IOException {
+		if (_nOutPos == BUFFER)
+			flushOutput();
+		_acOut[_nOutPos++] = c;
+	}
+
+	private void putRows(Matrix m) throws IOException {
+		for (int row = 0; row < m.getNumRows(); row++) {
+			putRow(m.getArray(), m.getOffset() + row * m.getRowStride(), m.getColStride(), m.getNumCols());
+			put('\n');
+		}
+	}
+
+	private void putRow(double[] a, int off, int inc, int n) throws IOException {
+		put('[');
+		for (int i = 0; i < n; i++) {
+			put(' ');
+			putFixed(a[off + i * inc]);
+			put(' ');
+		}
+		put(' ');
+		put(']');
+	}
+
+	/** Writes d as String.format("%6.3f", d) would: rounded half-up to three decimals and
+	 *  right-aligned in six characters
+	 */
+	private void putFixed(double d) throws IOException {
+		double scaled = Math.abs(d) * 1000d;
+		long units = (long)scaled;
+		double frac = scaled - units;
+		// Values that are not finite, too large, or too close to a rounding tie for the
+		// binary product to decide take the JDK path, which rounds the shortest decimal
+		// representation of d; that representation and the product each differ from the
+		// exact value by up to about an ulp of scaled, so the tie margin grows with it
+		if (!(scaled < 1e15) || Math.abs(frac - 0.5d) < Math.max(1e-6, 4d * Math.ulp(scaled))) {
+			String s = String.format("%6.3f", d);
+			for (int i = 0; i < s.length(); i++)
+				put(s.charAt(i));
+			return;
+		}
+		if (frac > 0.5d)
+			units++;
+		boolean negative = Double.doubleToRawLongBits(d) < 0;
+		long whole = units / 1000;
+		int thousandths = (int)(units % 1000);
+		int wholeDigits = 1;
+		for (long w = whole; w >= 10; w /= 10)
+			wholeDigits++;
+		int width = (negative ? 1 : 0) + wholeDigits + 4;
+		for (int pad = width; pad < 6; pad++)
+			put(' ');
+		if (negative)
+			put('-');
+		if (_nOutPos + wholeDigits > BUFFER)
+			flushOutput();
+		for (int p = _nOutPos + wholeDigits - 1; p >= _nOutPos; p--) {
+			_acOut[p] = (char)('0' + whole % 10);
+			whole /= 10;
+		}
+		_nOutPos += wholeDigits;
+		put('.');
+		put((char)('0' + thousandths / 100));
+		put((char)('0' + thousandths / 10 % 10));
+		put((char)('0' + thousandths % 10));
+	}
+}
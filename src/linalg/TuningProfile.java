@@ -0,0 +1,284 @@
+package linalg;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/*** The machine-specific kernel settings found by KernelTuner: the cache blocking of the
+ *   matrix multiply kernel, the size below which it skips packing, the sizes from which
+ *   gemv rows and the Vector operations switch to the SIMD kernels, and the size from which
+ *   (and the number of threads with which) MultiplyParallel splits a product.
+ *
+ *   A profile is a small properties file.  The profile in effect at startup is read from
+ *   the file named by the system property linalg.profile, or else from
+ *   ~/.linalg/profile.properties, when the Matrix and Vector kernels are first used.  It is
+ *   ignored (and the defaults are used) if the file is missing or malformed, or if it was
+ *   tuned on a machine with a different architecture or number of cores, so a home
+ *   directory shared between machines cannot slow down the wrong one.
+ *
+ *   apply() installs a profile at run time, except for the Vector kernels, which are chosen
+ *   once at startup.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public final class TuningProfile {
+
+	static final int NEVER = Integer.MAX_VALUE; // SIMD threshold of a kernel that never uses SIMD
+
+	private static final TuningProfile DEFAULTS = new TuningProfile(96, 256, 2048, 32L * 32 * 32,
+			NEVER, 0, 128L * 128 * 128, 0, machineArch(), machineCores());
+
+	private static TuningProfile _startup; // Loaded on first use; guarded by TuningProfile.class
+
+	final int _nMC, _nKC, _nNC;       // Gemm block sizes
+	final long _lSmallFlops;          // Gemm products with at most this many multiply-adds are not packed
+	final int _nGemvSimdMinCols;      // gemv rows of at least this many entries use the SIMD dot product
+	final int _nVectorSimdMinLength;  // Vector operations on at least this many entries use the SIMD kernels
+	final long _lParallelThreshold;   // Parallel products with fewer multiply-adds stay on the calling thread
+	final int _nThreads;              // Threads of the default parallel pool (0 for one per core)
+	final String _sArch;              // Machine the profile was tuned on
+	final int _nCores;
+
+	TuningProfile(int mc, int kc, int nc, long smallFlops, int gemvSimdMinCols, int vectorSimdMinLength,
+			long parallelThreshold, int threads, String arch, int cores) {
+		_nMC = mc;
+		_nKC = kc;
+		_nNC = nc;
+		_lSmallFlops = smallFlops;
+		_nGemvSimdMinCols = gemvSimdMinCols;
+		_nVectorSimdMinLength = vectorSimdMinLength;
+		_lParallelThreshold = parallelThreshold;
+		_nThreads = threads;
+		_sArch = arch;
+		_nCores = cores;
+	}
+
+	/** Returns the built-in settings, used when no profile has been tuned
+	 *
+	 * @return
+	 */
+	public static TuningProfile defaults() {
+		return DEFAULTS;
+	}
+
+	/** Returns the profile that was in effect at startup (see the class comment)
+	 *
+	 * @return
+	 */
+	public static synchronized TuningProfile startup() {
+		if (_startup == null) {
+			_startup = DEFAULTS;
+			try {
+				Path path = defaultPath();
+				if (Files.exists(path)) {
+					TuningProfile p = load(path);
+					if (p.isForThisMachine())
+						_startup = p;
+				}
+			} catch (IOException | LinAlgException | RuntimeException e) {
+				// An unreadable profile must not break the library: keep the defaults
+			}
+		}
+		return _startup;
+	}
+
+	/** Returns the file the startup profile is read from: the system property linalg.profile
+	 *  if set, else ~/.linalg/profile.properties
+	 *
+	 * @return
+	 */
+	public static Path defaultPath() {
+		String path = System.getProperty("linalg.profile");
+		if (path != null)
+			return Path.of(path);
+		return Path.of(System.getProperty("user.home"), ".linalg", "profile.properties");
+	}
+
+	/** Reads a profile written by save()
+	 *
+	 * @param path
+	 * @return
+	 * @throws IOException if the file cannot be read
+	 * @throws LinAlgException if a setting is missing or invalid
+	 */
+	public static TuningProfile load(Path path) throws IOException, LinAlgException {
+		Properties p = new Properties();
+		try (Reader in = Files.newBufferedReader(path)) {
+			p.load(in);
+		}
+		int mc = intValue(p, "gemm.mc", path);
+		int kc = intValue(p, "gemm.kc", path);
+		int nc = intValue(p, "gemm.nc", path);
+		if (mc <= 0 || mc % Gemm.MR != 0 || kc <= 0 || nc <= 0 || nc % Gemm.NR != 0)
+			throw new LinAlgException("Invalid block sizes " + mc + ", " + kc + ", " + nc + " in " + path
+					+ " (gemm.mc must be a multiple of " + Gemm.MR + " and gemm.nc of " + Gemm.NR + ")");
+		long smallFlops = nonNegative(longValue(p, "gemm.smallFlops", path), "gemm.smallFlops", path);
+		int gemvSimdMinCols = (int)nonNegative(intValue(p, "gemv.simdMinCols", path), "gemv.simdMinCols", path);
+		int vectorSimdMinLength = (int)nonNegative(intValue(p, "vector.simdMinLength", path), "vector.simdMinLength", path);
+		long parallelThreshold = nonNegative(longValue(p, "parallel.threshold", path), "parallel.threshold", path);
+		int threads = (int)nonNegative(intValue(p, "parallel.threads", path), "parallel.threads", path);
+		return new TuningProfile(mc, kc, nc, smallFlops, gemvSimdMinCols, vectorSimdMinLength,
+				parallelThreshold, threads, p.getProperty("machine.arch", ""), intValue(p, "machine.cores", path));
+	}
+
+	/** Writes *this* profile to the file at path (replacing any existing file and creating
+	 *  missing parent directories)
+	 *
+	 * @param path
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path path) throws IOException {
+		Properties p = new Properties();
+		p.setProperty("gemm.mc", Integer.toString(_nMC));
+		p.setProperty("gemm.kc", Integer.toString(_nKC));
+		p.setProperty("gemm.nc", Integer.toString(_nNC));
+		p.setProperty("gemm.smallFlops", Long.toString(_lSmallFlops));
+		p.setProperty("gemv.simdMinCols", Integer.toString(_nGemvSimdMinCols));
+		p.setProperty("vector.simdMinLength", Integer.toString(_nVectorSimdMinLength));
+		p.setProperty("parallel.threshold", Long.toString(_lParallelThreshold));
+		p.setProperty("parallel.threads", Integer.toString(_nThreads));
+		p.setProperty("machine.arch", _sArch);
+		p.setProperty("machine.cores", Integer.toString(_nCores));
+		Path dir = path.toAbsolutePath().getParent();
+		if (dir != null)
+			Files.createDirectories(dir);
+		try (Writer out = Files.newBufferedWriter(path)) {
+			p.store(out, "linalg kernel profile (written by KernelTuner)");
+		}
+	}
+
+	/** Installs *this* profile for all later products; the Vector kernels keep the choice
+	 *  made at startup
+	 *
+	 */
+	public void apply() {
+		Gemm.Blocking.install(Gemm.Blocking.of(this));
+		ParallelGemm._lThreshold = _lParallelThreshold;
+		ParallelGemm.setParallelism(_nThreads > 0 ? _nThreads : machineCores()); // Keeps the pool if unchanged
+	}
+
+	/** Return whether *this* profile was tuned on a machine like the current one (same
+	 *  architecture and number of cores)
+	 *
+	 * @return
+	 */
+	public boolean isForThisMachine() {
+		return _sArch.equals(machineArch()) && _nCores == machineCores();
+	}
+
+	/** Return the number of rows of A packed per block of the matrix multiply kernel
+	 *
+	 * @return
+	 */
+	public int getMC() {
+		return _nMC;
+	}
+
+	/** Return the depth of each packed panel of the matrix multiply kernel
+	 *
+	 * @return
+	 */
+	public int getKC() {
+		return _nKC;
+	}
+
+	/** Return the number of columns of B packed per slab of the matrix multiply kernel
+	 *
+	 * @return
+	 */
+	public int getNC() {
+		return _nNC;
+	}
+
+	/** Return the number of multiply-adds up to which products are computed without packing
+	 *
+	 * @return
+	 */
+	public long getSmallFlops() {
+		return _lSmallFlops;
+	}
+
+	/** Return the row length from which gemv uses the SIMD dot product (Integer.MAX_VALUE
+	 *  for never)
+	 *
+	 * @return
+	 */
+	public int getGemvSimdMinCols() {
+		return _nGemvSimdMinCols;
+	}
+
+	/** Return the dimension from which Vector operations use the SIMD kernels
+	 *  (Integer.MAX_VALUE for never)
+	 *
+	 * @return
+	 */
+	public int getVectorSimdMinLength() {
+		return _nVectorSimdMinLength;
+	}
+
+	/** Return the number of multiply-adds from which parallel products are split
+	 *  (Long.MAX_VALUE for never)
+	 *
+	 * @return
+	 */
+	public long getParallelThreshold() {
+		return _lParallelThreshold;
+	}
+
+	/** Return the number of threads of the default parallel pool (0 for one per core)
+	 *
+	 * @return
+	 */
+	public int getParallelism() {
+		return _nThreads;
+	}
+
+	@Override
+	public String toString() {
+		return "[ gemm " + _nMC + "/" + _nKC + "/" + _nNC + ", unpacked <= " + _lSmallFlops
+				+ ", gemv SIMD from " + threshold(_nGemvSimdMinCols) + ", vector SIMD from " + threshold(_nVectorSimdMinLength)
+				+ ", parallel from " + (_lParallelThreshold == Long.MAX_VALUE ? "never" : Long.toString(_lParallelThreshold))
+				+ " on " + (_nThreads == 0 ? "all" : Integer.toString(_nThreads)) + " threads, tuned on "
+				+ _sArch + " x " + _nCores + " ]";
+	}
+
+	static String machineArch() {
+		return System.getProperty("os.arch", "");
+	}
+
+	static int machineCores() {
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	private static String threshold(int n) {
+		return n == NEVER ? "never" : Integer.toString(n);
+	}
+
+	private static long longValue(Properties p, String key, Path path) throws LinAlgException {
+		String s = p.getProperty(key);
+		if (s == null)
+			throw new LinAlgException("Malformed profile: " + path + " has no " + key);
+		try {
+			return Long.parseLong(s.trim());
+		} catch (NumberFormatException e) {
+			throw new LinAlgException("Malformed profile: " + key + " = " + s + " in " + path);
+		}
+	}
+
+	private static long nonNegative(long v, String key, Path path) throws LinAlgException {
+		if (v < 0)
+			throw new LinAlgException("Invalid " + key + " " + v + " in " + path);
+		return v;
+	}
+
+	private static int intValue(Properties p, String key, Path path) throws LinAlgException {
+		long v = longValue(p, key, path);
+		if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE)
+			throw new LinAlgException("Malformed profile: " + key + " = " + v + " in " + path);
+		return (int)v;
+	}
+}
@@ -14,6 +14,10 @@ public class Vector {
 
 	private int _nDim;       // Dimension of the Vector; nomenclature: _ for data member, n for integer
 	private double[] _adVal; // Contents of the Vector; nomenclature: _ for data member, a for array, d for double
+	private long _lStamp;    // Content stamp for ProductCache; reset to 0 by every modification
+
+	// Elementwise and inner-product loops; SIMD when jdk.incubator.vector is available
+	private static final VectorKernels KERNELS = VectorKernels.INSTANCE;
 
 	/** Constructor: allocates space for a new vector of dimension dim
 	 * 
@@ -27,6 +31,16 @@ public class Vector {
 		_adVal = new double[dim]; // Entries will be automatically initialized to 0.0
 	}
 	
+	/** Constructor: wraps an existing array *without copying it* (the dimension is the
+	 *  array length); used internally to hand freshly computed results to a new Vector
+	 * 
+	 * @param values
+	 */
+	Vector(double[] values) {
+		_nDim = values.length;
+		_adVal = values;
+	}
+
 	/** Copy constructor: makes a new copy of an existing Vector v
 	 *                    (note: this explicitly allocates new memory and copies over content)
 	 * 
@@ -45,28 +59,9 @@ public class Vector {
 	 * @throws LinAlgException if init is not properly formatted (missing [ or ], or improperly formatted number)
 	 */
 	public Vector(String init) throws LinAlgException {
-		
-		// The following says split init on whitespace (\\s) into an array of Strings
-		String[] split = init.split("\\s");  
-		// Uncomment the following to see what split produces
-		// for (int i = 0; i < split.length; i++)
-		// 		System.out.println(i + ". " + split[i]);
-
-		if (!split[0].equals("[") || !split[split.length-1].equals("]"))
-			throw new LinAlgException("Malformed vector initialization: missing [ or ] in " + init);
-
-		// We don't count the [ and ] in the dimensionality
-		_nDim = split.length - 2;
-		_adVal = new double[_nDim];
-		
-		// Parse each number from init and add it to the Vector in order (note the +1 offset to account for [)
-		for (int index = 0; index < _nDim; index++) {
-			try {
-				set(index, Double.parseDouble(split[index + 1]));
-			} catch (NumberFormatException e) {
-				throw new LinAlgException("Malformed vector initialization: could not parse " + split[index + 1] + " in " + init);
-			}
-		}
+		// Scans init directly (no regex split or per-token Strings); see TextCodec
+		_adVal = TextCodec.shared().parseVector(init);
+		_nDim = _adVal.length;
 	}
 
 	/** Overrides method toString() on Object: converts the class to a human readable String
@@ -78,14 +73,8 @@ public class Vector {
 	 */
 	@Override // optional annotation to tell Java we expect this overrides a parent method -- compiler will warn if not
 	public String toString() {
-		// We could just repeatedly append to an existing String, but that copies the String each
-		// time, whereas a StringBuilder simply appends new characters to the end of the String
-		StringBuilder sb = new StringBuilder();
-		sb.append("[");
-		for (int i = 0; i < _nDim; i++)
-			sb.append(String.format(" %6.3f ", _adVal[i])); // Append each vector value in order
-		sb.append(" ]");
-		return sb.toString();
+		// Each value is formatted as " %6.3f " by TextCodec without going through String.format
+		return TextCodec.format(this);
 	}
 
 	/** Overrides address equality check on Object: allows semantic equality testing of vectors,
@@ -112,6 +101,21 @@ public class Vector {
 		} else // if we get here "(o instanceof Vector)" was false
 			return false; // Two objects cannot be equal if they don't have the same class type
 	}
+
+	/** Hashes the dimension and content, consistently with equals (so -0.0 and 0.0 hash alike)
+	 * 
+	 * @return
+	 */
+	@Override
+	public int hashCode() {
+		int h = _nDim;
+		for (int index = 0; index < _nDim; index++) {
+			double d = _adVal[index] + 0d; // -0.0 + 0.0 == 0.0
+			long bits = Double.doubleToLongBits(d);
+			h = 31 * h + (int)(bits ^ (bits >>> 32));
+		}
+		return h;
+	}
 	
 	/** Get the dimension of this vector
 	 * 
@@ -121,6 +125,34 @@ public class Vector {
 		return _nDim;
 	}
 
+	/** Returns the array backing this vector *without copying it*; writes to the array are
+	 *  visible through this Vector (note: the array is replaced by changeDim)
+	 * 
+	 * @return
+	 */
+	public double[] getArray() {
+		return _adVal;
+	}
+
+	/** Tells caches (see ProductCache) that the content of this Vector has changed; needed
+	 *  only after writing to the array returned by getArray(), since every method of this
+	 *  class that modifies the Vector already does this
+	 */
+	public void markModified() {
+		_lStamp = 0L;
+	}
+
+	/** Returns a stamp identifying the current content of this Vector: it stays the same
+	 *  until the Vector is modified and is never reused for different content
+	 * 
+	 * @return
+	 */
+	long stamp() {
+		if (_lStamp == 0L)
+			_lStamp = ProductCache.nextStamp();
+		return _lStamp;
+	}
+
 	/** Returns the value of this vector at the given index (remember: array indices start at 0)
 	 * 
 	 * @param index
@@ -146,6 +178,7 @@ public class Vector {
             if (index < 0 || index >= _nDim)
                 throw new LinAlgException("Invalid index.");
             _adVal[index] = val;
+            _lStamp = 0L;
         }
         
 	
@@ -177,6 +210,7 @@ public class Vector {
             //Make _adVal point to _dArray
             _nDim = new_dim;
             _adVal = _dArray;
+            _lStamp = 0L;
 	}
 	
 	/** This adds a scalar d to all elements of *this* Vector
@@ -185,8 +219,11 @@ public class Vector {
 	 * @param d
 	 */
 	public void scalarAddInPlace(double d) {
-            for (int index = 0; index < _nDim; index++)
-		_adVal[index] += d;
+            long t0 = LinAlgMetrics.start();
+            _lStamp = 0L;
+            KERNELS.scalarAdd(_adVal, d, _adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_SCALAR_ADD, t0, _nDim, 1, 2, false);
 	}
 	
 	/** This creates a new Vector, adds a scalar d to it, and returns it
@@ -196,10 +233,28 @@ public class Vector {
 	 * @return new Vector after scalar addition
 	 */
 	public Vector scalarAdd(double d) {
-            Vector u = new Vector(this);
-            u.scalarAddInPlace(d);
+            long t0 = LinAlgMetrics.start();
+            Vector u = new Vector(new double[_nDim]);
+            KERNELS.scalarAdd(_adVal, d, u._adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_SCALAR_ADD, t0, _nDim, 1, 2, true);
             return u;       
 	}
+
+	/** Writes *this* plus scalar d into out without allocating (out may be *this*)
+	 * 
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the same dimension as *this*
+	 */
+	public void scalarAdd(double d, Vector out) throws LinAlgException {
+            checkDim(out);
+            long t0 = LinAlgMetrics.start();
+            out._lStamp = 0L;
+            KERNELS.scalarAdd(_adVal, d, out._adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_SCALAR_ADD, t0, _nDim, 1, 2, false);
+	}
 	
 	/** This multiplies a scalar d by all elements of *this* Vector
 	 *  (should modify *this*)
@@ -207,8 +262,11 @@ public class Vector {
 	 * @param d
 	 */
 	public void scalarMultInPlace(double d) {
-            for (int index = 0; index < _nDim; index++)
-	         _adVal[index] *= d;
+            long t0 = LinAlgMetrics.start();
+            _lStamp = 0L;
+            KERNELS.scalarMult(_adVal, d, _adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_SCALAR_MULT, t0, _nDim, 1, 2, false);
 	}
 	
 	/** This creates a new Vector, multiplies it by a scalar d, and returns it
@@ -218,23 +276,43 @@ public class Vector {
 	 * @return new Vector after scalar addition
 	 */
 	public Vector scalarMult(double d) {
-		Vector n = new Vector(this);
-                n.scalarMultInPlace(d);
+		long t0 = LinAlgMetrics.start();
+		Vector n = new Vector(new double[_nDim]);
+                KERNELS.scalarMult(_adVal, d, n._adVal, _nDim);
+                if (t0 != 0L)
+                    LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_SCALAR_MULT, t0, _nDim, 1, 2, true);
 		return n;
 	}
 
+	/** Writes *this* times scalar d into out without allocating (out may be *this*)
+	 * 
+	 * @param d
+	 * @param out
+	 * @throws LinAlgException if out does not have the same dimension as *this*
+	 */
+	public void scalarMult(double d, Vector out) throws LinAlgException {
+            checkDim(out);
+            long t0 = LinAlgMetrics.start();
+            out._lStamp = 0L;
+            KERNELS.scalarMult(_adVal, d, out._adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_SCALAR_MULT, t0, _nDim, 1, 2, false);
+	}
+
 	/** Performs an elementwise addition of v to *this*, modifies *this*
 	 * 
 	 * @param v
 	 * @throws LinAlgException if dimensions of the two operand vectors do not match
 	 */
 	public void elementwiseAddInPlace(Vector v) throws LinAlgException {    
-            if(_adVal.length != v.getDim())
+            if(_nDim != v.getDim())
                 throw new LinAlgException ("The dimensions of the two vectors do not match!");
+            long t0 = LinAlgMetrics.start();
+            _lStamp = 0L;
             //Change values of _adVal by adding the value of v at the corresponding index
-            for (int i = 0; i < v.getDim(); i++) 
-                _adVal[i] += v.get(i);
-            
+            KERNELS.add(_adVal, v._adVal, _adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_ELEMENTWISE_ADD, t0, _nDim, 1, 3, false);
 	}
 
 	/** Performs an elementwise addition of *this* and v and returns a new Vector with result
@@ -244,14 +322,33 @@ public class Vector {
 	 * @throws LinAlgException if dimensions of the two operand vectors do not match
 	 */
 	public Vector elementwiseAdd(Vector v) throws LinAlgException {
-            if(_adVal.length != v.getDim())
+            if(_nDim != v.getDim())
                 throw new LinAlgException ("The dimensions of the two vectors do not match!");
-            Vector newV = new Vector(this);
+            long t0 = LinAlgMetrics.start();
+            Vector newV = new Vector(new double[_nDim]);
             //sets the value of the new vector at every index equal to the vector plus v
-            for (int j = 0; j < v.getDim(); j++)
-                newV.set(j , newV.get(j)+ v.get(j));
+            KERNELS.add(_adVal, v._adVal, newV._adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_ELEMENTWISE_ADD, t0, _nDim, 1, 3, true);
 	return newV;
 	}
+
+	/** Writes the elementwise sum of *this* and v into out without allocating (out may be
+	 *  *this* or v)
+	 * 
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if dimensions of the three vectors do not match
+	 */
+	public void elementwiseAdd(Vector v, Vector out) throws LinAlgException {
+            checkDim(v);
+            checkDim(out);
+            long t0 = LinAlgMetrics.start();
+            out._lStamp = 0L;
+            KERNELS.add(_adVal, v._adVal, out._adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_ELEMENTWISE_ADD, t0, _nDim, 1, 3, false);
+	}
 	
 	/** Performs an elementwise multiplication of v and *this*, modifies *this*
 	 * 
@@ -259,10 +356,13 @@ public class Vector {
 	 * @throws LinAlgException if dimensions of the two operand vectors do not match
 	 */
 	public void elementwiseMultInPlace(Vector v) throws LinAlgException {
-            if(_adVal.length != v.getDim())
+            if(_nDim != v.getDim())
                 throw new LinAlgException ("The dimensions of the two vectors do not match!");
-            for (int i = 0; i < v.getDim(); i++) 
-                _adVal[i] *= v.get(i);
+            long t0 = LinAlgMetrics.start();
+            _lStamp = 0L;
+            KERNELS.mult(_adVal, v._adVal, _adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_ELEMENTWISE_MULT, t0, _nDim, 1, 3, false);
 	}
 
 	/** Performs an elementwise multiplication of *this* and v and returns a new Vector with result
@@ -272,29 +372,69 @@ public class Vector {
 	 * @throws LinAlgException if dimensions of the two operand vectors do not match
 	 */
 	public Vector elementwiseMult(Vector v) throws LinAlgException {
-            if(_adVal.length != v.getDim())
+            if(_nDim != v.getDim())
                 throw new LinAlgException ("The dimensions of the two vectors do not match!");
-            //Create a new vector and copy in the values of _adVal
-            Vector newV1 = new Vector(v.getDim());
-            for (int i = 0; i < v.getDim(); i++)
-                newV1.set(i, _adVal[i]);
-            for (int j = 0; j < v.getDim(); j++)
-                newV1.set(j,newV1.get(j) * v.get(j));
+            long t0 = LinAlgMetrics.start();
+            Vector newV1 = new Vector(new double[_nDim]);
+            KERNELS.mult(_adVal, v._adVal, newV1._adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_ELEMENTWISE_MULT, t0, _nDim, 1, 3, true);
 	return newV1;
 	}
 
+	/** Writes the elementwise product of *this* and v into out without allocating (out may be
+	 *  *this* or v)
+	 * 
+	 * @param v
+	 * @param out
+	 * @throws LinAlgException if dimensions of the three vectors do not match
+	 */
+	public void elementwiseMult(Vector v, Vector out) throws LinAlgException {
+            checkDim(v);
+            checkDim(out);
+            long t0 = LinAlgMetrics.start();
+            out._lStamp = 0L;
+            KERNELS.mult(_adVal, v._adVal, out._adVal, _nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_ELEMENTWISE_MULT, t0, _nDim, 1, 3, false);
+	}
+
 	/** Performs an inner product of Vectors v1 and v2 and returns the scalar result
 	 * 
 	 * @param v1
 	 * @param v2
 	 * @return
-	 * @throws LinAlgException
+	 * @throws LinAlgException if dimensions of the two operand vectors do not match
 	 */
 	public static double InnerProd(Vector v1, Vector v2) throws LinAlgException {
-            double sum = 0.0;
+            if (v1._nDim != v2._nDim)
+                throw new LinAlgException ("The dimensions of the two vectors do not match!");
+            long t0 = LinAlgMetrics.start();
             //Multiply the vectors and add to the sum
-            for (int i = 0; i < v1.getDim(); i++)
-                sum += v1.get(i) * v2.get(i);
+            double sum = KERNELS.dot(v1._adVal, v2._adVal, v1._nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_INNER_PROD, t0, v1._nDim, 2, 2, false);
         return sum;
 	}
+
+	/** Computes y = alpha * x + y in place (the BLAS axpy operation) without allocating
+	 * 
+	 * @param alpha
+	 * @param x
+	 * @param y
+	 * @throws LinAlgException if dimensions of the two vectors do not match
+	 */
+	public static void axpy(double alpha, Vector x, Vector y) throws LinAlgException {
+            x.checkDim(y);
+            long t0 = LinAlgMetrics.start();
+            y._lStamp = 0L;
+            KERNELS.axpy(alpha, x._adVal, y._adVal, x._nDim);
+            if (t0 != 0L)
+                LinAlgMetrics.recordVector(LinAlgMetrics.Op.VECTOR_AXPY, t0, x._nDim, 2, 3, false);
+	}
+
+	private void checkDim(Vector v) throws LinAlgException {
+            if (_nDim != v._nDim)
+                throw new LinAlgException ("The dimensions of the two vectors do not match!");
+	}
 }
@@ -0,0 +1,354 @@
+package linalg;
+
+import java.util.Arrays;
+
+/*** A lazily evaluated Vector-valued expression.
+ *
+ *   Calls like VectorExpr.of(v).scalarMult(a).elementwiseAdd(w).elementwiseMult(u) only
+ *   record the operations as a tree; nothing is computed until eval() (or InnerProd) is
+ *   called.  The eager equivalent on Vector allocates an intermediate vector and makes a
+ *   full pass over memory for every call, whereas eval() fuses the whole elementwise chain:
+ *   it walks the operands in chunks of CHUNK entries and applies every operation to a chunk
+ *   before moving on, so intermediates live in small cache-resident buffers and each operand
+ *   is read from memory once.  InnerProd fuses the final reduction into the same pass.
+ *
+ *   Matrix products (see MatrixExpr) are evaluated before the elementwise pass, as a chain
+ *   multiplied in the cheapest order; their result is then read like any other operand.
+ *
+ *   Expressions reference their operand Vectors rather than copying them, so changing an
+ *   operand before eval() changes the result.  The elementwise results are identical to
+ *   those of the eager calls, but InnerProd sums chunk by chunk and matrix chains may be
+ *   multiplied in a different order, so those agree with the eager calls only up to
+ *   floating-point reassociation (i.e., to within rounding error, not bit for bit).
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+public abstract class VectorExpr {
+
+	static final int CHUNK = 512; // Entries per chunk; a 4 KB temporary stays in L1
+
+	private static final VectorKernels KERNELS = VectorKernels.INSTANCE;
+
+	private static final int ADD = 0, MULT = 1, SCALAR_ADD = 2, SCALAR_MULT = 3;
+
+	final int _nDim; // Dimension of the result
+
+	VectorExpr(int dim) {
+		_nDim = dim;
+	}
+
+	/** Returns an expression that evaluates to v
+	 *
+	 * @param v
+	 * @return
+	 */
+	public static VectorExpr of(Vector v) {
+		return new Leaf(v);
+	}
+
+	/** Returns the expression chain[0] * ... * chain[n-1] * x; dimensions are already checked */
+	static VectorExpr product(Matrix[] chain, VectorExpr x) {
+		return new Product(chain, x);
+	}
+
+	/** Get the dimension of the result
+	 *
+	 * @return
+	 */
+	public int getDim() {
+		return _nDim;
+	}
+
+	/** Returns the expression *this* + d (added to every entry)
+	 *
+	 * @param d
+	 * @return
+	 */
+	public VectorExpr scalarAdd(double d) {
+		return new Scalar(SCALAR_ADD, this, d);
+	}
+
+	/** Returns the expression *this* * d (every entry multiplied by d)
+	 *
+	 * @param d
+	 * @return
+	 */
+	public VectorExpr scalarMult(double d) {
+		return new Scalar(SCALAR_MULT, this, d);
+	}
+
+	/** Returns the elementwise sum of *this* and v
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operands do not match
+	 */
+	public VectorExpr elementwiseAdd(VectorExpr v) throws LinAlgException {
+		return new Elementwise(ADD, this, v);
+	}
+
+	/** Returns the elementwise sum of *this* and v
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operands do not match
+	 */
+	public VectorExpr elementwiseAdd(Vector v) throws LinAlgException {
+		return elementwiseAdd(of(v));
+	}
+
+	/** Returns the elementwise product of *this* and v
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operands do not match
+	 */
+	public VectorExpr elementwiseMult(VectorExpr v) throws LinAlgException {
+		return new Elementwise(MULT, this, v);
+	}
+
+	/** Returns the elementwise product of *this* and v
+	 *
+	 * @param v
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operands do not match
+	 */
+	public VectorExpr elementwiseMult(Vector v) throws LinAlgException {
+		return elementwiseMult(of(v));
+	}
+
+	/** Evaluates both expressions and returns their inner product in a single fused pass
+	 *  (neither operand is materialized)
+	 *
+	 * @param v1
+	 * @param v2
+	 * @return
+	 * @throws LinAlgException if dimensions of the two operands do not match
+	 */
+	public static double InnerProd(VectorExpr v1, VectorExpr v2) throws LinAlgException {
+		if (v1._nDim != v2._nDim)
+			throw new LinAlgException("The dimensions of the two vectors do not match!");
+		Program p = new Program(v1._nDim);
+		int a = v1.compile(p);
+		int b = v2.compile(p);
+		double sum = 0d;
+		for (int from = 0; from < v1._nDim; from += CHUNK) {
+			int len = Math.min(CHUNK, v1._nDim - from);
+			p.run(from, len);
+			sum += KERNELS.dot(p._aadSlot[a], p.offset(a, from), p._aadSlot[b], p.offset(b, from), len);
+		}
+		return sum;
+	}
+
+	/** Evaluates the expression into a new Vector
+	 *
+	 * @return
+	 * @throws LinAlgException
+	 */
+	public Vector eval() throws LinAlgException {
+		Vector out = new Vector(new double[_nDim]);
+		evalInto(out);
+		return out;
+	}
+
+	/** Evaluates the expression into out without allocating a result; out may be one of the
+	 *  operands of the expression
+	 *
+	 * @param out
+	 * @throws LinAlgException if out does not have the dimension of the expression
+	 */
+	public void evalInto(Vector out) throws LinAlgException {
+		if (out.getDim() != _nDim)
+			throw new LinAlgException("Output vector must have dimension " + _nDim + " but has " + out.getDim());
+		Program p = new Program(_nDim);
+		int root = compile(p);
+		double[] dst = out.getArray();
+		out.markModified();
+		if (p._nSteps == 0) { // Nothing to compute: the expression is a single operand
+			if (p._aadSlot[root] != dst)
+				System.arraycopy(p._aadSlot[root], 0, dst, 0, _nDim);
+			return;
+		}
+		// Each chunk of out is written only after every read of the same chunk, so out may alias an operand
+		p._anDst[p._nSteps - 1] = p.operand(dst);
+		for (int from = 0; from < _nDim; from += CHUNK)
+			p.run(from, Math.min(CHUNK, _nDim - from));
+	}
+
+	/** Appends the steps that compute *this* to p and returns the slot holding the result */
+	abstract int compile(Program p) throws LinAlgException;
+
+	/** A Vector operand */
+	private static final class Leaf extends VectorExpr {
+
+		private final Vector _v;
+
+		Leaf(Vector v) {
+			super(v.getDim());
+			_v = v;
+		}
+
+		@Override
+		int compile(Program p) {
+			return p.operand(_v.getArray());
+		}
+	}
+
+	/** scalarAdd or scalarMult of a sub-expression */
+	private static final class Scalar extends VectorExpr {
+
+		private final int _nOp;
+		private final VectorExpr _e;
+		private final double _d;
+
+		Scalar(int op, VectorExpr e, double d) {
+			super(e._nDim);
+			_nOp = op;
+			_e = e;
+			_d = d;
+		}
+
+		@Override
+		int compile(Program p) throws LinAlgException {
+			int a = _e.compile(p);
+			int dst = p.isTemp(a) ? a : p.temp(); // Kernels may write over their input
+			p.step(_nOp, a, -1, _d, dst);
+			return dst;
+		}
+	}
+
+	/** elementwiseAdd or elementwiseMult of two sub-expressions */
+	private static final class Elementwise extends VectorExpr {
+
+		private final int _nOp;
+		private final VectorExpr _e1;
+		private final VectorExpr _e2;
+
+		Elementwise(int op, VectorExpr e1, VectorExpr e2) throws LinAlgException {
+			super(e1._nDim);
+			if (e1._nDim != e2._nDim)
+				throw new LinAlgException("The dimensions of the two vectors do not match!");
+			_nOp = op;
+			_e1 = e1;
+			_e2 = e2;
+		}
+
+		@Override
+		int compile(Program p) throws LinAlgException {
+			int a = _e1.compile(p);
+			int b = _e2.compile(p);
+			int dst = p.isTemp(a) ? a : p.isTemp(b) ? b : p.temp();
+			p.step(_nOp, a, b, 0d, dst);
+			return dst;
+		}
+	}
+
+	/** A chain of matrices times a sub-expression; evaluated eagerly when compiled */
+	private static final class Product extends VectorExpr {
+
+		private final Matrix[] _am;
+		private final VectorExpr _x;
+
+		Product(Matrix[] chain, VectorExpr x) {
+			super(chain[0].getNumRows());
+			_am = chain;
+			_x = x;
+		}
+
+		@Override
+		int compile(Program p) throws LinAlgException {
+			Vector x = _x instanceof Leaf ? ((Leaf)_x)._v : _x.eval();
+			return p.operand(MatrixChain.plan(_am, x).multiply(_am, x).getArray());
+		}
+	}
+
+	/** The compiled form of an expression: slots hold operand arrays (indexed by position in
+	 *  the vector) or CHUNK-sized temporaries (indexed from 0), and steps apply one kernel
+	 *  each to a chunk of their input slots */
+	private static final class Program {
+
+		double[][] _aadSlot = new double[4][];
+		boolean[] _abTemp = new boolean[4];
+		int _nSlots;
+
+		int[] _anOp = new int[4];
+		int[] _anA = new int[4];
+		int[] _anB = new int[4];
+		int[] _anDst = new int[4];
+		double[] _adScalar = new double[4];
+		int _nSteps;
+
+		private final int _nChunk; // Length of each temporary
+
+		Program(int dim) {
+			_nChunk = Math.max(1, Math.min(CHUNK, dim)); // Short vectors need only short temporaries
+		}
+
+		int operand(double[] a) {
+			return slot(a, false);
+		}
+
+		int temp() {
+			return slot(new double[_nChunk], true);
+		}
+
+		boolean isTemp(int slot) {
+			return _abTemp[slot];
+		}
+
+		/** Index in slot of the entry at position from of the vector */
+		int offset(int slot, int from) {
+			return _abTemp[slot] ? 0 : from;
+		}
+
+		private int slot(double[] a, boolean temp) {
+			if (_nSlots == _aadSlot.length) {
+				_aadSlot = Arrays.copyOf(_aadSlot, 2 * _nSlots);
+				_abTemp = Arrays.copyOf(_abTemp, 2 * _nSlots);
+			}
+			_aadSlot[_nSlots] = a;
+			_abTemp[_nSlots] = temp;
+			return _nSlots++;
+		}
+
+		void step(int op, int a, int b, double d, int dst) {
+			if (_nSteps == _anOp.length) {
+				_anOp = Arrays.copyOf(_anOp, 2 * _nSteps);
+				_anA = Arrays.copyOf(_anA, 2 * _nSteps);
+				_anB = Arrays.copyOf(_anB, 2 * _nSteps);
+				_anDst = Arrays.copyOf(_anDst, 2 * _nSteps);
+				_adScalar = Arrays.copyOf(_adScalar, 2 * _nSteps);
+			}
+			_anOp[_nSteps] = op;
+			_anA[_nSteps] = a;
+			_anB[_nSteps] = b;
+			_anDst[_nSteps] = dst;
+			_adScalar[_nSteps] = d;
+			_nSteps++;
+		}
+
+		/** Runs every step on entries from .. from + len - 1 */
+		void run(int from, int len) {
+			for (int s = 0; s < _nSteps; s++) {
+				int a = _anA[s], b = _anB[s], dst = _anDst[s];
+				double[] out = _aadSlot[dst];
+				int outOff = offset(dst, from);
+				switch (_anOp[s]) {
+				case ADD:
+					KERNELS.add(_aadSlot[a], offset(a, from), _aadSlot[b], offset(b, from), out, outOff, len);
+					break;
+				case MULT:
+					KERNELS.mult(_aadSlot[a], offset(a, from), _aadSlot[b], offset(b, from), out, outOff, len);
+					break;
+				case SCALAR_ADD:
+					KERNELS.scalarAdd(_aadSlot[a], offset(a, from), _adScalar[s], out, outOff, len);
+					break;
+				default:
+					KERNELS.scalarMult(_aadSlot[a], offset(a, from), _adScalar[s], out, outOff, len);
+					break;
+				}
+			}
+		}
+	}
+}
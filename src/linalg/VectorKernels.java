@@ -0,0 +1,142 @@
+package linalg;
+
+/*** The elementwise and inner-product loops behind Vector, written against raw arrays.
+ *
+ *   Two implementations exist: ScalarKernels (plain Java loops) and SimdKernels, which uses
+ *   the incubating JDK Vector API (jdk.incubator.vector).  INSTANCE is SimdKernels whenever
+ *   that module is present at runtime (e.g., java --add-modules jdk.incubator.vector ...)
+ *   and ScalarKernels otherwise; setting the system property linalg.simd=false forces the
+ *   scalar path.  A tuned profile (see TuningProfile) may keep short operands on the scalar
+ *   path, where SIMD does not pay off.
+ *
+ * @author ssanner@mie.utoronto.ca, christina.seo@mail.utoronto.ca
+ *
+ */
+interface VectorKernels {
+
+	VectorKernels INSTANCE = Loader.select();
+
+	/** Returns the sum over i < n of a[i] * b[i] */
+	default double dot(double[] a, double[] b, int n) {
+		return dot(a, 0, b, 0, n);
+	}
+
+	/** Sets out[i] = a[i] + b[i] for i < n (out may be a or b) */
+	default void add(double[] a, double[] b, double[] out, int n) {
+		add(a, 0, b, 0, out, 0, n);
+	}
+
+	/** Sets out[i] = a[i] * b[i] for i < n (out may be a or b) */
+	default void mult(double[] a, double[] b, double[] out, int n) {
+		mult(a, 0, b, 0, out, 0, n);
+	}
+
+	/** Sets out[i] = a[i] + d for i < n (out may be a) */
+	default void scalarAdd(double[] a, double d, double[] out, int n) {
+		scalarAdd(a, 0, d, out, 0, n);
+	}
+
+	/** Sets out[i] = a[i] * d for i < n (out may be a) */
+	default void scalarMult(double[] a, double d, double[] out, int n) {
+		scalarMult(a, 0, d, out, 0, n);
+	}
+
+	/** Returns the sum over i < n of a[aOff + i] * b[bOff + i] */
+	double dot(double[] a, int aOff, double[] b, int bOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] + b[bOff + i] for i < n */
+	void add(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] * b[bOff + i] for i < n */
+	void mult(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] + d for i < n */
+	void scalarAdd(double[] a, int aOff, double d, double[] out, int outOff, int n);
+
+	/** Sets out[outOff + i] = a[aOff + i] * d for i < n */
+	void scalarMult(double[] a, int aOff, double d, double[] out, int outOff, int n);
+
+	/** Sets y[i] = alpha * x[i] + y[i] for i < n, rounding the product and then the sum (no
+	 *  fused multiply-add), so both implementations return identical results */
+	void axpy(double alpha, double[] x, double[] y, int n);
+
+	/** Picks the kernel implementation once, when VectorKernels is first used */
+	final class Loader {
+
+		private Loader() {
+		}
+
+		static VectorKernels select() {
+			return select(TuningProfile.startup()._nVectorSimdMinLength);
+		}
+
+		/** Returns kernels that use SIMD for operations on at least simdMinLength entries
+		 *  (scalar throughout if SIMD is unavailable or simdMinLength is TuningProfile.NEVER) */
+		static VectorKernels select(int simdMinLength) {
+			VectorKernels simd = simd();
+			if (simd == null || simdMinLength == TuningProfile.NEVER)
+				return new ScalarKernels();
+			if (simdMinLength <= 1)
+				return simd;
+			return new Split(new ScalarKernels(), simd, simdMinLength);
+		}
+
+		/** Returns the SIMD kernels, or null if they are disabled or unavailable */
+		static VectorKernels simd() {
+			if (!Boolean.parseBoolean(System.getProperty("linalg.simd", "true")))
+				return null;
+			if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent())
+				return null;
+			try {
+				// Loaded reflectively so this class still links when the module is absent
+				return (VectorKernels)Class.forName("linalg.SimdKernels").getDeclaredConstructor().newInstance();
+			} catch (ReflectiveOperationException | LinkageError e) {
+				return null;
+			}
+		}
+	}
+
+	/** Scalar loops for short operands, where setting up SIMD costs more than it saves, and
+	 *  SIMD for the rest */
+	final class Split implements VectorKernels {
+
+		private final VectorKernels _scalar, _simd;
+		private final int _nMin; // Operands of at least this many entries use _simd
+
+		Split(VectorKernels scalar, VectorKernels simd, int min) {
+			_scalar = scalar;
+			_simd = simd;
+			_nMin = min;
+		}
+
+		@Override
+		public double dot(double[] a, int aOff, double[] b, int bOff, int n) {
+			return (n < _nMin ? _scalar : _simd).dot(a, aOff, b, bOff, n);
+		}
+
+		@Override
+		public void add(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n) {
+			(n < _nMin ? _scalar : _simd).add(a, aOff, b, bOff, out, outOff, n);
+		}
+
+		@Override
+		public void mult(double[] a, int aOff, double[] b, int bOff, double[] out, int outOff, int n) {
+			(n < _nMin ? _scalar : _simd).mult(a, aOff, b, bOff, out, outOff, n);
+		}
+
+		@Override
+		public void scalarAdd(double[] a, int aOff, double d, double[] out, int outOff, int n) {
+			(n < _nMin ? _scalar : _simd).scalarAdd(a, aOff, d, out, outOff, n);
+		}
+
+		@Override
+		public void scalarMult(double[] a, int aOff, double d, double[] out, int outOff, int n) {
+			(n < _nMin ? _scalar : _simd).scalarMult(a, aOff, d, out, outOff, n);
+		}
+
+		@Override
+		public void axpy(double alpha, double[] x, double[] y, int n) {
+			(n < _nMin ? _scalar : _simd).axpy(alpha, x, y, n);
+		}
+	}
+}